@@ -9,6 +9,7 @@ package com.spring;
  * Características destacadas:
  * 	Anotada con @SpringBootApplication: activa la configuración automática, el escaneo de componentes y más.
  * 	Anotada con @EnableAsync: permite ejecutar métodos marcados con @Async en segundo plano (asincronía).
+ * 	Anotada con @EnableScheduling: permite ejecutar métodos marcados con @Scheduled de forma periódica.
  * 	Contiene el método main que inicia la aplicación con SpringApplication.run().
  *
  * Uso:
@@ -21,9 +22,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 //Importa la anotación EnableAsync, que habilita la ejecución de métodos de forma asíncrona en la aplicación.
 import org.springframework.scheduling.annotation.EnableAsync;
+//Importa la anotación EnableScheduling, que habilita las tareas programadas.
+import org.springframework.scheduling.annotation.EnableScheduling;
 //Habilita el soporte para tareas asíncronas (@Async) dentro del proyecto.
 //Se utiliza cuando quiero que algunos métodos se ejecuten en segundo plano, sin bloquear el flujo principal del programa.
 @EnableAsync
+//Habilita las tareas programadas (@Scheduled), como la limpieza de los reportes generados antiguos.
+@EnableScheduling
 //Marca esta clase como una aplicación Spring Boot.
 @SpringBootApplication
 //Marca esta clase como una aplicación Spring Boot.
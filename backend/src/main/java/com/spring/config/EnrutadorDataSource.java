@@ -0,0 +1,245 @@
+package com.spring.config;
+
+/**
+ * DataSource que reparte las conexiones entre la base de datos principal y una réplica de solo lectura.
+ *
+ * Reparto:
+ * 	Las transacciones de solo lectura de la aplicación (@Transactional(readOnly = true) en informes,
+ * 	exportaciones y listados) se envían a la réplica. Todo lo demás (escrituras, conexiones sin transacción
+ * 	y las transacciones de solo lectura que abre Spring Data por su cuenta en cada findById o findAll sueltos)
+ * 	va a la principal: esas lecturas sueltas suelen ir seguidas de un save() y tienen que ver el último dato.
+ *
+ * 	Para que la decisión se tome cuando ya se sabe si la transacción es de solo lectura, este DataSource se usa
+ * 	envuelto en un LazyConnectionDataSourceProxy, que no pide la conexión real hasta la primera sentencia.
+ *
+ * Retraso de la réplica:
+ * 	Cada pocos segundos se escribe la hora actual en la tabla latido_replica de la principal y se lee de la réplica.
+ * 	La diferencia es el retraso de la réplica. Si supera el retraso máximo permitido, o la réplica no responde,
+ * 	se deja de usar hasta la siguiente comprobación correcta.
+ *
+ * 	Además, después de cada escritura las lecturas siguen yendo a la principal durante el retraso medido más un margen,
+ * 	para que un informe pedido justo después de un cambio no devuelva datos anteriores a él (ni un ETag nuevo con datos viejos).
+ *
+ * Si al pedir una conexión a la réplica falla, se marca como no disponible y se usa la principal,
+ * así que una caída de la réplica nunca hace fallar una petición.
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class EnrutadorDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+	/**
+	 * Base de datos a la que se envía una conexión.
+	 */
+	public enum Destino {
+		PRINCIPAL, REPLICA
+	}
+
+	/**
+	 * Resultado de la última comprobación de la réplica.
+	 * @param disponible si la réplica responde y su retraso está dentro del máximo
+	 * @param retrasoMs retraso medido en milisegundos (-1 si no se ha podido medir)
+	 * @param comprobada instante de la comprobación (null si aún no se ha comprobado)
+	 * @param error motivo por el que no está disponible (null si lo está)
+	 */
+	public record EstadoReplica(boolean disponible, long retrasoMs, Instant comprobada, String error) {
+	}
+
+	// Prefijo de las transacciones que abren los repositorios de Spring Data por su cuenta
+	private static final String PREFIJO_REPOSITORIOS = "org.springframework.data.";
+
+	private final DataSource principal;
+	private final DataSource replica;
+	private final long retrasoMaximoMs;
+	private final long margenMs;
+	private final Duration intervalo;
+
+	private volatile EstadoReplica estado = new EstadoReplica(false, -1, null, "Aún no se ha comprobado");
+	// Instante (ms) en que terminó la última transacción con escrituras
+	private volatile long ultimaEscritura = 0;
+	private volatile boolean tablaLatidoCreada = false;
+	private ScheduledExecutorService comprobaciones;
+
+	/**
+	 * Crea el enrutador con las dos bases de datos y los límites de retraso.
+	 * @param principal base de datos principal (lectura y escritura)
+	 * @param replica réplica de solo lectura
+	 * @param retrasoMaximo retraso máximo de la réplica para seguir usándola
+	 * @param margen tiempo extra tras una escritura durante el que las lecturas siguen en la principal
+	 * @param intervalo tiempo entre dos comprobaciones de la réplica
+	 */
+	public EnrutadorDataSource(DataSource principal, DataSource replica, Duration retrasoMaximo, Duration margen,
+			Duration intervalo) {
+		this.principal = principal;
+		this.replica = replica;
+		this.retrasoMaximoMs = retrasoMaximo.toMillis();
+		this.margenMs = margen.toMillis();
+		this.intervalo = intervalo;
+		setTargetDataSources(Map.of(Destino.PRINCIPAL, principal, Destino.REPLICA, replica));
+		setDefaultTargetDataSource(principal);
+	}
+
+	/**
+	 * Empieza a comprobar la réplica periódicamente.
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		comprobaciones = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread hilo = new Thread(r, "comprobacion-replica");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		comprobaciones.scheduleWithFixedDelay(this::comprobar, 0, intervalo.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Detiene las comprobaciones y cierra los grupos de conexiones al cerrar la aplicación.
+	 * @throws Exception si falla el cierre de alguna base de datos
+	 */
+	@Override
+	public void destroy() throws Exception {
+		if (comprobaciones != null) {
+			comprobaciones.shutdownNow();
+		}
+		if (replica instanceof AutoCloseable cerrable) {
+			cerrable.close();
+		}
+		if (principal instanceof AutoCloseable cerrable) {
+			cerrable.close();
+		}
+	}
+
+	/**
+	 * Devuelve el estado de la última comprobación de la réplica.
+	 * @return estado de la réplica
+	 */
+	public EstadoReplica estado() {
+		return estado;
+	}
+
+	/**
+	 * Elige la base de datos para la conexión que se está pidiendo.
+	 * @return destino de la conexión
+	 */
+	@Override
+	protected Destino determineCurrentLookupKey() {
+		if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+			return Destino.PRINCIPAL;
+		}
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			anotarEscritura();
+			return Destino.PRINCIPAL;
+		}
+		String nombre = TransactionSynchronizationManager.getCurrentTransactionName();
+		if (nombre != null && nombre.startsWith(PREFIJO_REPOSITORIOS)) {
+			return Destino.PRINCIPAL;
+		}
+		return replicaUtilizable() ? Destino.REPLICA : Destino.PRINCIPAL;
+	}
+
+	/**
+	 * Devuelve una conexión de la base de datos elegida; si la réplica falla, una de la principal.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (determineCurrentLookupKey() == Destino.REPLICA) {
+			try {
+				return replica.getConnection();
+			} catch (SQLException e) {
+				marcarNoDisponible(e);
+			}
+		}
+		return principal.getConnection();
+	}
+
+	@Override
+	public Connection getConnection(String usuario, String contrasena) throws SQLException {
+		if (determineCurrentLookupKey() == Destino.REPLICA) {
+			try {
+				return replica.getConnection(usuario, contrasena);
+			} catch (SQLException e) {
+				marcarNoDisponible(e);
+			}
+		}
+		return principal.getConnection(usuario, contrasena);
+	}
+
+	/**
+	 * Escribe un latido en la principal y mide con qué retraso lo ve la réplica.
+	 * Se ejecuta periódicamente; los errores solo cambian el estado de la réplica.
+	 */
+	public void comprobar() {
+		try (Connection conexion = principal.getConnection(); Statement sentencia = conexion.createStatement()) {
+			if (!tablaLatidoCreada) {
+				sentencia.execute("CREATE TABLE IF NOT EXISTS latido_replica (id INT PRIMARY KEY, instante BIGINT NOT NULL)");
+				tablaLatidoCreada = true;
+			}
+			long ahora = System.currentTimeMillis();
+			if (sentencia.executeUpdate("UPDATE latido_replica SET instante = " + ahora + " WHERE id = 1") == 0) {
+				sentencia.executeUpdate("INSERT INTO latido_replica (id, instante) VALUES (1, " + ahora + ")");
+			}
+		} catch (SQLException e) {
+			// Sin principal no hay latido nuevo; la réplica se mide con el último que le haya llegado
+		}
+		try (Connection conexion = replica.getConnection();
+				Statement sentencia = conexion.createStatement();
+				ResultSet fila = sentencia.executeQuery("SELECT instante FROM latido_replica WHERE id = 1")) {
+			if (!fila.next()) {
+				estado = new EstadoReplica(false, -1, Instant.now(), "La réplica aún no tiene latido");
+				return;
+			}
+			long retraso = Math.max(0, System.currentTimeMillis() - fila.getLong(1));
+			boolean dentroDelMaximo = retraso <= retrasoMaximoMs;
+			estado = new EstadoReplica(dentroDelMaximo, retraso, Instant.now(),
+					dentroDelMaximo ? null : "Retraso de " + retraso + " ms, superior al máximo de " + retrasoMaximoMs + " ms");
+		} catch (SQLException e) {
+			marcarNoDisponible(e);
+		}
+	}
+
+	/**
+	 * Indica si se puede leer de la réplica: está disponible y ya le ha dado tiempo a recibir la última escritura.
+	 */
+	private boolean replicaUtilizable() {
+		EstadoReplica actual = estado;
+		return actual.disponible()
+				&& System.currentTimeMillis() - ultimaEscritura > actual.retrasoMs() + margenMs;
+	}
+
+	/**
+	 * Anota el momento de una escritura, y vuelve a anotarlo cuando termine la transacción.
+	 */
+	private void anotarEscritura() {
+		ultimaEscritura = System.currentTimeMillis();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int estadoTransaccion) {
+					ultimaEscritura = System.currentTimeMillis();
+				}
+			});
+		}
+	}
+
+	// Deja de usar la réplica hasta la siguiente comprobación correcta
+	private void marcarNoDisponible(SQLException e) {
+		estado = new EstadoReplica(false, -1, Instant.now(), e.getMessage());
+	}
+}
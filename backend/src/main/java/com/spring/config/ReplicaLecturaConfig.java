@@ -0,0 +1,95 @@
+package com.spring.config;
+
+/**
+ * Configuración de la réplica de lectura de la base de datos.
+ *
+ * Solo se activa si se indica la URL de la réplica (spring.datasource.replica.url). Sin ella la aplicación
+ * usa una única base de datos, configurada como siempre con spring.datasource.*.
+ *
+ * Con réplica, el DataSource de la aplicación es un EnrutadorDataSource (envuelto en un LazyConnectionDataSourceProxy)
+ * que envía las transacciones de solo lectura de informes, exportaciones y listados a la réplica y el resto
+ * a la principal. Las dos bases de datos tienen su propio grupo de conexiones (Hikari).
+ *
+ * Propiedades (todas opcionales salvo la URL):
+ * 	spring.datasource.replica.url: URL JDBC de la réplica.
+ * 	spring.datasource.replica.username / password / driver-class-name: por defecto, los de la principal.
+ * 	spring.datasource.replica.maximo-conexiones: tamaño del grupo de conexiones de la réplica (por defecto 10).
+ * 	spring.datasource.replica.retraso-maximo-ms: retraso a partir del cual se deja de usar la réplica (por defecto 5000).
+ * 	spring.datasource.replica.margen-ms: tiempo tras una escritura durante el que se sigue leyendo de la principal,
+ * 		además del retraso medido (por defecto 1000).
+ * 	spring.datasource.replica.intervalo-ms: tiempo entre dos comprobaciones del retraso (por defecto 5000).
+ */
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+@Configuration
+@ConditionalOnProperty(name = "spring.datasource.replica.url")
+public class ReplicaLecturaConfig {
+
+	/**
+	 * Crea los grupos de conexiones de la principal y de la réplica y el enrutador entre ambos.
+	 * @param propiedades propiedades spring.datasource.* de la base de datos principal
+	 * @param url URL JDBC de la réplica
+	 * @param usuario usuario de la réplica (vacío para usar el de la principal)
+	 * @param contrasena contraseña de la réplica (vacía para usar la de la principal)
+	 * @param driver driver JDBC de la réplica (vacío para usar el de la principal)
+	 * @param maximoConexiones tamaño del grupo de conexiones de la réplica
+	 * @param retrasoMaximoMs retraso máximo permitido de la réplica
+	 * @param margenMs margen tras una escritura antes de volver a leer de la réplica
+	 * @param intervaloMs tiempo entre comprobaciones de la réplica
+	 * @return enrutador de conexiones
+	 */
+	// Al cerrar la aplicación se llama a su destroy() (DisposableBean), que cierra los dos grupos de conexiones
+	@Bean
+	public EnrutadorDataSource enrutadorDataSource(DataSourceProperties propiedades,
+			@Value("${spring.datasource.replica.url}") String url,
+			@Value("${spring.datasource.replica.username:}") String usuario,
+			@Value("${spring.datasource.replica.password:}") String contrasena,
+			@Value("${spring.datasource.replica.driver-class-name:}") String driver,
+			@Value("${spring.datasource.replica.maximo-conexiones:10}") int maximoConexiones,
+			@Value("${spring.datasource.replica.retraso-maximo-ms:5000}") long retrasoMaximoMs,
+			@Value("${spring.datasource.replica.margen-ms:1000}") long margenMs,
+			@Value("${spring.datasource.replica.intervalo-ms:5000}") long intervaloMs) {
+		HikariDataSource principal = propiedades.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		principal.setPoolName("principal");
+		HikariDataSource replica = DataSourceBuilder.create()
+				.type(HikariDataSource.class)
+				.url(url)
+				.username(usuario.isEmpty() ? propiedades.determineUsername() : usuario)
+				.password(contrasena.isEmpty() ? propiedades.determinePassword() : contrasena)
+				.driverClassName(driver.isEmpty() ? propiedades.determineDriverClassName() : driver)
+				.build();
+		replica.setPoolName("replica");
+		replica.setReadOnly(true);
+		replica.setMaximumPoolSize(maximoConexiones);
+		// Si la réplica no responde se pasa enseguida a la principal, sin esperar los 30 s por defecto
+		replica.setConnectionTimeout(2000);
+		return new EnrutadorDataSource(principal, replica, Duration.ofMillis(retrasoMaximoMs), Duration.ofMillis(margenMs),
+				Duration.ofMillis(intervaloMs));
+	}
+
+	/**
+	 * DataSource de la aplicación (JPA, repositorios...). La conexión real se pide en la primera sentencia,
+	 * cuando ya se sabe si la transacción es de solo lectura.
+	 * @param enrutador enrutador entre principal y réplica
+	 * @return DataSource principal de la aplicación
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(EnrutadorDataSource enrutador) {
+		return new LazyConnectionDataSourceProxy(enrutador);
+	}
+}
@@ -47,6 +47,7 @@ import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import com.lowagie.text.Document;
@@ -159,6 +160,8 @@ public class EntradaAceitunaController {
      */
     // Define el endpoint GET en /api/aceitunas
     @GetMapping
+    // Solo lectura: si hay réplica configurada, se lee de ella
+    @Transactional(readOnly = true)
     public List<EntradaAceituna> obtenerTodas() {
     	// Llama al repositorio para obtener todas las entradas de aceituna y las devuelve.
         return entradaRepo.findAll();
@@ -19,30 +19,43 @@ package com.spring.controller;
  * 	Exportación:
  *   	Generar y descargar una factura en formato PDF, con diseño básico y totales calculados.
  *
+ * 	Libro de IVA:
+ *   	Totales por mes y trimestre y por tipo de IVA para la declaración, mantenidos al emitir o eliminar facturas.
+ *   	Reconstrucción del libro y verificación contra las facturas.
+ *
  * 	Endpoints disponibles:
  *   	POST /api/facturas/desde-pedido/{id}: genera una factura a partir del pedido especificado.
  *   	GET /api/facturas: lista todas las facturas con contenido.
  *   	DELETE /api/facturas/{id}: elimina una factura por ID.
  *   	GET /api/facturas/{id}/pdf: genera y descarga un PDF con los detalles de una factura.
+ *   	GET /api/facturas/libro-iva?anio=2025&trimestre=1: resumen de IVA de un trimestre (sin trimestre, los cuatro del año).
+ *   	GET /api/facturas/libro-iva/verificar: compara el libro de IVA con las facturas.
+ *   	POST /api/facturas/libro-iva/reconstruir: vuelve a calcular el libro de IVA desde las facturas.
  *
  * 	Dependencias:
  * 		Usa los repositorios de Pedido, Factura y LineaFactura.
+ * 		Usa LibroIvaService para el libro de IVA.
  * 		Usa la librería iText (Lowagie) para la generación de archivos PDF.
  */
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import com.lowagie.text.Document;
 import com.lowagie.text.Element;
@@ -50,12 +63,16 @@ import com.lowagie.text.Font;
 import com.lowagie.text.Paragraph;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
+import com.spring.event.FacturaModificadaEvent;
 import com.spring.model.Factura;
 import com.spring.model.LineaFactura;
 import com.spring.model.Pedido;
 import com.spring.repository.FacturaRepository;
 import com.spring.repository.LineaFacturaRepository;
 import com.spring.repository.PedidoRepository;
+import com.spring.service.LibroIvaService;
+import com.spring.service.VersionesService;
+import com.spring.service.VersionesService.Agregado;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -78,6 +95,18 @@ public class FacturacionController {
     // Inyección automática del repositorio de líneas de factura. Permite guardar o consultar los detalles individuales de cada factura.
     @Autowired
     private LineaFacturaRepository lineaFacturaRepository;
+    
+    // Versiones de los datos, para responder 304 Not Modified cuando no hay cambios
+    @Autowired
+    private VersionesService versiones;
+    
+    // Publica los eventos de facturas creadas o eliminadas
+    @Autowired
+    private ApplicationEventPublisher eventos;
+    
+    // Libro de IVA por mes y tipo de IVA, que se actualiza con los eventos de facturas
+    @Autowired
+    private LibroIvaService libroIva;
 
     /**
      * Genera una factura a partir de un pedido existente
@@ -86,6 +115,8 @@ public class FacturacionController {
      */
     // Ruta: POST /api/facturas/desde-pedido/{id}
     @PostMapping("/desde-pedido/{id}")
+    // La factura, sus líneas y el libro de IVA se guardan en la misma transacción
+    @Transactional
     public ResponseEntity<Factura> generarFactura(@PathVariable Long id) {
     	// Busca el pedido por su ID; lanza excepción si no existe
         Pedido pedido = pedidoRepository.findById(id).orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
@@ -128,6 +159,8 @@ public class FacturacionController {
         lineaFacturaRepository.saveAll(lineas);
         // Asocia las líneas a la factura antes de devolverla
         guardada.setLineas(lineas);
+        // La versión de facturas se incrementa al confirmarse la transacción (VersionesService escucha el evento)
+        eventos.publishEvent(new FacturaModificadaEvent(guardada, FacturaModificadaEvent.Tipo.CREADA));
         // Devuelve la factura completa en la respuesta
         return ResponseEntity.ok(guardada);
     }
@@ -138,7 +171,13 @@ public class FacturacionController {
      */
     // Define el endpoint GET en /api/facturas
     @GetMapping
-    public List<Factura> listarFacturas() {
+    // Solo lectura: si hay réplica configurada, se lee de ella
+    @Transactional(readOnly = true)
+    public List<Factura> listarFacturas(WebRequest request) {
+    	// Si el navegador ya tiene la versión actual, responde 304 sin consultar
+    	if (request.checkNotModified(versiones.etag(Agregado.FACTURAS, Agregado.PEDIDOS))) {
+    		return null;
+    	}
     	// Obtiene todas las facturas de la base de datos, luego filtra aquellas que tienen líneas
         return facturaRepository.findAll().stream()
         	 // Excluye facturas sin líneas
@@ -154,13 +193,62 @@ public class FacturacionController {
      */
     // Define el endpoint DELETE en /api/facturas/{id}
     @DeleteMapping("/{id}")
+    // El borrado y la resta en el libro de IVA se hacen en la misma transacción
+    @Transactional
     public ResponseEntity<Void> eliminarFactura(@PathVariable Long id) {
     	// Elimina la factura con el ID proporcionado 
-        facturaRepository.deleteById(id);
+        facturaRepository.findById(id).ifPresent(factura -> {
+            facturaRepository.delete(factura);
+            eventos.publishEvent(new FacturaModificadaEvent(factura, FacturaModificadaEvent.Tipo.ELIMINADA));
+        });
         // Devuelve una respuesta 204 No Content
         return ResponseEntity.noContent().build();
     }
     
+    /**
+     * Devuelve el resumen de IVA de un trimestre (o de los cuatro trimestres del año), leído del libro de IVA:
+     * base imponible, cuota de IVA, envío y total de cada mes y del trimestre, por tipo de IVA y en conjunto.
+     * @param anio año de las facturas
+     * @param trimestre trimestre (1-4); si no se indica se devuelven los cuatro
+     * @return resumen del trimestre o lista con los cuatro, o 400 si el trimestre no es válido
+     */
+    @GetMapping("/libro-iva")
+    public ResponseEntity<?> libroIva(@RequestParam int anio, @RequestParam(required = false) Integer trimestre,
+    		WebRequest request) {
+    	// Si el navegador ya tiene la versión actual, responde 304 sin consultar
+    	if (request.checkNotModified(versiones.etag(Agregado.FACTURAS))) {
+    		return null;
+    	}
+    	ResponseEntity<?> respuesta;
+    	try {
+    		respuesta = ResponseEntity.ok(trimestre == null ? libroIva.trimestresDelAnio(anio) : libroIva.trimestre(anio, trimestre));
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	}
+        return respuesta;
+    }
+    
+    /**
+     * Compara el libro de IVA con lo que resulta de recorrer todas las facturas, sin modificar nada.
+     * @return resultado con las filas (mes y tipo de IVA) que no coinciden
+     */
+    @GetMapping("/libro-iva/verificar")
+    public LibroIvaService.Verificacion verificarLibroIva() {
+        return libroIva.verificar();
+    }
+    
+    /**
+     * Vacía y vuelve a calcular el libro de IVA a partir de todas las facturas.
+     * Sirve si la verificación encuentra diferencias (por ejemplo tras modificar facturas directamente en la base de datos).
+     * @return número de filas (mes y tipo de IVA) generadas
+     */
+    @PostMapping("/libro-iva/reconstruir")
+    public ResponseEntity<Map<String, Integer>> reconstruirLibroIva() {
+    	int filas = libroIva.reconstruir();
+    	versiones.incrementar(Agregado.FACTURAS);
+        return ResponseEntity.ok(Map.of("filas", filas));
+    }
+    
     /**
      * Genera un archivo PDF con los detalles de una factura específica y lo envía como descarga al cliente.
      * @param id ID de la factura que se desea exportar a PDF.
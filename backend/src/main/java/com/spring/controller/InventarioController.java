@@ -22,16 +22,23 @@ package com.spring.controller;
  *   	POST /api/inventario/entrada: registra una entrada manual de stock.
  *   	POST /api/inventario/salida: registra una salida manual de stock.
  *   	GET /api/inventario/movimientos: obtiene todos los movimientos registrados.
+ *   	GET /api/inventario/changes?since=N: obtiene los productos modificados o eliminados desde la versión N.
+ *   	GET /api/inventario/prevision?limite=5: previsión de demanda, punto de pedido y días de cobertura de cada producto.
+ *   	GET /api/inventario/prevision/{id}?limite=5: previsión de un producto.
+ *   	POST /api/inventario/prevision/reconstruir: vuelve a calcular la previsión desde todas las salidas.
  *
  * Utiliza los repositorios ProductoRepository y MovimientoStockRepository para acceder a la base de datos.
  */
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -39,13 +46,21 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.spring.dto.CambiosProductosDTO;
 import com.spring.dto.MovimientoStockDTO;
+import com.spring.event.ProductoModificadoEvent;
 import com.spring.model.MovimientoStock;
 import com.spring.model.Producto;
 import com.spring.repository.MovimientoStockRepository;
 import com.spring.repository.ProductoRepository;
+import com.spring.service.PrevisionDemandaService;
+import com.spring.service.SincronizacionProductosService;
+import com.spring.service.VersionesService;
+import com.spring.service.VersionesService.Agregado;
 
 @RestController
 @RequestMapping("/api/inventario")
@@ -62,16 +77,52 @@ public class InventarioController {
 	@Autowired
     private ProductoRepository productoRepository;
 	
+	// Publicador de eventos de Spring, para avisar de los cambios en productos
+	@Autowired
+	private ApplicationEventPublisher eventos;
+	
+	// Versiones de los datos, para responder 304 Not Modified cuando no hay cambios
+	@Autowired
+	private VersionesService versiones;
+	
+	// Sincronización incremental del inventario por versiones
+	@Autowired
+	private SincronizacionProductosService sincronizacion;
+	
+	// Previsión de demanda por producto, para el punto de pedido y los días de cobertura
+	@Autowired
+	private PrevisionDemandaService prevision;
+	
 	/**
 	 * Obtiene la lista completa de productos registrados en el inventario.
 	 * @return Lista de todos los productos disponibles.
 	 */
     @GetMapping
-    public List<Producto> getInventario() {
+    // Solo lectura: si hay réplica configurada, se lee de ella
+    @Transactional(readOnly = true)
+    public List<Producto> getInventario(WebRequest request) {
+    	// Si el navegador ya tiene la versión actual, responde 304 sin consultar
+    	if (request.checkNotModified(versiones.etag(Agregado.PRODUCTOS))) {
+    		return null;
+    	}
     	// Devuelve todos los productos registrados en la base de datos (inventario completo).
         return productoRepository.findAll();
     }
 
+    /**
+     * Devuelve los cambios del inventario desde una versión dada.
+     * @param since última versión conocida por el cliente (0 o ausente para recibir todo el inventario)
+     * @param request petición, para comprobar la cabecera If-None-Match
+     * @return productos modificados, IDs eliminados y la nueva versión a recordar
+     */
+    @GetMapping("/changes")
+    public CambiosProductosDTO getCambios(@RequestParam(defaultValue = "0") long since, WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PRODUCTOS))) {
+    		return null;
+    	}
+    	return sincronizacion.obtenerCambios(since);
+    }
+
     /**
      * Actualiza los datos de un producto, y si hay un aumento de stock,
      * registra el movimiento como una entrada manual.
@@ -104,6 +155,7 @@ public class InventarioController {
                 entrada.setFecha(new Date());
                 // Guarda el movimiento en la base de datos
                 movimientoRepository.save(entrada);
+                versiones.incrementar(Agregado.MOVIMIENTOS);
             }
 
             // Actualiza los datos del producto
@@ -115,6 +167,7 @@ public class InventarioController {
             existente.setFechaActualizacionStock(productoActualizado.getFechaActualizacionStock());
             // Guarda los cambios del producto
             productoRepository.save(existente);
+            eventos.publishEvent(new ProductoModificadoEvent(id, ProductoModificadoEvent.Tipo.ACTUALIZADO));
             // Devuelve el producto actualizado con HTTP 200 OK
             respuesta = ResponseEntity.ok(existente);
         }
@@ -143,6 +196,7 @@ public class InventarioController {
             producto.setStock(producto.getStock() + movimiento.getCantidad());
             // Guarda los cambios del producto actualizado
             productoRepository.save(producto);
+            eventos.publishEvent(new ProductoModificadoEvent(producto.getId(), ProductoModificadoEvent.Tipo.ACTUALIZADO));
             // Registra el movimiento de entrada en la tabla de movimientos
             MovimientoStock registro = new MovimientoStock();
             // Producto afectado
@@ -155,6 +209,7 @@ public class InventarioController {
             registro.setFecha(new Date());
             // Guarda el movimiento
             movimientoRepository.save(registro);
+            versiones.incrementar(Agregado.MOVIMIENTOS);
 
             respuesta = ResponseEntity.ok("Entrada registrada correctamente");
         }
@@ -187,6 +242,7 @@ public class InventarioController {
                 producto.setStock(producto.getStock() - movimiento.getCantidad());
                 // Guarda el nuevo estado del producto
                 productoRepository.save(producto);
+                eventos.publishEvent(new ProductoModificadoEvent(producto.getId(), ProductoModificadoEvent.Tipo.ACTUALIZADO));
 
                 MovimientoStock registro = new MovimientoStock();
                 registro.setProducto(producto);
@@ -194,6 +250,7 @@ public class InventarioController {
                 registro.setTipo("SALIDA");
                 registro.setFecha(new Date());
                 movimientoRepository.save(registro);
+                versiones.incrementar(Agregado.MOVIMIENTOS);
 
                 respuesta = ResponseEntity.ok("Salida registrada correctamente");
             }
@@ -208,8 +265,46 @@ public class InventarioController {
      */
     // Define el endpoint GET en /api/inventario/movimientos
     @GetMapping("/movimientos")
-    public List<MovimientoStock> getMovimientos() {
+    public List<MovimientoStock> getMovimientos(WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.MOVIMIENTOS, Agregado.PRODUCTOS))) {
+    		return null;
+    	}
     	// Llama al repositorio para obtener todos los movimientos, ordenados por fecha descendente
         return movimientoRepository.findAllByOrderByFechaDesc();
     }
+
+    /**
+     * Devuelve la previsión de demanda de todos los productos: unidades por día, punto de pedido,
+     * días de cobertura y cantidad sugerida a pedir.
+     * @param limite stock con el que se repone un producto que aún no tiene histórico suficiente. Por defecto es 5.
+     * @return previsiones, primero las de los productos que hay que reponer y después por días de cobertura.
+     */
+    @GetMapping("/prevision")
+    public List<PrevisionDemandaService.Prevision> getPrevisiones(@RequestParam(defaultValue = "5") int limite) {
+    	return prevision.previsiones(limite);
+    }
+
+    /**
+     * Devuelve la previsión de demanda de un producto.
+     * @param id ID del producto.
+     * @param limite stock con el que se repone el producto si aún no tiene histórico suficiente. Por defecto es 5.
+     * @return ResponseEntity con la previsión, o 404 si el producto no existe.
+     */
+    @GetMapping("/prevision/{id}")
+    public ResponseEntity<PrevisionDemandaService.Prevision> getPrevision(@PathVariable Long id,
+    		@RequestParam(defaultValue = "5") int limite) {
+    	return prevision.prevision(id, limite)
+    			.map(ResponseEntity::ok)
+    			.orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Vuelve a calcular la previsión de demanda recorriendo todas las salidas de stock
+     * (por ejemplo, después de cambiar el factor de suavizado).
+     * @return número de productos con salidas.
+     */
+    @PostMapping("/prevision/reconstruir")
+    public Map<String, Integer> reconstruirPrevision() {
+    	return Map.of("productos", prevision.reconstruir());
+    }
 }
@@ -0,0 +1,62 @@
+package com.spring.controller;
+
+/**
+ * Controlador del panel de reportes: devuelve en una sola petición todos los datos que el panel carga al abrirse.
+ *
+ * Ruta base: /api/dashboard
+ *
+ * 	GET /api/dashboard: ventas de hoy (total, por hora y productos), ventas por mes, productos vendidos este mes,
+ * 	productos con bajo stock, años con resumen anual guardado y años con archivo de movimientos.
+ * 	GET /api/dashboard?partes=ventasDelDia,bajoStock: solo las partes indicadas.
+ *
+ * Las partes se calculan a la vez y cada una tiene su tiempo máximo (ver PanelService). Si alguna falla
+ * o tarda demasiado, la respuesta sigue siendo 200 con esa parte marcada y "completo": false.
+ */
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.spring.service.PanelService;
+
+@RestController
+@RequestMapping("/api/dashboard")
+//Permite solicitudes CORS desde cualquier origen
+@CrossOrigin(origins = "http://localhost:4200")
+public class PanelController {
+
+	// Cálculo en paralelo de las partes del panel
+	@Autowired
+	private PanelService panelService;
+
+	/**
+	 * Devuelve las partes pedidas del panel (todas si no se indica ninguna).
+	 * @param partes nombres de las partes separados por comas (opcional)
+	 * @return panel con el resultado de cada parte, o 400 si alguna parte no existe
+	 */
+	@GetMapping
+	public ResponseEntity<?> obtenerPanel(@RequestParam(required = false) List<String> partes) {
+		ResponseEntity<?> respuesta;
+		try {
+			Set<PanelService.Parte> pedidas = EnumSet.noneOf(PanelService.Parte.class);
+			if (partes != null) {
+				for (String nombre : partes) {
+					pedidas.add(PanelService.Parte.de(nombre));
+				}
+			}
+			respuesta = ResponseEntity.ok(panelService.panel(pedidas));
+		} catch (IllegalArgumentException e) {
+			respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+		}
+		return respuesta;
+	}
+}
@@ -13,6 +13,10 @@ package com.spring.controller;
  *   	Obtener, actualizar o eliminar un producto por ID.
  *   	Obtener la imagen de un producto.
  *   	Actualizar productos desde Angular mediante un objeto completo (JSON).
+ *   	Obtener sólo los productos modificados o eliminados desde una versión (sincronización incremental).
+ *   	Buscar productos por texto en nombre, descripción y categoría, con facetas por categoría y visibilidad.
+ *   	Importar productos desde un archivo CSV o JSON y actualizar muchos productos a la vez con un filtro.
+ *   	Obtener los productos que más se compran junto con uno (índice en memoria de ProductosRelacionadosService).
  *
  * 	Pedidos:
  *   	Marcar un pedido como enviado.
@@ -21,6 +25,8 @@ package com.spring.controller;
  * permitiendo visualizarlas directamente o guardarlas en disco local.
  *
  * Utiliza los repositorios ProductoRepository y PedidoRepository para acceder a los datos persistidos.
+ * El catálogo visible se sirve desde CatalogoCacheService, y cada escritura sobre un producto
+ * publica un ProductoModificadoEvent para que se reconstruya.
  */
 
 import java.io.IOException;
@@ -29,13 +35,16 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -44,14 +53,29 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.spring.dto.ActualizacionMasivaDTO;
+import com.spring.dto.CambiosProductosDTO;
+import com.spring.dto.ResultadoBusquedaDTO;
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.event.ProductoModificadoEvent;
 import com.spring.model.Pedido;
 import com.spring.model.Producto;
 import com.spring.repository.PedidoRepository;
 import com.spring.repository.ProductoRepository;
+import com.spring.service.BusquedaProductosService;
+import com.spring.service.CatalogoCacheService;
+import com.spring.service.ImportacionProductosService;
+import com.spring.service.IndiceCoocurrencias;
+import com.spring.service.ProductosRelacionadosService;
+import com.spring.service.SincronizacionProductosService;
+import com.spring.service.VersionesService;
+import com.spring.service.VersionesService.Agregado;
 
 @RestController
 @RequestMapping("/api/productos")
@@ -66,6 +90,34 @@ public class ProductoController {
 	@Autowired
     private ProductoRepository productoRepository;
 	
+	// Caché del catálogo visible ya serializado en JSON
+	@Autowired
+	private CatalogoCacheService catalogoCache;
+	
+	// Publicador de eventos de Spring, para avisar de los cambios en productos
+	@Autowired
+	private ApplicationEventPublisher eventos;
+	
+	// Versiones de los datos, para responder 304 Not Modified cuando no hay cambios
+	@Autowired
+	private VersionesService versiones;
+	
+	// Sincronización incremental del catálogo por versiones
+	@Autowired
+	private SincronizacionProductosService sincronizacion;
+	
+	// Motor de búsqueda en memoria sobre el catálogo
+	@Autowired
+	private BusquedaProductosService busqueda;
+	
+	// Importación y actualización masiva de productos
+	@Autowired
+	private ImportacionProductosService importacion;
+	
+	// Índice de productos comprados juntos
+	@Autowired
+	private ProductosRelacionadosService relacionados;
+	
 	// Ruta local donde se guardarán las imágenes subidas
 	private static final String UPLOAD_DIR = "uploads/";
 	
@@ -74,19 +126,146 @@ public class ProductoController {
 	 * @return Lista de todos los productos.
 	 */
 	@GetMapping
-    public List<Producto> listarProductos() {
+	// Solo lectura: si hay réplica configurada, se lee de ella
+	@Transactional(readOnly = true)
+    public List<Producto> listarProductos(WebRequest request) {
+		// Si el navegador ya tiene la versión actual, responde 304 sin consultar
+		if (request.checkNotModified(versiones.etag(Agregado.PRODUCTOS))) {
+			return null;
+		}
 		// Recupera todos los productos
         return productoRepository.findAll();
     }
 	
 	/**
 	 * Devuelve sólo los productos que están marcados como visibles.
-	 * @return Lista de productos visibles.
+	 * El JSON se sirve desde la caché del catálogo, comprimido con GZIP si el navegador lo acepta.
+	 * @param acceptEncoding cabecera Accept-Encoding de la petición
+	 * @param request petición, para comprobar la cabecera If-None-Match
+	 * @return JSON con la lista de productos visibles, o 304 si el navegador ya tiene esta versión.
 	 */
 	@GetMapping("/visibles")
-	public List<Producto> obtenerProductosVisibles() {
-		// Recupera productos donde el campo "visible" es true
-	    return productoRepository.findByVisibleTrue();
+	public ResponseEntity<byte[]> obtenerProductosVisibles(
+			@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+			WebRequest request) {
+		// Recupera la instantánea del catálogo ya serializada
+		CatalogoCacheService.Instantanea catalogo = catalogoCache.obtener();
+		// El ETag usa la versión de la propia instantánea, que es la que se va a enviar
+		if (request.checkNotModified(versiones.etag("catalogo", catalogo.version()))) {
+			return null;
+		}
+		// Indica si el cliente acepta respuestas comprimidas
+		boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.set("X-Catalogo-Version", String.valueOf(catalogo.version()));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (gzip) {
+			headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+	    return new ResponseEntity<>(gzip ? catalogo.gzip() : catalogo.json(), headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Devuelve los cambios del catálogo desde una versión dada, para que el cliente actualice su copia local.
+	 * @param since última versión conocida por el cliente (0 o ausente para recibir todo el catálogo)
+	 * @param request petición, para comprobar la cabecera If-None-Match
+	 * @return productos modificados, IDs eliminados y la nueva versión a recordar
+	 */
+	@GetMapping("/changes")
+	public CambiosProductosDTO obtenerCambios(@RequestParam(defaultValue = "0") long since, WebRequest request) {
+		if (request.checkNotModified(versiones.etag(Agregado.PRODUCTOS))) {
+			return null;
+		}
+		return sincronizacion.obtenerCambios(since);
+	}
+
+	/**
+	 * Busca productos por texto en el nombre, la descripción y la categoría.
+	 * La búsqueda no distingue tildes ni mayúsculas y cada palabra se trata como prefijo.
+	 * @param q texto a buscar (opcional)
+	 * @param categoria filtra por categoría (opcional)
+	 * @param visible filtra por visibilidad (opcional)
+	 * @param limite número máximo de productos a devolver, 20 por defecto
+	 * @return productos encontrados, total de coincidencias y facetas por categoría y visibilidad
+	 */
+	@GetMapping("/buscar")
+	public ResultadoBusquedaDTO buscarProductos(
+			@RequestParam(required = false) String q,
+			@RequestParam(required = false) String categoria,
+			@RequestParam(required = false) Boolean visible,
+			@RequestParam(defaultValue = "20") int limite) {
+		return busqueda.buscar(q, categoria, visible, limite);
+	}
+
+	/**
+	 * Devuelve los productos que más se compran junto con uno, para mostrar "también se compra con" en la tienda.
+	 * @param id ID del producto
+	 * @param limite número máximo de productos a devolver, 5 por defecto (como mucho 50)
+	 * @return productos relacionados con sus pedidos en común, confianza y lift (vacía si no tiene pedidos),
+	 *         o 400 si el límite no es válido
+	 */
+	@GetMapping("/{id}/relacionados")
+	public ResponseEntity<?> obtenerRelacionados(@PathVariable Long id, @RequestParam(defaultValue = "5") int limite) {
+		ResponseEntity<?> respuesta;
+		try {
+			respuesta = ResponseEntity.ok(relacionados.relacionados(id, limite));
+		} catch (IllegalArgumentException e) {
+			respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+		}
+		return respuesta;
+	}
+
+	/**
+	 * Devuelve el tamaño del índice de productos comprados juntos.
+	 * @return productos, parejas, pedidos indexados y memoria aproximada
+	 */
+	@GetMapping("/relacionados/estadisticas")
+	public IndiceCoocurrencias.Estadisticas obtenerEstadisticasRelacionados() {
+		return relacionados.estadisticas();
+	}
+
+	/**
+	 * Vuelve a construir el índice de productos comprados juntos desde todos los pedidos guardados.
+	 * @return número de pedidos leídos
+	 */
+	@PostMapping("/relacionados/reconstruir")
+	public ResponseEntity<Map<String, Integer>> reconstruirRelacionados() {
+		return ResponseEntity.ok(Map.of("pedidos", relacionados.reconstruir()));
+	}
+
+	/**
+	 * Importa productos desde un archivo CSV (con cabecera) o JSON (array de productos).
+	 * Las filas no válidas se saltan y se devuelven en la lista de errores.
+	 * @param archivo archivo con los productos
+	 * @return número de productos importados y errores por línea, o 400 si el archivo no se puede leer
+	 */
+	@PostMapping("/importar")
+	public ResponseEntity<?> importarProductos(@RequestParam("archivo") MultipartFile archivo) {
+		ResponseEntity<?> respuesta;
+		try {
+			respuesta = ResponseEntity.ok(importacion.importar(archivo));
+		} catch (IOException e) {
+			respuesta = ResponseEntity.badRequest().body(Map.of("error", "Archivo no válido: " + e.getMessage()));
+		}
+		return respuesta;
+	}
+
+	/**
+	 * Aplica los mismos cambios a todos los productos que cumplen un filtro, con una sola sentencia.
+	 * @param actualizacion filtro de productos y cambios a aplicar
+	 * @return número de productos actualizados, o 400 si no se indica ningún cambio
+	 */
+	@PutMapping("/masivo")
+	public ResponseEntity<?> actualizarMasivo(@RequestBody ActualizacionMasivaDTO actualizacion) {
+		ResponseEntity<?> respuesta;
+		try {
+			respuesta = ResponseEntity.ok(Map.of("actualizados", importacion.actualizarMasivo(actualizacion)));
+		} catch (IllegalArgumentException e) {
+			respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+		}
+		return respuesta;
 	}
 
 	/**
@@ -130,6 +309,7 @@ public class ProductoController {
         }
 
         productoRepository.save(producto);
+        eventos.publishEvent(new ProductoModificadoEvent(producto.getId(), ProductoModificadoEvent.Tipo.CREADO));
         return ResponseEntity.ok("Producto creado correctamente");
     }
     
@@ -139,6 +319,8 @@ public class ProductoController {
      * @return Respuesta HTTP 200 OK si se elimina, 404 si no se encuentra
      */
     @DeleteMapping("/{id}")
+    // El borrado y su marca de borrado para la sincronización se guardan en la misma transacción
+    @Transactional
     // Obtiene el ID de la URL
     public ResponseEntity<?> eliminarProducto(@PathVariable Long id) {
         ResponseEntity<?> respuesta;
@@ -147,6 +329,7 @@ public class ProductoController {
             respuesta = ResponseEntity.notFound().build();
         } else {
             productoRepository.deleteById(id);
+            eventos.publishEvent(new ProductoModificadoEvent(id, ProductoModificadoEvent.Tipo.ELIMINADO));
             respuesta = ResponseEntity.ok().build();
         }
 
@@ -257,6 +440,7 @@ public class ProductoController {
             }
             // Guarda el producto actualizado en la base de datos
             productoRepository.save(producto);
+            eventos.publishEvent(new ProductoModificadoEvent(id, ProductoModificadoEvent.Tipo.ACTUALIZADO));
             respuesta = ResponseEntity.ok(producto);
         }
 
@@ -280,6 +464,7 @@ public class ProductoController {
             Pedido pedido = pedidoOpt.get();
             pedido.setEnviado(true); 
             pedidoRepo.save(pedido);
+            eventos.publishEvent(new PedidoModificadoEvent(pedido, PedidoModificadoEvent.Tipo.ENVIADO));
             respuesta = ResponseEntity.ok("Pedido marcado como enviado");
         }
 
@@ -313,6 +498,7 @@ public class ProductoController {
             existente.setStock(productoActualizado.getStock());
             // Se guarda el producto actualizado
             productoRepository.save(existente);
+            eventos.publishEvent(new ProductoModificadoEvent(id, ProductoModificadoEvent.Tipo.ACTUALIZADO));
             // Se devuelve el producto actualizado
             respuesta = ResponseEntity.ok(existente);
         }
@@ -7,6 +7,11 @@ package com.spring.controller;
  *
  * 	Consultar información de ventas:
  *   	Por día, mes y año.
+ *   	Por cualquier rango de fechas, agrupadas por día, semana, mes, trimestre o año, con filtros por producto y categoría.
+ *   	Las series para gráficas (por día, por mes y por rango) se pueden reducir a un número fijo de puntos.
+ *   	Rentabilidad (ingresos, coste y margen) por producto, categoría o periodo.
+ *   	Análisis agrupados por una o dos dimensiones (producto, categoría, día, semana, mes, trimestre o año).
+ *   	Clientes distintos estimados por periodo, y su comparación con el recuento exacto.
  *   	Detalle de productos vendidos por día, mes o año.
  *   	Productos con bajo stock.
  *
@@ -14,55 +19,95 @@ package com.spring.controller;
  *   	Resumen de ventas por día, mes y año.
  *   	Listado de productos con bajo stock.
  *
+ * 	Generar reportes PDF en segundo plano (trabajos de reportes):
+ *   	Encolar un reporte, consultar su estado (esperando unos segundos si se desea) y descargarlo al terminar.
+ *
  * 	Gestionar resúmenes anuales:
- *   	Guardar resúmenes anuales en formato JSON.
- *   	Obtener un resumen anual previamente guardado.
+ *   	Calcular y guardar el resumen anual de un año a partir de las ventas.
+ *   	Obtener o borrar un resumen anual previamente guardado.
  *   	Listar los años disponibles con resumen registrado.
  *
- * Utiliza datos proporcionados por los repositorios PedidoRepository y ProductoRepository,
- * además de bibliotecas como iText (Lowagie) para la creación de documentos PDF y Jackson para manejo de JSON.
+ * 	Mantenimiento:
+ *   	Reconstruir el cubo de ventas a partir de los pedidos guardados.
+ *   	Consultar los cierres de los meses y años terminados y cerrar los periodos pendientes.
+ *   	Consultar los aciertos y fallos de la caché de informes.
+ *   	Consultar cuántas peticiones han compartido un cálculo en curso.
+ *
+ * Las ventas por día, mes y año y el detalle de productos vendidos se leen del cubo de ventas
+ * por día y producto (CuboVentasService), que se actualiza al crear o eliminar pedidos.
+ * Los meses y años ya terminados se leen de sus cierres (CierresService), calculados una sola vez al terminar el periodo.
+ * Las ventas de hoy (total enviado, ventas por hora y productos vendidos) se leen de los contadores
+ * en memoria de VentasDelDiaService.
+ *
+ * Los resultados de los informes en JSON se guardan en InformesCacheService, que los descarta cuando
+ * llega un pedido o un cambio de stock que los afecta; las cargas repetidas del panel no consultan la base de datos.
+ * Las peticiones idénticas que llegan a la vez (varios terminales abriendo el panel) comparten un único cálculo
+ * mediante CalculosCompartidosService: los informes de la caché, los informes por rango y la carga de datos de los PDF.
+ *
+ * Los endpoints de consulta en JSON admiten peticiones condicionales (If-None-Match): el ETag se
+ * calcula con VersionesService y, si los datos no han cambiado, se responde 304 sin ejecutar la consulta.
+ *
+ * Utiliza datos proporcionados por el repositorio ProductoRepository,
+ * de los servicios InformesPdfService y PdfService para la creación de documentos PDF
+ * y de ResumenesAnualesService para guardar los resúmenes anuales.
  */
 
-import java.util.ArrayList;
-
-import java.util.Comparator;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.lowagie.text.*;
-import com.lowagie.text.pdf.*;
-
-
-
-
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.time.LocalDate;
-import java.time.format.TextStyle;
+import java.time.Year;
+import java.time.YearMonth;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.spring.dto.ProductoVentaDetalle;
 import com.spring.dto.ResumenAnualDTO;
 import com.spring.dto.VentaPorFecha;
-import com.spring.model.Pedido;
+import com.spring.model.CierrePeriodo;
 import com.spring.model.Producto;
-import com.spring.repository.PedidoRepository;
 import com.spring.repository.ProductoRepository;
+import com.spring.service.AnaliticaVentasService;
+import com.spring.service.CalculosCompartidosService;
+import com.spring.service.CierresService;
+import com.spring.service.ClientesUnicosService;
+import com.spring.service.CuboVentasService;
+import com.spring.service.HechosVentasService;
+import com.spring.service.InformesCacheService;
+import com.spring.service.InformesCacheService.Informe;
+import com.spring.service.InformesPdfService;
+import com.spring.service.PdfService;
+import com.spring.service.PrevisionDemandaService;
+import com.spring.service.ReduccionSeries;
+import com.spring.service.RentabilidadService;
+import com.spring.service.ResumenesAnualesService;
+import com.spring.service.TrabajosInformesService;
+import com.spring.service.VentasDelDiaService;
+import com.spring.service.VersionesService;
+import com.spring.service.VersionesService.Agregado;
 
 
 
@@ -71,33 +116,116 @@ import com.spring.repository.ProductoRepository;
 @CrossOrigin(origins = "http://localhost:4200")
 public class ReporteController {
 
-	// Inyecta automáticamente una instancia del repositorio de pedidos
+	// Inyecta automáticamente una instancia del repositorio de productos
 	@Autowired
-    private PedidoRepository pedidoRepository;
+	private ProductoRepository productoRepository;
 	
-	// Ruta donde se guardarán los archivos resumen anuales en formato JSON
-	private static final String RUTA_ARCHIVOS_JSON = "archivos-anuales";
+	// Versiones de los datos, para responder 304 Not Modified cuando no hay cambios
+	@Autowired
+	private VersionesService versiones;
 	
-	// Inyecta automáticamente una instancia del repositorio de productos
+	// Cubo de ventas por día y producto, del que se leen los informes de ventas
 	@Autowired
-	private ProductoRepository productoRepository;
+	private CuboVentasService cuboVentas;
+	
+	// Cierres de los meses y años terminados, de los que se leen los informes de periodos pasados
+	@Autowired
+	private CierresService cierres;
+	
+	// Informes de ventas por rango de fechas y granularidad
+	@Autowired
+	private AnaliticaVentasService analiticaVentas;
+	
+	// Informes de ingresos, coste y margen
+	@Autowired
+	private RentabilidadService rentabilidad;
+	
+	// Almacén en memoria de las líneas de pedido por columnas, para los análisis agrupados
+	@Autowired
+	private HechosVentasService hechosVentas;
+	
+	// Contadores de clientes distintos por día
+	@Autowired
+	private ClientesUnicosService clientesUnicos;
+	
+	// Cálculos compartidos entre peticiones idénticas simultáneas
+	@Autowired
+	private CalculosCompartidosService calculosCompartidos;
+	
+	// Caché de resultados de los informes
+	@Autowired
+	private InformesCacheService cacheInformes;
+	
+	// Generación de PDF directamente sobre la respuesta
+	@Autowired
+	private PdfService pdfService;
+	
+	// Contadores en memoria de las ventas del día actual
+	@Autowired
+	private VentasDelDiaService ventasDelDia;
+	
+	// Carga de datos y dibujo de los reportes PDF
+	@Autowired
+	private InformesPdfService informesPdf;
+	
+	// Resúmenes anuales guardados, con su índice en memoria
+	@Autowired
+	private ResumenesAnualesService resumenesAnuales;
+	
+	// Trabajos de reportes en segundo plano
+	@Autowired
+	private TrabajosInformesService trabajosInformes;
+	
+	// Previsión de demanda por producto, para el bajo stock con punto de pedido dinámico
+	@Autowired
+	private PrevisionDemandaService prevision;
 
 	/**
 	 * Devuelve la lista de ventas agrupadas por fecha (día).
-	 * @return Lista de objetos VentaPorFecha con totales por cada día.
+	 * Para las gráficas se puede pedir un número de puntos: la serie se reduce a ese tamaño
+	 * (ver ReduccionSeries), así que la respuesta no crece con los años de histórico.
+	 * @param puntos número máximo de puntos de la serie (opcional; sin él se devuelven todos los días)
+	 * @param metodo lttb o minmax (por defecto lttb)
+	 * @return Lista de objetos VentaPorFecha con totales por cada día, o 400 si los parámetros no son válidos.
 	 */
     @GetMapping("/ventas-por-fecha")
-    public List<VentaPorFecha> obtenerVentasPorFecha() {
-        return pedidoRepository.obtenerVentasPorFecha();
+    public ResponseEntity<?> obtenerVentasPorFecha(@RequestParam(required = false) Integer puntos,
+    		@RequestParam(defaultValue = "lttb") String metodo, WebRequest request) {
+    	// Si el navegador ya tiene la versión actual, responde 304 sin consultar
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+    	ResponseEntity<?> respuesta;
+    	try {
+    		// La caché guarda la serie completa; la reducción se hace sobre ella en cada petición
+    		respuesta = ResponseEntity.ok(reducirSerie(
+    				cacheInformes.obtener(Informe.VENTAS_POR_FECHA, "", null, null, cuboVentas::ventasPorDia), puntos, metodo));
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	}
+        return respuesta;
     }
     
     /**
      * Devuelve la lista de ventas agrupadas por mes (de todos los años).
-     * @return Lista de objetos VentaPorFecha con totales por mes.
+     * @param puntos número máximo de puntos de la serie (opcional; sin él se devuelven todos los meses)
+     * @param metodo lttb o minmax (por defecto lttb)
+     * @return Lista de objetos VentaPorFecha con totales por mes, o 400 si los parámetros no son válidos.
      */
     @GetMapping("/ventas-por-mes")
-    public List<VentaPorFecha> obtenerVentasPorMes() {
-        return pedidoRepository.obtenerVentasPorMes();
+    public ResponseEntity<?> obtenerVentasPorMes(@RequestParam(required = false) Integer puntos,
+    		@RequestParam(defaultValue = "lttb") String metodo, WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+    	ResponseEntity<?> respuesta;
+    	try {
+    		respuesta = ResponseEntity.ok(reducirSerie(
+    				cacheInformes.obtener(Informe.VENTAS_POR_MES, "", null, null, cierres::ventasPorMes), puntos, metodo));
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	}
+        return respuesta;
     }
 
     /**
@@ -106,8 +234,184 @@ public class ReporteController {
      * @return Lista de objetos VentaPorFecha con totales por mes de ese año.
      */
     @GetMapping("/ventas-por-anio")
-    public List<VentaPorFecha> obtenerVentasPorAnio(@RequestParam int anio) {
-        return pedidoRepository.obtenerVentasPorMesDelAnio(anio);
+    public List<VentaPorFecha> obtenerVentasPorAnio(@RequestParam int anio, WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+    	// Un año fuera del rango de LocalDate no tiene ventas: se responde con la lista vacía, como la consulta original
+    	if (anio < Year.MIN_VALUE || anio > Year.MAX_VALUE) {
+    		return List.of();
+    	}
+        return cacheInformes.obtener(Informe.VENTAS_POR_ANIO, String.valueOf(anio),
+        		LocalDate.of(anio, 1, 1), LocalDate.of(anio, 12, 31), () -> cierres.ventasPorMesDelAnio(anio));
+    }
+    
+    /**
+     * Devuelve las ventas de un rango de fechas agrupadas por día, semana, mes, trimestre o año,
+     * filtrando opcionalmente por producto y por categoría. Se calcula con una sola consulta por rango
+     * sobre el cubo de ventas (AnaliticaVentasService).
+     * @param desde primer día del rango (AAAA-MM-DD)
+     * @param hasta último día del rango (AAAA-MM-DD)
+     * @param granularidad dia, semana, mes, trimestre o anio (por defecto dia)
+     * @param productoId producto por el que filtrar (opcional)
+     * @param categoria categoría de producto por la que filtrar (opcional)
+     * @param puntos número máximo de tramos para una gráfica (opcional; sin él se devuelven todos)
+     * @param metodo lttb o minmax, para reducir los tramos por importe (por defecto lttb)
+     * @return lista de tramos con su importe y unidades, o 400 si los parámetros no son válidos
+     */
+    @GetMapping("/ventas")
+    public ResponseEntity<?> obtenerVentasPorRango(
+    		@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+    		@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+    		@RequestParam(defaultValue = "dia") String granularidad,
+    		@RequestParam(required = false) Long productoId,
+    		@RequestParam(required = false) String categoria,
+    		@RequestParam(required = false) Integer puntos,
+    		@RequestParam(defaultValue = "lttb") String metodo,
+    		WebRequest request) {
+    	String categoriaFiltro = categoria != null && !categoria.isBlank() ? categoria.trim() : null;
+    	// La categoría se toma de los productos, así que con ese filtro el ETag depende también de ellos
+    	String etag = categoriaFiltro != null
+    			? versiones.etag(Agregado.PEDIDOS, Agregado.PRODUCTOS)
+    			: versiones.etag(Agregado.PEDIDOS);
+    	if (request.checkNotModified(etag)) {
+    		return null;
+    	}
+    	ResponseEntity<?> respuesta;
+    	try {
+    		AnaliticaVentasService.Granularidad gran = AnaliticaVentasService.Granularidad.de(granularidad);
+    		// Las peticiones iguales que lleguen mientras se calcula reciben el mismo resultado. El ETag va en la clave:
+    		// una petición posterior a un cambio no se une a un cálculo empezado antes, cuyo resultado no corresponde a su ETag
+    		ReduccionSeries.Metodo reduccion = ReduccionSeries.Metodo.de(metodo);
+    		List<AnaliticaVentasService.Tramo> tramos = calculosCompartidos.compartir("ventas",
+    				parametros(etag, desde, hasta, gran, productoId, categoriaFiltro),
+    				() -> analiticaVentas.ventas(desde, hasta, gran, productoId, categoriaFiltro));
+    		if (puntos != null) {
+    			tramos = ReduccionSeries.reducir(tramos, puntos, reduccion, t -> t.desde().toEpochDay(), t -> t.importe());
+    		}
+    		respuesta = ResponseEntity.ok(tramos);
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	}
+        return respuesta;
+    }
+    
+    /**
+     * Devuelve los ingresos, el coste y el margen de las ventas de un rango de fechas, agrupados por producto,
+     * por categoría o por periodo. El coste usa el precio de compra guardado en cada línea al hacer el pedido.
+     * @param desde primer día del rango (AAAA-MM-DD)
+     * @param hasta último día del rango (AAAA-MM-DD)
+     * @param agrupacion producto, categoria o periodo (por defecto producto)
+     * @param granularidad dia, semana, mes, trimestre o anio, al agrupar por periodo (por defecto mes)
+     * @return lista con la rentabilidad de cada grupo, o 400 si los parámetros no son válidos
+     */
+    @GetMapping("/rentabilidad")
+    public ResponseEntity<?> obtenerRentabilidad(
+    		@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+    		@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+    		@RequestParam(defaultValue = "producto") String agrupacion,
+    		@RequestParam(defaultValue = "mes") String granularidad,
+    		WebRequest request) {
+    	// Las categorías se toman de los productos actuales
+    	String etag = versiones.etag(Agregado.PEDIDOS, Agregado.PRODUCTOS);
+    	if (request.checkNotModified(etag)) {
+    		return null;
+    	}
+    	ResponseEntity<?> respuesta;
+    	try {
+    		RentabilidadService.Agrupacion agrup = RentabilidadService.Agrupacion.de(agrupacion);
+    		AnaliticaVentasService.Granularidad gran = AnaliticaVentasService.Granularidad.de(granularidad);
+    		respuesta = ResponseEntity.ok(calculosCompartidos.compartir("rentabilidad", parametros(etag, desde, hasta, agrup, gran),
+    				() -> rentabilidad.rentabilidad(desde, hasta, agrup, gran)));
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	}
+        return respuesta;
+    }
+    
+    /**
+     * Agrupa las líneas de pedido por una o dos dimensiones (por ejemplo producto y semana, o categoría y mes)
+     * y devuelve las líneas, unidades e importe de cada grupo. Se calcula en memoria sobre el almacén
+     * de ventas por columnas (HechosVentasService), sin consultar la base de datos.
+     * @param por dimensiones separadas por comas: producto, categoria, dia, semana, mes, trimestre o anio
+     * @param desde primer día (opcional)
+     * @param hasta último día (opcional)
+     * @param producto nombres de producto por los que filtrar (opcional, se puede repetir)
+     * @param categoria categorías por las que filtrar (opcional, se puede repetir)
+     * @return grupos con ventas, o 400 si los parámetros no son válidos
+     */
+    @GetMapping("/analitica")
+    public ResponseEntity<?> obtenerAnalitica(@RequestParam String por,
+    		@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+    		@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+    		@RequestParam(required = false) List<String> producto,
+    		@RequestParam(required = false) List<String> categoria,
+    		WebRequest request) {
+    	String etag = versiones.etag(Agregado.PEDIDOS);
+    	if (request.checkNotModified(etag)) {
+    		return null;
+    	}
+    	ResponseEntity<?> respuesta;
+    	try {
+    		List<HechosVentasService.Dimension> dimensiones = Arrays.stream(por.split(","))
+    				.map(HechosVentasService.Dimension::de)
+    				.toList();
+    		respuesta = ResponseEntity.ok(calculosCompartidos.compartir("analitica",
+    				parametros(etag, dimensiones, desde, hasta, producto, categoria),
+    				() -> hechosVentas.agrupar(dimensiones, new HechosVentasService.Filtro(desde, hasta, producto, categoria))));
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	}
+        return respuesta;
+    }
+    
+    /**
+     * Estima los clientes distintos (por email) de un rango de fechas, por tramos y en total, combinando
+     * los contadores HyperLogLog de cada día. El error estándar es del 1,6 % (3,3 % en el 95 % de los casos).
+     * @param desde primer día del rango (AAAA-MM-DD)
+     * @param hasta último día del rango (AAAA-MM-DD)
+     * @param granularidad dia, semana, mes, trimestre o anio (por defecto mes)
+     * @return clientes de cada tramo y del rango completo, o 400 si los parámetros no son válidos
+     */
+    @GetMapping("/clientes-unicos")
+    public ResponseEntity<?> obtenerClientesUnicos(
+    		@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+    		@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+    		@RequestParam(defaultValue = "mes") String granularidad,
+    		WebRequest request) {
+    	String etag = versiones.etag(Agregado.PEDIDOS);
+    	if (request.checkNotModified(etag)) {
+    		return null;
+    	}
+    	ResponseEntity<?> respuesta;
+    	try {
+    		AnaliticaVentasService.Granularidad gran = AnaliticaVentasService.Granularidad.de(granularidad);
+    		respuesta = ResponseEntity.ok(calculosCompartidos.compartir("clientes-unicos", parametros(etag, desde, hasta, gran),
+    				() -> clientesUnicos.clientesUnicos(desde, hasta, gran)));
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	}
+        return respuesta;
+    }
+    
+    /**
+     * Compara la estimación de clientes distintos de un rango con el recuento exacto (COUNT DISTINCT sobre los pedidos)
+     * y devuelve el error cometido y lo que tarda cada uno.
+     * @param desde primer día del rango (AAAA-MM-DD)
+     * @param hasta último día del rango (AAAA-MM-DD)
+     * @return estimación, valor exacto, error relativo y tiempos, o 400 si el rango no es válido
+     */
+    @GetMapping("/clientes-unicos/comparar")
+    public ResponseEntity<?> compararClientesUnicos(
+    		@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+    		@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+    	ResponseEntity<?> respuesta;
+    	try {
+    		respuesta = ResponseEntity.ok(clientesUnicos.comparar(desde, hasta));
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	}
+        return respuesta;
     }
     
     /**
@@ -115,32 +419,25 @@ public class ReporteController {
      * @return Lista con un objeto VentaPorFecha que representa las ventas del día.
      */
     @GetMapping("/ventas-del-dia")
-    public List<VentaPorFecha> obtenerVentasDelDia() {
-    	// Obtiene la fecha actual
-        LocalDate hoy = LocalDate.now(); 
-        // Obtiene todos los pedidos que ya fueron enviados
-        List<Pedido> pedidos = pedidoRepository.findByEnviadoTrue(); 
-
-        System.out.println("Hoy: " + hoy);
-        System.out.println("Ventas enviadas:");
-
-        for (Pedido p : pedidos) {
-            System.out.println(" - Pedido " + p.getId() + " | Fecha: " + p.getFechaPedido() + " | Total: " + p.getTotal());
-        }
-        // Agrupa y suma los totales de los pedidos cuya fecha sea hoy
-        Map<LocalDate, Double> ventasPorDia = pedidos.stream()
-        	 // Filtra los pedidos del día
-            .filter(p -> p.getFechaPedido().isEqual(hoy))
-            .collect(Collectors.groupingBy(
-            	// Agrupa por fecha del pedido
-            	Pedido::getFechaPedido,
-            	// Suma los totales por fecha
-                Collectors.summingDouble(Pedido::getTotal)
-            ));
-        // Convierte el mapa a una lista de objetos VentaPorFecha
-        return ventasPorDia.entrySet().stream()
-            .map(e -> new VentaPorFecha(e.getKey().toString(), e.getValue()))
-            .toList();
+    public List<VentaPorFecha> obtenerVentasDelDia(WebRequest request) {
+    	// El resultado depende también del día, así que el ETag incluye la fecha
+    	if (request.checkNotModified(versiones.etagDelDia(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+    	// Total de los pedidos de hoy ya enviados, leído de los contadores del día sin consultar la base de datos
+        return ventasDelDia.ventasEnviadasDeHoy();
+    }
+    
+    /**
+     * Obtiene las ventas de cada hora del día actual.
+     * @return lista con 24 elementos (uno por hora) con el importe, las unidades y el importe enviado.
+     */
+    @GetMapping("/ventas-por-hora-hoy")
+    public List<VentasDelDiaService.VentasHora> obtenerVentasPorHoraHoy(WebRequest request) {
+    	if (request.checkNotModified(versiones.etagDelDia(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+        return ventasDelDia.ventasPorHoraHoy();
     }
    
     /**
@@ -149,47 +446,63 @@ public class ReporteController {
      * @return lista de productos con bajo stock.
      */
     @GetMapping("/bajo-stock")
-    public List<Producto> obtenerProductosConBajoStock(@RequestParam(defaultValue = "5") int limite) {
+    public List<Producto> obtenerProductosConBajoStock(@RequestParam(defaultValue = "5") int limite, WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PRODUCTOS))) {
+    		return null;
+    	}
     	// Busca y devuelve todos los productos cuyo stock sea menor o igual al valor de 'limite'
-    	return productoRepository.findByStockLessThanEqual(limite);
+    	return cacheInformes.obtener(Informe.BAJO_STOCK, String.valueOf(limite), null, null,
+    			() -> productoRepository.findByStockLessThanEqual(limite));
+    }
+
+    /**
+     * Obtiene los productos que hay que reponer según su previsión de demanda: aquellos cuyo stock está en su punto
+     * de pedido o por debajo, que depende de lo que se vende cada uno. Los productos con poco histórico usan el límite fijo.
+     * @param limite stock con el que se repone un producto sin previsión fiable. Por defecto es 5.
+     * @return previsiones de los productos a reponer, de menos a más días de cobertura.
+     */
+    @GetMapping("/bajo-stock-previsto")
+    public List<PrevisionDemandaService.Prevision> obtenerBajoStockPrevisto(@RequestParam(defaultValue = "5") int limite) {
+    	return prevision.bajoStock(limite);
     }
     
     /**
      * Genera un PDF con el resumen de ventas del día actual.
-     * @return el archivo PDF como respuesta HTTP.
+     * @return el archivo PDF en streaming, o un error si no se pueden obtener los datos.
      */
     @GetMapping("/ventas-dia-pdf")
-    public ResponseEntity<byte[]> generarPDFVentasDelDia() {
+    public ResponseEntity<StreamingResponseBody> generarPDFVentasDelDia() {
     	// Llama al metodo pasando dia como parámetro para generar el PDF correspondiente
-        return generarPDF("dia");
+        return generarPDF("dia", LocalDate.now().getYear());
     }
 
     /**
      * Genera un PDF con el resumen de ventas del mes actual.
-     * @return el archivo PDF como respuesta HTTP.
+     * @return el archivo PDF en streaming, o un error si no se pueden obtener los datos.
      */
     @GetMapping("/ventas-mes-pdf")
-    public ResponseEntity<byte[]> generarPDFVentasDelMes() {
+    public ResponseEntity<StreamingResponseBody> generarPDFVentasDelMes() {
     	// Llama al mismo método, esta vez con mes para indicar el tipo de resumen
-        return generarPDF("mes");
+        return generarPDF("mes", LocalDate.now().getYear());
     }
 
     /**
-     * Genera un PDF con el resumen de ventas del año actual.
-     * @return archivo PDF como respuesta HTTP.
+     * Genera un PDF con el resumen de ventas de un año (por defecto el actual).
+     * @param anio año del resumen (opcional)
+     * @return el archivo PDF en streaming, o un error si no se pueden obtener los datos.
      */
     @GetMapping("/ventas-anio-pdf")
-    public ResponseEntity<byte[]> generarPDFVentasDelAnio() {
-        return generarPDF("anio");
+    public ResponseEntity<StreamingResponseBody> generarPDFVentasDelAnio(@RequestParam(required = false) Integer anio) {
+        return generarPDF("anio", anio != null ? anio : LocalDate.now().getYear());
     }
 
     /**
      * Genera un PDF con la lista de productos con bajo stock.
-     * @return archivo PDF como respuesta HTTP.
+     * @return el archivo PDF en streaming, o un error si no se pueden obtener los datos.
      */
     @GetMapping("/stock-bajo-pdf")
-    public ResponseEntity<byte[]> generarPDFStockBajo() {
-        return generarPDF("stock");
+    public ResponseEntity<StreamingResponseBody> generarPDFStockBajo() {
+        return generarPDF("stock", LocalDate.now().getYear());
     }
     
     /**
@@ -197,9 +510,12 @@ public class ReporteController {
      * @return lista con información de productos vendidos en el día actual.
      */
     @GetMapping("/productos-vendidos-hoy")
-    public List<ProductoVentaDetalle> obtenerDetalleVentasHoy() {
-    	// Consulta en el repositorio los detalles de productos vendidos específicamente en la fecha de hoy.
-        return pedidoRepository.obtenerDetalleProductosDelDia();
+    public List<ProductoVentaDetalle> obtenerDetalleVentasHoy(WebRequest request) {
+    	if (request.checkNotModified(versiones.etagDelDia(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+    	// Productos vendidos hoy, leídos de los contadores del día.
+        return ventasDelDia.productosVendidosHoy();
     }
     
     /**
@@ -211,9 +527,19 @@ public class ReporteController {
     @GetMapping("/productos-vendidos-mes")
     public List<ProductoVentaDetalle> obtenerDetalleVentasMes(
         @RequestParam int anio,
-        @RequestParam int mes) {
-    	// Consulta al repositorio para obtener detalles de productos vendidos en el mes y año indicados.
-        return pedidoRepository.obtenerDetalleProductosDelMes(anio, mes);
+        @RequestParam int mes,
+        WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+    	// Un mes fuera de 1-12 (o un año fuera de rango) no tiene ventas: se responde con la lista vacía, como la consulta original
+    	if (mes < 1 || mes > 12 || anio < Year.MIN_VALUE || anio > Year.MAX_VALUE) {
+    		return List.of();
+    	}
+    	// Productos vendidos en el mes y año indicados, desde la caché de informes o el cubo de ventas.
+    	YearMonth periodo = YearMonth.of(anio, mes);
+        return cacheInformes.obtener(Informe.PRODUCTOS_DEL_MES, periodo.toString(), periodo.atDay(1), periodo.atEndOfMonth(),
+        		() -> cierres.productosVendidosDelMes(anio, mes));
     }
 
     /**
@@ -222,208 +548,205 @@ public class ReporteController {
      * @return Lista con los detalles de productos vendidos ese año.
      */
     @GetMapping("/productos-vendidos-anio")
-    public List<ProductoVentaDetalle> obtenerDetalleVentasAnio(@RequestParam int anio) {
-        return pedidoRepository.obtenerDetalleProductosDelAnio(anio);
+    public List<ProductoVentaDetalle> obtenerDetalleVentasAnio(@RequestParam int anio, WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+    	// Un año fuera del rango de LocalDate no tiene ventas: se responde con la lista vacía, como la consulta original
+    	if (anio < Year.MIN_VALUE || anio > Year.MAX_VALUE) {
+    		return List.of();
+    	}
+        return cacheInformes.obtener(Informe.PRODUCTOS_DEL_ANIO, String.valueOf(anio),
+        		LocalDate.of(anio, 1, 1), LocalDate.of(anio, 12, 31), () -> cierres.productosVendidosDelAnio(anio));
+    }
+    
+    /**
+     * Vacía y vuelve a calcular el cubo de ventas a partir de todos los pedidos.
+     * Sirve para la carga inicial de datos antiguos o si el cubo se ha desincronizado.
+     * También vuelve a calcular los cierres de periodos, el almacén de ventas por columnas y los contadores de clientes.
+     * @return número de celdas (día y producto) generadas
+     */
+    @PostMapping("/cubo/reconstruir")
+    public ResponseEntity<Map<String, Integer>> reconstruirCuboVentas() {
+    	int celdas = cuboVentas.reconstruir();
+    	// Los cierres se calcularon con el cubo anterior, así que se vuelven a calcular
+    	cierres.reiniciar();
+    	// Y el almacén por columnas se vuelve a cargar desde los pedidos
+    	hechosVentas.recargar();
+    	// Y los contadores de clientes distintos por día
+    	clientesUnicos.reconstruir();
+    	// Los informes pueden cambiar, así que se vacía su caché y se invalidan los ETag de pedidos
+    	cacheInformes.limpiar();
+    	versiones.incrementar(Agregado.PEDIDOS);
+        return ResponseEntity.ok(Map.of("celdas", celdas));
+    }
+    
+    /**
+     * Devuelve los cierres de un año: uno por cada mes terminado y otro del año completo si ya ha terminado.
+     * @param anio año de los cierres
+     * @return lista de cierres, ordenados por mes (el del año completo, con mes 0, primero)
+     */
+    @GetMapping("/cierres")
+    public List<CierrePeriodo> obtenerCierres(@RequestParam int anio) {
+        return cierres.cierresDelAnio(anio);
+    }
+    
+    /**
+     * Cierra los meses y años terminados que aún no tienen cierre, sin esperar a la tarea programada.
+     * @return número de periodos cerrados
+     */
+    @PostMapping("/cierres/cerrar")
+    public ResponseEntity<Map<String, Integer>> cerrarPeriodos() {
+        return ResponseEntity.ok(Map.of("cerrados", cierres.cerrarPendientes()));
+    }
+    
+    /**
+     * Devuelve las estadísticas de la caché de informes: entradas guardadas, aciertos, fallos y ratio de aciertos.
+     * @return lista con las estadísticas de cada informe
+     */
+    @GetMapping("/cache")
+    public List<InformesCacheService.Estadisticas> obtenerEstadisticasCache() {
+        return cacheInformes.estadisticas();
+    }
+    
+    /**
+     * Devuelve cuántas peticiones se han ahorrado un cálculo por llegar mientras otra igual lo hacía,
+     * por operación (informes de la caché, ventas, rentabilidad, analítica, clientes únicos y PDF).
+     * @return lista con cálculos, peticiones compartidas, errores y ratio de cada operación
+     */
+    @GetMapping("/calculos-compartidos")
+    public List<CalculosCompartidosService.Estadisticas> obtenerEstadisticasCalculosCompartidos() {
+        return calculosCompartidos.estadisticas();
+    }
+    
+    /**
+     * Devuelve el tamaño del almacén de ventas por columnas: filas, filas borradas, productos, categorías y memoria.
+     * @return estadísticas del almacén
+     */
+    @GetMapping("/analitica/estadisticas")
+    public HechosVentasService.Estadisticas obtenerEstadisticasAnalitica() {
+        return hechosVentas.estadisticas();
     }
     
     /**
      * Genera un archivo PDF con información de ventas o productos con bajo stock,
      * dependiendo del valor de tipo proporcionado.
+     * Primero se cargan todos los datos; si falla la carga se responde con un error en JSON.
+     * Después el PDF se dibuja directamente sobre la respuesta mediante PdfService, sin guardarlo entero en memoria.
      * @param tipo Puede ser dia, mes, anio o stock.
-     * @return PDF generado como array de bytes dentro de un ResponseEntity.
+     * @param anio Año del resumen anual (solo se usa con tipo anio).
+     * @return PDF en streaming, o 500 con el motivo del error.
      */    
-    private ResponseEntity<byte[]> generarPDF(String tipo) {
+    private ResponseEntity<StreamingResponseBody> generarPDF(String tipo, int anio) {
+        ResponseEntity<StreamingResponseBody> respuesta;
         try {
-        	// Flujo de salida para capturar el contenido del PDF
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            // Crea un nuevo documento PDF
-            Document doc = new Document();
-            PdfWriter.getInstance(doc, baos);
-            doc.open();
-            // Define la fuente del título
-            Font titleFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16);
-            // Define el título del reporte según el tipo
-            String titulo = switch (tipo) {
-                case "dia" -> "Ventas del Día";
-                case "mes" -> "Ventas por Mes";
-                case "anio" -> "Ventas por Año";
-                case "stock" -> "Productos con Bajo Stock";
-                default -> "Reporte";
-            };
-            // Agrega el título al documento
-            doc.add(new Paragraph(titulo, titleFont));
-            doc.add(new Paragraph(" ")); // espacio
-
-            PdfPTable table;
-
-            switch (tipo) {
-                case "dia", "mes" -> {
-                	// Filtra las ventas por fecha actual (día o mes)
-                    List<VentaPorFecha> ventas = switch (tipo) {
-                        case "dia" -> pedidoRepository.obtenerVentasPorFecha().stream()
-                            .filter(v -> v.getFecha().startsWith(LocalDate.now().toString()))
-                            .toList();
-                        case "mes" -> pedidoRepository.obtenerVentasPorMes().stream()
-                            .filter(v -> v.getFecha().startsWith(LocalDate.now().toString().substring(0, 7)))
-                            .toList();
-                        default -> List.of();
-                    };
-                    // Tabla de resumen de ventas
-                    table = new PdfPTable(2);
-                    table.setWidthPercentage(100);
-                    table.addCell("Fecha");
-                    table.addCell("Total (€)");
-
-                    for (VentaPorFecha v : ventas) {
-                        table.addCell(v.getFecha());
-                        table.addCell(String.format("%.2f", v.getTotal()));
-                    }
-
-                    doc.add(table);
-                    doc.add(new Paragraph(" "));
-                    // Productos vendidos ese día o mes
-                    List<ProductoVentaDetalle> productos = switch (tipo) {
-                        case "dia" -> pedidoRepository.obtenerDetalleProductosDelDia();
-                        case "mes" -> pedidoRepository.obtenerDetalleProductosDelMes(
-                                        LocalDate.now().getYear(), LocalDate.now().getMonthValue());
-                        default -> List.of();
-                    };
-
-                    if (!productos.isEmpty()) {
-                        doc.add(new Paragraph("Productos Vendidos", titleFont));
-                        doc.add(new Paragraph(" "));
-
-                        PdfPTable prodTable = new PdfPTable(2);
-                        prodTable.setWidthPercentage(100);
-                        prodTable.addCell("Producto");
-                        prodTable.addCell("Cantidad");
-
-                        for (ProductoVentaDetalle p : productos) {
-                            prodTable.addCell(p.getNombreProducto());
-                            prodTable.addCell(String.valueOf(p.getCantidadVendida()));
-                        }
-
-                        doc.add(prodTable);
-                    }
-                }
-
-                case "anio" -> {
-                    int anio = LocalDate.now().getYear();
-
-                    // Obtener ventas por mes del año actual
-                    List<VentaPorFecha> ventas = pedidoRepository.obtenerVentasPorMes().stream()
-                        .filter(v -> v.getFecha().startsWith(anio + "-"))
-                        .toList();
-
-                    table = new PdfPTable(2);
-                    table.setWidthPercentage(100);
-                    table.addCell("Mes");
-                    table.addCell("Total (€)");
-
-                    for (int m = 1; m <= 12; m++) {
-                        String mm = String.format("%02d", m);
-                        String key = anio + "-" + mm;
-                        double totalMes = ventas.stream()
-                            .filter(v -> v.getFecha().equals(key))
-                            .mapToDouble(VentaPorFecha::getTotal)
-                            .findFirst()
-                            .orElse(0.0);
-
-                        table.addCell(mm + "/" + anio);
-                        table.addCell(String.format("%.2f", totalMes));
-                    }
-
-                    doc.add(table);
-                    doc.add(new Paragraph(" "));
-
-                    // Detalle mensual de productos
-                    for (int m = 1; m <= 12; m++) {
-                        List<ProductoVentaDetalle> productosMes = pedidoRepository.obtenerDetalleProductosDelMes(anio, m);
-
-                        doc.add(new Paragraph("Productos vendidos en " +
-                            LocalDate.of(anio, m, 1).getMonth().getDisplayName(TextStyle.FULL, new Locale("es", "ES")),
-                            titleFont));
-                        doc.add(new Paragraph(" "));
-
-                        PdfPTable prodTable = new PdfPTable(2);
-                        prodTable.setWidthPercentage(100);
-                        prodTable.addCell("Producto");
-                        prodTable.addCell("Cantidad");
-
-                        if (productosMes.isEmpty()) {
-                            prodTable.addCell("Ninguno");
-                            prodTable.addCell("0");
-                        } else {
-                            for (ProductoVentaDetalle p : productosMes) {
-                                prodTable.addCell(p.getNombreProducto());
-                                prodTable.addCell(String.valueOf(p.getCantidadVendida()));
-                            }
-                        }
-
-                        doc.add(prodTable);
-                        doc.add(new Paragraph(" "));
-                    }
-                }
-
-                case "stock" -> {
-                	// Productos con bajo stock (5 o menos)
-                    List<Producto> productos = productoRepository.findByStockLessThanEqual(5);
-                    table = new PdfPTable(3);
-                    table.setWidthPercentage(100);
-                    table.addCell("Producto");
-                    table.addCell("Stock");
-                    table.addCell("ID");
-
-                    for (Producto p : productos) {
-                        table.addCell(p.getNombre());
-                        table.addCell(String.valueOf(p.getStock()));
-                        table.addCell(String.valueOf(p.getId()));
-                    }
-
-                    doc.add(table);
-                }
-
-                default -> {
-                	// Tipo de reporte no válido
-                    doc.add(new Paragraph("No se reconoce el tipo de reporte."));
-                }
-            }
-            // Cierra el documento
-            doc.close();
-            // Encabezados HTTP para devolver el PDF
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("attachment", "reporte-" + tipo + ".pdf");
-
-            return new ResponseEntity<>(baos.toByteArray(), headers, HttpStatus.OK);
-
-        } catch (Exception e) {
-            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        	// Carga los datos del reporte y prepara las funciones que dibujan sus secciones.
+        	// Si ya se están cargando los mismos datos para otra petición, se esperan y se reutilizan;
+        	// las secciones no hacen consultas, así que cada petición dibuja su copia del PDF.
+        	// El ETag de pedidos y productos va en la clave, para no unirse a una carga empezada antes de un cambio
+            InformesPdfService.InformePdf informe = calculosCompartidos.compartir("pdf",
+            		parametros(versiones.etag(Agregado.PEDIDOS, Agregado.PRODUCTOS), tipo, anio, LocalDate.now()),
+            		() -> informesPdf.preparar(tipo, anio));
+            respuesta = pdfService.respuesta(informe.nombreArchivo(), false, informe.secciones());
+        } catch (RuntimeException e) {
+            respuesta = pdfService.error(HttpStatus.INTERNAL_SERVER_ERROR,
+            		"No se pudieron obtener los datos del reporte: " + e.getMessage());
         }
+        return respuesta;
+    }
+    
+    /**
+     * Encola la generación de un reporte PDF en segundo plano.
+     * Si ya hay un trabajo igual pendiente o en curso, se devuelve ese mismo trabajo.
+     * @param tipo dia, mes, anio o stock
+     * @param anio año del resumen anual (opcional, por defecto el actual)
+     * @return 202 con el estado del trabajo, 400 si el tipo no es válido o 503 si la cola está llena
+     */
+    @PostMapping("/trabajos")
+    public ResponseEntity<?> encolarReporte(@RequestParam String tipo, @RequestParam(required = false) Integer anio) {
+    	ResponseEntity<?> respuesta;
+    	try {
+    		TrabajosInformesService.EstadoTrabajo trabajo =
+    				trabajosInformes.encolar(tipo, anio != null ? anio : LocalDate.now().getYear());
+    		respuesta = ResponseEntity.accepted().body(trabajo);
+    	} catch (IllegalArgumentException e) {
+    		respuesta = ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    	} catch (RejectedExecutionException e) {
+    		// Cola llena: el cliente puede volver a intentarlo más tarde
+    		respuesta = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+    				.body(Map.of("error", "Hay demasiados reportes en cola, inténtelo más tarde"));
+    	}
+    	return respuesta;
+    }
+    
+    /**
+     * Devuelve los trabajos de reportes que aún se conservan, del más reciente al más antiguo.
+     * @return lista con el estado de cada trabajo
+     */
+    @GetMapping("/trabajos")
+    public List<TrabajosInformesService.EstadoTrabajo> listarTrabajos() {
+        return trabajosInformes.listar();
+    }
+    
+    /**
+     * Devuelve el estado de un trabajo de reporte.
+     * Con esperar mayor que 0 la respuesta se retrasa hasta que el trabajo termine o pasen esos segundos,
+     * para que el cliente no tenga que repetir la consulta continuamente.
+     * @param id identificador del trabajo
+     * @param esperar segundos máximos de espera (0 a 30, por defecto 0)
+     * @return estado del trabajo, o 404 si no existe
+     */
+    @GetMapping("/trabajos/{id}")
+    public ResponseEntity<TrabajosInformesService.EstadoTrabajo> consultarTrabajo(@PathVariable String id,
+    		@RequestParam(defaultValue = "0") int esperar) {
+    	return ResponseEntity.of(trabajosInformes.consultar(id, Math.max(0, Math.min(esperar, 30))));
+    }
+    
+    /**
+     * Descarga el PDF generado por un trabajo terminado.
+     * @param id identificador del trabajo
+     * @return el archivo PDF, 404 si el trabajo no existe o 409 si aún no ha terminado
+     */
+    @GetMapping("/trabajos/{id}/descarga")
+    public ResponseEntity<?> descargarTrabajo(@PathVariable String id) {
+    	Optional<TrabajosInformesService.EstadoTrabajo> trabajo = trabajosInformes.consultar(id, 0);
+    	Optional<Path> archivo = trabajosInformes.archivo(id);
+    	ResponseEntity<?> respuesta;
+    	if (trabajo.isEmpty()) {
+    		respuesta = ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Trabajo no encontrado"));
+    	} else if (archivo.isEmpty()) {
+    		respuesta = ResponseEntity.status(HttpStatus.CONFLICT)
+    				.body(Map.of("error", "El reporte no está disponible (estado " + trabajo.get().estado() + ")"));
+    	} else {
+    		ContentDisposition disposicion = ContentDisposition.attachment()
+    				.filename(trabajo.get().nombreArchivo())
+    				.build();
+    		respuesta = ResponseEntity.ok()
+    				.contentType(MediaType.APPLICATION_PDF)
+    				.header(HttpHeaders.CONTENT_DISPOSITION, disposicion.toString())
+    				.body(new FileSystemResource(archivo.get()));
+    	}
+    	return respuesta;
     }
     
     /**
-     * Guarda en un archivo JSON el resumen anual de ventas.
-     * @param resumen Objeto que contiene los datos del resumen anual a guardar.
+     * Calcula en el servidor el resumen anual de ventas y lo guarda, sustituyendo al anterior si existía.
+     * El resumen que envía el navegador no se usa: solo se toma de él el año, si no se indica como parámetro.
+     * @param anio Año del resumen (opcional).
+     * @param resumen Resumen enviado por el cliente (opcional, solo se lee su año).
      * @return ResponseEntity indicando si la operación fue exitosa o si ocurrió un error.
      */
     @PostMapping("/guardar-resumen-anual")
-    public ResponseEntity<String> guardarResumenAnual(@RequestBody ResumenAnualDTO resumen) {
-        System.out.println("Guardando resumen para el año: " + resumen.anio);
+    public ResponseEntity<String> guardarResumenAnual(@RequestParam(required = false) Integer anio,
+    		@RequestBody(required = false) ResumenAnualDTO resumen) {
         ResponseEntity<String> respuesta;
+        // Año indicado, el del resumen enviado o, si no hay ninguno, el actual
+        int anioResumen = anio != null ? anio : resumen != null && resumen.anio > 0 ? resumen.anio : LocalDate.now().getYear();
 
         try {
-        	// Crea el directorio donde se guardarán los archivos si no existe
-            File dir = new File(RUTA_ARCHIVOS_JSON);
-            if (!dir.exists()) dir.mkdirs();
-            // Define la ruta del archivo que se va a guardar, ej: resumen-2025.json
-            File archivo = new File(dir, "resumen-" + resumen.anio + ".json");
-            // Usa ObjectMapper para convertir el objeto a formato JSON y guardarlo en disco
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(archivo, resumen);
-
+            resumenesAnuales.guardar(anioResumen);
             respuesta = ResponseEntity.ok("Resumen guardado");
-        } catch (Exception e) {
+        } catch (IOException e) {
             respuesta = new ResponseEntity<>("Error al guardar", HttpStatus.INTERNAL_SERVER_ERROR);
         }
 
@@ -431,80 +754,69 @@ public class ReporteController {
     }
     
     /**
-     * Obtiene el resumen anual de ventas almacenado en un archivo JSON.
+     * Obtiene el resumen anual de ventas guardado de un año.
      * @param anio Año para el cual se desea obtener el resumen.
-     * @return ResponseEntity con el resumen si existe, o un estado de error si no.
+     * @return ResponseEntity con el resumen si existe, o 404 si no se ha guardado.
      */
     @GetMapping("/resumen-anual")
     public ResponseEntity<ResumenAnualDTO> obtenerResumenAnual(@RequestParam int anio) {
-    	// Declaración de la respuesta que se devolverá
-    	ResponseEntity<ResumenAnualDTO> respuesta;
-
+    	// Se sirve desde el índice en memoria, sin leer el archivo
+        return ResponseEntity.of(resumenesAnuales.obtener(anio));
+    }
+    
+    /**
+     * Borra el resumen anual guardado de un año.
+     * @param anio Año del resumen a borrar.
+     * @return 204 si se ha borrado, 404 si no existía o 500 si no se pudo borrar el archivo.
+     */
+    @DeleteMapping("/resumen-anual/{anio}")
+    public ResponseEntity<Void> borrarResumenAnual(@PathVariable int anio) {
+        ResponseEntity<Void> respuesta;
         try {
-        	// Se construye la ruta del archivo correspondiente al año solicitado
-            File archivo = new File(RUTA_ARCHIVOS_JSON, "resumen-" + anio + ".json");
-            // Si el archivo no existe, se devuelve una respuesta 404 (no encontrado)
-            if (!archivo.exists()) {
-                respuesta = new ResponseEntity<>(HttpStatus.NOT_FOUND);
-            } else {
-            	// Si el archivo existe, se convierte su contenido JSON a un objeto DTO
-                ObjectMapper mapper = new ObjectMapper();
-                ResumenAnualDTO resumen = mapper.readValue(archivo, ResumenAnualDTO.class);
-
-                respuesta = ResponseEntity.ok(resumen);
-            }
-
-        } catch (Exception e) {
+            respuesta = resumenesAnuales.borrar(anio)
+            		? ResponseEntity.noContent().build()
+            		: ResponseEntity.notFound().build();
+        } catch (IOException e) {
             respuesta = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
-
         return respuesta;
     }
     
     /**
-     * Devuelve una lista de años para los cuales existen archivos de resumen anual.
-     * @return Lista de años en los que se ha guardado un resumen anual.
+     * Devuelve una lista de años para los cuales existe un resumen anual guardado.
+     * @return Lista de años con resumen, del más reciente al más antiguo.
      */
     @GetMapping("/resumenes-anuales")
-    public ResponseEntity<List<Integer>> listarResumenesAnuales() {
-    	// Declaración de la variable para la respuesta HTTP
-    	ResponseEntity<List<Integer>> respuesta;
-    	// Carpeta donde se almacenan los archivos de resumen anual
-        File carpeta = new File(RUTA_ARCHIVOS_JSON);
-        // Verifica si la carpeta no existe o no es un directorio válido
-        if (!carpeta.exists() || !carpeta.isDirectory()) {
-        	// Devuelve un 404 si no se encuentra la carpeta
-            respuesta = new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        } else {
-        	// Filtra los archivos cuyo nombre comienza con "resumen-" y termina con ".json"
-            File[] archivos = carpeta.listFiles((dir, name) -> name.startsWith("resumen-") && name.endsWith(".json"));
-            // Si ocurre un error al listar los archivos, se devuelve un 500
-            if (archivos == null) {
-                respuesta = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-            } else {
-            	// Lista para almacenar los años extraídos de los nombres de los archivos
-                List<Integer> anios = new ArrayList<>();
-
-                for (File archivo : archivos) {
-                	// Ejemplo: resumen-2025.json
-                    String nombre = archivo.getName(); 
-                    try {
-                    	// Elimina el prefijo y la extensión para quedarse solo con el año
-                        String sinExtension = nombre.replace("resumen-", "").replace(".json", "");
-                        // Convierte el año a número
-                        anios.add(Integer.parseInt(sinExtension));
-                     // Ignora archivos con nombres que no contienen un año válido
-                    } catch (NumberFormatException ignored) {
-                        
-                  }
-                }
-                // Ordena la lista de años en orden descendente
-                anios.sort(Comparator.reverseOrder()); 
-                // Devuelve la lista de años con código 200 OK
-                respuesta = ResponseEntity.ok(anios);
-            }
-        }
-
-        return respuesta;
+    public List<Integer> listarResumenesAnuales() {
+        return resumenesAnuales.anios();
+    }
+    
+    /**
+     * Reduce una serie de ventas por fecha al número de puntos pedido para dibujarla.
+     * Las fechas pueden ser días (AAAA-MM-DD) o meses (AAAA-MM); la posición de cada punto es su fecha,
+     * para que los días o meses sin ventas (que no aparecen en la serie) cuenten como huecos.
+     * @param serie serie completa, ordenada por fecha
+     * @param puntos número máximo de puntos, o null para devolver la serie completa
+     * @param metodo lttb o minmax
+     * @return serie reducida
+     * @throws IllegalArgumentException si el método no es válido o se piden demasiado pocos puntos
+     */
+    private static List<VentaPorFecha> reducirSerie(List<VentaPorFecha> serie, Integer puntos, String metodo) {
+    	ReduccionSeries.Metodo reduccion = ReduccionSeries.Metodo.de(metodo);
+    	if (puntos == null) {
+    		return serie;
+    	}
+    	return ReduccionSeries.reducir(serie, puntos, reduccion, v -> v.getFecha().length() == 7
+    			? YearMonth.parse(v.getFecha()).atDay(1).toEpochDay()
+    			: LocalDate.parse(v.getFecha()).toEpochDay(), VentaPorFecha::getTotal);
+    }
+    
+    /**
+     * Une los parámetros de una petición en la clave con la que se comparten los cálculos simultáneos.
+     * @param valores parámetros de la petición (los null se incluyen como "null")
+     * @return parámetros separados por "|"
+     */
+    private static String parametros(Object... valores) {
+    	return Arrays.stream(valores).map(String::valueOf).collect(Collectors.joining("|"));
     }
 }
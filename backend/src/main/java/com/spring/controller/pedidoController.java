@@ -27,22 +27,28 @@ package com.spring.controller;
  * junto a bibliotecas como iText para generación de PDFs y java.nio.file para manejo de archivos.
  */
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.*;
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.YearMonth;
 import java.util.*;
 import java.util.stream.Stream;
 
-import com.lowagie.text.Document;
 import com.lowagie.text.Paragraph;
-import com.lowagie.text.pdf.PdfWriter;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.*;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.spring.dto.ProductoVentaDetalle;
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.event.ProductoModificadoEvent;
 import com.spring.model.LineaPedido;
 import com.spring.model.MovimientoStock;
 import com.spring.model.Pedido;
@@ -50,6 +56,12 @@ import com.spring.model.Producto;
 import com.spring.repository.MovimientoStockRepository;
 import com.spring.repository.PedidoRepository;
 import com.spring.repository.ProductoRepository;
+import com.spring.service.CierresService;
+import com.spring.service.InformesCacheService;
+import com.spring.service.InformesCacheService.Informe;
+import com.spring.service.PdfService;
+import com.spring.service.VersionesService;
+import com.spring.service.VersionesService.Agregado;
 
 @RestController
 @RequestMapping("/api/pedidos")
@@ -67,6 +79,26 @@ public class pedidoController {
     // Inyección automática de dependencias para registrar o consultar movimientos de stock.
     @Autowired
     private MovimientoStockRepository movimientoRepository;
+    
+    // Publicador de eventos de Spring, para avisar de los cambios de stock en productos
+    @Autowired
+    private ApplicationEventPublisher eventos;
+    
+    // Versiones de los datos, para responder 304 Not Modified cuando no hay cambios
+    @Autowired
+    private VersionesService versiones;
+    
+    // Cierres de los meses y años terminados (y cubo de ventas para el periodo en curso), para las estadísticas de productos vendidos
+    @Autowired
+    private CierresService cierres;
+    
+    // Caché de resultados de los informes, compartida con el controlador de reportes
+    @Autowired
+    private InformesCacheService cacheInformes;
+    
+    // Generación de PDF directamente sobre la respuesta
+    @Autowired
+    private PdfService pdfService;
 
     /**
      * Crea un nuevo pedido con sus líneas, ajusta el stock y registra salidas.
@@ -75,16 +107,22 @@ public class pedidoController {
      */
     // Mapea peticiones HTTP POST a esta función.
     @PostMapping
+    // Pedido, stock, movimientos y cubo de ventas se guardan juntos o no se guarda nada.
+    @Transactional
     // Recibe un pedido en formato JSON.
     public Pedido crearPedido(@RequestBody Pedido pedido) {
     	// Asigna la fecha actual al pedido.
         pedido.setFechaPedido(LocalDate.now());
+        // Y la hora, para las ventas por hora del día.
+        pedido.setHoraPedido(LocalTime.now());
         // Verifica si hay líneas de pedido.
         if (pedido.getDetalles() != null) {
         	// Itera sobre cada línea.
             for (LineaPedido linea : pedido.getDetalles()) {
             	// Establece la relación con el pedido padre.
                 linea.setPedido(pedido);
+                // El precio de compra lo pone siempre el servidor, a partir del producto.
+                linea.setPrecioCompra(null);
                 // Si se especificó un producto.
                 if (linea.getProductoId() != null) {
                 	// Busca el producto.
@@ -94,10 +132,13 @@ public class pedidoController {
                         Producto producto = opt.get();
                         // Asocia el producto a la línea.
                         linea.setProducto(producto);
+                        // Guarda el precio de compra actual, para calcular el margen de la venta.
+                        linea.setPrecioCompra(producto.getPrecioCompra());
                         // Resta del stock.
                         producto.setStock(producto.getStock() - linea.getCantidad());
                         // Guarda el nuevo stock.
                         productoRepository.save(producto);
+                        eventos.publishEvent(new ProductoModificadoEvent(producto.getId(), ProductoModificadoEvent.Tipo.ACTUALIZADO));
                         // Registra la salida de stock.
                         MovimientoStock salida = new MovimientoStock();
                         salida.setProducto(producto);
@@ -125,8 +166,12 @@ public class pedidoController {
         long contador = pedidoRepo.countByAnio(anio);
         // Genera un código único para el año, ej: 2025-12
         pedido.setCodigoAnual(anio + "-" + (contador + 1));
-        // Guarda el pedido completo en la base de datos y lo devuelve.
-        return pedidoRepo.save(pedido);
+        // Guarda el pedido completo en la base de datos.
+        Pedido guardado = pedidoRepo.save(pedido);
+        // Las salidas de stock registradas cambian la versión de los movimientos, una vez confirmado el pedido
+        versiones.incrementarAlConfirmar(Agregado.MOVIMIENTOS);
+        eventos.publishEvent(new PedidoModificadoEvent(guardado, PedidoModificadoEvent.Tipo.CREADO));
+        return guardado;
     }
 
     /**
@@ -135,16 +180,20 @@ public class pedidoController {
      * @return 204 No Content si se elimina correctamente, 404 si no existe.
      */
     @DeleteMapping("/{id}")
+    // El borrado del pedido y la resta de sus ventas en el cubo van en la misma transacción.
+    @Transactional
     // El ID se toma desde la URL.
     public ResponseEntity<?> eliminarPedido(@PathVariable Long id) {
         ResponseEntity<?> respuesta;
-        // Verifica si el pedido existe en la base de datos.
-        if (!pedidoRepo.existsById(id)) {
+        // Busca el pedido en la base de datos.
+        Optional<Pedido> pedidoOpt = pedidoRepo.findById(id);
+        if (pedidoOpt.isEmpty()) {
         	// Si no existe
             respuesta = ResponseEntity.notFound().build();
         } else {
         	// Si existe, lo elimina.
-            pedidoRepo.deleteById(id);
+            pedidoRepo.delete(pedidoOpt.get());
+            eventos.publishEvent(new PedidoModificadoEvent(pedidoOpt.get(), PedidoModificadoEvent.Tipo.ELIMINADO));
          // Devuelve 200 OK 
             respuesta = ResponseEntity.ok().build();
         }
@@ -157,7 +206,13 @@ public class pedidoController {
      * @return Lista de todos los pedidos.
      */
     @GetMapping
-    public List<Pedido> obtenerTodosLosPedidos() {
+    // Solo lectura: si hay réplica configurada, se lee de ella
+    @Transactional(readOnly = true)
+    public List<Pedido> obtenerTodosLosPedidos(WebRequest request) {
+    	// Si el navegador ya tiene la versión actual, responde 304 sin consultar
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS, Agregado.PRODUCTOS))) {
+    		return null;
+    	}
     	// Recupera y retorna todos los pedidos de la base de datos.
         return pedidoRepo.findAll();
     }
@@ -177,6 +232,7 @@ public class pedidoController {
                     pedido.setEnviado(true);
                     // Guarda el cambio en la base de datos
                     pedidoRepo.save(pedido);
+                    eventos.publishEvent(new PedidoModificadoEvent(pedido, PedidoModificadoEvent.Tipo.ENVIADO));
                     return ResponseEntity.ok("Pedido marcado como enviado");
                 })
                 .orElse(ResponseEntity.notFound().build());
@@ -187,7 +243,10 @@ public class pedidoController {
      * @return Lista de pedidos con el campo enviado en true.
      */
     @GetMapping("/enviados")
-    public List<Pedido> listarEnviados() {
+    public List<Pedido> listarEnviados(WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS, Agregado.PRODUCTOS))) {
+    		return null;
+    	}
     	// Retorna todos los pedidos cuyo campo enviado sea true
         return pedidoRepo.findByEnviadoTrue();
     }
@@ -197,7 +256,10 @@ public class pedidoController {
      * @return Lista de objetos Pedido con enviado = false.
      */
     @GetMapping("/no-enviados")
-    public List<Pedido> listarNoEnviados() {
+    public List<Pedido> listarNoEnviados(WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS, Agregado.PRODUCTOS))) {
+    		return null;
+    	}
     	// Busca en la base de datos todos los pedidos no enviados
         return pedidoRepo.findByEnviadoFalse();
     }
@@ -208,7 +270,10 @@ public class pedidoController {
      * @return Lista de pedidos realizados en ese año
      */
     @GetMapping("/anio/{anio}")
-    public List<Pedido> listarPorAnio(@PathVariable int anio) {
+    public List<Pedido> listarPorAnio(@PathVariable int anio, WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS, Agregado.PRODUCTOS))) {
+    		return null;
+    	}
     	// Busca pedidos por año utilizando una consulta personalizada
         return pedidoRepo.findByFechaPedidoYear(anio);
     }
@@ -233,6 +298,7 @@ public class pedidoController {
             pedido.setFechaPago(LocalDate.now());
             // Se guarda la actualización en la base de datos
             pedidoRepo.save(pedido);
+            eventos.publishEvent(new PedidoModificadoEvent(pedido, PedidoModificadoEvent.Tipo.PAGADO));
 
             respuesta = ResponseEntity.ok("Pedido marcado como pagado");
         } else {
@@ -244,28 +310,24 @@ public class pedidoController {
 
     /**
      * Genera un archivo PDF con los detalles de un pedido.
+     * El PDF se escribe directamente sobre la respuesta mediante PdfService.
      * @param id ID del pedido.
-     * @return Respuesta HTTP con el PDF en formato de bytes o un error si no se encuentra o falla la generación.
+     * @return Respuesta HTTP con el PDF en streaming, o 404 si no se encuentra el pedido.
      */
     @GetMapping("/{id}/pdf")
-    public ResponseEntity<byte[]> generarPDF(@PathVariable Long id) {
-        ResponseEntity<byte[]> respuesta;
+    public ResponseEntity<StreamingResponseBody> generarPDF(@PathVariable Long id) {
+        ResponseEntity<StreamingResponseBody> respuesta;
         // Busca el pedido por ID
         Optional<Pedido> pedidoOpt = pedidoRepo.findById(id);
 
         if (pedidoOpt.isEmpty()) {
             respuesta = ResponseEntity.notFound().build();
         } else {
-        	// Obtiene el pedido
+        	// Obtiene el pedido y copia sus líneas antes de empezar a escribir, mientras la sesión de base de datos sigue abierta
             Pedido pedido = pedidoOpt.get();
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            	// Crea un documento PDF en memoria usando un flujo de bytes
-                Document document = new Document();
-                // Asocia el documento al flujo de salida
-                PdfWriter.getInstance(document, baos);
-                // Abre el documento para empezar a escribir cont
-                document.open();
-
+            List<LineaPedido> lineas = new ArrayList<>(pedido.getDetalles());
+            // Configura la respuesta para que el navegador muestre el PDF
+            respuesta = pdfService.respuesta("pedido_" + id + ".pdf", true, document -> {
                 document.add(new Paragraph("Pedido Nº" + pedido.getId()));
                 document.add(new Paragraph("Cliente: " + pedido.getNombreCliente()));
                 document.add(new Paragraph("Dirección: " + pedido.getDireccion()));
@@ -273,25 +335,12 @@ public class pedidoController {
                 document.add(new Paragraph("Total: " + pedido.getTotal() + " €"));
                 document.add(new Paragraph(" "));
                 // Añade el listado de productos del pedido
-                for (LineaPedido linea : pedido.getDetalles()) {
+                for (LineaPedido linea : lineas) {
                     document.add(new Paragraph(
                             linea.getNombreProducto() + " - " + linea.getCantidad() + " x " + linea.getPrecioUnitario() + " €"
                     ));
                 }
-                // Cierra el documento
-                document.close();
-                // Configura las cabeceras para que el navegador descargue el PDF
-                HttpHeaders headers = new HttpHeaders();
-                headers.add("Content-Disposition", "inline; filename=pedido_" + id + ".pdf");
-                // Devuelve la respuesta HTTP con el PDF generado
-                respuesta = ResponseEntity.ok()
-                        .headers(headers)
-                        .contentType(MediaType.APPLICATION_PDF)
-                        .body(baos.toByteArray());
-
-            } catch (Exception e) {
-                respuesta = ResponseEntity.status(500).build();
-            }
+            });
         }
 
         return respuesta;
@@ -389,9 +438,18 @@ public class pedidoController {
      * @return Lista de detalles de productos vendidos.
      */
     @GetMapping("/productos-vendidos-mes")
-    public List<ProductoVentaDetalle> obtenerDetalleVentasMes(@RequestParam int anio, @RequestParam int mes) {
-    	// Llama al repositorio para obtener los productos vendidos en ese periodo
-    	return pedidoRepo.obtenerDetalleProductosDelMes(anio, mes);
+    public List<ProductoVentaDetalle> obtenerDetalleVentasMes(@RequestParam int anio, @RequestParam int mes, WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS))) {
+    		return null;
+    	}
+    	// Un mes fuera de 1-12 (o un año fuera de rango) no tiene ventas: se responde con la lista vacía, como la consulta original
+    	if (mes < 1 || mes > 12 || anio < Year.MIN_VALUE || anio > Year.MAX_VALUE) {
+    		return List.of();
+    	}
+    	// Productos vendidos en ese periodo, desde la caché de informes o el cubo de ventas
+    	YearMonth periodo = YearMonth.of(anio, mes);
+    	return cacheInformes.obtener(Informe.PRODUCTOS_DEL_MES, periodo.toString(), periodo.atDay(1), periodo.atEndOfMonth(),
+    			() -> cierres.productosVendidosDelMes(anio, mes));
     }
 
     /**
@@ -414,6 +472,7 @@ public class pedidoController {
             pedido.setTelefono(pedidoActualizado.getTelefono());
             // Guarda cambios
             pedidoRepo.save(pedido);
+            eventos.publishEvent(new PedidoModificadoEvent(pedido, PedidoModificadoEvent.Tipo.ACTUALIZADO));
 
             respuesta = ResponseEntity.ok(pedido);
         } else {
@@ -429,7 +488,10 @@ public class pedidoController {
      * @return Lista de pedidos hechos por ese cliente.
      */
     @GetMapping("/cliente")
-    public List<Pedido> getPedidosPorCliente(@RequestParam String email) {
+    public List<Pedido> getPedidosPorCliente(@RequestParam String email, WebRequest request) {
+    	if (request.checkNotModified(versiones.etag(Agregado.PEDIDOS, Agregado.PRODUCTOS))) {
+    		return null;
+    	}
     	// Busca todos los pedidos que coincidan con el email dado
         return pedidoRepo.findByEmail(email);
     }
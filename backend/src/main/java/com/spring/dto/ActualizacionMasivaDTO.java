@@ -0,0 +1,131 @@
+package com.spring.dto;
+
+/**
+ * DTO que describe una actualización masiva de productos.
+ *
+ * Se compone de un filtro (qué productos se actualizan) y de los cambios a aplicar.
+ * Los campos que llegan a null no se tienen en cuenta, ni en el filtro ni en los cambios.
+ *
+ * Ejemplo: aplicar un 10% de descuento a todos los productos de la categoría "aceite":
+ * 	{ "filtro": { "categoria": "aceite" }, "cambios": { "descuento": 10 } }
+ */
+
+import java.util.List;
+
+public class ActualizacionMasivaDTO {
+
+	// Productos a los que se aplican los cambios
+	private Filtro filtro = new Filtro();
+	// Cambios que se aplican
+	private Cambios cambios = new Cambios();
+
+	/**
+	 * Criterios para seleccionar los productos. Si no se indica ninguno se actualizan todos.
+	 */
+	public static class Filtro {
+		// Categoría de los productos (sin distinguir mayúsculas)
+		private String categoria;
+		// Visibilidad de los productos
+		private Boolean visible;
+		// Lista concreta de IDs
+		private List<Long> ids;
+
+		public String getCategoria() {
+			return categoria;
+		}
+
+		public void setCategoria(String categoria) {
+			this.categoria = categoria;
+		}
+
+		public Boolean getVisible() {
+			return visible;
+		}
+
+		public void setVisible(Boolean visible) {
+			this.visible = visible;
+		}
+
+		public List<Long> getIds() {
+			return ids;
+		}
+
+		public void setIds(List<Long> ids) {
+			this.ids = ids;
+		}
+	}
+
+	/**
+	 * Cambios a aplicar a los productos seleccionados.
+	 */
+	public static class Cambios {
+		// Nuevo precio de venta fijo
+		private Double precio;
+		// Variación porcentual del precio de venta (por ejemplo 5 sube un 5%, -10 baja un 10%)
+		private Double porcentajePrecio;
+		// Nuevo porcentaje de descuento
+		private Integer descuento;
+		// Nueva visibilidad
+		private Boolean visible;
+		// Nueva categoría
+		private String categoria;
+
+		public Double getPrecio() {
+			return precio;
+		}
+
+		public void setPrecio(Double precio) {
+			this.precio = precio;
+		}
+
+		public Double getPorcentajePrecio() {
+			return porcentajePrecio;
+		}
+
+		public void setPorcentajePrecio(Double porcentajePrecio) {
+			this.porcentajePrecio = porcentajePrecio;
+		}
+
+		public Integer getDescuento() {
+			return descuento;
+		}
+
+		public void setDescuento(Integer descuento) {
+			this.descuento = descuento;
+		}
+
+		public Boolean getVisible() {
+			return visible;
+		}
+
+		public void setVisible(Boolean visible) {
+			this.visible = visible;
+		}
+
+		public String getCategoria() {
+			return categoria;
+		}
+
+		public void setCategoria(String categoria) {
+			this.categoria = categoria;
+		}
+	}
+
+	// Getters y setters
+
+	public Filtro getFiltro() {
+		return filtro;
+	}
+
+	public void setFiltro(Filtro filtro) {
+		this.filtro = filtro;
+	}
+
+	public Cambios getCambios() {
+		return cambios;
+	}
+
+	public void setCambios(Cambios cambios) {
+		this.cambios = cambios;
+	}
+}
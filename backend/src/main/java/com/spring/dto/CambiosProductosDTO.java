@@ -0,0 +1,59 @@
+package com.spring.dto;
+
+/**
+ * DTO que representa los cambios del catálogo de productos desde una versión dada.
+ *
+ * Se devuelve en los endpoints de sincronización incremental (/api/productos/changes y
+ * /api/inventario/changes). El cliente guarda el campo version y lo envía como parámetro "since"
+ * en la siguiente petición, recibiendo sólo los productos modificados y los IDs eliminados desde entonces.
+ */
+
+import java.util.List;
+
+import com.spring.model.Producto;
+
+public class CambiosProductosDTO {
+
+	// Versión hasta la que llegan los cambios incluidos en esta respuesta
+	private long version;
+	// Productos creados o modificados después de la versión solicitada
+	private List<Producto> modificados;
+	// IDs de los productos eliminados después de la versión solicitada
+	private List<Long> eliminados;
+
+	/**
+	 * Constructor que inicializa todos los campos.
+	 * @param version versión actual del catálogo
+	 * @param modificados productos creados o modificados
+	 * @param eliminados IDs de productos eliminados
+	 */
+	public CambiosProductosDTO(long version, List<Producto> modificados, List<Long> eliminados) {
+		this.version = version;
+		this.modificados = modificados;
+		this.eliminados = eliminados;
+	}
+
+	/**
+	 * Devuelve la versión hasta la que llegan los cambios.
+	 * @return versión actual
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Devuelve los productos creados o modificados.
+	 * @return lista de productos
+	 */
+	public List<Producto> getModificados() {
+		return modificados;
+	}
+
+	/**
+	 * Devuelve los IDs de los productos eliminados.
+	 * @return lista de IDs
+	 */
+	public List<Long> getEliminados() {
+		return eliminados;
+	}
+}
@@ -0,0 +1,70 @@
+package com.spring.dto;
+
+/**
+ * DTO con los datos de un producto que se indexan y se devuelven en las búsquedas.
+ *
+ * No incluye la imagen ni otros campos pesados, de modo que cargar el catálogo para construir
+ * el índice de búsqueda y enviar los resultados al frontend sea ligero.
+ */
+
+public class ProductoBusquedaDTO {
+
+	private Long id;
+	private String nombre;
+	private String descripcion;
+	private String categoria;
+	private double precio;
+	private Integer descuento;
+	private boolean visible;
+
+	/**
+	 * Constructor con todos los campos, usado directamente desde las consultas JPQL.
+	 * @param id ID del producto
+	 * @param nombre nombre del producto
+	 * @param descripcion descripción del producto
+	 * @param categoria categoría del producto
+	 * @param precio precio de venta
+	 * @param descuento porcentaje de descuento
+	 * @param visible si el producto se muestra en la tienda
+	 */
+	public ProductoBusquedaDTO(Long id, String nombre, String descripcion, String categoria,
+			double precio, Integer descuento, boolean visible) {
+		this.id = id;
+		this.nombre = nombre;
+		this.descripcion = descripcion;
+		this.categoria = categoria;
+		this.precio = precio;
+		this.descuento = descuento;
+		this.visible = visible;
+	}
+
+	// Getters
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getNombre() {
+		return nombre;
+	}
+
+	public String getDescripcion() {
+		return descripcion;
+	}
+
+	public String getCategoria() {
+		return categoria;
+	}
+
+	public double getPrecio() {
+		return precio;
+	}
+
+	public Integer getDescuento() {
+		return descuento;
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+}
@@ -0,0 +1,57 @@
+package com.spring.dto;
+
+/**
+ * DTO que representa el resultado de una búsqueda en el catálogo.
+ *
+ * Contiene los productos encontrados (ordenados por relevancia y limitados al número pedido),
+ * el total de coincidencias y las facetas: cuántos productos del resultado hay por cada categoría
+ * y por visibilidad, para que el frontend pueda mostrar los filtros con sus contadores.
+ */
+
+import java.util.List;
+import java.util.Map;
+
+public class ResultadoBusquedaDTO {
+
+	// Número total de productos que cumplen la búsqueda
+	private int total;
+	// Productos encontrados, como máximo el límite solicitado
+	private List<ProductoBusquedaDTO> resultados;
+	// Número de productos por categoría dentro del resultado
+	private Map<String, Integer> facetasCategoria;
+	// Número de productos visibles y ocultos dentro del resultado
+	private Map<Boolean, Integer> facetasVisible;
+
+	/**
+	 * Constructor que inicializa todos los campos.
+	 * @param total número total de coincidencias
+	 * @param resultados productos devueltos
+	 * @param facetasCategoria recuento por categoría
+	 * @param facetasVisible recuento por visibilidad
+	 */
+	public ResultadoBusquedaDTO(int total, List<ProductoBusquedaDTO> resultados,
+			Map<String, Integer> facetasCategoria, Map<Boolean, Integer> facetasVisible) {
+		this.total = total;
+		this.resultados = resultados;
+		this.facetasCategoria = facetasCategoria;
+		this.facetasVisible = facetasVisible;
+	}
+
+	// Getters
+
+	public int getTotal() {
+		return total;
+	}
+
+	public List<ProductoBusquedaDTO> getResultados() {
+		return resultados;
+	}
+
+	public Map<String, Integer> getFacetasCategoria() {
+		return facetasCategoria;
+	}
+
+	public Map<Boolean, Integer> getFacetasVisible() {
+		return facetasVisible;
+	}
+}
@@ -0,0 +1,53 @@
+package com.spring.event;
+
+/**
+ * Evento que se publica cada vez que se crea o se elimina una factura.
+ *
+ * Lo publica FacturacionController mediante ApplicationEventPublisher. Incluye la propia factura
+ * (en el caso de una eliminación, la que existía justo antes de borrarse) para que los servicios
+ * que guardan totales de facturación sepan a qué fecha afecta el cambio.
+ */
+
+import com.spring.model.Factura;
+
+public class FacturaModificadaEvent {
+
+	/**
+	 * Tipo de cambio realizado sobre la factura.
+	 */
+	public enum Tipo {
+		CREADA,
+		ELIMINADA
+	}
+
+	// Factura afectada por el cambio
+	private final Factura factura;
+	// Tipo de cambio realizado
+	private final Tipo tipo;
+
+	/**
+	 * Constructor que inicializa la factura afectada y el tipo de cambio.
+	 * @param factura factura modificada
+	 * @param tipo tipo de cambio realizado
+	 */
+	public FacturaModificadaEvent(Factura factura, Tipo tipo) {
+		this.factura = factura;
+		this.tipo = tipo;
+	}
+
+	/**
+	 * Devuelve la factura afectada.
+	 * @return factura modificada
+	 */
+	public Factura getFactura() {
+		return factura;
+	}
+
+	/**
+	 * Devuelve el tipo de cambio realizado.
+	 * @return tipo de cambio
+	 */
+	public Tipo getTipo() {
+		return tipo;
+	}
+}
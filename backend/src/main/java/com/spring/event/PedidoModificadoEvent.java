@@ -0,0 +1,57 @@
+package com.spring.event;
+
+/**
+ * Evento que se publica cada vez que un pedido se crea, se modifica o se elimina.
+ *
+ * Lo publica pedidoController (y cualquier otro controlador que cambie el estado de un pedido)
+ * mediante ApplicationEventPublisher. Incluye el propio pedido para que los servicios que mantienen
+ * datos derivados de las ventas puedan actualizarse sin volver a consultarlo; en el caso de una
+ * eliminación, el pedido es el que existía justo antes de borrarse.
+ */
+
+import com.spring.model.Pedido;
+
+public class PedidoModificadoEvent {
+
+	/**
+	 * Tipo de cambio realizado sobre el pedido.
+	 */
+	public enum Tipo {
+		CREADO,
+		ACTUALIZADO,
+		ENVIADO,
+		PAGADO,
+		ELIMINADO
+	}
+
+	// Pedido afectado por el cambio
+	private final Pedido pedido;
+	// Tipo de cambio realizado
+	private final Tipo tipo;
+
+	/**
+	 * Constructor que inicializa el pedido afectado y el tipo de cambio.
+	 * @param pedido pedido modificado
+	 * @param tipo tipo de cambio realizado
+	 */
+	public PedidoModificadoEvent(Pedido pedido, Tipo tipo) {
+		this.pedido = pedido;
+		this.tipo = tipo;
+	}
+
+	/**
+	 * Devuelve el pedido afectado.
+	 * @return pedido modificado
+	 */
+	public Pedido getPedido() {
+		return pedido;
+	}
+
+	/**
+	 * Devuelve el tipo de cambio realizado.
+	 * @return tipo de cambio
+	 */
+	public Tipo getTipo() {
+		return tipo;
+	}
+}
@@ -0,0 +1,53 @@
+package com.spring.event;
+
+/**
+ * Evento que se publica cada vez que un producto se crea, se modifica o se elimina.
+ *
+ * Los controladores que escriben sobre la entidad Producto lo publican mediante
+ * ApplicationEventPublisher, y los servicios que mantienen datos derivados del catálogo
+ * (caché del catálogo visible, índices, contadores...) lo escuchan para actualizarse
+ * sin que los controladores tengan que conocerlos.
+ */
+
+public class ProductoModificadoEvent {
+
+	/**
+	 * Tipo de cambio realizado sobre el producto.
+	 */
+	public enum Tipo {
+		CREADO,
+		ACTUALIZADO,
+		ELIMINADO
+	}
+
+	// Identificador del producto afectado (null si el cambio afecta a varios productos a la vez)
+	private final Long productoId;
+	// Tipo de cambio realizado
+	private final Tipo tipo;
+
+	/**
+	 * Constructor que inicializa el producto afectado y el tipo de cambio.
+	 * @param productoId identificador del producto modificado
+	 * @param tipo tipo de cambio realizado
+	 */
+	public ProductoModificadoEvent(Long productoId, Tipo tipo) {
+		this.productoId = productoId;
+		this.tipo = tipo;
+	}
+
+	/**
+	 * Devuelve el identificador del producto afectado.
+	 * @return id del producto
+	 */
+	public Long getProductoId() {
+		return productoId;
+	}
+
+	/**
+	 * Devuelve el tipo de cambio realizado.
+	 * @return tipo de cambio
+	 */
+	public Tipo getTipo() {
+		return tipo;
+	}
+}
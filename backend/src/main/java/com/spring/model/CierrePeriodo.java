@@ -0,0 +1,159 @@
+package com.spring.model;
+
+/**
+ * Cierre de un periodo ya terminado (un mes o un año completo): los totales de ventas, productos vendidos,
+ * movimientos de stock y facturas calculados una sola vez al terminar el periodo.
+ *
+ * Los meses y años pasados ya no cambian, así que los informes leen estos totales en lugar de volver
+ * a calcularlos. Solo se recalculan si se elimina un pedido o una factura de ese periodo (ver CierresService).
+ *
+ * Un cierre no se modifica nunca (@Immutable): volver a cerrar un periodo borra el cierre anterior y guarda uno nuevo.
+ *
+ * Se almacena en la tabla "cierre_periodo", con una fila única por año y mes (mes 0 para el año completo).
+ * Los productos vendidos se guardan como JSON [{"nombreProducto": ..., "cantidadVendida": ...}].
+ */
+
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.Immutable;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+@Entity
+@Immutable
+@Table(name = "cierre_periodo",
+		uniqueConstraints = @UniqueConstraint(name = "uk_cierre_periodo", columnNames = {"anio", "mes"}))
+public class CierrePeriodo {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	// Identificador del cierre
+	private Long id;
+
+	// Año del periodo
+	private int anio;
+
+	// Mes del periodo (1-12), o 0 si es el año completo
+	private int mes;
+
+	// Momento en que se calculó el cierre
+	private LocalDateTime fechaCierre;
+
+	// Ventas: número de pedidos, importe y unidades vendidas
+	private long pedidos;
+	private double importeVentas;
+	private long unidadesVendidas;
+
+	// Productos vendidos en el periodo, de más a menos unidades, en JSON
+	@Lob
+	@JsonRawValue
+	private String productos;
+
+	// Movimientos de stock: número de movimientos y unidades de entrada y de salida
+	private long movimientosEntrada;
+	private long unidadesEntrada;
+	private long movimientosSalida;
+	private long unidadesSalida;
+
+	// Facturas: número de facturas, importe sin IVA e importe con IVA y envío
+	private long facturas;
+	private double importeFacturas;
+	private double importeFacturasConIva;
+
+	/**
+	 * Constructor vacío obligatorio para JPA.
+	 */
+	protected CierrePeriodo() {}
+
+	/**
+	 * Constructor con todos los datos del cierre.
+	 */
+	public CierrePeriodo(int anio, int mes, long pedidos, double importeVentas, long unidadesVendidas, String productos,
+			long movimientosEntrada, long unidadesEntrada, long movimientosSalida, long unidadesSalida,
+			long facturas, double importeFacturas, double importeFacturasConIva) {
+		this.anio = anio;
+		this.mes = mes;
+		this.fechaCierre = LocalDateTime.now();
+		this.pedidos = pedidos;
+		this.importeVentas = importeVentas;
+		this.unidadesVendidas = unidadesVendidas;
+		this.productos = productos;
+		this.movimientosEntrada = movimientosEntrada;
+		this.unidadesEntrada = unidadesEntrada;
+		this.movimientosSalida = movimientosSalida;
+		this.unidadesSalida = unidadesSalida;
+		this.facturas = facturas;
+		this.importeFacturas = importeFacturas;
+		this.importeFacturasConIva = importeFacturasConIva;
+	}
+
+	// Getters (sin setters: el cierre no cambia una vez creado)
+
+	public Long getId() {
+		return id;
+	}
+
+	public int getAnio() {
+		return anio;
+	}
+
+	public int getMes() {
+		return mes;
+	}
+
+	public LocalDateTime getFechaCierre() {
+		return fechaCierre;
+	}
+
+	public long getPedidos() {
+		return pedidos;
+	}
+
+	public double getImporteVentas() {
+		return importeVentas;
+	}
+
+	public long getUnidadesVendidas() {
+		return unidadesVendidas;
+	}
+
+	public String getProductos() {
+		return productos;
+	}
+
+	public long getMovimientosEntrada() {
+		return movimientosEntrada;
+	}
+
+	public long getUnidadesEntrada() {
+		return unidadesEntrada;
+	}
+
+	public long getMovimientosSalida() {
+		return movimientosSalida;
+	}
+
+	public long getUnidadesSalida() {
+		return unidadesSalida;
+	}
+
+	public long getFacturas() {
+		return facturas;
+	}
+
+	public double getImporteFacturas() {
+		return importeFacturas;
+	}
+
+	public double getImporteFacturasConIva() {
+		return importeFacturasConIva;
+	}
+}
@@ -0,0 +1,72 @@
+package com.spring.model;
+
+/**
+ * Clientes distintos de un día, guardados como un contador HyperLogLog (ver service.HyperLogLog).
+ *
+ * En lugar de la lista de emails del día se guardan los registros del contador, que ocupan como mucho 3 KB
+ * (unos pocos bytes por cliente en los días con pocos pedidos). Los clientes únicos de cualquier rango de
+ * fechas se estiman combinando los contadores de sus días, sin volver a recorrer los pedidos.
+ *
+ * Se almacena en la tabla "clientes_dia", con una fila única por fecha.
+ */
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+@Entity
+@Table(name = "clientes_dia", uniqueConstraints = @UniqueConstraint(name = "uk_clientes_dia", columnNames = "fecha"))
+public class ClientesDia {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	// Identificador de la fila
+	private Long id;
+
+	// Día de los pedidos
+	@Column(nullable = false)
+	private LocalDate fecha;
+
+	// Registros del contador en su formato compacto (como mucho 1 + 4096 × 6 / 8 = 3073 bytes)
+	@Column(nullable = false, length = 3073)
+	private byte[] registros;
+
+	/**
+	 * Constructor vacío obligatorio para JPA.
+	 */
+	protected ClientesDia() {}
+
+	/**
+	 * Constructor con el día y los registros del contador.
+	 * @param fecha día de los pedidos
+	 * @param registros registros del contador en formato compacto
+	 */
+	public ClientesDia(LocalDate fecha, byte[] registros) {
+		this.fecha = fecha;
+		this.registros = registros;
+	}
+
+	// Getters y setters
+
+	public Long getId() {
+		return id;
+	}
+
+	public LocalDate getFecha() {
+		return fecha;
+	}
+
+	public byte[] getRegistros() {
+		return registros;
+	}
+
+	public void setRegistros(byte[] registros) {
+		this.registros = registros;
+	}
+}
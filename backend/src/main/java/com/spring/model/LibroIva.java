@@ -0,0 +1,136 @@
+package com.spring.model;
+
+/**
+ * Fila del libro de IVA: los totales de las facturas de un mes con un mismo tipo de IVA.
+ *
+ * Para la declaración trimestral hacen falta la base imponible, la cuota de IVA y el envío de cada trimestre
+ * por tipo de IVA. En lugar de recorrer todas las facturas del trimestre, los totales se acumulan en esta tabla
+ * al emitir o eliminar una factura, y el resumen de un trimestre suma como mucho tres filas por tipo de IVA.
+ *
+ * Los importes se guardan en céntimos (enteros) para que sumar y restar facturas no acumule errores de redondeo
+ * y la verificación contra las facturas pueda exigir que coincidan exactamente. La cuota de cada factura
+ * se redondea al céntimo antes de sumarla, como en la propia factura.
+ *
+ * Se almacena en la tabla "libro_iva", con una fila única por año, mes y tipo de IVA.
+ */
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+@Entity
+@Table(name = "libro_iva",
+		uniqueConstraints = @UniqueConstraint(name = "uk_libro_iva", columnNames = {"anio", "mes", "tipo_iva"}))
+public class LibroIva {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	// Identificador de la fila
+	private Long id;
+
+	// Año de las facturas
+	@Column(nullable = false)
+	private int anio;
+
+	// Mes de las facturas (1-12)
+	@Column(nullable = false)
+	private int mes;
+
+	// Tipo de IVA en centésimas de punto porcentual (2100 = 21 %)
+	@Column(name = "tipo_iva", nullable = false)
+	private int tipoIva;
+
+	// Número de facturas
+	private long facturas;
+
+	// Base imponible (importe sin IVA ni envío), en céntimos
+	private long baseImponible;
+
+	// Cuota de IVA, en céntimos
+	private long cuotaIva;
+
+	// Coste de envío, en céntimos
+	private long costeEnvio;
+
+	// Total de las facturas (base, IVA y envío), en céntimos
+	private long total;
+
+	/**
+	 * Constructor vacío obligatorio para JPA.
+	 */
+	public LibroIva() {}
+
+	// Getters y setters
+
+	public Long getId() {
+		return id;
+	}
+
+	public int getAnio() {
+		return anio;
+	}
+
+	public void setAnio(int anio) {
+		this.anio = anio;
+	}
+
+	public int getMes() {
+		return mes;
+	}
+
+	public void setMes(int mes) {
+		this.mes = mes;
+	}
+
+	public int getTipoIva() {
+		return tipoIva;
+	}
+
+	public void setTipoIva(int tipoIva) {
+		this.tipoIva = tipoIva;
+	}
+
+	public long getFacturas() {
+		return facturas;
+	}
+
+	public void setFacturas(long facturas) {
+		this.facturas = facturas;
+	}
+
+	public long getBaseImponible() {
+		return baseImponible;
+	}
+
+	public void setBaseImponible(long baseImponible) {
+		this.baseImponible = baseImponible;
+	}
+
+	public long getCuotaIva() {
+		return cuotaIva;
+	}
+
+	public void setCuotaIva(long cuotaIva) {
+		this.cuotaIva = cuotaIva;
+	}
+
+	public long getCosteEnvio() {
+		return costeEnvio;
+	}
+
+	public void setCosteEnvio(long costeEnvio) {
+		this.costeEnvio = costeEnvio;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public void setTotal(long total) {
+		this.total = total;
+	}
+}
@@ -5,6 +5,9 @@ package com.spring.model;
  * Cada línea incluye información sobre el producto, la cantidad solicitada, el precio por unidad,
  * y una referencia tanto al producto como al pedido al que pertenece.
  * 
+ * Guarda también el precio de compra del producto en el momento de la venta (precioCompra), para que
+ * los márgenes de los pedidos antiguos no cambien aunque después cambie el precio de compra del producto.
+ * 
  * Además, contiene un campo transitorio productoId útil para intercambios de datos con el frontend,
  * sin necesidad de enviar el objeto completo del producto.
  * 
@@ -12,7 +15,9 @@ package com.spring.model;
  */
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -34,6 +39,14 @@ public class LineaPedido {
     private int cantidad;
     // Precio por unidad del producto en esta línea.
     private double precioUnitario;
+    // Precio de compra por unidad del producto cuando se hizo el pedido (null si no se conocía).
+    @Column(name = "precio_compra")
+    private Double precioCompra;
+    // true si precioCompra ya es definitivo. Las líneas nuevas nacen así; las anteriores a que existiera la columna
+    // quedan a null hasta que RentabilidadService completa su precio de compra, una sola vez.
+    @JsonIgnore
+    @Column(name = "precio_compra_fijado")
+    private Boolean precioCompraFijado = true;
     
     // Relación muchos-a-uno
     @ManyToOne
@@ -83,6 +96,22 @@ public class LineaPedido {
         this.precioUnitario = precioUnitario;
     }
 
+    public Double getPrecioCompra() {
+        return precioCompra;
+    }
+
+    public void setPrecioCompra(Double precioCompra) {
+        this.precioCompra = precioCompra;
+    }
+
+    public Boolean getPrecioCompraFijado() {
+        return precioCompraFijado;
+    }
+
+    public void setPrecioCompraFijado(Boolean precioCompraFijado) {
+        this.precioCompraFijado = precioCompraFijado;
+    }
+
     public Pedido getPedido() {
         return pedido;
     }
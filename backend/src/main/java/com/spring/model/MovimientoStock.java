@@ -22,9 +22,13 @@ import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 
+import com.spring.service.MovimientoStockListener;
+
 @Entity
 // Especifica el nombre de la tabla en la base de datos que estará asociada a esta clase.
 @Table(name = "movimiento_stock")
+// Avisa a la previsión de demanda de cada salida guardada, sea cual sea el controlador que la registre
+@EntityListeners(MovimientoStockListener.class)
 public class MovimientoStock {
 
     @Id
@@ -16,6 +16,7 @@ package com.spring.model;
  */
 
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonManagedReference;
@@ -25,9 +26,13 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.Table;
 
 @Entity
+// Índice por fecha para los informes de rentabilidad y demás consultas por rango de fechas
+@Table(indexes = @Index(name = "idx_pedido_fecha", columnList = "fecha_pedido"))
 public class Pedido {
 
     @Id
@@ -51,6 +56,8 @@ public class Pedido {
     private String telefono;
 
     private LocalDate fechaPedido;
+    // Hora a la que se creó el pedido, para las ventas por hora del día
+    private LocalTime horaPedido;
     private Double total;
     // Indica si el pedido ya ha sido enviado
     private boolean enviado = false;
@@ -159,6 +166,14 @@ public class Pedido {
         this.fechaPedido = fechaPedido;
     }
 
+    public LocalTime getHoraPedido() {
+        return horaPedido;
+    }
+
+    public void setHoraPedido(LocalTime horaPedido) {
+        this.horaPedido = horaPedido;
+    }
+
     public Double getTotal() {
         return total;
     }
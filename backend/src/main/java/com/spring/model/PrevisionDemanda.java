@@ -0,0 +1,121 @@
+package com.spring.model;
+
+/**
+ * Estado guardado de la previsión de demanda de un producto (ver service.DemandaSuavizada).
+ *
+ * La demanda se mantiene en memoria y se actualiza con cada salida de stock. Para no tener que recorrer
+ * todo el histórico de movimientos al arrancar, se guarda periódicamente en esta tabla junto con el movimiento
+ * hasta el que incluye todas las salidas: al arrancar se carga y solo se aplican los movimientos posteriores.
+ *
+ * Se almacena en la tabla "prevision_demanda", con una fila única por producto.
+ */
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+@Entity
+@Table(name = "prevision_demanda",
+		uniqueConstraints = @UniqueConstraint(name = "uk_prevision_demanda", columnNames = "producto_id"))
+public class PrevisionDemanda {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	// Identificador de la fila
+	private Long id;
+
+	// ID del producto
+	@Column(name = "producto_id", nullable = false)
+	private Long productoId;
+
+	// Media suavizada (sin corregir) de las unidades que salen por día
+	private double media;
+
+	// Media suavizada (sin corregir) del cuadrado de las unidades por día
+	private double mediaCuadrados;
+
+	// Días cerrados que han entrado en las medias
+	private long dias;
+
+	// Día abierto (el de la última salida o posterior), o null si aún no ha habido salidas
+	private LocalDate diaAbierto;
+
+	// Unidades que han salido en el día abierto
+	private double unidadesDiaAbierto;
+
+	// ID hasta el que el estado incluye todas las salidas (ninguna posterior, aunque se haya confirmado antes)
+	private long ultimoMovimiento;
+
+	/**
+	 * Constructor vacío obligatorio para JPA.
+	 */
+	public PrevisionDemanda() {}
+
+	// Getters y setters
+
+	public Long getId() {
+		return id;
+	}
+
+	public Long getProductoId() {
+		return productoId;
+	}
+
+	public void setProductoId(Long productoId) {
+		this.productoId = productoId;
+	}
+
+	public double getMedia() {
+		return media;
+	}
+
+	public void setMedia(double media) {
+		this.media = media;
+	}
+
+	public double getMediaCuadrados() {
+		return mediaCuadrados;
+	}
+
+	public void setMediaCuadrados(double mediaCuadrados) {
+		this.mediaCuadrados = mediaCuadrados;
+	}
+
+	public long getDias() {
+		return dias;
+	}
+
+	public void setDias(long dias) {
+		this.dias = dias;
+	}
+
+	public LocalDate getDiaAbierto() {
+		return diaAbierto;
+	}
+
+	public void setDiaAbierto(LocalDate diaAbierto) {
+		this.diaAbierto = diaAbierto;
+	}
+
+	public double getUnidadesDiaAbierto() {
+		return unidadesDiaAbierto;
+	}
+
+	public void setUnidadesDiaAbierto(double unidadesDiaAbierto) {
+		this.unidadesDiaAbierto = unidadesDiaAbierto;
+	}
+
+	public long getUltimoMovimiento() {
+		return ultimoMovimiento;
+	}
+
+	public void setUltimoMovimiento(long ultimoMovimiento) {
+		this.ultimoMovimiento = ultimoMovimiento;
+	}
+}
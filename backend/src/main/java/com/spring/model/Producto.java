@@ -10,20 +10,32 @@ package com.spring.model;
  * Esta entidad se mapea a una tabla en la base de datos y contiene anotaciones que
  * definen relaciones y configuraciones para el almacenamiento, incluyendo el uso de
  * LONGBLOB para imágenes y campos personalizados como "categoria" y "precio_compra".
+ *
+ * Cada vez que se inserta o actualiza, ProductoVersionListener le asigna una nueva versión de cambio,
+ * que permite a los clientes pedir sólo los productos modificados desde la última versión que conocen.
  */
 
 import java.util.Date;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
 import jakarta.persistence.Temporal;
 import jakarta.persistence.TemporalType;
 
+import com.spring.service.ProductoVersionListener;
+
 @Entity
+// Índice sobre la versión de cambio para consultar rápidamente los productos modificados
+@Table(indexes = @Index(name = "idx_producto_version_cambio", columnList = "version_cambio"))
+// Asigna la versión de cambio antes de cada inserción o actualización
+@EntityListeners(ProductoVersionListener.class)
 public class Producto {
 	
 	@Id
@@ -69,6 +81,10 @@ public class Producto {
     @Temporal(TemporalType.TIMESTAMP)
     private Date fechaActualizacionStock;
     
+    // Versión global del último cambio de este producto (null en productos anteriores a esta columna)
+    @Column(name = "version_cambio")
+    private Long versionCambio;
+    
     /**
      * Devuelve la fecha en que se actualizó por última vez el stock del producto.
      * @return fecha de actualización del stock
@@ -175,4 +191,12 @@ public class Producto {
     public void setPrecioCompra(Double precioCompra) {
         this.precioCompra = precioCompra;
     }
+
+    public Long getVersionCambio() {
+        return versionCambio;
+    }
+
+    public void setVersionCambio(Long versionCambio) {
+        this.versionCambio = versionCambio;
+    }
 }
@@ -0,0 +1,80 @@
+package com.spring.model;
+
+/**
+ * Marca de borrado (tombstone) de un producto.
+ *
+ * Cuando se elimina un producto ya no queda ninguna fila que indique que ha cambiado, así que se guarda
+ * este registro con el ID del producto y la versión de cambio en la que se eliminó. De este modo los clientes
+ * que sincronizan por versiones pueden saber qué productos deben quitar de su copia local.
+ *
+ * Se almacena en la tabla "producto_eliminado".
+ */
+
+import java.util.Date;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+
+@Entity
+@Table(name = "producto_eliminado", indexes = @Index(name = "idx_producto_eliminado_version", columnList = "version_cambio"))
+public class ProductoEliminado {
+
+	// ID del producto eliminado, que también sirve como clave primaria
+	@Id
+	private Long productoId;
+
+	// Versión global en la que se eliminó el producto
+	@Column(name = "version_cambio")
+	private Long versionCambio;
+
+	// Fecha y hora de la eliminación
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date fechaEliminacion;
+
+	/**
+	 * Constructor vacío obligatorio para JPA.
+	 */
+	public ProductoEliminado() {}
+
+	/**
+	 * Crea la marca de borrado de un producto con la fecha actual.
+	 * @param productoId ID del producto eliminado
+	 * @param versionCambio versión en la que se eliminó
+	 */
+	public ProductoEliminado(Long productoId, Long versionCambio) {
+		this.productoId = productoId;
+		this.versionCambio = versionCambio;
+		this.fechaEliminacion = new Date();
+	}
+
+	// Getters y setters
+
+	public Long getProductoId() {
+		return productoId;
+	}
+
+	public void setProductoId(Long productoId) {
+		this.productoId = productoId;
+	}
+
+	public Long getVersionCambio() {
+		return versionCambio;
+	}
+
+	public void setVersionCambio(Long versionCambio) {
+		this.versionCambio = versionCambio;
+	}
+
+	public Date getFechaEliminacion() {
+		return fechaEliminacion;
+	}
+
+	public void setFechaEliminacion(Date fechaEliminacion) {
+		this.fechaEliminacion = fechaEliminacion;
+	}
+}
@@ -0,0 +1,114 @@
+package com.spring.model;
+
+/**
+ * Celda del cubo de ventas: lo vendido de un producto en un día.
+ *
+ * En lugar de recorrer todos los pedidos y sus líneas cada vez que se pide un informe, las ventas se
+ * acumulan en esta tabla por día y producto al crear o eliminar un pedido. Los informes por día, mes, año
+ * o producto suman estas filas, cuyo número depende de los días y productos con ventas y no del número de pedidos.
+ *
+ * El producto se identifica por el nombre guardado en la línea de pedido, igual que en los informes,
+ * para que las ventas antiguas sigan apareciendo aunque el producto se haya renombrado o eliminado.
+ *
+ * Se almacena en la tabla "venta_diaria_producto", con una fila única por fecha y nombre de producto.
+ */
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+@Entity
+@Table(name = "venta_diaria_producto",
+		uniqueConstraints = @UniqueConstraint(name = "uk_venta_diaria_producto", columnNames = {"fecha", "nombre_producto"}))
+public class VentaDiariaProducto {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	// Identificador de la celda
+	private Long id;
+
+	// Día de las ventas
+	@Column(nullable = false)
+	private LocalDate fecha;
+
+	// Nombre del producto tal como aparece en las líneas de pedido
+	@Column(name = "nombre_producto", nullable = false)
+	private String nombreProducto;
+
+	// ID del producto, si las líneas lo tenían asociado
+	private Long productoId;
+
+	// Unidades vendidas
+	private long unidades;
+
+	// Importe vendido (precio unitario × cantidad)
+	private double importe;
+
+	// Número de pedidos que incluyen el producto
+	private long pedidos;
+
+	/**
+	 * Constructor vacío obligatorio para JPA.
+	 */
+	public VentaDiariaProducto() {}
+
+	// Getters y setters
+
+	public Long getId() {
+		return id;
+	}
+
+	public LocalDate getFecha() {
+		return fecha;
+	}
+
+	public void setFecha(LocalDate fecha) {
+		this.fecha = fecha;
+	}
+
+	public String getNombreProducto() {
+		return nombreProducto;
+	}
+
+	public void setNombreProducto(String nombreProducto) {
+		this.nombreProducto = nombreProducto;
+	}
+
+	public Long getProductoId() {
+		return productoId;
+	}
+
+	public void setProductoId(Long productoId) {
+		this.productoId = productoId;
+	}
+
+	public long getUnidades() {
+		return unidades;
+	}
+
+	public void setUnidades(long unidades) {
+		this.unidades = unidades;
+	}
+
+	public double getImporte() {
+		return importe;
+	}
+
+	public void setImporte(double importe) {
+		this.importe = importe;
+	}
+
+	public long getPedidos() {
+		return pedidos;
+	}
+
+	public void setPedidos(long pedidos) {
+		this.pedidos = pedidos;
+	}
+}
@@ -0,0 +1,24 @@
+package com.spring.repository;
+
+/**
+ * Repositorio JPA para los cierres de periodos (CierrePeriodo).
+ *
+ * Los cierres no se modifican: para volver a cerrar un periodo se borra su cierre y se guarda uno nuevo.
+ */
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.spring.model.CierrePeriodo;
+
+public interface CierrePeriodoRepository extends JpaRepository<CierrePeriodo, Long> {
+
+	// Borra el cierre de un periodo (mes 0 para el año completo).
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM CierrePeriodo c WHERE c.anio = :anio AND c.mes = :mes")
+	int borrar(@Param("anio") int anio, @Param("mes") int mes);
+}
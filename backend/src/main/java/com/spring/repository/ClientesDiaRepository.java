@@ -0,0 +1,22 @@
+package com.spring.repository;
+
+/**
+ * Repositorio JPA para los contadores de clientes distintos por día (ClientesDia).
+ */
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.spring.model.ClientesDia;
+
+public interface ClientesDiaRepository extends JpaRepository<ClientesDia, Long> {
+
+	// Contador de un día, si ese día hay pedidos con email.
+	Optional<ClientesDia> findByFecha(LocalDate fecha);
+
+	// Contadores de los días de un rango (incluidos), en orden de fecha.
+	List<ClientesDia> findByFechaBetweenOrderByFecha(LocalDate desde, LocalDate hasta);
+}
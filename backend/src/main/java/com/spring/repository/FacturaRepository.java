@@ -1,6 +1,12 @@
 package com.spring.repository;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.spring.model.Factura;
 
@@ -17,4 +23,21 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
 
     // El primer parámetro <Factura> indica la entidad que va a manejar.
     // El segundo parámetro <Long> indica el tipo de la clave primaria de la entidad Factura es de tipo Long.
+
+    /**
+     * Resume las facturas emitidas entre dos fechas (incluidas).
+     * @return una fila [número de facturas, importe sin IVA, importe con IVA y envío]
+     */
+    @Query("SELECT COUNT(f), COALESCE(SUM(f.total), 0), COALESCE(SUM(f.totalConIva), 0) FROM Factura f " +
+    		"WHERE f.fecha BETWEEN :desde AND :hasta")
+    List<Object[]> resumirEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    // Fecha de la factura más antigua, o null si no hay facturas.
+    @Query("SELECT MIN(f.fecha) FROM Factura f")
+    LocalDate primeraFecha();
+
+    // Fecha, importe sin IVA, tipo de IVA, envío y total de todas las facturas con fecha, para el libro de IVA:
+    // filas [fecha, total, iva, costeEnvio, totalConIva].
+    @Query("SELECT f.fecha, f.total, f.iva, f.costeEnvio, f.totalConIva FROM Factura f WHERE f.fecha IS NOT NULL")
+    Stream<Object[]> recorrerImportes();
 }
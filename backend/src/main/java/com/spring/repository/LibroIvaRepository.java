@@ -0,0 +1,58 @@
+package com.spring.repository;
+
+/**
+ * Repositorio JPA para el libro de IVA por mes y tipo de IVA (LibroIva).
+ *
+ * Funcionalidades principales:
+ *
+ * 	Mantenimiento:
+ * 		Sumar (o restar, con valores negativos) una factura a la fila de su mes y tipo de IVA, creándola si no existe.
+ * 		Borrar las filas que se han quedado sin facturas.
+ *
+ * 	Consultas:
+ * 		Filas de los meses de un año entre dos meses, para los resúmenes por trimestre.
+ */
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.spring.model.LibroIva;
+
+public interface LibroIvaRepository extends JpaRepository<LibroIva, Long> {
+
+	/**
+	 * Suma unos importes (en céntimos) a la fila de un mes y tipo de IVA, creándola si aún no existe.
+	 * Es una única sentencia atómica, así que dos facturas simultáneas del mismo mes no se pisan.
+	 * Con valores negativos resta una factura eliminada.
+	 * Usa el alias de fila (MySQL 8.0.19 o posterior) en lugar de VALUES(columna), que está obsoleto.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = """
+			INSERT INTO libro_iva (anio, mes, tipo_iva, facturas, base_imponible, cuota_iva, coste_envio, total)
+			VALUES (:anio, :mes, :tipoIva, :facturas, :base, :cuota, :envio, :total) AS n
+			ON DUPLICATE KEY UPDATE
+			    facturas = facturas + n.facturas,
+			    base_imponible = base_imponible + n.base_imponible,
+			    cuota_iva = cuota_iva + n.cuota_iva,
+			    coste_envio = coste_envio + n.coste_envio,
+			    total = total + n.total
+			""", nativeQuery = true)
+	void acumular(@Param("anio") int anio, @Param("mes") int mes, @Param("tipoIva") int tipoIva,
+			@Param("facturas") long facturas, @Param("base") long base, @Param("cuota") long cuota,
+			@Param("envio") long envio, @Param("total") long total);
+
+	// Borra las filas de un mes que ya no tienen ninguna factura (tras eliminar facturas).
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM LibroIva l WHERE l.anio = :anio AND l.mes = :mes AND l.facturas <= 0")
+	int borrarVacias(@Param("anio") int anio, @Param("mes") int mes);
+
+	// Filas de un año entre dos meses (incluidos), ordenadas por mes y tipo de IVA.
+	List<LibroIva> findByAnioAndMesBetweenOrderByMesAscTipoIvaAsc(int anio, int desde, int hasta);
+}
@@ -1,9 +1,89 @@
 package com.spring.repository;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
 import com.spring.model.LineaPedido;
 
 //Esta interfaz representa un repositorio para trabajar con la entidad LineaPedido.
 public interface LineaPedidoRepository extends JpaRepository<LineaPedido, Long> {
-	
-}
\ No newline at end of file
+
+	/**
+	 * Completa el precio de compra de las líneas anteriores a que se guardara, con el precio de compra actual
+	 * de su producto, y las marca como fijadas. Solo toca las líneas sin marcar (las que ya existían al añadir
+	 * la columna precio_compra_fijado), así que se aplica una sola vez: una línea nueva vendida sin precio de compra
+	 * no toma el precio que tenga el producto en el siguiente arranque. A partir de ahí su margen ya no cambia.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = """
+			UPDATE linea_pedido l
+			SET precio_compra = COALESCE(l.precio_compra,
+			        (SELECT p.precio_compra FROM producto p WHERE p.id = l.producto_id)),
+			    precio_compra_fijado = TRUE
+			WHERE l.precio_compra_fijado IS NULL
+			""", nativeQuery = true)
+	int completarPreciosCompra();
+
+	/*
+	 * Consultas de rentabilidad: filas [clave, unidades, ingresos, coste, ingresos con coste, unidades sin coste].
+	 * El coste usa el precio de compra guardado en cada línea; las líneas sin él no suman coste
+	 * y se cuentan aparte para saber qué parte de las ventas no tiene margen conocido.
+	 */
+
+	// Rentabilidad de cada producto (por el nombre guardado en la línea) entre dos fechas.
+	@Query("SELECT COALESCE(l.nombreProducto, '(sin nombre)'), SUM(l.cantidad), SUM(l.cantidad * l.precioUnitario), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN 0 ELSE l.cantidad * l.precioCompra END), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN 0 ELSE l.cantidad * l.precioUnitario END), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN l.cantidad ELSE 0 END) " +
+			"FROM LineaPedido l JOIN l.pedido pe " +
+			"WHERE pe.fechaPedido BETWEEN :desde AND :hasta " +
+			"GROUP BY COALESCE(l.nombreProducto, '(sin nombre)')")
+	List<Object[]> rentabilidadPorProducto(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+	// Rentabilidad de cada categoría (la del producto actual) entre dos fechas.
+	@Query("SELECT COALESCE(p.categoria, '(sin categoría)'), SUM(l.cantidad), SUM(l.cantidad * l.precioUnitario), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN 0 ELSE l.cantidad * l.precioCompra END), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN 0 ELSE l.cantidad * l.precioUnitario END), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN l.cantidad ELSE 0 END) " +
+			"FROM LineaPedido l JOIN l.pedido pe LEFT JOIN l.producto p " +
+			"WHERE pe.fechaPedido BETWEEN :desde AND :hasta " +
+			"GROUP BY COALESCE(p.categoria, '(sin categoría)')")
+	List<Object[]> rentabilidadPorCategoria(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+	// Rentabilidad de cada día con ventas entre dos fechas, ordenada por fecha.
+	@Query("SELECT pe.fechaPedido, SUM(l.cantidad), SUM(l.cantidad * l.precioUnitario), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN 0 ELSE l.cantidad * l.precioCompra END), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN 0 ELSE l.cantidad * l.precioUnitario END), " +
+			"SUM(CASE WHEN l.precioCompra IS NULL THEN l.cantidad ELSE 0 END) " +
+			"FROM LineaPedido l JOIN l.pedido pe " +
+			"WHERE pe.fechaPedido BETWEEN :desde AND :hasta " +
+			"GROUP BY pe.fechaPedido ORDER BY pe.fechaPedido")
+	List<Object[]> rentabilidadPorDia(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+	/**
+	 * Todas las líneas de pedido como filas [id del pedido, fecha, nombre, cantidad, precio unitario, categoría],
+	 * ordenadas por pedido, para cargar el almacén de ventas en columnas (HechosVentasService).
+	 * Se recorre como Stream para no tener todas las filas en memoria a la vez (requiere una transacción abierta).
+	 */
+	@Query("SELECT pe.id, pe.fechaPedido, COALESCE(l.nombreProducto, p.nombre, '(sin nombre)'), l.cantidad, l.precioUnitario, " +
+			"p.categoria FROM LineaPedido l JOIN l.pedido pe LEFT JOIN l.producto p " +
+			"WHERE pe.fechaPedido IS NOT NULL ORDER BY pe.id")
+	Stream<Object[]> recorrerParaAlmacenColumnar();
+
+	/**
+	 * Líneas de pedido con producto como filas [id del pedido, fecha, id del producto, nombre actual del producto],
+	 * ordenadas por pedido, para construir el índice de productos comprados juntos (ProductosRelacionadosService).
+	 * Se recorre como Stream para no tener todas las filas en memoria a la vez (requiere una transacción abierta).
+	 */
+	@Query("SELECT pe.id, pe.fechaPedido, p.id, p.nombre FROM LineaPedido l JOIN l.pedido pe JOIN l.producto p " +
+			"WHERE pe.fechaPedido IS NOT NULL ORDER BY pe.id")
+	Stream<Object[]> recorrerParaCoocurrencias();
+}
@@ -15,6 +15,7 @@ package com.spring.repository;
 
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -58,4 +59,26 @@ public interface MovimientoStockRepository extends JpaRepository<MovimientoStock
     // Devuelve una lista de objetos MovimientoStock correspondientes al año que se le pase como parámetro.
     List<MovimientoStock> findByAnio(@Param("anio") int anio);
 
+    /**
+     * Resume los movimientos de stock de un periodo por tipo.
+     * @param desde primer instante del periodo (incluido)
+     * @param hasta instante en que termina el periodo (excluido)
+     * @return filas [tipo, número de movimientos, unidades], una por tipo (ENTRADA, SALIDA)
+     */
+    @Query("SELECT m.tipo, COUNT(m), COALESCE(SUM(m.cantidad), 0) FROM MovimientoStock m " +
+    		"WHERE m.fecha >= :desde AND m.fecha < :hasta GROUP BY m.tipo")
+    List<Object[]> resumirPorTipo(@Param("desde") Date desde, @Param("hasta") Date hasta);
+
+    // Fecha del movimiento más antiguo, o null si no hay movimientos.
+    @Query("SELECT MIN(m.fecha) FROM MovimientoStock m")
+    Date primeraFecha();
+
+    /**
+     * Salidas de stock con producto posteriores a un movimiento, como filas [id, id del producto, fecha, cantidad],
+     * ordenadas por ID, para alimentar la previsión de demanda (PrevisionDemandaService) sin volver a leer las ya aplicadas.
+     * Se recorre como Stream para no tener todas las filas en memoria a la vez (requiere una transacción abierta).
+     */
+    @Query("SELECT m.id, m.producto.id, m.fecha, m.cantidad FROM MovimientoStock m " +
+    		"WHERE m.tipo = 'SALIDA' AND m.producto IS NOT NULL AND m.id > :desde ORDER BY m.id")
+    Stream<Object[]> recorrerSalidasDesde(@Param("desde") long desde);
 }
@@ -17,6 +17,10 @@ package com.spring.repository;
  * 		Contar la cantidad de pedidos por año.
  * 		Verificar si hay ventas registradas en un año.
  * 
+ * 	Clientes distintos:
+ * 		Recorrer los emails de todos los pedidos, o los de un día, para los contadores de clientes únicos.
+ * 		Contar exactamente los emails distintos de un rango, para comparar con la estimación.
+ * 
  * 	Reportes de ventas:
  * 		Agrupadas por día, mes o año (total de ventas).
  * 		Agrupadas por mes dentro de un año específico.
@@ -33,7 +37,9 @@ package com.spring.repository;
  * para ser usados fácilmente en reportes.
  */
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -126,6 +132,18 @@ public interface PedidoRepository extends JpaRepository<Pedido, Long> {
 	// Devuelve una lista de objetos VentaPorFecha con las ventas agrupadas por año.
 	List<VentaPorFecha> obtenerVentasPorAnio();
 	
+	/**
+	 * Recupera los pedidos de un día concreto junto con sus líneas, en una sola consulta.
+	 * @param fecha el día a consultar
+	 * @return lista de pedidos de ese día con sus líneas ya cargadas.
+	 * 
+	 * LEFT JOIN FETCH p.detalles: carga las líneas de cada pedido en la misma consulta.
+	 * DISTINCT: evita que cada pedido aparezca una vez por cada línea.
+	 */
+	@Query("SELECT DISTINCT p FROM Pedido p LEFT JOIN FETCH p.detalles WHERE p.fechaPedido = :fecha")
+	// Se usa para reconstruir los contadores de ventas del día al arrancar.
+	List<Pedido> findConLineasByFechaPedido(@Param("fecha") LocalDate fecha);
+	
 	/**
 	 * Recupera un resumen de los productos vendidos en el día actual.
 	 * Por cada producto, se indica cuántas unidades se han vendido.
@@ -221,7 +239,24 @@ public interface PedidoRepository extends JpaRepository<Pedido, Long> {
 	@Query("SELECT COUNT(p) > 0 FROM Pedido p WHERE YEAR(p.fechaPedido) = :anio")
 	// Devuelve true si existe al menos un pedido en el año especificado; de lo contrario, false.
 	boolean existeVentasEnAnio(@Param("anio") int anio);
-} 
-
-
-
+	
+	// Cuenta los pedidos realizados entre dos fechas (incluidas).
+	@Query("SELECT COUNT(p) FROM Pedido p WHERE p.fechaPedido BETWEEN :desde AND :hasta")
+	long contarEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+	
+	// Fecha del pedido más antiguo, o null si no hay pedidos.
+	@Query("SELECT MIN(p.fechaPedido) FROM Pedido p")
+	LocalDate primeraFecha();
+	
+	// Fecha y email de todos los pedidos con email, ordenados por fecha: filas [fecha, email].
+	@Query("SELECT p.fechaPedido, p.email FROM Pedido p WHERE p.fechaPedido IS NOT NULL AND p.email IS NOT NULL ORDER BY p.fechaPedido")
+	Stream<Object[]> recorrerEmails();
+	
+	// Emails de los pedidos de un día (los pedidos sin email se omiten).
+	@Query("SELECT p.email FROM Pedido p WHERE p.fechaPedido = :fecha AND p.email IS NOT NULL")
+	List<String> emailsDelDia(@Param("fecha") LocalDate fecha);
+	
+	// Número exacto de emails distintos en los pedidos entre dos fechas (incluidas), sin distinguir mayúsculas ni espacios.
+	@Query("SELECT COUNT(DISTINCT LOWER(TRIM(p.email))) FROM Pedido p WHERE p.fechaPedido BETWEEN :desde AND :hasta AND TRIM(p.email) <> ''")
+	long contarEmailsDistintos(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+}
@@ -0,0 +1,18 @@
+package com.spring.repository;
+
+/**
+ * Repositorio JPA para el estado guardado de la previsión de demanda por producto (PrevisionDemanda).
+ */
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.spring.model.PrevisionDemanda;
+
+public interface PrevisionDemandaRepository extends JpaRepository<PrevisionDemanda, Long> {
+
+	// Estado guardado de varios productos.
+	List<PrevisionDemanda> findByProductoIdIn(Collection<Long> productoIds);
+}
@@ -0,0 +1,24 @@
+package com.spring.repository;
+
+/**
+ * Repositorio JPA para las marcas de borrado de productos (ProductoEliminado).
+ *
+ * Se usa en la sincronización por versiones para saber qué productos se han eliminado
+ * después de una versión dada.
+ */
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import com.spring.model.ProductoEliminado;
+
+public interface ProductoEliminadoRepository extends JpaRepository<ProductoEliminado, Long> {
+	// Busca las eliminaciones posteriores a la versión indicada.
+	List<ProductoEliminado> findByVersionCambioGreaterThan(Long version);
+
+	// Devuelve la mayor versión registrada en las eliminaciones (null si no hay ninguna).
+	@Query("SELECT MAX(e.versionCambio) FROM ProductoEliminado e")
+	Long findMaxVersionCambio();
+}
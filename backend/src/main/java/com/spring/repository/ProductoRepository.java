@@ -8,13 +8,18 @@ package com.spring.repository;
  *
  * 	Obtener productos visibles (activos) en el sistema.
  * 	Detectar productos con stock bajo o agotado (menor o igual a una cantidad específica).
+ * 	Obtener los productos modificados después de una versión de cambio (sincronización incremental).
+ * 	Obtener los datos ligeros (sin imagen) que se usan en el índice de búsqueda.
  *
  * Utilizado principalmente para la gestión del catálogo de productos y control de inventario.
  */
 
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import com.spring.dto.ProductoBusquedaDTO;
 import com.spring.model.Producto;
 
 //Indica que esta interfaz es un componente de repositorio administrado por Spring.
@@ -25,4 +30,27 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
     List<Producto> findByVisibleTrue();
     // Busca todos los productos cuyo stock sea menor o igual a la cantidad indicada como parámetro.
     List<Producto> findByStockLessThanEqual(Integer cantidad); 
-}
\ No newline at end of file
+    // Busca los productos cuya versión de cambio sea mayor que la indicada.
+    List<Producto> findByVersionCambioGreaterThan(Long version);
+    // Devuelve la mayor versión de cambio de los productos (null si ninguno tiene versión).
+    @Query("SELECT MAX(p.versionCambio) FROM Producto p")
+    Long findMaxVersionCambio();
+    
+    // Devuelve los datos de búsqueda de todos los productos, sin cargar las imágenes.
+    @Query("SELECT new com.spring.dto.ProductoBusquedaDTO(p.id, p.nombre, p.descripcion, p.categoria, p.precio, p.descuento, p.visible) " +
+    	   "FROM Producto p")
+    List<ProductoBusquedaDTO> obtenerDatosBusqueda();
+    
+    // Devuelve los datos de búsqueda de un producto concreto (lista vacía si no existe).
+    @Query("SELECT new com.spring.dto.ProductoBusquedaDTO(p.id, p.nombre, p.descripcion, p.categoria, p.precio, p.descuento, p.visible) " +
+     	   "FROM Producto p WHERE p.id = :id")
+    List<ProductoBusquedaDTO> obtenerDatosBusqueda(@Param("id") Long id);
+    
+    // Devuelve el ID, el nombre y el stock de todos los productos como filas [id, nombre, stock], sin cargar las imágenes.
+    @Query("SELECT p.id, p.nombre, p.stock FROM Producto p")
+    List<Object[]> obtenerStocks();
+    
+    // Devuelve el ID, el nombre y el stock de un producto concreto (lista vacía si no existe).
+    @Query("SELECT p.id, p.nombre, p.stock FROM Producto p WHERE p.id = :id")
+    List<Object[]> obtenerStock(@Param("id") Long id);
+}
@@ -0,0 +1,133 @@
+package com.spring.repository;
+
+/**
+ * Repositorio JPA para el cubo de ventas por día y producto (VentaDiariaProducto).
+ *
+ * Funcionalidades principales:
+ *
+ * 	Mantenimiento:
+ * 		Sumar (o restar, con valores negativos) las ventas de un pedido a su celda, creándola si no existe.
+ * 		Borrar las celdas que se han quedado sin pedidos.
+ * 		Reconstruir el cubo completo a partir de los pedidos guardados.
+ *
+ * 	Consultas:
+ * 		Totales por día y por mes.
+ * 		Unidades vendidas por producto en un rango de fechas.
+ * 		Ventas por mes y producto de un año, para el resumen anual.
+ * 		Importe y unidades por día en un rango de fechas, filtrando opcionalmente por producto y categoría.
+ *
+ * Las consultas por mes devuelven filas [año, mes, total] para no depender
+ * de funciones de formato de fechas de una base de datos concreta.
+ */
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.spring.dto.ProductoVentaDetalle;
+import com.spring.dto.VentaPorFecha;
+import com.spring.model.VentaDiariaProducto;
+
+public interface VentaDiariaProductoRepository extends JpaRepository<VentaDiariaProducto, Long> {
+
+	/**
+	 * Suma unas ventas a la celda de un día y producto, creándola si aún no existe.
+	 * Es una única sentencia atómica, así que dos pedidos simultáneos del mismo producto no se pisan.
+	 * Con valores negativos resta las ventas de un pedido eliminado.
+	 * Usa el alias de fila (MySQL 8.0.19 o posterior) en lugar de VALUES(columna), que está obsoleto.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = """
+			INSERT INTO venta_diaria_producto (fecha, nombre_producto, producto_id, unidades, importe, pedidos)
+			VALUES (:fecha, :nombre, :productoId, :unidades, :importe, :pedidos) AS n
+			ON DUPLICATE KEY UPDATE
+			    unidades = unidades + n.unidades,
+			    importe = importe + n.importe,
+			    pedidos = pedidos + n.pedidos,
+			    producto_id = COALESCE(producto_id, n.producto_id)
+			""", nativeQuery = true)
+	void acumular(@Param("fecha") LocalDate fecha, @Param("nombre") String nombre, @Param("productoId") Long productoId,
+			@Param("unidades") long unidades, @Param("importe") double importe, @Param("pedidos") long pedidos);
+
+	// Borra las celdas de un día que ya no tienen ningún pedido (tras eliminar pedidos).
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM VentaDiariaProducto v WHERE v.fecha = :fecha AND v.pedidos <= 0")
+	int borrarVacias(@Param("fecha") LocalDate fecha);
+
+	/**
+	 * Rellena el cubo con las ventas de todos los pedidos guardados, con una sola sentencia INSERT ... SELECT.
+	 * Se usa para la carga inicial y para reconstruir el cubo si se ha desincronizado (el cubo debe estar vacío).
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = """
+			INSERT INTO venta_diaria_producto (fecha, nombre_producto, producto_id, unidades, importe, pedidos)
+			SELECT p.fecha_pedido, COALESCE(l.nombre_producto, '(sin nombre)'), MIN(l.producto_id),
+			       SUM(l.cantidad), SUM(l.cantidad * l.precio_unitario), COUNT(DISTINCT p.id)
+			FROM pedido p
+			JOIN linea_pedido l ON l.pedido_id = p.id
+			WHERE p.fecha_pedido IS NOT NULL
+			GROUP BY p.fecha_pedido, COALESCE(l.nombre_producto, '(sin nombre)')
+			""", nativeQuery = true)
+	int rellenarDesdePedidos();
+
+	// Total vendido por día, ordenado por fecha.
+	@Query("SELECT new com.spring.dto.VentaPorFecha(v.fecha, SUM(v.importe)) " +
+			"FROM VentaDiariaProducto v GROUP BY v.fecha ORDER BY v.fecha")
+	List<VentaPorFecha> obtenerVentasPorDia();
+
+	// Total vendido por día entre dos fechas (incluidas), ordenado por fecha.
+	@Query("SELECT new com.spring.dto.VentaPorFecha(v.fecha, SUM(v.importe)) " +
+			"FROM VentaDiariaProducto v WHERE v.fecha BETWEEN :desde AND :hasta GROUP BY v.fecha ORDER BY v.fecha")
+	List<VentaPorFecha> obtenerVentasPorDia(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+	// Total vendido por mes, como filas [año, mes, total].
+	@Query("SELECT YEAR(v.fecha), MONTH(v.fecha), SUM(v.importe) FROM VentaDiariaProducto v " +
+			"GROUP BY YEAR(v.fecha), MONTH(v.fecha) ORDER BY YEAR(v.fecha), MONTH(v.fecha)")
+	List<Object[]> obtenerVentasPorMes();
+
+	// Total vendido por mes entre dos fechas, como filas [año, mes, total].
+	@Query("SELECT YEAR(v.fecha), MONTH(v.fecha), SUM(v.importe) FROM VentaDiariaProducto v " +
+			"WHERE v.fecha BETWEEN :desde AND :hasta " +
+			"GROUP BY YEAR(v.fecha), MONTH(v.fecha) ORDER BY YEAR(v.fecha), MONTH(v.fecha)")
+	List<Object[]> obtenerVentasPorMes(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+	/**
+	 * Ventas de cada producto en cada mes entre dos fechas, como filas [mes, producto, unidades, importe].
+	 * Ordenadas por mes y, dentro de cada mes, de más a menos unidades, para montar un resumen anual
+	 * completo (totales mensuales y detalle de productos) con una sola consulta.
+	 */
+	@Query("SELECT MONTH(v.fecha), v.nombreProducto, SUM(v.unidades), SUM(v.importe) FROM VentaDiariaProducto v " +
+			"WHERE v.fecha BETWEEN :desde AND :hasta " +
+			"GROUP BY MONTH(v.fecha), v.nombreProducto ORDER BY MONTH(v.fecha), SUM(v.unidades) DESC")
+	List<Object[]> obtenerVentasPorMesYProducto(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+	// Unidades vendidas de cada producto entre dos fechas (incluidas), de más a menos vendido.
+	@Query("SELECT new com.spring.dto.ProductoVentaDetalle(v.nombreProducto, SUM(v.unidades)) " +
+			"FROM VentaDiariaProducto v WHERE v.fecha BETWEEN :desde AND :hasta " +
+			"GROUP BY v.nombreProducto ORDER BY SUM(v.unidades) DESC")
+	List<ProductoVentaDetalle> obtenerProductosVendidos(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+	/**
+	 * Importe y unidades vendidas de cada día con ventas entre dos fechas, como filas [fecha, unidades, importe].
+	 * Es la única consulta de los informes por rango (AnaliticaVentasService): recorre el índice único
+	 * (fecha, nombre_producto) solo en el rango pedido y el agrupado por semana, mes, etc. se hace después en memoria.
+	 * Los filtros son opcionales (null para no filtrar). Filtrando por categoría solo cuentan las celdas
+	 * con producto asociado, porque la categoría se toma del producto actual.
+	 */
+	@Query("SELECT v.fecha, SUM(v.unidades), SUM(v.importe) FROM VentaDiariaProducto v " +
+			"LEFT JOIN Producto p ON p.id = v.productoId " +
+			"WHERE v.fecha BETWEEN :desde AND :hasta " +
+			"AND (:productoId IS NULL OR v.productoId = :productoId) " +
+			"AND (:categoria IS NULL OR p.categoria = :categoria) " +
+			"GROUP BY v.fecha ORDER BY v.fecha")
+	List<Object[]> obtenerVentasPorDiaFiltradas(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta,
+			@Param("productoId") Long productoId, @Param("categoria") String categoria);
+}
@@ -0,0 +1,172 @@
+package com.spring.service;
+
+/**
+ * Servicio de informes de ventas por rango de fechas, con la granularidad que se pida
+ * (día, semana, mes, trimestre o año) y filtros opcionales por producto y categoría.
+ *
+ * En lugar de una consulta distinta para cada informe (hoy, mes actual, todos los meses...), todos
+ * los rangos pasan por el mismo camino:
+ *
+ * 	1. Una sola consulta sobre el cubo de ventas (VentaDiariaProducto) que lee solo las celdas del rango,
+ * 	   aprovechando el índice por fecha, y devuelve el importe y las unidades de cada día.
+ * 	2. Los días se reparten en memoria en los tramos de la granularidad pedida. Como hay como mucho
+ * 	   una fila por día, el coste no depende del número de pedidos ni de productos.
+ *
+ * El resultado incluye todos los tramos del rango, también los que no tienen ventas (con importe 0),
+ * para que las gráficas no tengan huecos. Los importes se suman en céntimos para no acumular errores de redondeo.
+ *
+ * Las semanas son las de la norma ISO (de lunes a domingo). El primer y el último tramo se recortan
+ * al rango pedido, así que pueden ser más cortos que el resto.
+ */
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.spring.repository.VentaDiariaProductoRepository;
+
+@Service
+public class AnaliticaVentasService {
+
+	// Número máximo de tramos de un informe (unos diez años por días)
+	public static final int MAX_TRAMOS = 3700;
+
+	/**
+	 * Tamaño de los tramos en que se agrupan las ventas.
+	 */
+	public enum Granularidad {
+		DIA, SEMANA, MES, TRIMESTRE, ANIO;
+
+		/**
+		 * Devuelve la granularidad a partir de su nombre, sin distinguir mayúsculas.
+		 * @param nombre dia, semana, mes, trimestre o anio
+		 * @return granularidad
+		 * @throws IllegalArgumentException si el nombre no corresponde a ninguna
+		 */
+		public static Granularidad de(String nombre) {
+			try {
+				return valueOf(nombre.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Granularidad no válida: " + nombre
+						+ " (debe ser dia, semana, mes, trimestre o anio)");
+			}
+		}
+
+		// Primer día del tramo que contiene una fecha
+		LocalDate inicio(LocalDate fecha) {
+			return switch (this) {
+				case DIA -> fecha;
+				case SEMANA -> fecha.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+				case MES -> fecha.withDayOfMonth(1);
+				case TRIMESTRE -> fecha.withMonth((fecha.getMonthValue() - 1) / 3 * 3 + 1).withDayOfMonth(1);
+				case ANIO -> fecha.withDayOfYear(1);
+			};
+		}
+
+		// Primer día del tramo siguiente
+		LocalDate siguiente(LocalDate inicio) {
+			return switch (this) {
+				case DIA -> inicio.plusDays(1);
+				case SEMANA -> inicio.plusWeeks(1);
+				case MES -> inicio.plusMonths(1);
+				case TRIMESTRE -> inicio.plusMonths(3);
+				case ANIO -> inicio.plusYears(1);
+			};
+		}
+
+		// Nombre del tramo: 2025-03-10, 2025-W11, 2025-03, 2025-Q1 o 2025
+		String etiqueta(LocalDate inicio) {
+			return switch (this) {
+				case DIA -> inicio.toString();
+				case SEMANA -> String.format("%d-W%02d", inicio.get(IsoFields.WEEK_BASED_YEAR),
+						inicio.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+				case MES -> String.format("%d-%02d", inicio.getYear(), inicio.getMonthValue());
+				case TRIMESTRE -> inicio.getYear() + "-Q" + ((inicio.getMonthValue() - 1) / 3 + 1);
+				case ANIO -> String.valueOf(inicio.getYear());
+			};
+		}
+	}
+
+	/**
+	 * Ventas de un tramo del rango.
+	 * @param periodo nombre del tramo (por ejemplo 2025-03 o 2025-Q1)
+	 * @param desde primer día del tramo dentro del rango
+	 * @param hasta último día del tramo dentro del rango
+	 * @param importe importe vendido
+	 * @param unidades unidades vendidas
+	 */
+	public record Tramo(String periodo, LocalDate desde, LocalDate hasta, double importe, long unidades) {
+	}
+
+	private final VentaDiariaProductoRepository cuboRepository;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param cuboRepository repositorio del cubo de ventas
+	 */
+	public AnaliticaVentasService(VentaDiariaProductoRepository cuboRepository) {
+		this.cuboRepository = cuboRepository;
+	}
+
+	/**
+	 * Devuelve las ventas de un rango de fechas agrupadas en tramos.
+	 * @param desde primer día (incluido)
+	 * @param hasta último día (incluido)
+	 * @param granularidad tamaño de los tramos
+	 * @param productoId producto por el que filtrar, o null para todos
+	 * @param categoria categoría de producto por la que filtrar, o null para todas
+	 * @return todos los tramos del rango, en orden, incluidos los que no tienen ventas
+	 * @throws IllegalArgumentException si el rango está invertido o tiene demasiados tramos
+	 */
+	@Transactional(readOnly = true)
+	public List<Tramo> ventas(LocalDate desde, LocalDate hasta, Granularidad granularidad, Long productoId, String categoria) {
+		List<LocalDate> inicios = inicios(desde, hasta, granularidad);
+		int n = inicios.size();
+		long[] centimos = new long[n];
+		long[] unidades = new long[n];
+		// Las filas llegan ordenadas por fecha, así que basta con avanzar de tramo sin volver atrás
+		int tramo = 0;
+		for (Object[] fila : cuboRepository.obtenerVentasPorDiaFiltradas(desde, hasta, productoId, categoria)) {
+			LocalDate fecha = (LocalDate) fila[0];
+			while (tramo + 1 < n && !fecha.isBefore(inicios.get(tramo + 1))) {
+				tramo++;
+			}
+			unidades[tramo] += ((Number) fila[1]).longValue();
+			centimos[tramo] += Math.round(((Number) fila[2]).doubleValue() * 100);
+		}
+		List<Tramo> tramos = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			LocalDate fin = i + 1 < n ? inicios.get(i + 1).minusDays(1) : hasta;
+			// El primer tramo empieza en su inicio natural, recortado al rango
+			LocalDate inicio = i == 0 ? desde : inicios.get(i);
+			tramos.add(new Tramo(granularidad.etiqueta(inicios.get(i)), inicio, fin, centimos[i] / 100.0, unidades[i]));
+		}
+		return tramos;
+	}
+
+	/**
+	 * Calcula el primer día natural de cada tramo del rango.
+	 * @throws IllegalArgumentException si el rango está invertido o tiene demasiados tramos
+	 */
+	static List<LocalDate> inicios(LocalDate desde, LocalDate hasta, Granularidad granularidad) {
+		if (hasta.isBefore(desde)) {
+			throw new IllegalArgumentException("La fecha final es anterior a la inicial");
+		}
+		List<LocalDate> inicios = new ArrayList<>();
+		for (LocalDate inicio = granularidad.inicio(desde); !inicio.isAfter(hasta); inicio = granularidad.siguiente(inicio)) {
+			if (inicios.size() == MAX_TRAMOS) {
+				throw new IllegalArgumentException("El rango tiene más de " + MAX_TRAMOS
+						+ " tramos; use una granularidad mayor");
+			}
+			inicios.add(inicio);
+		}
+		return inicios;
+	}
+}
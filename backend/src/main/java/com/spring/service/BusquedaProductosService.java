@@ -0,0 +1,293 @@
+package com.spring.service;
+
+/**
+ * Motor de búsqueda en memoria sobre el catálogo de productos.
+ *
+ * Mantiene un índice invertido con los términos del nombre, la descripción y la categoría de cada producto:
+ * 	Los textos se normalizan sin tildes ni mayúsculas ("Aceituna Manzanilla" y "aceituna manzanílla" son iguales)
+ * 	y se descartan las palabras vacías más comunes del español (de, la, el, con...).
+ * 	Cada término de la búsqueda se trata como prefijo, así "acei" encuentra "aceite" y "aceitunas".
+ * 	Los términos del nombre pesan más que los de la categoría y éstos más que los de la descripción.
+ *
+ * Además guarda precalculado el número de productos por categoría y por visibilidad (facetas),
+ * que se actualiza junto con el índice.
+ *
+ * El índice se construye al arrancar la aplicación y se actualiza producto a producto al recibir
+ * un ProductoModificadoEvent, por lo que las búsquedas no consultan la base de datos.
+ */
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.spring.dto.ProductoBusquedaDTO;
+import com.spring.dto.ResultadoBusquedaDTO;
+import com.spring.event.ProductoModificadoEvent;
+import com.spring.repository.ProductoRepository;
+
+@Service
+public class BusquedaProductosService {
+
+	// Peso de un término según el campo en el que aparece
+	private static final int PESO_NOMBRE = 4;
+	private static final int PESO_CATEGORIA = 2;
+	private static final int PESO_DESCRIPCION = 1;
+
+	// Marcas diacríticas (tildes, diéresis...) que quedan separadas tras normalizar en NFD
+	private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+	// Separadores entre palabras: todo lo que no sea letra o número
+	private static final Pattern SEPARADORES = Pattern.compile("[^a-z0-9]+");
+	// Palabras vacías del español que no aportan nada a la búsqueda
+	private static final Set<String> PALABRAS_VACIAS = Set.of(
+			"a", "al", "con", "de", "del", "el", "en", "la", "las", "lo", "los",
+			"para", "por", "sin", "su", "sus", "un", "una", "unos", "unas", "y", "o");
+
+	/**
+	 * Producto indexado junto con los términos que se le asignaron, para poder desindexarlo.
+	 */
+	private record Documento(ProductoBusquedaDTO producto, Set<String> terminos) {
+	}
+
+	// Repositorio para cargar los datos de los productos
+	private final ProductoRepository productoRepository;
+
+	// Índice invertido: término normalizado -> (ID de producto -> peso del término en ese producto).
+	// Al ser un TreeMap, los términos que empiezan por un prefijo son un rango contiguo.
+	private final TreeMap<String, Map<Long, Integer>> indice = new TreeMap<>();
+	// Productos indexados por ID
+	private final Map<Long, Documento> documentos = new HashMap<>();
+	// Facetas precalculadas sobre todo el catálogo
+	private final Map<String, Integer> facetasCategoria = new TreeMap<>();
+	private final Map<Boolean, Integer> facetasVisible = new HashMap<>();
+	// Cerrojo de lectura/escritura: muchas búsquedas simultáneas, actualizaciones exclusivas
+	private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+	/**
+	 * Constructor que recibe el repositorio de productos.
+	 * @param productoRepository repositorio de productos
+	 */
+	public BusquedaProductosService(ProductoRepository productoRepository) {
+		this.productoRepository = productoRepository;
+	}
+
+	/**
+	 * Construye el índice completo al arrancar la aplicación.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void reconstruir() {
+		List<ProductoBusquedaDTO> productos = productoRepository.obtenerDatosBusqueda();
+		cerrojo.writeLock().lock();
+		try {
+			indice.clear();
+			documentos.clear();
+			facetasCategoria.clear();
+			facetasVisible.clear();
+			for (ProductoBusquedaDTO producto : productos) {
+				indexar(producto);
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Actualiza el índice cuando se confirma un cambio en un producto.
+	 * @param evento evento con el producto modificado
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(VersionesService.ANTES_DE_VERSIONAR)
+	public void alModificarProducto(ProductoModificadoEvent evento) {
+		// Cambios que afectan a varios productos a la vez: se reconstruye todo
+		if (evento.getProductoId() == null) {
+			reconstruir();
+			return;
+		}
+		// Datos actuales del producto (vacío si se ha eliminado)
+		List<ProductoBusquedaDTO> actual = evento.getTipo() == ProductoModificadoEvent.Tipo.ELIMINADO
+				? List.of()
+				: productoRepository.obtenerDatosBusqueda(evento.getProductoId());
+		cerrojo.writeLock().lock();
+		try {
+			desindexar(evento.getProductoId());
+			actual.forEach(this::indexar);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Busca productos por texto y filtros opcionales.
+	 * Las facetas se calculan sobre las coincidencias del texto, antes de aplicar los filtros de categoría
+	 * y visibilidad, para que el frontend pueda mostrar cuántos productos quedarían con cada filtro.
+	 * @param texto texto a buscar (vacío o null para no filtrar por texto)
+	 * @param categoria categoría por la que filtrar (null para todas)
+	 * @param visible visibilidad por la que filtrar (null para todas)
+	 * @param limite número máximo de productos a devolver
+	 * @return productos encontrados, total y facetas
+	 */
+	public ResultadoBusquedaDTO buscar(String texto, String categoria, Boolean visible, int limite) {
+		List<String> terminos = new ArrayList<>(tokenizar(texto));
+		String categoriaNormalizada = categoria != null && !categoria.isBlank() ? normalizar(categoria) : null;
+
+		cerrojo.readLock().lock();
+		try {
+			// Puntuación de cada producto que coincide con todos los términos
+			Map<Long, Integer> puntuaciones;
+			Map<String, Integer> categorias;
+			Map<Boolean, Integer> visibilidad;
+			if (terminos.isEmpty()) {
+				// Sin texto: coinciden todos los productos y las facetas son las precalculadas
+				puntuaciones = new HashMap<>();
+				documentos.keySet().forEach(id -> puntuaciones.put(id, 0));
+				categorias = new TreeMap<>(facetasCategoria);
+				visibilidad = new HashMap<>(facetasVisible);
+			} else {
+				puntuaciones = coincidencias(terminos);
+				categorias = new TreeMap<>();
+				visibilidad = new HashMap<>();
+				for (Long id : puntuaciones.keySet()) {
+					ProductoBusquedaDTO p = documentos.get(id).producto();
+					categorias.merge(claveCategoria(p.getCategoria()), 1, Integer::sum);
+					visibilidad.merge(p.isVisible(), 1, Integer::sum);
+				}
+			}
+
+			// Aplica los filtros y ordena por relevancia, y a igualdad por nombre
+			List<ProductoBusquedaDTO> filtrados = puntuaciones.keySet().stream()
+					.map(id -> documentos.get(id).producto())
+					.filter(p -> categoriaNormalizada == null || categoriaNormalizada.equals(normalizar(p.getCategoria())))
+					.filter(p -> visible == null || p.isVisible() == visible)
+					.sorted(Comparator.<ProductoBusquedaDTO>comparingInt(p -> -puntuaciones.get(p.getId()))
+							.thenComparing(p -> p.getNombre() != null ? p.getNombre() : ""))
+					.toList();
+
+			List<ProductoBusquedaDTO> pagina = filtrados.subList(0, Math.min(Math.max(limite, 0), filtrados.size()));
+			return new ResultadoBusquedaDTO(filtrados.size(), new ArrayList<>(pagina), categorias, visibilidad);
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Calcula los productos que contienen todos los términos (como prefijo) y su puntuación.
+	 * Debe llamarse con el cerrojo de lectura adquirido.
+	 * @param terminos términos normalizados de la búsqueda
+	 * @return mapa ID de producto -> puntuación
+	 */
+	private Map<Long, Integer> coincidencias(List<String> terminos) {
+		Map<Long, Integer> resultado = null;
+		for (String termino : terminos) {
+			// Mejor puntuación de cada producto para este término; las coincidencias exactas valen el doble
+			Map<Long, Integer> porTermino = new HashMap<>();
+			for (Map.Entry<String, Map<Long, Integer>> entrada
+					: indice.subMap(termino, true, termino + Character.MAX_VALUE, true).entrySet()) {
+				int factor = entrada.getKey().equals(termino) ? 2 : 1;
+				entrada.getValue().forEach((id, peso) -> porTermino.merge(id, peso * factor, Math::max));
+			}
+			if (resultado == null) {
+				resultado = porTermino;
+			} else {
+				// Sólo siguen los productos que también contienen este término
+				resultado.keySet().retainAll(porTermino.keySet());
+				resultado.replaceAll((id, puntos) -> puntos + porTermino.get(id));
+			}
+			if (resultado.isEmpty()) {
+				break;
+			}
+		}
+		return resultado != null ? resultado : new HashMap<>();
+	}
+
+	/**
+	 * Añade un producto al índice y a las facetas. Debe llamarse con el cerrojo de escritura adquirido.
+	 * @param producto datos del producto
+	 */
+	private void indexar(ProductoBusquedaDTO producto) {
+		// Peso acumulado de cada término en este producto
+		Map<String, Integer> pesos = new HashMap<>();
+		tokenizar(producto.getNombre()).forEach(t -> pesos.merge(t, PESO_NOMBRE, (a, b) -> a | b));
+		tokenizar(producto.getCategoria()).forEach(t -> pesos.merge(t, PESO_CATEGORIA, (a, b) -> a | b));
+		tokenizar(producto.getDescripcion()).forEach(t -> pesos.merge(t, PESO_DESCRIPCION, (a, b) -> a | b));
+
+		pesos.forEach((termino, peso) -> indice.computeIfAbsent(termino, k -> new HashMap<>()).put(producto.getId(), peso));
+		documentos.put(producto.getId(), new Documento(producto, new HashSet<>(pesos.keySet())));
+		facetasCategoria.merge(claveCategoria(producto.getCategoria()), 1, Integer::sum);
+		facetasVisible.merge(producto.isVisible(), 1, Integer::sum);
+	}
+
+	/**
+	 * Quita un producto del índice y de las facetas. Debe llamarse con el cerrojo de escritura adquirido.
+	 * @param id ID del producto
+	 */
+	private void desindexar(Long id) {
+		Documento documento = documentos.remove(id);
+		if (documento == null) {
+			return;
+		}
+		for (String termino : documento.terminos()) {
+			Map<Long, Integer> productos = indice.get(termino);
+			if (productos != null) {
+				productos.remove(id);
+				if (productos.isEmpty()) {
+					indice.remove(termino);
+				}
+			}
+		}
+		// Resta el producto de las facetas, quitando las entradas que se quedan a cero
+		facetasCategoria.computeIfPresent(claveCategoria(documento.producto().getCategoria()), (k, n) -> n > 1 ? n - 1 : null);
+		facetasVisible.computeIfPresent(documento.producto().isVisible(), (k, n) -> n > 1 ? n - 1 : null);
+	}
+
+	/**
+	 * Devuelve la clave de faceta de una categoría (los productos sin categoría se agrupan en "sin categoria").
+	 * @param categoria categoría del producto
+	 * @return clave normalizada
+	 */
+	private static String claveCategoria(String categoria) {
+		return categoria == null || categoria.isBlank() ? "sin categoria" : normalizar(categoria);
+	}
+
+	/**
+	 * Normaliza un texto: sin tildes, en minúsculas y sin espacios sobrantes.
+	 * @param texto texto original
+	 * @return texto normalizado ("" si es null)
+	 */
+	static String normalizar(String texto) {
+		if (texto == null) {
+			return "";
+		}
+		String sinTildes = DIACRITICOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+		return sinTildes.toLowerCase(Locale.ROOT).trim();
+	}
+
+	/**
+	 * Divide un texto en términos normalizados, sin palabras vacías ni repetidos.
+	 * @param texto texto original
+	 * @return términos en orden de aparición
+	 */
+	static Set<String> tokenizar(String texto) {
+		Set<String> terminos = new LinkedHashSet<>();
+		for (String termino : SEPARADORES.split(normalizar(texto))) {
+			if (!termino.isEmpty() && !PALABRAS_VACIAS.contains(termino)) {
+				terminos.add(termino);
+			}
+		}
+		return terminos;
+	}
+}
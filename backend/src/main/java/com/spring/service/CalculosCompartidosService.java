@@ -0,0 +1,147 @@
+package com.spring.service;
+
+/**
+ * Servicio que comparte un mismo cálculo entre peticiones idénticas simultáneas ("single-flight").
+ *
+ * Cuando el turno de mañana abre la página de reportes en varios terminales a la vez, llegan casi juntas
+ * las mismas peticiones (productos vendidos del mes, los PDF...). Si el resultado no está en la caché, cada una
+ * lanzaría su propia consulta. Con este servicio:
+ *
+ * 	La primera petición de una operación con unos parámetros hace el cálculo.
+ * 	Las que llegan con la misma operación y parámetros mientras ese cálculo está en curso no calculan nada:
+ * 	esperan a que termine y reciben el mismo resultado (o el mismo error).
+ * 	En cuanto termina, la operación deja de estar en curso: la siguiente petición vuelve a calcular
+ * 	(o lee la caché de informes, si el resultado se guardó allí). No se guarda nada más.
+ *
+ * Los resultados se comparten tal cual entre las peticiones, así que no deben modificarse después.
+ *
+ * Se lleva por operación el número de cálculos hechos, de peticiones que se han ahorrado un cálculo
+ * (compartidas) y de errores, y el mayor número de peticiones que han esperado a un mismo cálculo.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+@Service
+public class CalculosCompartidosService {
+
+	/**
+	 * Estadísticas de una operación.
+	 * @param operacion nombre de la operación (por ejemplo "pdf" o "PRODUCTOS_DEL_MES")
+	 * @param calculos cálculos realmente ejecutados
+	 * @param compartidas peticiones que han recibido el resultado de un cálculo ya en curso
+	 * @param errores cálculos que terminaron con error
+	 * @param enCurso cálculos en curso ahora mismo
+	 * @param maximoEsperando mayor número de peticiones que han esperado a un mismo cálculo
+	 * @param ratioCompartidas compartidas / (calculos + compartidas), entre 0 y 1
+	 */
+	public record Estadisticas(String operacion, long calculos, long compartidas, long errores, int enCurso,
+			long maximoEsperando, double ratioCompartidas) {
+	}
+
+	/**
+	 * Cálculo en curso, con las peticiones que esperan su resultado.
+	 */
+	private static final class Calculo {
+		private final CompletableFuture<Object> resultado = new CompletableFuture<>();
+		private final AtomicInteger esperando = new AtomicInteger();
+	}
+
+	/**
+	 * Contadores de una operación.
+	 */
+	private static final class Contadores {
+		private final LongAdder calculos = new LongAdder();
+		private final LongAdder compartidas = new LongAdder();
+		private final LongAdder errores = new LongAdder();
+		private final AtomicInteger enCurso = new AtomicInteger();
+		private final LongAccumulator maximoEsperando = new LongAccumulator(Math::max, 0);
+	}
+
+	// Cálculos en curso por operación y parámetros
+	private final Map<String, Calculo> enCurso = new ConcurrentHashMap<>();
+	// Contadores por operación
+	private final Map<String, Contadores> contadores = new ConcurrentHashMap<>();
+
+	/**
+	 * Ejecuta un cálculo, o espera al mismo cálculo si otra petición ya lo está haciendo con los mismos parámetros.
+	 * @param operacion nombre de la operación (normalmente el endpoint o el informe)
+	 * @param parametros parámetros que distinguen un cálculo de otro de la misma operación ("" si no tiene)
+	 * @param calculo función que hace el cálculo
+	 * @return resultado del cálculo, propio o compartido
+	 * @throws RuntimeException el mismo error que haya lanzado el cálculo
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T compartir(String operacion, String parametros, Supplier<T> calculo) {
+		Contadores contador = contadores.computeIfAbsent(operacion, o -> new Contadores());
+		String clave = operacion + "?" + parametros;
+		Calculo nuevo = new Calculo();
+		Calculo existente = enCurso.putIfAbsent(clave, nuevo);
+		if (existente != null) {
+			contador.compartidas.increment();
+			contador.maximoEsperando.accumulate(existente.esperando.incrementAndGet());
+			return (T) esperar(existente);
+		}
+
+		contador.calculos.increment();
+		contador.enCurso.incrementAndGet();
+		try {
+			T valor = calculo.get();
+			nuevo.resultado.complete(valor);
+			return valor;
+		} catch (RuntimeException | Error e) {
+			contador.errores.increment();
+			nuevo.resultado.completeExceptionally(e);
+			throw e;
+		} finally {
+			// Las peticiones que lleguen a partir de aquí calculan de nuevo
+			enCurso.remove(clave, nuevo);
+			contador.enCurso.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Devuelve las estadísticas de cada operación, ordenadas por nombre.
+	 * @return lista con cálculos, peticiones compartidas, errores y ratio de cada operación
+	 */
+	public List<Estadisticas> estadisticas() {
+		List<Estadisticas> lista = new ArrayList<>();
+		for (Map.Entry<String, Contadores> e : new TreeMap<>(contadores).entrySet()) {
+			Contadores contador = e.getValue();
+			long calculos = contador.calculos.sum();
+			long compartidas = contador.compartidas.sum();
+			long total = calculos + compartidas;
+			lista.add(new Estadisticas(e.getKey(), calculos, compartidas, contador.errores.sum(), contador.enCurso.get(),
+					contador.maximoEsperando.get(), total == 0 ? 0 : (double) compartidas / total));
+		}
+		return lista;
+	}
+
+	/**
+	 * Espera al resultado de un cálculo de otra petición y lanza su mismo error si falló.
+	 */
+	private static Object esperar(Calculo calculo) {
+		try {
+			return calculo.resultado.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException error) {
+				throw error;
+			}
+			if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw e;
+		}
+	}
+}
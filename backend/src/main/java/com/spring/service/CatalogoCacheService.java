@@ -0,0 +1,131 @@
+package com.spring.service;
+
+/**
+ * Servicio que mantiene en memoria el catálogo de productos visibles ya serializado.
+ *
+ * El catálogo de la tienda cambia pocas veces al día, pero se consulta en cada visita.
+ * En lugar de consultar la base de datos y convertir a JSON en cada petición, este servicio
+ * guarda una instantánea con:
+ * 	El JSON del catálogo visible en bytes.
+ * 	El mismo JSON comprimido con GZIP, listo para enviarse a los navegadores que lo acepten.
+ * 	Una versión que crece de forma monótona cada vez que se reconstruye.
+ *
+ * La instantánea se reconstruye en segundo plano (@Async) cuando se recibe un ProductoModificadoEvent,
+ * de modo que servir el catálogo se reduce a copiar un array de bytes ya preparado.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.event.ProductoModificadoEvent;
+import com.spring.model.Producto;
+import com.spring.repository.ProductoRepository;
+
+@Service
+public class CatalogoCacheService {
+
+	/**
+	 * Instantánea inmutable del catálogo visible.
+	 * @param version versión del catálogo, crece con cada reconstrucción
+	 * @param json catálogo serializado en JSON
+	 * @param gzip mismo JSON comprimido con GZIP
+	 */
+	public record Instantanea(long version, byte[] json, byte[] gzip) {
+	}
+
+	// Repositorio para leer los productos visibles
+	private final ProductoRepository productoRepository;
+	// ObjectMapper configurado por Spring, para producir exactamente el mismo JSON que los controladores
+	private final ObjectMapper objectMapper;
+
+	// Número de cambios de productos recibidos desde el arranque
+	private final AtomicLong cambiosSolicitados = new AtomicLong();
+	// Número de cambios que ya están reflejados en la instantánea actual
+	private long cambiosAplicados = -1;
+	// Última versión generada del catálogo
+	private long version = 0;
+	// Instantánea publicada; volatile para que los hilos de petición vean siempre la última
+	private volatile Instantanea instantanea;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param productoRepository repositorio de productos
+	 * @param objectMapper conversor JSON de la aplicación
+	 */
+	public CatalogoCacheService(ProductoRepository productoRepository, ObjectMapper objectMapper) {
+		this.productoRepository = productoRepository;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Devuelve la instantánea actual del catálogo visible.
+	 * Si aún no se ha generado ninguna (primer acceso), se construye en este momento.
+	 * @return instantánea con el JSON y su versión
+	 */
+	public Instantanea obtener() {
+		Instantanea actual = instantanea;
+		if (actual == null) {
+			actual = reconstruir();
+		}
+		return actual;
+	}
+
+	/**
+	 * Marca el catálogo como desactualizado y lo reconstruye en segundo plano.
+	 * Se ejecuta después del commit de la transacción que modificó el producto (o inmediatamente si no la hay).
+	 * @param evento evento con el producto modificado
+	 */
+	@Async
+	@TransactionalEventListener(fallbackExecution = true)
+	public void alModificarProducto(ProductoModificadoEvent evento) {
+		cambiosSolicitados.incrementAndGet();
+		reconstruir();
+	}
+
+	/**
+	 * Genera una nueva instantánea del catálogo si hay cambios pendientes.
+	 * Es synchronized para que varias reconstrucciones simultáneas no se pisen:
+	 * si llegan muchos cambios seguidos, una sola reconstrucción los recoge todos.
+	 * @return la instantánea vigente tras la reconstrucción
+	 */
+	public synchronized Instantanea reconstruir() {
+		// Cambios que van a quedar reflejados en esta reconstrucción
+		long objetivo = cambiosSolicitados.get();
+		if (instantanea == null || objetivo != cambiosAplicados) {
+			List<Producto> visibles = productoRepository.findByVisibleTrue();
+			try {
+				byte[] json = objectMapper.writeValueAsBytes(visibles);
+				instantanea = new Instantanea(++version, json, comprimir(json));
+				cambiosAplicados = objetivo;
+			} catch (JsonProcessingException e) {
+				throw new UncheckedIOException("Error al serializar el catálogo", e);
+			}
+		}
+		return instantanea;
+	}
+
+	/**
+	 * Comprime un array de bytes con GZIP.
+	 * @param datos bytes originales
+	 * @return bytes comprimidos
+	 */
+	private static byte[] comprimir(byte[] datos) {
+		ByteArrayOutputStream salida = new ByteArrayOutputStream(datos.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(salida)) {
+			gzip.write(datos);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error al comprimir el catálogo", e);
+		}
+		return salida.toByteArray();
+	}
+}
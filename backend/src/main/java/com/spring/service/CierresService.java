@@ -0,0 +1,436 @@
+package com.spring.service;
+
+/**
+ * Servicio que cierra los meses y años ya terminados y sirve sus informes desde esos cierres.
+ *
+ * Un mes que ya ha terminado no cambia, pero los informes lo volvían a calcular en cada petición.
+ * Este servicio calcula una sola vez, para cada mes y cada año terminado, un cierre (CierrePeriodo) con:
+ * 	Ventas: pedidos, importe, unidades y productos vendidos (desde el cubo de ventas).
+ * 	Movimientos de stock: número y unidades de entradas y de salidas.
+ * 	Facturas: número, importe sin IVA e importe con IVA y envío.
+ *
+ * Tarea programada:
+ * 	Poco después de arrancar y después cada hora (configurable), cierra los meses y años terminados
+ * 	que aún no tienen cierre, desde la fecha del dato más antiguo. Los ya cerrados no se recalculan.
+ *
+ * Lectura:
+ * 	Los cierres se cargan al arrancar en un índice en memoria. Los informes de ventas por mes, productos
+ * 	vendidos en un mes o un año y el resumen anual leen los periodos cerrados del índice y solo consultan el
+ * 	cubo de ventas para el periodo abierto (el mes actual y los que la tarea aún no ha cerrado).
+ *
+ * Cambios en periodos cerrados:
+ * 	Al crear o eliminar un pedido o una factura con fecha de un mes ya cerrado se vuelve a cerrar ese mes y,
+ * 	si estaba cerrado, su año. Se hace en segundo plano (@Async) después del commit, para que el nuevo cierre
+ * 	se guarde en su propia transacción. El cierre nuevo sustituye al anterior en el índice de una vez,
+ * 	así que las lecturas nunca ven un periodo sin cierre. Como la caché de informes se invalida con el mismo evento
+ * 	antes de que termine el nuevo cierre, una petición intermedia podría guardar (sin caducidad, por ser un periodo
+ * 	cerrado) el informe calculado con el cierre anterior: al terminar se vuelven a descartar los informes del periodo
+ * 	y se incrementa la versión de pedidos, para que los navegadores tampoco se queden con ese resultado.
+ *
+ * Reinicio:
+ * 	reiniciar() borra todos los cierres y los vuelve a calcular (tras reconstruir el cubo).
+ */
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.dto.ProductoVentaDetalle;
+import com.spring.dto.ResumenAnualDTO;
+import com.spring.dto.VentaPorFecha;
+import com.spring.event.FacturaModificadaEvent;
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.model.CierrePeriodo;
+import com.spring.repository.CierrePeriodoRepository;
+import com.spring.repository.FacturaRepository;
+import com.spring.repository.MovimientoStockRepository;
+import com.spring.repository.PedidoRepository;
+import com.spring.repository.VentaDiariaProductoRepository;
+import com.spring.service.InformesCacheService.Fuente;
+import com.spring.service.VersionesService.Agregado;
+
+@Service
+public class CierresService {
+
+	// Primer mes y último día que abarcan los informes "de todo el histórico"
+	private static final YearMonth DESDE_SIEMPRE = YearMonth.of(1900, 1);
+	private static final LocalDate HASTA_SIEMPRE = LocalDate.of(9999, 12, 31);
+	// Tipo de la lista de productos guardada en JSON
+	private static final TypeReference<List<ProductoVentaDetalle>> LISTA_PRODUCTOS = new TypeReference<>() {
+	};
+
+	/**
+	 * Cierre cargado en el índice, con la lista de productos ya convertida desde JSON.
+	 * @param datos cierre guardado
+	 * @param productos productos vendidos en el periodo
+	 */
+	private record Cierre(CierrePeriodo datos, List<ProductoVentaDetalle> productos) {
+	}
+
+	// Cierres por periodo, con clave año * 100 + mes (mes 0 para el año completo)
+	private final Map<Integer, Cierre> indice = new ConcurrentHashMap<>();
+	// Último mes hasta el que todos los meses están cerrados (null hasta la primera pasada de la tarea)
+	private volatile YearMonth cerradoHasta;
+
+	private final CierrePeriodoRepository cierreRepository;
+	private final CuboVentasService cuboVentas;
+	private final VentaDiariaProductoRepository cuboRepository;
+	private final PedidoRepository pedidoRepository;
+	private final MovimientoStockRepository movimientoRepository;
+	private final FacturaRepository facturaRepository;
+	private final ObjectMapper objectMapper;
+	private final InformesCacheService cacheInformes;
+	private final VersionesService versiones;
+	// Transacción para sustituir un cierre: el borrado del anterior y el guardado del nuevo van juntos
+	private final TransactionTemplate transaccion;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param cierreRepository repositorio de cierres
+	 * @param cuboVentas cubo de ventas, para el periodo abierto
+	 * @param cuboRepository repositorio del cubo de ventas, para calcular los cierres
+	 * @param pedidoRepository repositorio de pedidos
+	 * @param movimientoRepository repositorio de movimientos de stock
+	 * @param facturaRepository repositorio de facturas
+	 * @param objectMapper conversor JSON de la aplicación
+	 * @param cacheInformes caché de informes, para descartar los de un periodo que se vuelve a cerrar
+	 * @param versiones versiones de los datos, para cambiar el ETag de los informes al volver a cerrar un periodo
+	 * @param gestorTransacciones gestor de transacciones de la aplicación
+	 */
+	public CierresService(CierrePeriodoRepository cierreRepository, CuboVentasService cuboVentas,
+			VentaDiariaProductoRepository cuboRepository, PedidoRepository pedidoRepository,
+			MovimientoStockRepository movimientoRepository, FacturaRepository facturaRepository, ObjectMapper objectMapper,
+			InformesCacheService cacheInformes, VersionesService versiones, PlatformTransactionManager gestorTransacciones) {
+		this.cierreRepository = cierreRepository;
+		this.cuboVentas = cuboVentas;
+		this.cuboRepository = cuboRepository;
+		this.pedidoRepository = pedidoRepository;
+		this.movimientoRepository = movimientoRepository;
+		this.facturaRepository = facturaRepository;
+		this.objectMapper = objectMapper;
+		this.cacheInformes = cacheInformes;
+		this.versiones = versiones;
+		this.transaccion = new TransactionTemplate(gestorTransacciones);
+	}
+
+	/**
+	 * Carga en el índice los cierres guardados al arrancar la aplicación.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void cargar() {
+		for (CierrePeriodo cierre : cierreRepository.findAll()) {
+			indice.put(clave(cierre.getAnio(), cierre.getMes()), new Cierre(cierre, leerProductos(cierre.getProductos())));
+		}
+	}
+
+	/**
+	 * Cierra los meses y años terminados que aún no tienen cierre.
+	 * @return número de periodos cerrados en esta pasada
+	 */
+	@Scheduled(initialDelayString = "${cierres.retraso-inicial-ms:10000}", fixedDelayString = "${cierres.intervalo-ms:3600000}")
+	public synchronized int cerrarPendientes() {
+		YearMonth ultimo = YearMonth.now().minusMonths(1);
+		LocalDate primera = primeraFecha();
+		int cerrados = 0;
+		if (primera != null) {
+			for (YearMonth mes = YearMonth.from(primera); !mes.isAfter(ultimo); mes = mes.plusMonths(1)) {
+				if (!indice.containsKey(clave(mes.getYear(), mes.getMonthValue()))) {
+					cerrarMes(mes);
+					cerrados++;
+				}
+			}
+			for (int anio = primera.getYear(); anio < ultimo.plusMonths(1).getYear(); anio++) {
+				if (!indice.containsKey(clave(anio, 0))) {
+					cerrarAnio(anio);
+					cerrados++;
+				}
+			}
+		}
+		cerradoHasta = ultimo;
+		return cerrados;
+	}
+
+	/**
+	 * Borra todos los cierres y los vuelve a calcular (por ejemplo tras reconstruir el cubo de ventas).
+	 * @return número de periodos cerrados
+	 */
+	public synchronized int reiniciar() {
+		// Mientras se recalculan, los informes se sirven desde el cubo
+		cerradoHasta = null;
+		cierreRepository.deleteAllInBatch();
+		indice.clear();
+		return cerrarPendientes();
+	}
+
+	/**
+	 * Vuelve a cerrar el periodo de un pedido creado o eliminado, si ya estaba cerrado.
+	 * @param evento evento con el pedido modificado
+	 */
+	@Async
+	@TransactionalEventListener(fallbackExecution = true)
+	public void alModificarPedido(PedidoModificadoEvent evento) {
+		if (evento.getPedido() != null && (evento.getTipo() == PedidoModificadoEvent.Tipo.CREADO
+				|| evento.getTipo() == PedidoModificadoEvent.Tipo.ELIMINADO)) {
+			recerrar(evento.getPedido().getFechaPedido());
+		}
+	}
+
+	/**
+	 * Vuelve a cerrar el periodo de una factura creada o eliminada, si ya estaba cerrado.
+	 * @param evento evento con la factura modificada
+	 */
+	@Async
+	@TransactionalEventListener(fallbackExecution = true)
+	public void alModificarFactura(FacturaModificadaEvent evento) {
+		if (evento.getFactura() != null) {
+			recerrar(evento.getFactura().getFecha());
+		}
+	}
+
+	/**
+	 * Devuelve los cierres guardados de un año: los de sus meses y, si el año está cerrado, el del año completo.
+	 * @param anio año a consultar
+	 * @return cierres ordenados por mes (el del año completo primero)
+	 */
+	public List<CierrePeriodo> cierresDelAnio(int anio) {
+		return indice.values().stream()
+				.map(Cierre::datos)
+				.filter(c -> c.getAnio() == anio)
+				.sorted(Comparator.comparingInt(CierrePeriodo::getMes))
+				.toList();
+	}
+
+	/**
+	 * Devuelve el total vendido de cada mes con ventas, de todo el histórico.
+	 * @return ventas por mes con la fecha "YYYY-MM", ordenadas por fecha
+	 */
+	public List<VentaPorFecha> ventasPorMes() {
+		return ventasPorMes(DESDE_SIEMPRE, HASTA_SIEMPRE);
+	}
+
+	/**
+	 * Devuelve el total vendido de cada mes con ventas de un año.
+	 * @param anio año a consultar
+	 * @return ventas por mes con la fecha "YYYY-MM", ordenadas por fecha
+	 */
+	public List<VentaPorFecha> ventasPorMesDelAnio(int anio) {
+		return ventasPorMes(YearMonth.of(anio, 1), LocalDate.of(anio, 12, 31));
+	}
+
+	/**
+	 * Devuelve las unidades vendidas de cada producto en un mes.
+	 * @param anio año del mes
+	 * @param mes mes (1-12)
+	 * @return productos vendidos, de más a menos unidades
+	 */
+	public List<ProductoVentaDetalle> productosVendidosDelMes(int anio, int mes) {
+		Cierre cierre = cerrado(YearMonth.of(anio, mes)) ? indice.get(clave(anio, mes)) : null;
+		return cierre != null ? cierre.productos() : cuboVentas.productosVendidosDelMes(anio, mes);
+	}
+
+	/**
+	 * Devuelve las unidades vendidas de cada producto en un año.
+	 * @param anio año a consultar
+	 * @return productos vendidos, de más a menos unidades
+	 */
+	public List<ProductoVentaDetalle> productosVendidosDelAnio(int anio) {
+		Cierre cierre = cerrado(YearMonth.of(anio, 12)) ? indice.get(clave(anio, 0)) : null;
+		return cierre != null ? cierre.productos() : cuboVentas.productosVendidosDelAnio(anio);
+	}
+
+	/**
+	 * Devuelve el resumen anual de ventas (total y productos vendidos de cada mes).
+	 * Si el año está cerrado se monta con los cierres de sus 12 meses; si no, se calcula desde el cubo.
+	 * @param anio año del resumen
+	 * @return resumen con los 12 meses
+	 */
+	public ResumenAnualDTO resumenAnual(int anio) {
+		if (!cerrado(YearMonth.of(anio, 12))) {
+			return cuboVentas.resumenAnual(anio);
+		}
+		List<ResumenAnualDTO.MesResumen> meses = new ArrayList<>(12);
+		for (Month mes : Month.values()) {
+			Cierre cierre = indice.get(clave(anio, mes.getValue()));
+			ResumenAnualDTO.MesResumen resumenMes = new ResumenAnualDTO.MesResumen();
+			resumenMes.mes = CuboVentasService.nombreMes(anio, mes);
+			// Los meses anteriores al primer dato no tienen cierre: no hubo ventas
+			resumenMes.total = cierre != null ? cierre.datos().getImporteVentas() : 0;
+			resumenMes.productos = cierre != null ? new ArrayList<>(cierre.productos()) : new ArrayList<>();
+			meses.add(resumenMes);
+		}
+		ResumenAnualDTO resumen = new ResumenAnualDTO();
+		resumen.anio = anio;
+		resumen.resumenMensual = meses;
+		return resumen;
+	}
+
+	/**
+	 * Total vendido de cada mes con ventas entre dos meses: los cerrados desde el índice y el resto desde el cubo.
+	 * @param desde primer mes
+	 * @param hasta último día
+	 */
+	private List<VentaPorFecha> ventasPorMes(YearMonth desde, LocalDate hasta) {
+		YearMonth cerrado = cerradoHasta;
+		if (cerrado == null || cerrado.isBefore(desde)) {
+			return cuboVentas.ventasPorMesEntre(desde.atDay(1), hasta);
+		}
+		YearMonth fin = YearMonth.from(hasta).isBefore(cerrado) ? YearMonth.from(hasta) : cerrado;
+		List<VentaPorFecha> lista = new ArrayList<>(indice.values().stream()
+				.map(Cierre::datos)
+				.filter(c -> c.getMes() > 0)
+				.filter(c -> {
+					YearMonth mes = YearMonth.of(c.getAnio(), c.getMes());
+					return !mes.isBefore(desde) && !mes.isAfter(fin);
+				})
+				// Igual que el cubo, solo aparecen los meses con ventas
+				.filter(c -> c.getUnidadesVendidas() != 0 || c.getImporteVentas() != 0)
+				.sorted(Comparator.comparingInt(c -> clave(c.getAnio(), c.getMes())))
+				.map(c -> new VentaPorFecha(String.format("%d-%02d", c.getAnio(), c.getMes()), c.getImporteVentas()))
+				.toList());
+		// Meses aún abiertos
+		LocalDate inicioAbierto = cerrado.plusMonths(1).atDay(1);
+		if (!inicioAbierto.isAfter(hasta)) {
+			lista.addAll(cuboVentas.ventasPorMesEntre(inicioAbierto, hasta));
+		}
+		return lista;
+	}
+
+	/**
+	 * Vuelve a cerrar el mes de una fecha y su año, si ya tenían cierre.
+	 * @param fecha fecha del dato modificado
+	 */
+	private synchronized void recerrar(LocalDate fecha) {
+		if (fecha == null) {
+			return;
+		}
+		YearMonth mes = YearMonth.from(fecha);
+		boolean recerrado = false;
+		if (indice.containsKey(clave(mes.getYear(), mes.getMonthValue()))) {
+			cerrarMes(mes);
+			recerrado = true;
+		}
+		if (indice.containsKey(clave(mes.getYear(), 0))) {
+			cerrarAnio(mes.getYear());
+			recerrado = true;
+		}
+		if (recerrado) {
+			// Los informes que se calcularon con el cierre anterior entre el cambio y ahora ya no valen
+			cacheInformes.invalidar(Fuente.VENTAS, fecha);
+			versiones.incrementar(Agregado.PEDIDOS);
+		}
+	}
+
+	// Indica si un mes está dentro de los periodos cerrados
+	private boolean cerrado(YearMonth mes) {
+		YearMonth cerrado = cerradoHasta;
+		return cerrado != null && !mes.isAfter(cerrado);
+	}
+
+	private void cerrarMes(YearMonth mes) {
+		cerrar(mes.getYear(), mes.getMonthValue(), mes.atDay(1), mes.atEndOfMonth());
+	}
+
+	private void cerrarAnio(int anio) {
+		cerrar(anio, 0, LocalDate.of(anio, 1, 1), LocalDate.of(anio, 12, 31));
+	}
+
+	/**
+	 * Calcula los totales de un periodo, guarda su cierre (sustituyendo al anterior) y lo pone en el índice.
+	 * @param anio año del periodo
+	 * @param mes mes del periodo, o 0 para el año completo
+	 * @param desde primer día del periodo
+	 * @param hasta último día del periodo
+	 */
+	private void cerrar(int anio, int mes, LocalDate desde, LocalDate hasta) {
+		// Ventas y productos vendidos, desde el cubo de ventas
+		List<ProductoVentaDetalle> productos = cuboRepository.obtenerProductosVendidos(desde, hasta);
+		double importe = cuboRepository.obtenerVentasPorMes(desde, hasta).stream()
+				.mapToDouble(f -> ((Number) f[2]).doubleValue())
+				.sum();
+		long unidades = productos.stream().mapToLong(ProductoVentaDetalle::getCantidadVendida).sum();
+		long pedidos = pedidoRepository.contarEntre(desde, hasta);
+
+		// Movimientos de stock por tipo: [número, unidades]
+		long[] entradas = new long[2];
+		long[] salidas = new long[2];
+		for (Object[] fila : movimientoRepository.resumirPorTipo(inicioDelDia(desde), inicioDelDia(hasta.plusDays(1)))) {
+			long[] destino = "ENTRADA".equals(fila[0]) ? entradas : "SALIDA".equals(fila[0]) ? salidas : null;
+			if (destino != null) {
+				destino[0] += ((Number) fila[1]).longValue();
+				destino[1] += ((Number) fila[2]).longValue();
+			}
+		}
+
+		// Facturas: [número, importe, importe con IVA]
+		Object[] facturas = facturaRepository.resumirEntre(desde, hasta).get(0);
+
+		CierrePeriodo cierre = new CierrePeriodo(anio, mes, pedidos, importe, unidades, escribirProductos(productos),
+				entradas[0], entradas[1], salidas[0], salidas[1],
+				((Number) facturas[0]).longValue(), ((Number) facturas[1]).doubleValue(), ((Number) facturas[2]).doubleValue());
+		// Si falla el guardado no se borra el cierre anterior
+		CierrePeriodo guardado = transaccion.execute(estado -> {
+			cierreRepository.borrar(anio, mes);
+			return cierreRepository.save(cierre);
+		});
+		indice.put(clave(anio, mes), new Cierre(guardado, List.copyOf(productos)));
+	}
+
+	/**
+	 * Devuelve la fecha del dato más antiguo entre pedidos, movimientos de stock y facturas.
+	 * @return fecha más antigua, o null si no hay datos
+	 */
+	private LocalDate primeraFecha() {
+		Date movimiento = movimientoRepository.primeraFecha();
+		return Stream.of(pedidoRepository.primeraFecha(), facturaRepository.primeraFecha(),
+						movimiento != null ? new Date(movimiento.getTime()).toInstant().atZone(ZoneId.systemDefault()).toLocalDate() : null)
+				.filter(f -> f != null)
+				.min(Comparator.naturalOrder())
+				.orElse(null);
+	}
+
+	// Convierte una fecha en el instante en que empieza ese día
+	private static Date inicioDelDia(LocalDate fecha) {
+		return Date.from(fecha.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
+	// Clave del índice: año * 100 + mes
+	private static int clave(int anio, int mes) {
+		return anio * 100 + mes;
+	}
+
+	private String escribirProductos(List<ProductoVentaDetalle> productos) {
+		try {
+			return objectMapper.writeValueAsString(productos);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("No se pudieron convertir los productos a JSON", e);
+		}
+	}
+
+	private List<ProductoVentaDetalle> leerProductos(String json) {
+		try {
+			return json != null ? List.copyOf(objectMapper.readValue(json, LISTA_PRODUCTOS)) : List.of();
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("No se pudieron leer los productos del cierre", e);
+		}
+	}
+}
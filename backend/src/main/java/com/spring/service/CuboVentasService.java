@@ -0,0 +1,278 @@
+package com.spring.service;
+
+/**
+ * Servicio que mantiene y consulta el cubo de ventas por día y producto (VentaDiariaProducto).
+ *
+ * Mantenimiento incremental:
+ * 	Al crear un pedido se suman sus líneas a las celdas de su día; al eliminarlo se restan.
+ * 	Se hace al recibir el PedidoModificadoEvent justo antes del commit (BEFORE_COMMIT), dentro de la misma
+ * 	transacción que guarda o borra el pedido: si algo falla, ni el pedido ni el cubo cambian.
+ *
+ * Carga inicial y reconstrucción:
+ * 	Al arrancar, si el cubo está vacío y ya hay pedidos, se rellena a partir de ellos.
+ * 	reconstruir() vacía el cubo y lo vuelve a calcular entero, por si se ha desincronizado
+ * 	(por ejemplo tras modificar pedidos directamente en la base de datos).
+ *
+ * Consultas:
+ * 	Los informes de ventas por día, mes y año y de productos vendidos suman celdas del cubo,
+ * 	así que su coste depende del número de días y productos con ventas y no del número de pedidos.
+ * 	El resumen anual (totales y productos de cada mes) sale de una única consulta agrupada por mes y producto.
+ */
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.YearMonth;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.spring.dto.ProductoVentaDetalle;
+import com.spring.dto.ResumenAnualDTO;
+import com.spring.dto.VentaPorFecha;
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.model.LineaPedido;
+import com.spring.model.Pedido;
+import com.spring.model.VentaDiariaProducto;
+import com.spring.repository.PedidoRepository;
+import com.spring.repository.VentaDiariaProductoRepository;
+
+@Service
+public class CuboVentasService {
+
+	// Nombre que se usa para las líneas de pedido sin nombre de producto
+	private static final String SIN_NOMBRE = "(sin nombre)";
+	// Idioma de los nombres de los meses en los resúmenes
+	private static final Locale LOCALE_ES = new Locale("es", "ES");
+
+	private final VentaDiariaProductoRepository cuboRepository;
+	private final PedidoRepository pedidoRepository;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param cuboRepository repositorio del cubo de ventas
+	 * @param pedidoRepository repositorio de pedidos
+	 */
+	public CuboVentasService(VentaDiariaProductoRepository cuboRepository, PedidoRepository pedidoRepository) {
+		this.cuboRepository = cuboRepository;
+		this.pedidoRepository = pedidoRepository;
+	}
+
+	/**
+	 * Rellena el cubo al arrancar si está vacío y ya existen pedidos (primera ejecución tras la actualización).
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void cargarInicial() {
+		if (cuboRepository.count() == 0 && pedidoRepository.count() > 0) {
+			cuboRepository.rellenarDesdePedidos();
+		}
+	}
+
+	/**
+	 * Actualiza el cubo cuando se crea o se elimina un pedido, dentro de la misma transacción.
+	 * El resto de cambios (envío, pago, datos del cliente) no afectan a las ventas.
+	 * @param evento evento con el pedido modificado
+	 */
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void alModificarPedido(PedidoModificadoEvent evento) {
+		switch (evento.getTipo()) {
+			case CREADO -> acumular(evento.getPedido(), 1);
+			case ELIMINADO -> {
+				acumular(evento.getPedido(), -1);
+				cuboRepository.borrarVacias(evento.getPedido().getFechaPedido());
+			}
+			default -> {
+				// No cambia las ventas
+			}
+		}
+	}
+
+	/**
+	 * Vacía el cubo y lo vuelve a calcular a partir de todos los pedidos.
+	 * @return número de celdas (día y producto) generadas
+	 */
+	@Transactional
+	public int reconstruir() {
+		cuboRepository.deleteAllInBatch();
+		return cuboRepository.rellenarDesdePedidos();
+	}
+
+	/**
+	 * Suma (signo 1) o resta (signo -1) las líneas de un pedido a las celdas de su día.
+	 * Las líneas del mismo producto se agrupan antes, para contar el pedido una sola vez por producto.
+	 * @param pedido pedido creado o eliminado
+	 * @param signo 1 para sumar, -1 para restar
+	 */
+	private void acumular(Pedido pedido, int signo) {
+		if (pedido == null || pedido.getFechaPedido() == null || pedido.getDetalles() == null) {
+			return;
+		}
+		// Agrupa las líneas por nombre de producto
+		Map<String, VentaDiariaProducto> celdas = new LinkedHashMap<>();
+		for (LineaPedido linea : pedido.getDetalles()) {
+			String nombre = nombreProducto(linea);
+			VentaDiariaProducto celda = celdas.computeIfAbsent(nombre, n -> new VentaDiariaProducto());
+			if (celda.getProductoId() == null && linea.getProducto() != null) {
+				celda.setProductoId(linea.getProducto().getId());
+			}
+			celda.setUnidades(celda.getUnidades() + linea.getCantidad());
+			celda.setImporte(celda.getImporte() + linea.getCantidad() * linea.getPrecioUnitario());
+		}
+		// Una sentencia por producto distinto del pedido
+		for (Map.Entry<String, VentaDiariaProducto> entrada : celdas.entrySet()) {
+			VentaDiariaProducto celda = entrada.getValue();
+			cuboRepository.acumular(pedido.getFechaPedido(), entrada.getKey(), celda.getProductoId(),
+					signo * celda.getUnidades(), signo * celda.getImporte(), signo);
+		}
+	}
+
+	/**
+	 * Devuelve el nombre con el que se agrupa una línea: el guardado en la línea o, si falta, "(sin nombre)".
+	 * Es la misma regla que COALESCE(l.nombre_producto, '(sin nombre)') de rellenarDesdePedidos: no se usa
+	 * el nombre del producto, que puede cambiar, para que al eliminar un pedido se reste de la misma celda
+	 * en la que se sumó, tanto si la creó el mantenimiento incremental como la reconstrucción.
+	 */
+	static String nombreProducto(LineaPedido linea) {
+		return linea.getNombreProducto() != null ? linea.getNombreProducto() : SIN_NOMBRE;
+	}
+
+	/**
+	 * Devuelve el total vendido de cada día con ventas.
+	 * @return ventas por día, ordenadas por fecha
+	 */
+	@Transactional(readOnly = true)
+	public List<VentaPorFecha> ventasPorDia() {
+		return cuboRepository.obtenerVentasPorDia();
+	}
+
+	/**
+	 * Devuelve el total vendido en un día concreto.
+	 * @param fecha día a consultar
+	 * @return lista con un elemento, o vacía si no hubo ventas
+	 */
+	@Transactional(readOnly = true)
+	public List<VentaPorFecha> ventasDelDia(LocalDate fecha) {
+		return cuboRepository.obtenerVentasPorDia(fecha, fecha);
+	}
+
+	/**
+	 * Devuelve el total vendido de cada mes con ventas, con la fecha en formato "YYYY-MM".
+	 * @return ventas por mes, ordenadas por fecha
+	 */
+	@Transactional(readOnly = true)
+	public List<VentaPorFecha> ventasPorMes() {
+		return aVentasPorMes(cuboRepository.obtenerVentasPorMes());
+	}
+
+	/**
+	 * Devuelve el total vendido de cada mes de un año, con la fecha en formato "YYYY-MM".
+	 * @param anio año a consultar
+	 * @return ventas por mes de ese año, ordenadas por fecha
+	 */
+	@Transactional(readOnly = true)
+	public List<VentaPorFecha> ventasPorMesDelAnio(int anio) {
+		return ventasPorMesEntre(LocalDate.of(anio, 1, 1), LocalDate.of(anio, 12, 31));
+	}
+
+	/**
+	 * Devuelve el total vendido de cada mes con ventas entre dos fechas, con la fecha en formato "YYYY-MM".
+	 * @param desde primer día (incluido)
+	 * @param hasta último día (incluido)
+	 * @return ventas por mes, ordenadas por fecha
+	 */
+	@Transactional(readOnly = true)
+	public List<VentaPorFecha> ventasPorMesEntre(LocalDate desde, LocalDate hasta) {
+		return aVentasPorMes(cuboRepository.obtenerVentasPorMes(desde, hasta));
+	}
+
+	/**
+	 * Devuelve las unidades vendidas de cada producto en un día.
+	 * @param fecha día a consultar
+	 * @return productos vendidos, de más a menos unidades
+	 */
+	@Transactional(readOnly = true)
+	public List<ProductoVentaDetalle> productosVendidosDelDia(LocalDate fecha) {
+		return cuboRepository.obtenerProductosVendidos(fecha, fecha);
+	}
+
+	/**
+	 * Devuelve las unidades vendidas de cada producto en un mes.
+	 * @param anio año del mes
+	 * @param mes mes (1-12)
+	 * @return productos vendidos, de más a menos unidades
+	 */
+	@Transactional(readOnly = true)
+	public List<ProductoVentaDetalle> productosVendidosDelMes(int anio, int mes) {
+		YearMonth periodo = YearMonth.of(anio, mes);
+		return cuboRepository.obtenerProductosVendidos(periodo.atDay(1), periodo.atEndOfMonth());
+	}
+
+	/**
+	 * Devuelve las unidades vendidas de cada producto en un año.
+	 * @param anio año a consultar
+	 * @return productos vendidos, de más a menos unidades
+	 */
+	@Transactional(readOnly = true)
+	public List<ProductoVentaDetalle> productosVendidosDelAnio(int anio) {
+		return cuboRepository.obtenerProductosVendidos(LocalDate.of(anio, 1, 1), LocalDate.of(anio, 12, 31));
+	}
+
+	/**
+	 * Construye el resumen anual de ventas (total y productos vendidos de cada mes) con una sola consulta
+	 * agrupada por mes y producto. Las filas llegan ordenadas por mes, así que se reparten en una pasada.
+	 * @param anio año del resumen (cualquiera, no solo el actual)
+	 * @return resumen con los 12 meses, incluidos los que no tienen ventas
+	 */
+	@Transactional(readOnly = true)
+	public ResumenAnualDTO resumenAnual(int anio) {
+		// Prepara los 12 meses vacíos, con el nombre que muestra el panel de reportes ("enero 2025")
+		List<ResumenAnualDTO.MesResumen> meses = new ArrayList<>(12);
+		for (Month mes : Month.values()) {
+			ResumenAnualDTO.MesResumen resumenMes = new ResumenAnualDTO.MesResumen();
+			resumenMes.mes = nombreMes(anio, mes);
+			resumenMes.total = 0;
+			resumenMes.productos = new ArrayList<>();
+			meses.add(resumenMes);
+		}
+		// Reparte cada fila [mes, producto, unidades, importe] en su mes
+		for (Object[] fila : cuboRepository.obtenerVentasPorMesYProducto(LocalDate.of(anio, 1, 1), LocalDate.of(anio, 12, 31))) {
+			ResumenAnualDTO.MesResumen resumenMes = meses.get(((Number) fila[0]).intValue() - 1);
+			resumenMes.productos.add(new ProductoVentaDetalle((String) fila[1], ((Number) fila[2]).longValue()));
+			resumenMes.total += ((Number) fila[3]).doubleValue();
+		}
+		ResumenAnualDTO resumen = new ResumenAnualDTO();
+		resumen.anio = anio;
+		resumen.resumenMensual = meses;
+		return resumen;
+	}
+
+	/**
+	 * Devuelve el nombre con el que se muestra un mes en los resúmenes, por ejemplo "enero 2025".
+	 * @param anio año del mes
+	 * @param mes mes
+	 * @return nombre del mes en español seguido del año
+	 */
+	static String nombreMes(int anio, Month mes) {
+		return mes.getDisplayName(TextStyle.FULL, LOCALE_ES) + " " + anio;
+	}
+
+	/**
+	 * Convierte filas [año, mes, total] en objetos VentaPorFecha con la fecha "YYYY-MM".
+	 */
+	private static List<VentaPorFecha> aVentasPorMes(List<Object[]> filas) {
+		return filas.stream()
+				.map(f -> new VentaPorFecha(
+						String.format("%d-%02d", ((Number) f[0]).intValue(), ((Number) f[1]).intValue()),
+						((Number) f[2]).doubleValue()))
+				.toList();
+	}
+}
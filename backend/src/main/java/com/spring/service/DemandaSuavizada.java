@@ -0,0 +1,153 @@
+package com.spring.service;
+
+/**
+ * Demanda diaria de un producto estimada con suavizado exponencial, actualizada salida a salida.
+ *
+ * Las unidades que salen en un mismo día se acumulan en el "día abierto". Cuando llega una salida de un día
+ * posterior, el día abierto se cierra y entra en las medias, seguido de un cero por cada día sin salidas:
+ * 	media ← (1 - α) · media + α · unidades del día
+ * 	media de cuadrados ← (1 - α) · media de cuadrados + α · unidades²
+ * Los días sin salidas no suman nada, así que k días seguidos se aplican de una vez multiplicando por (1 - α)^k:
+ * el coste no depende de cuánto tiempo haya pasado.
+ *
+ * Las dos medias empiezan en cero, así que con pocos días estarían sesgadas hacia abajo. Se corrigen dividiendo
+ * por 1 - (1 - α)^días (el peso total que llevan los días observados), de modo que desde el primer día la media
+ * es la media ponderada de los días vistos. La desviación sale de la media de cuadrados menos el cuadrado de la media.
+ *
+ * No guarda el histórico: solo cinco números por producto. No es seguro para varios hilos.
+ */
+
+public final class DemandaSuavizada {
+
+	private final double alfa;
+	// Medias suavizadas sin corregir de las unidades por día y de su cuadrado
+	private double media;
+	private double mediaCuadrados;
+	// Días cerrados que han entrado en las medias
+	private long dias;
+	// Día abierto (número de día desde 1970), o -1 si aún no ha habido salidas
+	private long diaAbierto = -1;
+	// Unidades del día abierto
+	private double unidadesDiaAbierto;
+
+	/**
+	 * Crea una demanda sin salidas.
+	 * @param alfa peso de cada día nuevo, entre 0 y 1 (0,1 equivale aproximadamente a los últimos 20 días)
+	 */
+	public DemandaSuavizada(double alfa) {
+		if (!(alfa > 0 && alfa < 1)) {
+			throw new IllegalArgumentException("El factor de suavizado debe estar entre 0 y 1");
+		}
+		this.alfa = alfa;
+	}
+
+	/**
+	 * Restaura una demanda guardada.
+	 * @param alfa peso de cada día nuevo
+	 * @param media media suavizada sin corregir
+	 * @param mediaCuadrados media suavizada de cuadrados sin corregir
+	 * @param dias días cerrados
+	 * @param diaAbierto día abierto (número de día desde 1970), o -1
+	 * @param unidadesDiaAbierto unidades del día abierto
+	 */
+	public DemandaSuavizada(double alfa, double media, double mediaCuadrados, long dias, long diaAbierto,
+			double unidadesDiaAbierto) {
+		this(alfa);
+		this.media = media;
+		this.mediaCuadrados = mediaCuadrados;
+		this.dias = dias;
+		this.diaAbierto = diaAbierto;
+		this.unidadesDiaAbierto = unidadesDiaAbierto;
+	}
+
+	/**
+	 * Registra una salida. Las de un día anterior al abierto (llegadas con retraso) cuentan en el día abierto.
+	 * @param dia día de la salida (número de día desde 1970)
+	 * @param unidades unidades que salen
+	 */
+	public void registrar(long dia, double unidades) {
+		if (diaAbierto < 0) {
+			diaAbierto = dia;
+		} else if (dia > diaAbierto) {
+			cerrarHasta(dia);
+		}
+		unidadesDiaAbierto += unidades;
+	}
+
+	/**
+	 * Cierra el día abierto y los días sin salidas hasta el día anterior a uno dado, que pasa a ser el abierto.
+	 * @param dia nuevo día abierto (número de día desde 1970)
+	 */
+	public void cerrarHasta(long dia) {
+		if (diaAbierto < 0 || dia <= diaAbierto) {
+			return;
+		}
+		media = (1 - alfa) * media + alfa * unidadesDiaAbierto;
+		mediaCuadrados = (1 - alfa) * mediaCuadrados + alfa * unidadesDiaAbierto * unidadesDiaAbierto;
+		// Días sin salidas entre el abierto y el nuevo: cada uno multiplica por (1 - α)
+		long vacios = dia - diaAbierto - 1;
+		double factor = Math.pow(1 - alfa, vacios);
+		media *= factor;
+		mediaCuadrados *= factor;
+		dias += vacios + 1;
+		diaAbierto = dia;
+		unidadesDiaAbierto = 0;
+	}
+
+	/**
+	 * Devuelve una copia independiente, para calcular la previsión a una fecha sin modificar el estado.
+	 * @return copia
+	 */
+	public DemandaSuavizada copia() {
+		return new DemandaSuavizada(alfa, media, mediaCuadrados, dias, diaAbierto, unidadesDiaAbierto);
+	}
+
+	/**
+	 * Media de unidades por día, corregida por los pocos días observados.
+	 * @return unidades por día (0 si aún no hay días cerrados)
+	 */
+	public double mediaDiaria() {
+		double peso = pesoObservado();
+		return peso == 0 ? 0 : media / peso;
+	}
+
+	/**
+	 * Desviación típica de las unidades por día, corregida por los pocos días observados.
+	 * @return desviación (0 si aún no hay días cerrados)
+	 */
+	public double desviacionDiaria() {
+		double peso = pesoObservado();
+		if (peso == 0) {
+			return 0;
+		}
+		double mediaCorregida = media / peso;
+		return Math.sqrt(Math.max(0, mediaCuadrados / peso - mediaCorregida * mediaCorregida));
+	}
+
+	// Peso total de los días observados: 1 - (1 - α)^días
+	private double pesoObservado() {
+		return dias == 0 ? 0 : 1 - Math.pow(1 - alfa, dias);
+	}
+
+	// Getters del estado, para guardarlo
+
+	public double getMedia() {
+		return media;
+	}
+
+	public double getMediaCuadrados() {
+		return mediaCuadrados;
+	}
+
+	public long getDias() {
+		return dias;
+	}
+
+	public long getDiaAbierto() {
+		return diaAbierto;
+	}
+
+	public double getUnidadesDiaAbierto() {
+		return unidadesDiaAbierto;
+	}
+}
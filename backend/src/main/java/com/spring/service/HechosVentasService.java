@@ -0,0 +1,543 @@
+package com.spring.service;
+
+/**
+ * Almacén en memoria de las líneas de pedido guardadas por columnas, para responder preguntas
+ * de análisis (unidades por producto y semana, reparto por categoría y mes...) sin escribir una consulta nueva para cada una.
+ *
+ * Almacenamiento por columnas:
+ * 	Cada línea de pedido es una fila, pero en lugar de un objeto por fila se guarda un array de tipos primitivos
+ * 	por columna: producto, categoría, día (número de día desde 1970), unidades e importe en céntimos.
+ * 	Los nombres de producto y de categoría se codifican con un diccionario (cada nombre distinto recibe un número),
+ * 	así que las columnas solo contienen enteros. Cada fila ocupa 24 bytes y recorrer una columna es leer memoria seguida.
+ *
+ * Carga y actualización:
+ * 	Al arrancar se cargan todas las líneas de la base de datos. Después, al confirmarse la creación de un pedido
+ * 	se añaden sus líneas al final, y al confirmarse su eliminación se marcan como borradas.
+ * 	La carga se hace sobre un almacén nuevo, sin bloquear las consultas ni los pedidos; los pedidos creados o
+ * 	eliminados mientras tanto se anotan y se aplican al almacén nuevo antes de sustituir al anterior.
+ * 	La categoría de cada fila es la que tenía el producto al cargarla; recargar() la actualiza.
+ *
+ * Consultas:
+ * 	agrupar() suma líneas, unidades e importe agrupando por una o dos dimensiones (producto, categoría o un tramo
+ * 	de tiempo: día, semana, mes, trimestre o año), con filtros por rango de fechas, productos y categorías.
+ * 	Las filas se reparten en tantos bloques como hilos del pool común (y al menos FILAS_POR_TAREA filas por bloque),
+ * 	que se recorren en paralelo; cada bloque acumula en sus propios arrays de long (sin crear objetos por fila)
+ * 	y al final se suman los arrays de todos los bloques. Así la memoria de una consulta depende del número de hilos
+ * 	y de grupos (como mucho MAX_GRUPOS, unos 2,4 MB por bloque), no del número de filas.
+ *
+ * Las escrituras y las consultas se coordinan con un cerrojo de lectura y escritura: varias consultas pueden
+ * ejecutarse a la vez y añadir un pedido solo espera a que terminen las que estén en curso.
+ */
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.model.LineaPedido;
+import com.spring.model.Pedido;
+import com.spring.repository.LineaPedidoRepository;
+import com.spring.service.AnaliticaVentasService.Granularidad;
+
+@Service
+public class HechosVentasService {
+
+	// Número máximo de grupos de una consulta (producto de las cardinalidades de sus dimensiones).
+	// Cada bloque reserva tres long por grupo, así que limita la memoria de una consulta
+	public static final int MAX_GRUPOS = 100_000;
+	// Filas mínimas que recorre cada tarea de una consulta en paralelo
+	private static final int FILAS_POR_TAREA = 1 << 16;
+	// Nombre que se usa para los productos sin categoría
+	private static final String SIN_CATEGORIA = "(sin categoría)";
+
+	/**
+	 * Dimensiones por las que se puede agrupar.
+	 */
+	public enum Dimension {
+		PRODUCTO(null), CATEGORIA(null),
+		DIA(Granularidad.DIA), SEMANA(Granularidad.SEMANA), MES(Granularidad.MES),
+		TRIMESTRE(Granularidad.TRIMESTRE), ANIO(Granularidad.ANIO);
+
+		// Tamaño de los tramos, en las dimensiones de tiempo
+		private final Granularidad granularidad;
+
+		Dimension(Granularidad granularidad) {
+			this.granularidad = granularidad;
+		}
+
+		/**
+		 * Devuelve la dimensión a partir de su nombre, sin distinguir mayúsculas.
+		 * @param nombre producto, categoria, dia, semana, mes, trimestre o anio
+		 * @return dimensión
+		 * @throws IllegalArgumentException si el nombre no corresponde a ninguna
+		 */
+		public static Dimension de(String nombre) {
+			try {
+				return valueOf(nombre.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Dimensión no válida: " + nombre
+						+ " (debe ser producto, categoria, dia, semana, mes, trimestre o anio)");
+			}
+		}
+	}
+
+	/**
+	 * Filtros de una consulta; cualquiera puede ser null para no filtrar.
+	 * @param desde primer día (incluido)
+	 * @param hasta último día (incluido)
+	 * @param productos nombres de los productos que cuentan
+	 * @param categorias categorías que cuentan
+	 */
+	public record Filtro(LocalDate desde, LocalDate hasta, Collection<String> productos, Collection<String> categorias) {
+	}
+
+	/**
+	 * Resultado de un grupo.
+	 * @param claves valor de cada dimensión (nombre del producto o categoría, o nombre del tramo)
+	 * @param lineas número de líneas de pedido
+	 * @param unidades unidades vendidas
+	 * @param importe importe vendido
+	 */
+	public record Grupo(List<String> claves, long lineas, long unidades, double importe) {
+	}
+
+	/**
+	 * Tamaño del almacén.
+	 * @param filas filas guardadas, incluidas las borradas
+	 * @param filasBorradas filas de pedidos eliminados
+	 * @param productos nombres de producto distintos
+	 * @param categorias categorías distintas
+	 * @param bytes memoria que ocupan las columnas
+	 */
+	public record Estadisticas(int filas, int filasBorradas, int productos, int categorias, long bytes) {
+	}
+
+	/**
+	 * Diccionario que asigna a cada texto distinto un número consecutivo.
+	 */
+	private static final class Diccionario {
+		private final Map<String, Integer> codigos = new HashMap<>();
+		private final List<String> valores = new ArrayList<>();
+
+		// Código de un texto, dándolo de alta si es nuevo
+		int codigo(String valor) {
+			Integer codigo = codigos.get(valor);
+			if (codigo == null) {
+				codigo = valores.size();
+				codigos.put(valor, codigo);
+				valores.add(valor);
+			}
+			return codigo;
+		}
+
+		// Códigos marcados a partir de una lista de textos (los que no existen se ignoran)
+		boolean[] mascara(Collection<String> seleccion) {
+			boolean[] mascara = new boolean[valores.size()];
+			for (String valor : seleccion) {
+				Integer codigo = codigos.get(valor);
+				if (codigo != null) {
+					mascara[codigo] = true;
+				}
+			}
+			return mascara;
+		}
+
+		// Códigos ordenados alfabéticamente por su texto
+		int[] ordenAlfabetico() {
+			return IntStream.range(0, valores.size()).boxed()
+					.sorted((a, b) -> valores.get(a).compareToIgnoreCase(valores.get(b)))
+					.mapToInt(Integer::intValue).toArray();
+		}
+	}
+
+	/**
+	 * Columnas, diccionarios y posición de las filas de cada pedido.
+	 */
+	private static final class Almacen {
+		private int[] producto = new int[1024];
+		private int[] categoria = new int[1024];
+		private int[] dia = new int[1024];
+		private int[] cantidad = new int[1024];
+		private long[] centimos = new long[1024];
+		private final BitSet borradas = new BitSet();
+		private int filas = 0;
+		private int diaMinimo = Integer.MAX_VALUE;
+		private int diaMaximo = Integer.MIN_VALUE;
+		private final Diccionario productos = new Diccionario();
+		private final Diccionario categorias = new Diccionario();
+		// Pedido -> {primera fila, número de filas}; las líneas de un pedido se guardan seguidas
+		private final Map<Long, int[]> filasDePedido = new HashMap<>();
+
+		// Empieza las filas de un pedido; devuelve false si el pedido ya estaba
+		boolean empezarPedido(long pedidoId) {
+			if (filasDePedido.containsKey(pedidoId)) {
+				return false;
+			}
+			filasDePedido.put(pedidoId, new int[] {filas, 0});
+			return true;
+		}
+
+		// Añade una fila al pedido que se está añadiendo
+		void anadir(long pedidoId, LocalDate fecha, String nombre, String nombreCategoria, int unidades, double precioUnitario) {
+			if (filas == producto.length) {
+				int capacidad = filas * 2;
+				producto = Arrays.copyOf(producto, capacidad);
+				categoria = Arrays.copyOf(categoria, capacidad);
+				dia = Arrays.copyOf(dia, capacidad);
+				cantidad = Arrays.copyOf(cantidad, capacidad);
+				centimos = Arrays.copyOf(centimos, capacidad);
+			}
+			int numeroDia = (int) fecha.toEpochDay();
+			producto[filas] = productos.codigo(nombre);
+			categoria[filas] = categorias.codigo(nombreCategoria != null ? nombreCategoria : SIN_CATEGORIA);
+			dia[filas] = numeroDia;
+			cantidad[filas] = unidades;
+			centimos[filas] = Math.round(unidades * precioUnitario * 100);
+			diaMinimo = Math.min(diaMinimo, numeroDia);
+			diaMaximo = Math.max(diaMaximo, numeroDia);
+			filas++;
+			filasDePedido.get(pedidoId)[1]++;
+		}
+
+		// Añade todas las líneas de un pedido, si no estaba ya
+		void anadirPedido(Pedido pedido) {
+			if (pedido.getDetalles() == null || !empezarPedido(pedido.getId())) {
+				return;
+			}
+			for (LineaPedido linea : pedido.getDetalles()) {
+				String nombreCategoria = linea.getProducto() != null ? linea.getProducto().getCategoria() : null;
+				anadir(pedido.getId(), pedido.getFechaPedido(), CuboVentasService.nombreProducto(linea), nombreCategoria,
+						linea.getCantidad(), linea.getPrecioUnitario());
+			}
+		}
+
+		// Marca como borradas las filas de un pedido eliminado
+		void borrarPedido(long pedidoId) {
+			int[] posicion = filasDePedido.remove(pedidoId);
+			if (posicion != null) {
+				borradas.set(posicion[0], posicion[0] + posicion[1]);
+			}
+		}
+	}
+
+	/**
+	 * Eje de agrupación ya preparado para una consulta: cómo se obtiene el código de una fila y cuántos códigos hay.
+	 */
+	private static final class Eje {
+		private final Dimension dimension;
+		private final int cardinalidad;
+		// Solo en las dimensiones de tiempo: tramo de cada día del rango y primer día de cada tramo
+		private final int[] tramoDeDia;
+		private final List<LocalDate> inicios;
+		// Solo en producto y categoría: códigos en orden alfabético
+		private final int[] orden;
+
+		Eje(Dimension dimension, Almacen almacen, int diaDesde, int diaHasta) {
+			this.dimension = dimension;
+			if (dimension.granularidad != null) {
+				LocalDate desde = LocalDate.ofEpochDay(diaDesde);
+				inicios = AnaliticaVentasService.inicios(desde, LocalDate.ofEpochDay(diaHasta), dimension.granularidad);
+				tramoDeDia = new int[diaHasta - diaDesde + 1];
+				int tramo = 0;
+				for (int d = 0; d < tramoDeDia.length; d++) {
+					while (tramo + 1 < inicios.size() && !desde.plusDays(d).isBefore(inicios.get(tramo + 1))) {
+						tramo++;
+					}
+					tramoDeDia[d] = tramo;
+				}
+				cardinalidad = inicios.size();
+				orden = null;
+			} else {
+				Diccionario diccionario = dimension == Dimension.PRODUCTO ? almacen.productos : almacen.categorias;
+				cardinalidad = Math.max(1, diccionario.valores.size());
+				orden = diccionario.ordenAlfabetico();
+				tramoDeDia = null;
+				inicios = null;
+			}
+		}
+
+		// Código de una fila en este eje; el día es relativo al primer día del rango
+		int codigo(int producto, int categoria, int diaRelativo) {
+			return switch (dimension) {
+				case PRODUCTO -> producto;
+				case CATEGORIA -> categoria;
+				default -> tramoDeDia[diaRelativo];
+			};
+		}
+
+		// Códigos en el orden en que se devuelven los grupos
+		int[] ordenCodigos() {
+			return orden != null ? orden : IntStream.range(0, cardinalidad).toArray();
+		}
+
+		// Nombre de un código
+		String clave(Almacen almacen, int codigo) {
+			return switch (dimension) {
+				case PRODUCTO -> almacen.productos.valores.get(codigo);
+				case CATEGORIA -> almacen.categorias.valores.get(codigo);
+				default -> dimension.granularidad.etiqueta(inicios.get(codigo));
+			};
+		}
+	}
+
+	/**
+	 * Acumulados de una parte de las filas, un elemento por grupo.
+	 */
+	private static final class Parcial {
+		private final long[] lineas;
+		private final long[] unidades;
+		private final long[] centimos;
+
+		Parcial(int grupos) {
+			lineas = new long[grupos];
+			unidades = new long[grupos];
+			centimos = new long[grupos];
+		}
+
+		// Suma otro parcial a este
+		Parcial sumar(Parcial otro) {
+			for (int i = 0; i < lineas.length; i++) {
+				lineas[i] += otro.lineas[i];
+				unidades[i] += otro.unidades[i];
+				centimos[i] += otro.centimos[i];
+			}
+			return this;
+		}
+	}
+
+	private final LineaPedidoRepository lineaRepository;
+	private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+	private volatile Almacen actual = new Almacen();
+	// Cambios recibidos durante una carga, para aplicarlos al almacén nuevo (null si no hay carga en curso)
+	private List<PedidoModificadoEvent> cambiosDuranteCarga;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param lineaRepository repositorio de líneas de pedido
+	 */
+	public HechosVentasService(LineaPedidoRepository lineaRepository) {
+		this.lineaRepository = lineaRepository;
+	}
+
+	/**
+	 * Carga todas las líneas de pedido al arrancar la aplicación.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Transactional(readOnly = true)
+	public void cargar() {
+		recargar();
+	}
+
+	/**
+	 * Vuelve a cargar el almacén completo desde la base de datos y sustituye al actual.
+	 * Mientras se carga, las consultas siguen usando el almacén anterior.
+	 * @return número de filas cargadas
+	 */
+	@Transactional(readOnly = true)
+	public synchronized int recargar() {
+		cerrojo.writeLock().lock();
+		try {
+			cambiosDuranteCarga = new ArrayList<>();
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		Almacen nuevo = new Almacen();
+		try (Stream<Object[]> filas = lineaRepository.recorrerParaAlmacenColumnar()) {
+			filas.forEach(fila -> {
+				long pedidoId = ((Number) fila[0]).longValue();
+				// Las filas llegan ordenadas por pedido: la primera de cada pedido lo da de alta
+				if (!nuevo.filasDePedido.containsKey(pedidoId)) {
+					nuevo.empezarPedido(pedidoId);
+				}
+				nuevo.anadir(pedidoId, (LocalDate) fila[1], (String) fila[2], (String) fila[5],
+						((Number) fila[3]).intValue(), ((Number) fila[4]).doubleValue());
+			});
+		} catch (RuntimeException e) {
+			cerrojo.writeLock().lock();
+			try {
+				cambiosDuranteCarga = null;
+			} finally {
+				cerrojo.writeLock().unlock();
+			}
+			throw e;
+		}
+		cerrojo.writeLock().lock();
+		try {
+			// Los pedidos creados durante la carga que no llegó a leer se añaden; los eliminados se borran
+			for (PedidoModificadoEvent cambio : cambiosDuranteCarga) {
+				aplicar(nuevo, cambio);
+			}
+			cambiosDuranteCarga = null;
+			actual = nuevo;
+			return nuevo.filas;
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Añade o borra las líneas de un pedido cuando se confirma su creación o eliminación.
+	 * @param evento evento con el pedido modificado
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(VersionesService.ANTES_DE_VERSIONAR)
+	public void alModificarPedido(PedidoModificadoEvent evento) {
+		Pedido pedido = evento.getPedido();
+		if (pedido == null || pedido.getId() == null || pedido.getFechaPedido() == null) {
+			return;
+		}
+		if (evento.getTipo() != PedidoModificadoEvent.Tipo.CREADO && evento.getTipo() != PedidoModificadoEvent.Tipo.ELIMINADO) {
+			return;
+		}
+		cerrojo.writeLock().lock();
+		try {
+			aplicar(actual, evento);
+			if (cambiosDuranteCarga != null) {
+				cambiosDuranteCarga.add(evento);
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Agrupa las líneas de pedido por una o dos dimensiones y suma líneas, unidades e importe de cada grupo.
+	 * @param dimensiones una o dos dimensiones distintas
+	 * @param filtro filtros de fechas, productos y categorías
+	 * @return grupos con alguna línea, ordenados por la primera dimensión y después por la segunda
+	 *         (los tramos de tiempo por fecha, los productos y categorías por nombre)
+	 * @throws IllegalArgumentException si las dimensiones o el rango no son válidos, o hay demasiados grupos
+	 */
+	public List<Grupo> agrupar(List<Dimension> dimensiones, Filtro filtro) {
+		if (dimensiones.isEmpty() || dimensiones.size() > 2
+				|| (dimensiones.size() == 2 && dimensiones.get(0) == dimensiones.get(1))) {
+			throw new IllegalArgumentException("Hay que agrupar por una o dos dimensiones distintas");
+		}
+		if (filtro.desde() != null && filtro.hasta() != null && filtro.hasta().isBefore(filtro.desde())) {
+			throw new IllegalArgumentException("La fecha final es anterior a la inicial");
+		}
+		cerrojo.readLock().lock();
+		try {
+			Almacen almacen = actual;
+			int diaDesde = filtro.desde() != null ? (int) filtro.desde().toEpochDay() : almacen.diaMinimo;
+			int diaHasta = filtro.hasta() != null ? (int) filtro.hasta().toEpochDay() : almacen.diaMaximo;
+			if (almacen.filas == 0 || diaHasta < diaDesde) {
+				return List.of();
+			}
+			Eje primero = new Eje(dimensiones.get(0), almacen, diaDesde, diaHasta);
+			Eje segundo = dimensiones.size() == 2 ? new Eje(dimensiones.get(1), almacen, diaDesde, diaHasta) : null;
+			int cardinalidadSegundo = segundo != null ? segundo.cardinalidad : 1;
+			if ((long) primero.cardinalidad * cardinalidadSegundo > MAX_GRUPOS) {
+				throw new IllegalArgumentException("La consulta tiene más de " + MAX_GRUPOS + " grupos");
+			}
+			boolean[] productosValidos = filtro.productos() != null ? almacen.productos.mascara(filtro.productos()) : null;
+			boolean[] categoriasValidas = filtro.categorias() != null ? almacen.categorias.mascara(filtro.categorias()) : null;
+
+			// Cada tarea recorre un bloque de filas y acumula en su propio parcial. Hay como mucho un bloque por hilo,
+			// para que el número de parciales en memoria a la vez no crezca con las filas
+			int grupos = primero.cardinalidad * cardinalidadSegundo;
+			int filas = almacen.filas;
+			int tareas = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(),
+					(filas + FILAS_POR_TAREA - 1) / FILAS_POR_TAREA));
+			int filasPorTarea = (filas + tareas - 1) / tareas;
+			Parcial total = IntStream.range(0, tareas).parallel()
+					.mapToObj(t -> recorrer(almacen, t * filasPorTarea, Math.min(filas, (t + 1) * filasPorTarea),
+							diaDesde, diaHasta, productosValidos, categoriasValidas, primero, segundo, grupos))
+					.reduce(Parcial::sumar)
+					.orElseGet(() -> new Parcial(grupos));
+
+			// Recorre los grupos en orden y se queda con los que tienen alguna línea
+			List<Grupo> resultado = new ArrayList<>();
+			int[] ordenSegundo = segundo != null ? segundo.ordenCodigos() : new int[] {0};
+			for (int a : primero.ordenCodigos()) {
+				for (int b : ordenSegundo) {
+					int grupo = a * cardinalidadSegundo + b;
+					if (total.lineas[grupo] == 0) {
+						continue;
+					}
+					List<String> claves = segundo != null
+							? List.of(primero.clave(almacen, a), segundo.clave(almacen, b))
+							: List.of(primero.clave(almacen, a));
+					resultado.add(new Grupo(claves, total.lineas[grupo], total.unidades[grupo], total.centimos[grupo] / 100.0));
+				}
+			}
+			return resultado;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Devuelve el tamaño actual del almacén.
+	 * @return estadísticas del almacén
+	 */
+	public Estadisticas estadisticas() {
+		cerrojo.readLock().lock();
+		try {
+			Almacen almacen = actual;
+			// Cuatro columnas de int y una de long por fila reservada
+			long bytes = (long) almacen.producto.length * (4 * Integer.BYTES + Long.BYTES);
+			return new Estadisticas(almacen.filas, almacen.borradas.cardinality(), almacen.productos.valores.size(),
+					almacen.categorias.valores.size(), bytes);
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Recorre un bloque de filas acumulando las que cumplen los filtros en su grupo.
+	 */
+	private static Parcial recorrer(Almacen almacen, int desde, int hasta, int diaDesde, int diaHasta,
+			boolean[] productosValidos, boolean[] categoriasValidas, Eje primero, Eje segundo, int grupos) {
+		Parcial parcial = new Parcial(grupos);
+		int cardinalidadSegundo = segundo != null ? segundo.cardinalidad : 1;
+		int[] producto = almacen.producto;
+		int[] categoria = almacen.categoria;
+		int[] dia = almacen.dia;
+		int[] cantidad = almacen.cantidad;
+		long[] centimos = almacen.centimos;
+		for (int i = desde; i < hasta; i++) {
+			int d = dia[i];
+			if (d < diaDesde || d > diaHasta || almacen.borradas.get(i)) {
+				continue;
+			}
+			int p = producto[i];
+			int c = categoria[i];
+			if ((productosValidos != null && !productosValidos[p]) || (categoriasValidas != null && !categoriasValidas[c])) {
+				continue;
+			}
+			int grupo = primero.codigo(p, c, d - diaDesde) * cardinalidadSegundo
+					+ (segundo != null ? segundo.codigo(p, c, d - diaDesde) : 0);
+			parcial.lineas[grupo]++;
+			parcial.unidades[grupo] += cantidad[i];
+			parcial.centimos[grupo] += centimos[i];
+		}
+		return parcial;
+	}
+
+	// Aplica la creación o eliminación de un pedido a un almacén
+	private static void aplicar(Almacen almacen, PedidoModificadoEvent evento) {
+		if (evento.getTipo() == PedidoModificadoEvent.Tipo.CREADO) {
+			almacen.anadirPedido(evento.getPedido());
+		} else {
+			almacen.borrarPedido(evento.getPedido().getId());
+		}
+	}
+}
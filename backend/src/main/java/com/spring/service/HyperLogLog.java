@@ -0,0 +1,237 @@
+package com.spring.service;
+
+/**
+ * Contador aproximado de elementos distintos (HyperLogLog), usado para contar clientes únicos.
+ *
+ * En lugar de guardar todos los elementos vistos, cada valor se convierte en un hash de 64 bits:
+ * los 12 primeros bits eligen uno de los 4096 registros y el registro guarda el mayor número de ceros
+ * iniciales (+1) visto en el resto del hash. Con esos 4096 valores se estima cuántos elementos distintos hay.
+ *
+ * Propiedades:
+ * 	Ocupa siempre lo mismo (4096 registros) aunque se añadan millones de elementos.
+ * 	Añadir el mismo elemento varias veces no cambia nada.
+ * 	Dos contadores se combinan quedándose con el máximo de cada registro, y el resultado es el contador
+ * 	de la unión: por eso se guardan contadores por día y cualquier rango se responde combinándolos.
+ * 	No se pueden quitar elementos.
+ *
+ * Error:
+ * 	El error estándar es 1,04 / √4096 ≈ 1,6 %: en unas dos de cada tres estimaciones el error es menor del 1,6 %
+ * 	y en el 95 % menor del 3,3 %. Con pocos elementos el error es todavía menor (casi exacto por debajo de unos
+ * 	cientos), y la estimación no tiene sesgo en ningún rango: se usa el estimador mejorado de Ertl (2017)
+ * 	en lugar de la fórmula original con su cambio a recuento lineal.
+ *
+ * Formato guardado (aBytes / deBytes):
+ * 	Disperso, si hay pocos registros ocupados: un byte 1 y, por cada registro ocupado, su posición (2 bytes) y su valor (1 byte).
+ * 	Denso en otro caso: un byte 2 y los 4096 registros de 6 bits seguidos (3072 bytes).
+ * 	Un día con 20 clientes ocupa así unos 60 bytes.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+public final class HyperLogLog {
+
+	// Bits del hash que eligen el registro
+	public static final int PRECISION = 12;
+	// Número de registros
+	public static final int REGISTROS = 1 << PRECISION;
+	// Error estándar relativo de la estimación
+	public static final double ERROR_ESTANDAR = 1.04 / Math.sqrt(REGISTROS);
+	// Tamaño máximo del formato guardado
+	public static final int MAX_BYTES = 1 + REGISTROS * 6 / 8;
+
+	private static final byte FORMATO_DISPERSO = 1;
+	private static final byte FORMATO_DENSO = 2;
+	// Valor máximo de un registro: todos los bits tras el índice a cero, más 1
+	private static final int MAX_RANGO = 64 - PRECISION + 1;
+	private static final double ALFA_INFINITO = 1 / (2 * Math.log(2));
+
+	private final byte[] registros;
+
+	/**
+	 * Crea un contador vacío.
+	 */
+	public HyperLogLog() {
+		this.registros = new byte[REGISTROS];
+	}
+
+	private HyperLogLog(byte[] registros) {
+		this.registros = registros;
+	}
+
+	/**
+	 * Añade un texto, sin distinguir mayúsculas ni espacios al principio o al final (por ejemplo un email).
+	 * @param valor texto a contar; los vacíos o null se ignoran
+	 * @return true si el contador ha cambiado
+	 */
+	public boolean anadir(String valor) {
+		if (valor == null || valor.isBlank()) {
+			return false;
+		}
+		return anadirHash(hash(valor.trim().toLowerCase(Locale.ROOT)));
+	}
+
+	/**
+	 * Añade un elemento a partir de su hash de 64 bits.
+	 * @param hash hash del elemento
+	 * @return true si el contador ha cambiado
+	 */
+	public boolean anadirHash(long hash) {
+		int registro = (int) (hash >>> (64 - PRECISION));
+		// Ceros iniciales del resto del hash, más 1 (el bit de relleno limita el máximo a MAX_RANGO)
+		byte rango = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+		if (rango > registros[registro]) {
+			registros[registro] = rango;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Suma a este contador los elementos de otro (unión).
+	 * @param otro contador a combinar
+	 */
+	public void combinar(HyperLogLog otro) {
+		for (int i = 0; i < REGISTROS; i++) {
+			if (otro.registros[i] > registros[i]) {
+				registros[i] = otro.registros[i];
+			}
+		}
+	}
+
+	/**
+	 * Estima el número de elementos distintos añadidos, con el estimador mejorado de Ertl (2017):
+	 * a diferencia del original no cambia de fórmula con pocos elementos, así que no tiene el sesgo
+	 * de la zona de transición (entre 2,5 y 5 veces el número de registros).
+	 * @return estimación
+	 */
+	public long estimar() {
+		// Cuántos registros tienen cada valor
+		int[] histograma = new int[MAX_RANGO + 1];
+		for (byte registro : registros) {
+			histograma[registro]++;
+		}
+		double m = REGISTROS;
+		double z = m * tau(1 - histograma[MAX_RANGO] / m);
+		for (int k = MAX_RANGO - 1; k >= 1; k--) {
+			z = 0.5 * (z + histograma[k]);
+		}
+		z += m * sigma(histograma[0] / m);
+		return Math.round(ALFA_INFINITO * m * m / z);
+	}
+
+	/**
+	 * Convierte el contador al formato guardado, disperso o denso según cuál ocupe menos.
+	 * @return bytes del contador
+	 */
+	public byte[] aBytes() {
+		int ocupados = 0;
+		for (byte registro : registros) {
+			if (registro != 0) {
+				ocupados++;
+			}
+		}
+		if (1 + ocupados * 3 < MAX_BYTES) {
+			byte[] bytes = new byte[1 + ocupados * 3];
+			bytes[0] = FORMATO_DISPERSO;
+			int posicion = 1;
+			for (int i = 0; i < REGISTROS; i++) {
+				if (registros[i] != 0) {
+					bytes[posicion++] = (byte) (i >>> 8);
+					bytes[posicion++] = (byte) i;
+					bytes[posicion++] = registros[i];
+				}
+			}
+			return bytes;
+		}
+		// Cuatro registros de 6 bits en cada grupo de 3 bytes
+		byte[] bytes = new byte[MAX_BYTES];
+		bytes[0] = FORMATO_DENSO;
+		for (int i = 0, posicion = 1; i < REGISTROS; i += 4, posicion += 3) {
+			int grupo = registros[i] << 18 | registros[i + 1] << 12 | registros[i + 2] << 6 | registros[i + 3];
+			bytes[posicion] = (byte) (grupo >>> 16);
+			bytes[posicion + 1] = (byte) (grupo >>> 8);
+			bytes[posicion + 2] = (byte) grupo;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Reconstruye un contador a partir de su formato guardado.
+	 * @param bytes bytes generados por aBytes()
+	 * @return contador
+	 * @throws IllegalArgumentException si los bytes no tienen un formato válido
+	 */
+	public static HyperLogLog deBytes(byte[] bytes) {
+		byte[] registros = new byte[REGISTROS];
+		if (bytes.length > 0 && bytes[0] == FORMATO_DISPERSO && (bytes.length - 1) % 3 == 0) {
+			for (int posicion = 1; posicion < bytes.length; posicion += 3) {
+				int registro = (bytes[posicion] & 0xFF) << 8 | (bytes[posicion + 1] & 0xFF);
+				registros[registro & (REGISTROS - 1)] = bytes[posicion + 2];
+			}
+		} else if (bytes.length == MAX_BYTES && bytes[0] == FORMATO_DENSO) {
+			for (int i = 0, posicion = 1; i < REGISTROS; i += 4, posicion += 3) {
+				int grupo = (bytes[posicion] & 0xFF) << 16 | (bytes[posicion + 1] & 0xFF) << 8 | (bytes[posicion + 2] & 0xFF);
+				registros[i] = (byte) (grupo >>> 18 & 0x3F);
+				registros[i + 1] = (byte) (grupo >>> 12 & 0x3F);
+				registros[i + 2] = (byte) (grupo >>> 6 & 0x3F);
+				registros[i + 3] = (byte) (grupo & 0x3F);
+			}
+		} else {
+			throw new IllegalArgumentException("Formato de HyperLogLog no válido");
+		}
+		return new HyperLogLog(registros);
+	}
+
+	// Corrección por los registros vacíos: x + x²·1 + x⁴·2 + x⁸·4 + ... (x = fracción de registros vacíos)
+	private static double sigma(double x) {
+		if (x == 1) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double y = 1;
+		double z = x;
+		double anterior;
+		do {
+			x *= x;
+			anterior = z;
+			z += x * y;
+			y += y;
+		} while (z != anterior);
+		return z;
+	}
+
+	// Corrección por los registros en el valor máximo (x = fracción de registros por debajo del máximo)
+	private static double tau(double x) {
+		if (x == 0 || x == 1) {
+			return 0;
+		}
+		double y = 1;
+		double z = 1 - x;
+		double anterior;
+		do {
+			x = Math.sqrt(x);
+			anterior = z;
+			y *= 0.5;
+			z -= Math.pow(1 - x, 2) * y;
+		} while (z != anterior);
+		return z / 3;
+	}
+
+	/**
+	 * Hash de 64 bits de un texto: FNV-1a sobre sus bytes UTF-8, mezclado con el paso final de MurmurHash3
+	 * para que todos los bits dependan de todo el texto.
+	 */
+	static long hash(String valor) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : valor.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b & 0xFF;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
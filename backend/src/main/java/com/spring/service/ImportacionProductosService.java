@@ -0,0 +1,380 @@
+package com.spring.service;
+
+/**
+ * Servicio para la carga y modificación masiva de productos.
+ *
+ * Funcionalidades principales:
+ *
+ * 	Importación:
+ * 		Lee un archivo CSV o JSON de productos línea a línea (sin cargarlo entero en memoria).
+ * 		Inserta los productos en lotes con JdbcTemplate.batchUpdate. Producto usa IDs IDENTITY,
+ * 		con los que Hibernate no puede agrupar inserciones, así que se hace directamente por JDBC.
+ * 		Las filas no válidas se saltan y se informan con su número de línea.
+ *
+ * 	Actualización masiva:
+ * 		Cambia precio, descuento, visibilidad o categoría de todos los productos que cumplen un filtro
+ * 		con una única sentencia UPDATE, en lugar de buscar y guardar cada producto.
+ *
+ * En ambos casos se publica un único ProductoModificadoEvent al terminar, de modo que la caché del catálogo,
+ * el índice de búsqueda y las versiones se actualizan una sola vez por operación y no una vez por producto.
+ *
+ * Formato CSV: la primera línea es la cabecera con los nombres de columna (nombre y precio obligatorios;
+ * descripcion, descuento, visible, categoria, precioCompra y stock opcionales). El separador puede ser coma
+ * o punto y coma; con punto y coma se admiten decimales con coma (12,50). Los valores pueden ir entre comillas.
+ *
+ * Formato JSON: un array de objetos con los mismos campos que Producto.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.dto.ActualizacionMasivaDTO;
+import com.spring.event.ProductoModificadoEvent;
+import com.spring.model.Producto;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+@Service
+public class ImportacionProductosService {
+
+	// Número de productos que se envían a la base de datos en cada lote
+	private static final int TAMANO_LOTE = 500;
+	// Número máximo de errores que se devuelven en la respuesta
+	private static final int MAX_ERRORES = 100;
+	// Sentencia de inserción; las columnas siguen la estrategia de nombres de Spring (camelCase -> snake_case)
+	private static final String SQL_INSERTAR = "INSERT INTO producto "
+			+ "(nombre, precio, descripcion, descuento, visible, categoria, precio_compra, stock, fecha_actualizacion_stock, version_cambio) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final ObjectMapper objectMapper;
+	private final SincronizacionProductosService sincronizacion;
+	private final ApplicationEventPublisher eventos;
+
+	// EntityManager para construir la sentencia de actualización masiva
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param jdbcTemplate acceso JDBC para las inserciones por lotes
+	 * @param objectMapper lector de JSON de la aplicación
+	 * @param sincronizacion servicio que reparte las versiones de cambio
+	 * @param eventos publicador de eventos de Spring
+	 */
+	public ImportacionProductosService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+			SincronizacionProductosService sincronizacion, ApplicationEventPublisher eventos) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.objectMapper = objectMapper;
+		this.sincronizacion = sincronizacion;
+		this.eventos = eventos;
+	}
+
+	/**
+	 * Importa los productos de un archivo CSV o JSON.
+	 * Se hace en una única transacción: si el archivo no se puede leer, no se guarda nada.
+	 * @param archivo archivo subido (.json o .csv)
+	 * @return mapa con el número de productos importados y la lista de errores por línea
+	 * @throws IOException si el archivo no se puede leer o el JSON está mal formado
+	 */
+	@Transactional(rollbackFor = Exception.class)
+	public Map<String, Object> importar(MultipartFile archivo) throws IOException {
+		Importacion importacion = new Importacion();
+		String nombre = archivo.getOriginalFilename() != null ? archivo.getOriginalFilename().toLowerCase(Locale.ROOT) : "";
+		try (InputStream entrada = archivo.getInputStream()) {
+			if (nombre.endsWith(".json") || "application/json".equals(archivo.getContentType())) {
+				leerJson(entrada, importacion);
+			} else {
+				leerCsv(entrada, importacion);
+			}
+		}
+		importacion.vaciarLote();
+
+		if (importacion.importados > 0) {
+			// Un único aviso para todo el archivo
+			eventos.publishEvent(new ProductoModificadoEvent(null, ProductoModificadoEvent.Tipo.CREADO));
+		}
+		Map<String, Object> resultado = new LinkedHashMap<>();
+		resultado.put("importados", importacion.importados);
+		resultado.put("errores", importacion.errores);
+		return resultado;
+	}
+
+	/**
+	 * Aplica unos mismos cambios a todos los productos que cumplen el filtro, con una sola sentencia UPDATE.
+	 * @param actualizacion filtro y cambios a aplicar
+	 * @return número de productos actualizados
+	 * @throws IllegalArgumentException si no se indica ningún cambio
+	 */
+	@Transactional
+	public int actualizarMasivo(ActualizacionMasivaDTO actualizacion) {
+		ActualizacionMasivaDTO.Filtro filtro = actualizacion.getFiltro() != null ? actualizacion.getFiltro() : new ActualizacionMasivaDTO.Filtro();
+		ActualizacionMasivaDTO.Cambios cambios = actualizacion.getCambios() != null ? actualizacion.getCambios() : new ActualizacionMasivaDTO.Cambios();
+
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaUpdate<Producto> update = cb.createCriteriaUpdate(Producto.class);
+		Root<Producto> producto = update.from(Producto.class);
+
+		boolean hayCambios = false;
+		Path<Double> precio = producto.get("precio");
+		if (cambios.getPrecio() != null) {
+			update.set(precio, cambios.getPrecio());
+			hayCambios = true;
+		} else if (cambios.getPorcentajePrecio() != null) {
+			// precio = ROUND(precio * (1 + porcentaje / 100), 2)
+			update.set(precio, cb.round(cb.prod(precio, 1 + cambios.getPorcentajePrecio() / 100), 2));
+			hayCambios = true;
+		}
+		if (cambios.getDescuento() != null) {
+			update.set(producto.<Integer>get("descuento"), cambios.getDescuento());
+			hayCambios = true;
+		}
+		if (cambios.getVisible() != null) {
+			update.set(producto.<Boolean>get("visible"), cambios.getVisible());
+			hayCambios = true;
+		}
+		if (cambios.getCategoria() != null) {
+			update.set(producto.<String>get("categoria"), cambios.getCategoria());
+			hayCambios = true;
+		}
+		if (!hayCambios) {
+			throw new IllegalArgumentException("No se ha indicado ningún cambio");
+		}
+		// Todos los productos actualizados comparten la misma versión de cambio
+		update.set(producto.<Long>get("versionCambio"), sincronizacion.siguienteVersion());
+
+		// Condiciones del filtro
+		List<Predicate> condiciones = new ArrayList<>();
+		if (filtro.getCategoria() != null) {
+			condiciones.add(cb.equal(cb.lower(producto.get("categoria")), filtro.getCategoria().toLowerCase(Locale.ROOT)));
+		}
+		if (filtro.getVisible() != null) {
+			condiciones.add(cb.equal(producto.get("visible"), filtro.getVisible()));
+		}
+		if (filtro.getIds() != null && !filtro.getIds().isEmpty()) {
+			condiciones.add(producto.get("id").in(filtro.getIds()));
+		}
+		update.where(condiciones.toArray(new Predicate[0]));
+
+		int actualizados = entityManager.createQuery(update).executeUpdate();
+		if (actualizados > 0) {
+			eventos.publishEvent(new ProductoModificadoEvent(null, ProductoModificadoEvent.Tipo.ACTUALIZADO));
+		}
+		return actualizados;
+	}
+
+	/**
+	 * Lee un array JSON de productos elemento a elemento.
+	 * @param entrada flujo del archivo
+	 * @param importacion estado de la importación
+	 * @throws IOException si el JSON está mal formado
+	 */
+	private void leerJson(InputStream entrada, Importacion importacion) throws IOException {
+		try (MappingIterator<Producto> productos = objectMapper.readerFor(Producto.class).readValues(entrada)) {
+			int posicion = 0;
+			while (productos.hasNextValue()) {
+				posicion++;
+				importacion.agregar(productos.nextValue(), "Elemento " + posicion);
+			}
+		}
+	}
+
+	/**
+	 * Lee un CSV de productos línea a línea.
+	 * @param entrada flujo del archivo
+	 * @param importacion estado de la importación
+	 * @throws IOException si el archivo no se puede leer o no tiene cabecera
+	 */
+	private void leerCsv(InputStream entrada, Importacion importacion) throws IOException {
+		BufferedReader lector = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+		String cabecera = lector.readLine();
+		if (cabecera == null) {
+			throw new IOException("El archivo CSV está vacío");
+		}
+		// Quita la marca BOM que añaden algunos editores al principio del archivo
+		cabecera = cabecera.replace("\uFEFF", "");
+		char separador = cabecera.indexOf(';') >= 0 ? ';' : ',';
+
+		// Posición de cada columna, por nombre normalizado (sin mayúsculas ni guiones bajos)
+		Map<String, Integer> columnas = new HashMap<>();
+		List<String> nombres = dividirCsv(cabecera, separador);
+		for (int i = 0; i < nombres.size(); i++) {
+			columnas.put(nombres.get(i).trim().toLowerCase(Locale.ROOT).replace("_", ""), i);
+		}
+		if (!columnas.containsKey("nombre") || !columnas.containsKey("precio")) {
+			throw new IOException("La cabecera del CSV debe incluir las columnas nombre y precio");
+		}
+
+		String linea;
+		int numero = 1;
+		while ((linea = lector.readLine()) != null) {
+			numero++;
+			if (linea.isBlank()) {
+				continue;
+			}
+			List<String> valores = dividirCsv(linea, separador);
+			try {
+				Producto producto = new Producto();
+				producto.setNombre(valor(valores, columnas, "nombre"));
+				String precio = valor(valores, columnas, "precio");
+				if (precio == null) {
+					throw new IllegalArgumentException("precio vacío");
+				}
+				producto.setPrecio(decimal(precio, separador));
+				producto.setDescripcion(valor(valores, columnas, "descripcion"));
+				String descuento = valor(valores, columnas, "descuento");
+				producto.setDescuento(descuento != null ? Integer.valueOf(descuento) : null);
+				String visible = valor(valores, columnas, "visible");
+				producto.setVisible(visible != null && (visible.equalsIgnoreCase("true") || visible.equalsIgnoreCase("si")
+						|| visible.equalsIgnoreCase("sí") || visible.equals("1")));
+				producto.setCategoria(valor(valores, columnas, "categoria"));
+				String precioCompra = valor(valores, columnas, "preciocompra");
+				producto.setPrecioCompra(precioCompra != null ? decimal(precioCompra, separador) : null);
+				String stock = valor(valores, columnas, "stock");
+				producto.setStock(stock != null ? Integer.valueOf(stock) : null);
+				importacion.agregar(producto, "Línea " + numero);
+			} catch (IllegalArgumentException e) {
+				importacion.error("Línea " + numero + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Devuelve el valor de una columna de la fila, o null si la columna no existe o está vacía.
+	 */
+	private static String valor(List<String> valores, Map<String, Integer> columnas, String columna) {
+		Integer indice = columnas.get(columna);
+		if (indice == null || indice >= valores.size()) {
+			return null;
+		}
+		String valor = valores.get(indice).trim();
+		return valor.isEmpty() ? null : valor;
+	}
+
+	/**
+	 * Convierte un texto en número decimal; con separador ';' se admite la coma decimal.
+	 */
+	private static double decimal(String texto, char separador) {
+		return Double.parseDouble(separador == ';' ? texto.replace(',', '.') : texto);
+	}
+
+	/**
+	 * Divide una línea CSV en valores, respetando los valores entre comillas y las comillas dobles escapadas ("").
+	 * @param linea línea del archivo
+	 * @param separador separador de columnas
+	 * @return valores de la línea
+	 */
+	static List<String> dividirCsv(String linea, char separador) {
+		List<String> valores = new ArrayList<>();
+		StringBuilder actual = new StringBuilder();
+		boolean entreComillas = false;
+		for (int i = 0; i < linea.length(); i++) {
+			char c = linea.charAt(i);
+			if (entreComillas) {
+				if (c == '"' && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+					actual.append('"');
+					i++;
+				} else if (c == '"') {
+					entreComillas = false;
+				} else {
+					actual.append(c);
+				}
+			} else if (c == '"') {
+				entreComillas = true;
+			} else if (c == separador) {
+				valores.add(actual.toString());
+				actual.setLength(0);
+			} else {
+				actual.append(c);
+			}
+		}
+		valores.add(actual.toString());
+		return valores;
+	}
+
+	/**
+	 * Estado de una importación en curso: el lote pendiente de enviar, el recuento y los errores.
+	 */
+	private class Importacion {
+		private final List<Producto> lote = new ArrayList<>(TAMANO_LOTE);
+		private final List<String> errores = new ArrayList<>();
+		private int importados = 0;
+
+		/**
+		 * Valida un producto y lo añade al lote, enviando el lote si está lleno.
+		 * @param producto producto leído
+		 * @param posicion descripción de la posición en el archivo, para los mensajes de error
+		 */
+		void agregar(Producto producto, String posicion) {
+			if (producto.getNombre() == null || producto.getNombre().isBlank()) {
+				error(posicion + ": nombre vacío");
+			} else if (producto.getPrecio() < 0) {
+				error(posicion + ": precio negativo");
+			} else {
+				lote.add(producto);
+				if (lote.size() >= TAMANO_LOTE) {
+					vaciarLote();
+				}
+			}
+		}
+
+		/**
+		 * Registra un error, hasta el máximo permitido.
+		 * @param mensaje descripción del error
+		 */
+		void error(String mensaje) {
+			if (errores.size() < MAX_ERRORES) {
+				errores.add(mensaje);
+			}
+		}
+
+		/**
+		 * Inserta en la base de datos los productos pendientes con una sola sentencia por lotes.
+		 */
+		void vaciarLote() {
+			if (lote.isEmpty()) {
+				return;
+			}
+			Timestamp ahora = new Timestamp(System.currentTimeMillis());
+			jdbcTemplate.batchUpdate(SQL_INSERTAR, lote, lote.size(), (ps, p) -> {
+				ps.setString(1, p.getNombre());
+				ps.setDouble(2, p.getPrecio());
+				ps.setString(3, p.getDescripcion());
+				ps.setObject(4, p.getDescuento(), Types.INTEGER);
+				ps.setBoolean(5, p.isVisible());
+				ps.setString(6, p.getCategoria());
+				ps.setObject(7, p.getPrecioCompra(), Types.DOUBLE);
+				ps.setObject(8, p.getStock(), Types.INTEGER);
+				ps.setTimestamp(9, p.getStock() != null ? ahora : null);
+				ps.setLong(10, sincronizacion.siguienteVersion());
+			});
+			importados += lote.size();
+			lote.clear();
+		}
+	}
+}
@@ -0,0 +1,446 @@
+package com.spring.service;
+
+/**
+ * Índice de productos comprados juntos ("los clientes que compraron esto también compraron...").
+ *
+ * Es una matriz dispersa y simétrica: la celda (a, b) cuenta los pedidos que incluyen a la vez los productos a y b.
+ * Cada producto tiene su fila con solo los productos con los que ha coincidido alguna vez, guardada en una tabla hash
+ * de tipos primitivos (claves int y valores double en arrays, sin objetos por celda). La celda se guarda en las
+ * dos filas, para que los productos relacionados con uno salgan de recorrer solo su fila: unos pocos cientos de
+ * celdas como mucho, sin consultar la base de datos.
+ *
+ * Los ID de producto son autoincrementales y, por tanto, densos: las filas van en un array indexado por el ID.
+ *
+ * Envejecimiento:
+ * 	Cada pedido pesa 2^((fecha - referencia) / vidaMedia): un pedido de hace vidaMedia días pesa la mitad que uno
+ * 	de hoy. Como el peso depende solo de la fecha del pedido, al eliminar un pedido se resta exactamente lo que se
+ * 	sumó, y el índice reconstruido desde el histórico coincide con el mantenido pedido a pedido.
+ * 	Pasar el tiempo divide todos los valores por el mismo número, así que no cambia el orden de los relacionados
+ * 	y no hace falta recorrer la matriz cada día: los valores se guardan respecto a una fecha de referencia y solo
+ * 	al consultar se pasan a "pedidos equivalentes de hoy". Cuando los pesos crecen demasiado, la referencia
+ * 	se adelanta y la matriz se reescala una vez (y se quitan las celdas que ya no pesan nada).
+ * 	Con vidaMedia 0 no hay envejecimiento: cada pedido pesa 1.
+ *
+ * No es seguro para varios hilos: ProductosRelacionadosService lo protege con un cerrojo de lectura y escritura.
+ */
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class IndiceCoocurrencias {
+
+	// Mayor ID de producto que se indexa (las filas van en un array indexado por el ID)
+	public static final int MAX_ID = 1 << 24;
+	// Peso a partir del cual se adelanta la fecha de referencia y se reescala la matriz
+	private static final double PESO_MAXIMO = 0x1p32;
+	// Valor por debajo del cual una celda se considera vacía (restos de redondeo al sumar y restar el mismo pedido)
+	private static final double UMBRAL = 1e-6;
+
+	/**
+	 * Producto relacionado con otro.
+	 * @param productoId ID del producto relacionado
+	 * @param nombre nombre del producto en el último pedido visto
+	 * @param pedidos pedidos en los que aparecen los dos (pedidos equivalentes de hoy si hay envejecimiento)
+	 * @param confianza fracción de los pedidos del producto consultado que incluyen también este (0 a 1)
+	 * @param lift cuántas veces más aparecen juntos de lo que aparecerían por casualidad (más de 1: relación real)
+	 */
+	public record Pareja(long productoId, String nombre, double pedidos, double confianza, double lift) {
+	}
+
+	/**
+	 * Tamaño del índice.
+	 * @param productos productos con algún pedido
+	 * @param parejas parejas de productos distintas que han coincidido en algún pedido
+	 * @param pedidos pedidos indexados (pedidos equivalentes de hoy si hay envejecimiento)
+	 * @param vidaMediaDias días en los que el peso de un pedido se reduce a la mitad (0 sin envejecimiento)
+	 * @param bytes memoria aproximada de la matriz
+	 */
+	public record Estadisticas(int productos, long parejas, double pedidos, double vidaMediaDias, long bytes) {
+	}
+
+	/**
+	 * Fila de la matriz: tabla hash de direccionamiento abierto (sondeo lineal) de ID de producto a valor.
+	 * La clave 0 marca un hueco libre, así que el ID 0 no se indexa.
+	 */
+	static final class Fila {
+		private int[] claves = new int[4];
+		private double[] valores = new double[4];
+		private int tamano;
+
+		/**
+		 * Suma un valor a una celda, creándola si no existe y borrándola si se queda a cero.
+		 * @return +1 si se ha creado la celda, -1 si se ha borrado, 0 en otro caso
+		 */
+		int sumar(int clave, double valor) {
+			int mascara = claves.length - 1;
+			int i = posicion(clave, mascara);
+			while (claves[i] != 0) {
+				if (claves[i] == clave) {
+					valores[i] += valor;
+					if (valores[i] <= UMBRAL) {
+						borrar(i);
+						return -1;
+					}
+					return 0;
+				}
+				i = (i + 1) & mascara;
+			}
+			if (valor <= UMBRAL) {
+				return 0;
+			}
+			claves[i] = clave;
+			valores[i] = valor;
+			// Se agranda al llegar a 3/4 de ocupación
+			if (++tamano * 4 > claves.length * 3) {
+				agrandar();
+			}
+			return 1;
+		}
+
+		/**
+		 * Valor de una celda, o 0 si no existe.
+		 */
+		double obtener(int clave) {
+			int mascara = claves.length - 1;
+			for (int i = posicion(clave, mascara); claves[i] != 0; i = (i + 1) & mascara) {
+				if (claves[i] == clave) {
+					return valores[i];
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Multiplica todos los valores por un factor y borra los que se quedan por debajo del umbral.
+		 * @return celdas borradas
+		 */
+		int escalar(double factor) {
+			int borradas = 0;
+			for (int i = 0; i < claves.length; i++) {
+				if (claves[i] != 0) {
+					valores[i] *= factor;
+				}
+			}
+			// Se reconstruye la tabla sin las celdas vacías (borrar una a una movería otras ya recorridas)
+			int[] clavesAnteriores = claves;
+			double[] valoresAnteriores = valores;
+			claves = new int[clavesAnteriores.length];
+			valores = new double[clavesAnteriores.length];
+			tamano = 0;
+			for (int i = 0; i < clavesAnteriores.length; i++) {
+				if (clavesAnteriores[i] != 0) {
+					if (valoresAnteriores[i] > UMBRAL) {
+						sumar(clavesAnteriores[i], valoresAnteriores[i]);
+					} else {
+						borradas++;
+					}
+				}
+			}
+			return borradas;
+		}
+
+		int tamano() {
+			return tamano;
+		}
+
+		int capacidad() {
+			return claves.length;
+		}
+
+		// Borra la celda de una posición y recoloca las siguientes del mismo tramo ocupado para no dejar huecos en sus sondeos
+		private void borrar(int hueco) {
+			int mascara = claves.length - 1;
+			claves[hueco] = 0;
+			tamano--;
+			for (int i = (hueco + 1) & mascara; claves[i] != 0; i = (i + 1) & mascara) {
+				int ideal = posicion(claves[i], mascara);
+				// La celda puede ocupar el hueco si su posición ideal no está entre el hueco y ella (en orden circular)
+				if (((i - ideal) & mascara) >= ((i - hueco) & mascara)) {
+					claves[hueco] = claves[i];
+					valores[hueco] = valores[i];
+					claves[i] = 0;
+					hueco = i;
+				}
+			}
+		}
+
+		private void agrandar() {
+			int[] clavesAnteriores = claves;
+			double[] valoresAnteriores = valores;
+			claves = new int[clavesAnteriores.length * 2];
+			valores = new double[clavesAnteriores.length * 2];
+			int mascara = claves.length - 1;
+			for (int j = 0; j < clavesAnteriores.length; j++) {
+				if (clavesAnteriores[j] != 0) {
+					int i = posicion(clavesAnteriores[j], mascara);
+					while (claves[i] != 0) {
+						i = (i + 1) & mascara;
+					}
+					claves[i] = clavesAnteriores[j];
+					valores[i] = valoresAnteriores[j];
+				}
+			}
+		}
+
+		// Posición inicial de una clave: mezcla de Fibonacci para repartir IDs consecutivos
+		private static int posicion(int clave, int mascara) {
+			return (clave * 0x9E3779B9 >>> 16) & mascara;
+		}
+	}
+
+	private final double vidaMediaDias;
+	// Fecha respecto a la que se guardan los pesos (un pedido de esta fecha pesa 1)
+	private LocalDate referencia;
+	// Filas de la matriz y pedidos de cada producto (diagonal), indexados por ID de producto
+	private Fila[] filas = new Fila[64];
+	private double[] apariciones = new double[64];
+	private String[] nombres = new String[64];
+	// Peso total de los pedidos indexados (con al menos un producto)
+	private double pedidos;
+	private int productos;
+	// Celdas ocupadas fuera de la diagonal (cada pareja ocupa dos)
+	private long celdas;
+
+	/**
+	 * Crea un índice vacío.
+	 * @param vidaMediaDias días en los que el peso de un pedido se reduce a la mitad (0 sin envejecimiento)
+	 * @param referencia fecha de referencia inicial (normalmente hoy)
+	 */
+	public IndiceCoocurrencias(double vidaMediaDias, LocalDate referencia) {
+		if (vidaMediaDias < 0) {
+			throw new IllegalArgumentException("La vida media no puede ser negativa");
+		}
+		this.vidaMediaDias = vidaMediaDias;
+		this.referencia = referencia;
+	}
+
+	/**
+	 * Suma (signo 1) o resta (signo -1) un pedido: una vez cada producto y una vez cada pareja de productos distintos,
+	 * aunque el pedido tenga varias líneas del mismo producto. Los ID fuera de 1 .. MAX_ID se ignoran.
+	 * @param productos ID de los productos de las líneas del pedido
+	 * @param fecha fecha del pedido
+	 * @param signo 1 al crear el pedido, -1 al eliminarlo
+	 */
+	public void anadirPedido(long[] productos, LocalDate fecha, int signo) {
+		int[] distintos = Arrays.stream(productos).filter(id -> id > 0 && id <= MAX_ID).distinct().mapToInt(id -> (int) id).toArray();
+		if (distintos.length == 0) {
+			return;
+		}
+		double peso = peso(fecha);
+		if (peso > PESO_MAXIMO) {
+			moverReferencia(fecha);
+			peso = peso(fecha);
+		}
+		double valor = signo * peso;
+		pedidos += valor;
+		for (int a : distintos) {
+			asegurar(a);
+			double antes = apariciones[a];
+			apariciones[a] += valor;
+			if (apariciones[a] <= UMBRAL) {
+				apariciones[a] = 0;
+			}
+			if (antes == 0 && apariciones[a] > 0) {
+				this.productos++;
+			} else if (antes > 0 && apariciones[a] == 0) {
+				this.productos--;
+			}
+		}
+		for (int i = 0; i < distintos.length; i++) {
+			for (int j = i + 1; j < distintos.length; j++) {
+				int a = distintos[i];
+				int b = distintos[j];
+				celdas += fila(a).sumar(b, valor);
+				celdas += fila(b).sumar(a, valor);
+			}
+		}
+	}
+
+	/**
+	 * Guarda el nombre con el que se devuelve un producto en las consultas.
+	 * @param productoId ID del producto
+	 * @param nombre nombre del producto (se ignora si es null)
+	 */
+	public void nombrar(long productoId, String nombre) {
+		if (productoId > 0 && productoId <= MAX_ID && nombre != null) {
+			asegurar((int) productoId);
+			nombres[(int) productoId] = nombre;
+		}
+	}
+
+	/**
+	 * Devuelve los productos que más veces se han comprado junto con uno.
+	 * Recorre solo la fila del producto, con un montículo de tamaño limite.
+	 * @param productoId producto consultado
+	 * @param limite número máximo de productos a devolver
+	 * @param hoy fecha a la que se refieren los pedidos equivalentes
+	 * @return productos relacionados, de más a menos pedidos en común (vacía si el producto no tiene pedidos)
+	 */
+	public List<Pareja> relacionados(long productoId, int limite, LocalDate hoy) {
+		if (productoId <= 0 || productoId >= filas.length || filas[(int) productoId] == null || limite <= 0) {
+			return List.of();
+		}
+		int id = (int) productoId;
+		Fila fila = filas[id];
+		// Montículo de mínimos con los mejores encontrados: la raíz es el peor, el primero en salir
+		int[] mejores = new int[Math.min(limite, fila.tamano())];
+		double[] pesos = new double[mejores.length];
+		int encontrados = 0;
+		for (int i = 0; i < fila.claves.length; i++) {
+			int clave = fila.claves[i];
+			if (clave == 0) {
+				continue;
+			}
+			double valor = fila.valores[i];
+			if (encontrados < mejores.length) {
+				mejores[encontrados] = clave;
+				pesos[encontrados] = valor;
+				subir(mejores, pesos, encontrados++);
+			} else if (antes(valor, clave, pesos[0], mejores[0])) {
+				mejores[0] = clave;
+				pesos[0] = valor;
+				bajar(mejores, pesos, encontrados);
+			}
+		}
+		// Se vacía el montículo del peor al mejor, rellenando la lista desde el final
+		Pareja[] resultado = new Pareja[encontrados];
+		double escala = escala(hoy);
+		for (int n = encontrados - 1; n >= 0; n--) {
+			int clave = mejores[0];
+			double valor = pesos[0];
+			resultado[n] = new Pareja(clave, nombres[clave], valor * escala, valor / apariciones[id],
+					valor * pedidos / (apariciones[id] * apariciones[clave]));
+			mejores[0] = mejores[n];
+			pesos[0] = pesos[n];
+			bajar(mejores, pesos, n);
+		}
+		return new ArrayList<>(Arrays.asList(resultado));
+	}
+
+	/**
+	 * Pedidos en los que aparecen juntos dos productos.
+	 * @param a un producto
+	 * @param b otro producto
+	 * @param hoy fecha a la que se refieren los pedidos equivalentes
+	 * @return pedidos equivalentes de hoy en común (0 si nunca han coincidido)
+	 */
+	public double juntos(long a, long b, LocalDate hoy) {
+		if (a <= 0 || a >= filas.length || filas[(int) a] == null || b <= 0 || b > MAX_ID) {
+			return 0;
+		}
+		return filas[(int) a].obtener((int) b) * escala(hoy);
+	}
+
+	/**
+	 * Devuelve el tamaño del índice.
+	 * @param hoy fecha a la que se refieren los pedidos equivalentes
+	 * @return productos, parejas, pedidos y memoria aproximada
+	 */
+	public Estadisticas estadisticas(LocalDate hoy) {
+		// Arrays indexados por ID (referencia, double y referencia por producto)
+		long bytes = (long) filas.length * (4 + 8 + 4);
+		for (Fila fila : filas) {
+			if (fila != null) {
+				bytes += (long) fila.capacidad() * (4 + 8) + 48;
+			}
+		}
+		return new Estadisticas(productos, celdas / 2, pedidos * escala(hoy), vidaMediaDias, bytes);
+	}
+
+	// Peso de un pedido de una fecha respecto a la referencia
+	private double peso(LocalDate fecha) {
+		if (vidaMediaDias == 0) {
+			return 1;
+		}
+		return Math.pow(2, ChronoUnit.DAYS.between(referencia, fecha) / vidaMediaDias);
+	}
+
+	// Factor que pasa los valores guardados a pedidos equivalentes de una fecha
+	private double escala(LocalDate hoy) {
+		return 1 / peso(hoy);
+	}
+
+	// Adelanta la referencia a una fecha y reescala todos los valores para que sigan representando lo mismo
+	private void moverReferencia(LocalDate nueva) {
+		double factor = 1 / peso(nueva);
+		referencia = nueva;
+		pedidos *= factor;
+		for (int id = 0; id < filas.length; id++) {
+			if (apariciones[id] > 0) {
+				apariciones[id] *= factor;
+				if (apariciones[id] <= UMBRAL) {
+					apariciones[id] = 0;
+					productos--;
+				}
+			}
+			if (filas[id] != null) {
+				celdas -= filas[id].escalar(factor);
+			}
+		}
+	}
+
+	// Fila de un producto, creándola si aún no existe
+	private Fila fila(int id) {
+		if (filas[id] == null) {
+			filas[id] = new Fila();
+		}
+		return filas[id];
+	}
+
+	// Agranda los arrays indexados por ID para que quepa un ID
+	private void asegurar(int id) {
+		if (id >= filas.length) {
+			int tamano = Math.max(filas.length * 2, Integer.highestOneBit(id) * 2);
+			filas = Arrays.copyOf(filas, tamano);
+			apariciones = Arrays.copyOf(apariciones, tamano);
+			nombres = Arrays.copyOf(nombres, tamano);
+		}
+	}
+
+	// Orden de los relacionados: más peso primero y, a igual peso, el ID menor (para que el resultado sea estable)
+	private static boolean antes(double peso, int clave, double otroPeso, int otraClave) {
+		return peso > otroPeso || (peso == otroPeso && clave < otraClave);
+	}
+
+	// Sube un elemento del montículo de mínimos hasta su sitio
+	private static void subir(int[] claves, double[] pesos, int i) {
+		while (i > 0) {
+			int padre = (i - 1) / 2;
+			if (!antes(pesos[padre], claves[padre], pesos[i], claves[i])) {
+				return;
+			}
+			intercambiar(claves, pesos, i, padre);
+			i = padre;
+		}
+	}
+
+	// Baja la raíz del montículo de mínimos (de tamaño n) hasta su sitio
+	private static void bajar(int[] claves, double[] pesos, int n) {
+		int i = 0;
+		while (true) {
+			int peor = i;
+			for (int hijo = 2 * i + 1; hijo <= 2 * i + 2 && hijo < n; hijo++) {
+				if (antes(pesos[peor], claves[peor], pesos[hijo], claves[hijo])) {
+					peor = hijo;
+				}
+			}
+			if (peor == i) {
+				return;
+			}
+			intercambiar(claves, pesos, i, peor);
+			i = peor;
+		}
+	}
+
+	private static void intercambiar(int[] claves, double[] pesos, int i, int j) {
+		int clave = claves[i];
+		claves[i] = claves[j];
+		claves[j] = clave;
+		double peso = pesos[i];
+		pesos[i] = pesos[j];
+		pesos[j] = peso;
+	}
+}
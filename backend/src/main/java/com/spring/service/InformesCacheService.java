@@ -0,0 +1,259 @@
+package com.spring.service;
+
+/**
+ * Caché en memoria de los resultados de los informes de ventas y stock.
+ *
+ * El panel de reportes pide los mismos informes en cada carga (ventas por fecha y por mes,
+ * productos vendidos en el mes y en el año...). Este servicio guarda el resultado de cada informe y lo reutiliza
+ * mientras los datos de los que depende no cambien.
+ *
+ * Funcionamiento:
+ *
+ * 	Cada informe tiene su propia zona con un tiempo de vida (TTL) y un número máximo de entradas;
+ * 	al superarlo se descarta la entrada usada hace más tiempo (LRU).
+ *
+ * 	Cada entrada recuerda el periodo que cubre (desde - hasta). Al crear o eliminar un pedido solo se
+ * 	descartan las entradas cuyo periodo incluye la fecha del pedido, y al cambiar el stock de un producto,
+ * 	las de productos con bajo stock.
+ *
+ * 	Las entradas de periodos ya cerrados (que terminan antes de hoy) no caducan por tiempo: solo se
+ * 	descartan si llega un cambio que las afecta o por el límite de tamaño.
+ *
+ * 	Para no guardar un resultado calculado antes de un cambio que se confirma mientras se calcula,
+ * 	cada zona lleva un contador de invalidaciones: si cambia durante el cálculo, el resultado se devuelve
+ * 	pero no se guarda.
+ *
+ * 	Si varias peticiones piden a la vez un mismo informe que no está en la caché, solo la primera lo calcula
+ * 	y las demás reciben su resultado (CalculosCompartidosService). Solo se comparte entre peticiones de la misma
+ * 	generación de la zona: una petición que llega después de una invalidación no recibe un resultado calculado antes.
+ *
+ * Se llevan aciertos y fallos por informe para poder consultar el porcentaje de aciertos.
+ */
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.event.ProductoModificadoEvent;
+
+@Service
+public class InformesCacheService {
+
+	/**
+	 * Datos de los que depende un informe.
+	 */
+	public enum Fuente {
+		// Ventas: cambian al crear o eliminar pedidos
+		VENTAS,
+		// Stock de productos
+		STOCK
+	}
+
+	/**
+	 * Informes que se guardan en caché, con su fuente de datos, tiempo de vida y número máximo de entradas.
+	 */
+	public enum Informe {
+		VENTAS_POR_FECHA(Fuente.VENTAS, Duration.ofMinutes(10), 1),
+		VENTAS_POR_MES(Fuente.VENTAS, Duration.ofMinutes(10), 1),
+		VENTAS_POR_ANIO(Fuente.VENTAS, Duration.ofMinutes(10), 20),
+		PRODUCTOS_DEL_MES(Fuente.VENTAS, Duration.ofMinutes(10), 60),
+		PRODUCTOS_DEL_ANIO(Fuente.VENTAS, Duration.ofMinutes(10), 20),
+		RESUMEN_ANUAL(Fuente.VENTAS, Duration.ofMinutes(10), 20),
+		BAJO_STOCK(Fuente.STOCK, Duration.ofMinutes(1), 20);
+
+		private final Fuente fuente;
+		private final long ttlMillis;
+		private final int maxEntradas;
+
+		Informe(Fuente fuente, Duration ttl, int maxEntradas) {
+			this.fuente = fuente;
+			this.ttlMillis = ttl.toMillis();
+			this.maxEntradas = maxEntradas;
+		}
+	}
+
+	/**
+	 * Estadísticas de uso de la caché de un informe.
+	 * @param informe nombre del informe
+	 * @param entradas número de resultados guardados
+	 * @param aciertos peticiones servidas desde la caché
+	 * @param fallos peticiones que tuvieron que calcular el informe
+	 * @param ratioAciertos aciertos / (aciertos + fallos), entre 0 y 1
+	 */
+	public record Estadisticas(String informe, int entradas, long aciertos, long fallos, double ratioAciertos) {
+	}
+
+	/**
+	 * Resultado guardado de un informe.
+	 * @param valor resultado del informe
+	 * @param desde primer día que cubre (null si cubre todo el histórico)
+	 * @param hasta último día que cubre (null si cubre todo el histórico)
+	 * @param caduca instante en milisegundos en que deja de ser válido
+	 */
+	private record Entrada(Object valor, LocalDate desde, LocalDate hasta, long caduca) {
+
+		// Indica si la fecha de un cambio cae dentro del periodo de la entrada
+		boolean incluye(LocalDate fecha) {
+			return fecha == null || desde == null || (!fecha.isBefore(desde) && !fecha.isAfter(hasta));
+		}
+	}
+
+	/**
+	 * Zona de la caché de un informe. Todos sus campos se acceden sincronizando sobre la propia zona.
+	 */
+	private static final class Zona {
+		private final LinkedHashMap<String, Entrada> entradas;
+		// Se incrementa con cada invalidación
+		private long generacion = 0;
+		private long aciertos = 0;
+		private long fallos = 0;
+
+		Zona(int maxEntradas) {
+			// accessOrder = true: el orden de iteración es del menos al más recientemente usado
+			this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+					return size() > maxEntradas;
+				}
+			};
+		}
+	}
+
+	// Una zona por informe
+	private final Map<Informe, Zona> zonas = new EnumMap<>(Informe.class);
+	// Cálculos compartidos entre peticiones simultáneas del mismo informe
+	private final CalculosCompartidosService calculosCompartidos;
+
+	/**
+	 * Constructor que crea una zona vacía por cada informe.
+	 * @param calculosCompartidos servicio que comparte los cálculos simultáneos
+	 */
+	public InformesCacheService(CalculosCompartidosService calculosCompartidos) {
+		this.calculosCompartidos = calculosCompartidos;
+		for (Informe informe : Informe.values()) {
+			zonas.put(informe, new Zona(informe.maxEntradas));
+		}
+	}
+
+	/**
+	 * Devuelve el resultado de un informe desde la caché o, si no está o ha caducado, lo calcula y lo guarda.
+	 * @param informe informe solicitado
+	 * @param clave parámetros del informe (por ejemplo "2025-06"); cadena vacía si no tiene
+	 * @param desde primer día que cubre el informe (null si cubre todo el histórico)
+	 * @param hasta último día que cubre el informe (null si cubre todo el histórico)
+	 * @param calculo función que calcula el informe
+	 * @return resultado del informe
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T obtener(Informe informe, String clave, LocalDate desde, LocalDate hasta, Supplier<T> calculo) {
+		Zona zona = zonas.get(informe);
+		long ahora = System.currentTimeMillis();
+		long generacion;
+		synchronized (zona) {
+			Entrada entrada = zona.entradas.get(clave);
+			if (entrada != null && entrada.caduca() > ahora) {
+				zona.aciertos++;
+				return (T) entrada.valor();
+			}
+			zona.fallos++;
+			generacion = zona.generacion;
+		}
+
+		// El cálculo se hace fuera del bloqueo, para no detener a las demás peticiones del informe,
+		// y una sola vez aunque lleguen a la vez varias peticiones con la misma clave: la que calcula lo guarda
+		// y las demás solo reciben el resultado. La generación va en la clave para no unirse a un cálculo empezado
+		// antes de una invalidación, cuyo resultado no corresponde al ETag que ya ha calculado esta petición
+		return calculosCompartidos.compartir(informe.name(), generacion + "|" + clave, () -> {
+			T valor = calculo.get();
+			// Un periodo que terminó antes de hoy está cerrado: no caduca por tiempo
+			boolean cerrado = hasta != null && hasta.isBefore(LocalDate.now());
+			long caduca = cerrado ? Long.MAX_VALUE : ahora + informe.ttlMillis;
+			synchronized (zona) {
+				// Si hubo una invalidación durante el cálculo, el resultado podría estar desactualizado
+				if (zona.generacion == generacion) {
+					zona.entradas.put(clave, new Entrada(valor, desde, hasta, caduca));
+				}
+			}
+			return valor;
+		});
+	}
+
+	/**
+	 * Descarta las entradas de los informes de una fuente cuyo periodo incluye una fecha.
+	 * @param fuente datos que han cambiado
+	 * @param fecha fecha del cambio (null para descartar todas las entradas de la fuente)
+	 */
+	public void invalidar(Fuente fuente, LocalDate fecha) {
+		for (Map.Entry<Informe, Zona> e : zonas.entrySet()) {
+			if (e.getKey().fuente == fuente) {
+				Zona zona = e.getValue();
+				synchronized (zona) {
+					zona.generacion++;
+					zona.entradas.values().removeIf(entrada -> entrada.incluye(fecha));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Vacía la caché de todos los informes (por ejemplo tras reconstruir el cubo de ventas).
+	 */
+	public void limpiar() {
+		for (Fuente fuente : Fuente.values()) {
+			invalidar(fuente, null);
+		}
+	}
+
+	/**
+	 * Devuelve las estadísticas de uso de cada informe.
+	 * @return lista con entradas, aciertos, fallos y ratio de aciertos por informe
+	 */
+	public List<Estadisticas> estadisticas() {
+		List<Estadisticas> lista = new ArrayList<>();
+		for (Map.Entry<Informe, Zona> e : zonas.entrySet()) {
+			Zona zona = e.getValue();
+			synchronized (zona) {
+				long total = zona.aciertos + zona.fallos;
+				lista.add(new Estadisticas(e.getKey().name(), zona.entradas.size(), zona.aciertos, zona.fallos,
+						total == 0 ? 0 : (double) zona.aciertos / total));
+			}
+		}
+		return lista;
+	}
+
+	/**
+	 * Descarta los informes afectados por un cambio confirmado en un pedido.
+	 * @param evento evento con el pedido modificado
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(VersionesService.ANTES_DE_VERSIONAR)
+	public void alModificarPedido(PedidoModificadoEvent evento) {
+		LocalDate fecha = evento.getPedido() != null ? evento.getPedido().getFechaPedido() : null;
+		switch (evento.getTipo()) {
+			case CREADO, ELIMINADO -> invalidar(Fuente.VENTAS, fecha);
+			default -> {
+				// El envío, el pago o los datos del cliente no cambian los informes
+			}
+		}
+	}
+
+	/**
+	 * Descarta los informes de stock cuando se confirma un cambio en un producto.
+	 * @param evento evento con el producto modificado
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(VersionesService.ANTES_DE_VERSIONAR)
+	public void alModificarProducto(ProductoModificadoEvent evento) {
+		invalidar(Fuente.STOCK, null);
+	}
+}
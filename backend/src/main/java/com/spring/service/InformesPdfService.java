@@ -0,0 +1,206 @@
+package com.spring.service;
+
+/**
+ * Servicio que prepara los reportes PDF de ventas y stock.
+ *
+ * Separa las dos fases de un reporte:
+ * 	preparar(tipo, anio) carga todos los datos (desde el cubo de ventas, los cierres de periodos, la caché de informes o los productos)
+ * 	y devuelve un InformePdf con el nombre del archivo y las funciones que dibujan cada sección del documento.
+ * 	Las funciones de dibujo no hacen consultas, así que pueden ejecutarse después, en otros hilos o mientras se envía la respuesta.
+ *
+ * Secciones:
+ * 	Las partes independientes de un reporte se devuelven como secciones separadas, que PdfService genera en paralelo
+ * 	y une en orden: el resumen anual tiene una sección con los totales y una por cada mes, y el listado de stock
+ * 	se divide en bloques de FILAS_POR_SECCION productos. Los reportes del día y del mes tienen una sola sección.
+ *
+ * Lo usan tanto los endpoints PDF de ReporteController (que envían el documento en streaming)
+ * como los trabajos de reportes en segundo plano (que lo guardan en disco).
+ *
+ * Tipos de reporte: dia, mes, anio y stock.
+ */
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.Font;
+import com.lowagie.text.FontFactory;
+import com.lowagie.text.Paragraph;
+import com.spring.dto.ProductoVentaDetalle;
+import com.spring.dto.ResumenAnualDTO;
+import com.spring.dto.VentaPorFecha;
+import com.spring.model.Producto;
+import com.spring.repository.ProductoRepository;
+import com.spring.service.InformesCacheService.Informe;
+
+@Service
+public class InformesPdfService {
+
+	// Tipos de reporte disponibles
+	public static final Set<String> TIPOS = Set.of("dia", "mes", "anio", "stock");
+
+	// Número máximo de filas de cada sección del listado de stock
+	private static final int FILAS_POR_SECCION = 1000;
+
+	// Fuente de los títulos de los reportes
+	private static final Font FUENTE_TITULO = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16);
+
+	/**
+	 * Reporte con los datos ya cargados, listo para dibujarse.
+	 * @param nombreArchivo nombre del archivo PDF
+	 * @param secciones funciones que dibujan cada sección del documento, en orden
+	 */
+	public record InformePdf(String nombreArchivo, List<PdfService.ContenidoPdf> secciones) {
+	}
+
+	private final CuboVentasService cuboVentas;
+	private final CierresService cierres;
+	private final InformesCacheService cacheInformes;
+	private final ProductoRepository productoRepository;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param cuboVentas cubo de ventas por día y producto
+	 * @param cierres cierres de los meses y años terminados
+	 * @param cacheInformes caché de resultados de informes
+	 * @param productoRepository repositorio de productos
+	 */
+	public InformesPdfService(CuboVentasService cuboVentas, CierresService cierres, InformesCacheService cacheInformes,
+			ProductoRepository productoRepository) {
+		this.cuboVentas = cuboVentas;
+		this.cierres = cierres;
+		this.cacheInformes = cacheInformes;
+		this.productoRepository = productoRepository;
+	}
+
+	/**
+	 * Carga los datos de un reporte y prepara la función que lo dibuja.
+	 * @param tipo dia, mes, anio o stock
+	 * @param anio año del resumen anual (solo se usa con tipo anio)
+	 * @return reporte listo para dibujarse
+	 */
+	@Transactional(readOnly = true)
+	public InformePdf preparar(String tipo, int anio) {
+		// Define el título del reporte según el tipo
+		String titulo = switch (tipo) {
+			case "dia" -> "Ventas del Día";
+			case "mes" -> "Ventas por Mes";
+			case "anio" -> "Ventas del Año " + anio;
+			case "stock" -> "Productos con Bajo Stock";
+			default -> "Reporte";
+		};
+		LocalDate hoy = LocalDate.now();
+		// Carga los datos del informe y prepara las funciones que dibujan cada sección
+		List<PdfService.ContenidoPdf> secciones = new ArrayList<>();
+		switch (tipo) {
+			case "dia" -> {
+				List<VentaPorFecha> ventas = cuboVentas.ventasDelDia(hoy);
+				List<ProductoVentaDetalle> productos = cuboVentas.productosVendidosDelDia(hoy);
+				secciones.add(doc -> dibujarVentas(doc, ventas, productos));
+			}
+			case "mes" -> {
+				// Filtra las ventas del mes actual
+				String mesActual = hoy.toString().substring(0, 7);
+				List<VentaPorFecha> ventas = cierres.ventasPorMesDelAnio(hoy.getYear()).stream()
+						.filter(v -> v.getFecha().startsWith(mesActual))
+						.toList();
+				List<ProductoVentaDetalle> productos = cierres.productosVendidosDelMes(hoy.getYear(), hoy.getMonthValue());
+				secciones.add(doc -> dibujarVentas(doc, ventas, productos));
+			}
+			case "anio" -> {
+				// Totales y productos de los 12 meses, obtenidos con una sola consulta agrupada por mes y producto
+				ResumenAnualDTO resumen = resumenAnual(anio);
+				// Una sección con los totales mensuales y otra por cada mes con sus productos
+				secciones.add(doc -> dibujarTotalesAnuales(doc, resumen, anio));
+				for (ResumenAnualDTO.MesResumen mes : resumen.resumenMensual) {
+					secciones.add(doc -> dibujarMes(doc, mes));
+				}
+			}
+			case "stock" -> {
+				// Productos con bajo stock (5 o menos), en bloques de FILAS_POR_SECCION
+				List<Producto> productos = productoRepository.findByStockLessThanEqual(5);
+				for (int inicio = 0; inicio == 0 || inicio < productos.size(); inicio += FILAS_POR_SECCION) {
+					List<Producto> bloque = productos.subList(inicio, Math.min(inicio + FILAS_POR_SECCION, productos.size()));
+					secciones.add(doc -> PdfService.tabla(doc, List.of("Producto", "Stock", "ID"), bloque,
+							p -> List.of(String.valueOf(p.getNombre()), String.valueOf(p.getStock()), String.valueOf(p.getId()))));
+				}
+			}
+			// Tipo de reporte no válido
+			default -> secciones.add(doc -> doc.add(new Paragraph("No se reconoce el tipo de reporte.")));
+		}
+		String nombreArchivo = "anio".equals(tipo) ? "reporte-anio-" + anio + ".pdf" : "reporte-" + tipo + ".pdf";
+
+		// El título va al principio de la primera sección
+		PdfService.ContenidoPdf primera = secciones.get(0);
+		secciones.set(0, doc -> {
+			doc.add(new Paragraph(titulo, FUENTE_TITULO));
+			doc.add(new Paragraph(" ")); // espacio
+			primera.escribir(doc);
+		});
+		return new InformePdf(nombreArchivo, secciones);
+	}
+
+	/**
+	 * Devuelve el resumen anual de ventas (desde los cierres o el cubo), pasando por la caché de informes.
+	 * Los años ya terminados se quedan en caché hasta que cambie algún pedido de ese año.
+	 * @param anio año del resumen
+	 * @return resumen con el total y los productos vendidos de cada mes
+	 */
+	private ResumenAnualDTO resumenAnual(int anio) {
+		return cacheInformes.obtener(Informe.RESUMEN_ANUAL, String.valueOf(anio),
+				LocalDate.of(anio, 1, 1), LocalDate.of(anio, 12, 31), () -> cierres.resumenAnual(anio));
+	}
+
+	/**
+	 * Dibuja el resumen de ventas de un día o un mes: tabla de totales y tabla de productos vendidos.
+	 * @param doc documento abierto
+	 * @param ventas totales de ventas del periodo
+	 * @param productos productos vendidos en el periodo
+	 */
+	private static void dibujarVentas(Document doc, List<VentaPorFecha> ventas, List<ProductoVentaDetalle> productos) {
+		// Tabla de resumen de ventas
+		PdfService.tabla(doc, List.of("Fecha", "Total (€)"), ventas,
+				v -> List.of(v.getFecha(), String.format("%.2f", v.getTotal())));
+		doc.add(new Paragraph(" "));
+		// Productos vendidos ese día o mes
+		if (!productos.isEmpty()) {
+			doc.add(new Paragraph("Productos Vendidos", FUENTE_TITULO));
+			doc.add(new Paragraph(" "));
+			PdfService.tabla(doc, List.of("Producto", "Cantidad"), productos,
+					p -> List.of(p.getNombreProducto(), String.valueOf(p.getCantidadVendida())));
+		}
+	}
+
+	/**
+	 * Dibuja la tabla con el total de cada mes del año.
+	 * @param doc documento abierto
+	 * @param resumen resumen anual ya calculado
+	 * @param anio año del resumen
+	 */
+	private static void dibujarTotalesAnuales(Document doc, ResumenAnualDTO resumen, int anio) {
+		// Una fila por mes, con su total
+		PdfService.tabla(doc, List.of("Mes", "Total (€)"), IntStream.rangeClosed(1, 12).boxed().toList(),
+				m -> List.of(String.format("%02d/%d", m, anio), String.format("%.2f", resumen.resumenMensual.get(m - 1).total)));
+	}
+
+	/**
+	 * Dibuja los productos vendidos en un mes del resumen anual.
+	 * @param doc documento abierto
+	 * @param mes resumen del mes
+	 */
+	private static void dibujarMes(Document doc, ResumenAnualDTO.MesResumen mes) {
+		doc.add(new Paragraph("Productos vendidos en " + mes.mes, FUENTE_TITULO));
+		doc.add(new Paragraph(" "));
+		List<ProductoVentaDetalle> productos = mes.productos.isEmpty()
+				? List.of(new ProductoVentaDetalle("Ninguno", 0L))
+				: mes.productos;
+		PdfService.tabla(doc, List.of("Producto", "Cantidad"), productos,
+				p -> List.of(p.getNombreProducto(), String.valueOf(p.getCantidadVendida())));
+	}
+}
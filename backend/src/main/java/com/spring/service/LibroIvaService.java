@@ -0,0 +1,355 @@
+package com.spring.service;
+
+/**
+ * Servicio que mantiene y consulta el libro de IVA por mes y tipo de IVA (LibroIva), para la declaración trimestral.
+ *
+ * Mantenimiento incremental:
+ * 	Al emitir una factura se suman su base, su cuota de IVA, su envío y su total a la fila de su mes y tipo de IVA;
+ * 	al eliminarla se restan. Se hace al recibir el FacturaModificadaEvent justo antes del commit (BEFORE_COMMIT),
+ * 	dentro de la misma transacción que guarda o borra la factura: si algo falla, ni la factura ni el libro cambian.
+ *
+ * Consultas:
+ * 	El resumen de un trimestre (por mes y por tipo de IVA) suma como mucho tres filas por tipo de IVA,
+ * 	así que su coste no depende del número de facturas.
+ *
+ * Carga inicial, reconstrucción y verificación:
+ * 	Al arrancar, si el libro está vacío y ya hay facturas, se rellena a partir de ellas.
+ * 	reconstruir() vacía el libro y lo vuelve a calcular recorriendo todas las facturas.
+ * 	verificar() hace el mismo cálculo sin guardar nada y devuelve las filas que no coinciden con el libro.
+ * 	Los dos usan el mismo redondeo que las actualizaciones, así que un libro correcto coincide al céntimo.
+ */
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.spring.event.FacturaModificadaEvent;
+import com.spring.model.Factura;
+import com.spring.model.LibroIva;
+import com.spring.repository.FacturaRepository;
+import com.spring.repository.LibroIvaRepository;
+
+@Service
+public class LibroIvaService {
+
+	/**
+	 * Totales de un tipo de IVA (o de todos, con tipoIva null) en un periodo, en euros.
+	 * @param tipoIva tipo de IVA en porcentaje (21.0), o null en el total de todos los tipos
+	 * @param facturas número de facturas
+	 * @param baseImponible importe sin IVA ni envío
+	 * @param cuotaIva IVA repercutido
+	 * @param costeEnvio envío facturado
+	 * @param total total de las facturas
+	 */
+	public record TotalIva(Double tipoIva, long facturas, double baseImponible, double cuotaIva, double costeEnvio,
+			double total) {
+	}
+
+	/**
+	 * Totales de un mes, por tipo de IVA y en conjunto.
+	 * @param mes mes (1-12)
+	 * @param porTipo totales de cada tipo de IVA con facturas, de menor a mayor tipo
+	 * @param total totales de todos los tipos
+	 */
+	public record MesIva(int mes, List<TotalIva> porTipo, TotalIva total) {
+	}
+
+	/**
+	 * Resumen de un trimestre para la declaración.
+	 * @param anio año
+	 * @param trimestre trimestre (1-4)
+	 * @param meses los tres meses del trimestre, aunque no tengan facturas
+	 * @param porTipo totales del trimestre de cada tipo de IVA
+	 * @param total totales del trimestre
+	 */
+	public record TrimestreIva(int anio, int trimestre, List<MesIva> meses, List<TotalIva> porTipo, TotalIva total) {
+	}
+
+	/**
+	 * Fila del libro que no coincide con lo calculado desde las facturas.
+	 * @param anio año
+	 * @param mes mes
+	 * @param libro totales guardados en el libro (ceros si falta la fila)
+	 * @param facturas totales calculados desde las facturas (ceros si sobra la fila)
+	 */
+	public record Diferencia(int anio, int mes, TotalIva libro, TotalIva facturas) {
+	}
+
+	/**
+	 * Resultado de comparar el libro con las facturas.
+	 * @param correcto true si todas las filas coinciden
+	 * @param filas filas (mes y tipo de IVA) revisadas
+	 * @param diferencias filas que no coinciden
+	 */
+	public record Verificacion(boolean correcto, int filas, List<Diferencia> diferencias) {
+	}
+
+	/**
+	 * Mes y tipo de IVA de una fila, ordenable para recorrer el libro en orden.
+	 */
+	private record Clave(int anio, int mes, int tipoIva) implements Comparable<Clave> {
+		private static final Comparator<Clave> ORDEN = Comparator.comparingInt(Clave::anio)
+				.thenComparingInt(Clave::mes).thenComparingInt(Clave::tipoIva);
+
+		@Override
+		public int compareTo(Clave otra) {
+			return ORDEN.compare(this, otra);
+		}
+	}
+
+	/**
+	 * Totales en céntimos de una fila mientras se suman facturas.
+	 */
+	private static final class Acumulado {
+		private long facturas;
+		private long base;
+		private long cuota;
+		private long envio;
+		private long total;
+
+		private void sumar(Importes importes, int signo) {
+			facturas += signo;
+			base += signo * importes.base();
+			cuota += signo * importes.cuota();
+			envio += signo * importes.envio();
+			total += signo * importes.total();
+		}
+
+		private void sumar(LibroIva fila) {
+			facturas += fila.getFacturas();
+			base += fila.getBaseImponible();
+			cuota += fila.getCuotaIva();
+			envio += fila.getCosteEnvio();
+			total += fila.getTotal();
+		}
+
+		private boolean igual(Acumulado otro) {
+			return facturas == otro.facturas && base == otro.base && cuota == otro.cuota
+					&& envio == otro.envio && total == otro.total;
+		}
+
+		private TotalIva aTotal(Integer tipoIva) {
+			return new TotalIva(tipoIva == null ? null : tipoIva / 100.0, facturas, euros(base), euros(cuota),
+					euros(envio), euros(total));
+		}
+	}
+
+	/**
+	 * Importes de una factura en céntimos, con su tipo de IVA en centésimas de punto.
+	 */
+	private record Importes(int tipoIva, long base, long cuota, long envio, long total) {
+	}
+
+	private final LibroIvaRepository libroRepository;
+	private final FacturaRepository facturaRepository;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param libroRepository repositorio del libro de IVA
+	 * @param facturaRepository repositorio de facturas
+	 */
+	public LibroIvaService(LibroIvaRepository libroRepository, FacturaRepository facturaRepository) {
+		this.libroRepository = libroRepository;
+		this.facturaRepository = facturaRepository;
+	}
+
+	/**
+	 * Rellena el libro al arrancar si está vacío y ya existen facturas (primera ejecución tras la actualización).
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Transactional
+	public void cargarInicial() {
+		if (libroRepository.count() == 0 && facturaRepository.count() > 0) {
+			libroRepository.saveAll(aFilas(calcularDesdeFacturas()));
+		}
+	}
+
+	/**
+	 * Actualiza el libro cuando se emite o se elimina una factura, dentro de la misma transacción.
+	 * @param evento evento con la factura modificada
+	 */
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void alModificarFactura(FacturaModificadaEvent evento) {
+		Factura factura = evento.getFactura();
+		if (factura == null || factura.getFecha() == null) {
+			return;
+		}
+		int signo = evento.getTipo() == FacturaModificadaEvent.Tipo.CREADA ? 1 : -1;
+		Importes importes = importes(factura.getTotal(), factura.getIva(), factura.getCosteEnvio(), factura.getTotalConIva());
+		LocalDate fecha = factura.getFecha();
+		libroRepository.acumular(fecha.getYear(), fecha.getMonthValue(), importes.tipoIva(), signo,
+				signo * importes.base(), signo * importes.cuota(), signo * importes.envio(), signo * importes.total());
+		if (signo < 0) {
+			libroRepository.borrarVacias(fecha.getYear(), fecha.getMonthValue());
+		}
+	}
+
+	/**
+	 * Devuelve el resumen de un trimestre: totales de cada mes y del trimestre, por tipo de IVA y en conjunto.
+	 * @param anio año
+	 * @param trimestre trimestre (1-4)
+	 * @return resumen del trimestre
+	 * @throws IllegalArgumentException si el trimestre no está entre 1 y 4
+	 */
+	@Transactional(readOnly = true)
+	public TrimestreIva trimestre(int anio, int trimestre) {
+		if (trimestre < 1 || trimestre > 4) {
+			throw new IllegalArgumentException("El trimestre debe estar entre 1 y 4");
+		}
+		int primerMes = (trimestre - 1) * 3 + 1;
+		return resumir(anio, trimestre, libroRepository.findByAnioAndMesBetweenOrderByMesAscTipoIvaAsc(anio, primerMes, primerMes + 2));
+	}
+
+	/**
+	 * Devuelve el resumen de los cuatro trimestres de un año, con una sola consulta.
+	 * @param anio año
+	 * @return los cuatro trimestres, en orden
+	 */
+	@Transactional(readOnly = true)
+	public List<TrimestreIva> trimestresDelAnio(int anio) {
+		List<LibroIva> filas = libroRepository.findByAnioAndMesBetweenOrderByMesAscTipoIvaAsc(anio, 1, 12);
+		List<TrimestreIva> trimestres = new ArrayList<>(4);
+		for (int trimestre = 1; trimestre <= 4; trimestre++) {
+			int primerMes = (trimestre - 1) * 3 + 1;
+			trimestres.add(resumir(anio, trimestre,
+					filas.stream().filter(f -> f.getMes() >= primerMes && f.getMes() <= primerMes + 2).toList()));
+		}
+		return trimestres;
+	}
+
+	/**
+	 * Vacía el libro y lo vuelve a calcular recorriendo todas las facturas.
+	 * @return número de filas (mes y tipo de IVA) generadas
+	 */
+	@Transactional
+	public int reconstruir() {
+		libroRepository.deleteAllInBatch();
+		return libroRepository.saveAll(aFilas(calcularDesdeFacturas())).size();
+	}
+
+	/**
+	 * Compara el libro con lo que resulta de recorrer todas las facturas, sin modificar nada.
+	 * @return filas revisadas y las que no coinciden (facturas, base, cuota, envío o total distintos)
+	 */
+	@Transactional(readOnly = true)
+	public Verificacion verificar() {
+		Map<Clave, Acumulado> esperado = calcularDesdeFacturas();
+		Map<Clave, Acumulado> guardado = new TreeMap<>();
+		for (LibroIva fila : libroRepository.findAll()) {
+			guardado.computeIfAbsent(new Clave(fila.getAnio(), fila.getMes(), fila.getTipoIva()), c -> new Acumulado()).sumar(fila);
+		}
+		// Todas las filas que aparecen en cualquiera de los dos, en orden
+		TreeSet<Clave> claves = new TreeSet<>(esperado.keySet());
+		claves.addAll(guardado.keySet());
+		List<Diferencia> diferencias = new ArrayList<>();
+		for (Clave clave : claves) {
+			Acumulado libro = Objects.requireNonNullElseGet(guardado.get(clave), Acumulado::new);
+			Acumulado facturas = Objects.requireNonNullElseGet(esperado.get(clave), Acumulado::new);
+			if (!libro.igual(facturas)) {
+				diferencias.add(new Diferencia(clave.anio(), clave.mes(), libro.aTotal(clave.tipoIva()),
+						facturas.aTotal(clave.tipoIva())));
+			}
+		}
+		return new Verificacion(diferencias.isEmpty(), claves.size(), diferencias);
+	}
+
+	/**
+	 * Suma todas las facturas por mes y tipo de IVA, recorriéndolas sin cargarlas enteras en memoria.
+	 * Se llama dentro de una transacción (necesaria para recorrer el resultado).
+	 */
+	private Map<Clave, Acumulado> calcularDesdeFacturas() {
+		Map<Clave, Acumulado> filas = new TreeMap<>();
+		try (Stream<Object[]> facturas = facturaRepository.recorrerImportes()) {
+			facturas.forEach(f -> {
+				LocalDate fecha = (LocalDate) f[0];
+				Importes importes = importes((Double) f[1], (Double) f[2], (Double) f[3], (Double) f[4]);
+				filas.computeIfAbsent(new Clave(fecha.getYear(), fecha.getMonthValue(), importes.tipoIva()),
+						c -> new Acumulado()).sumar(importes, 1);
+			});
+		}
+		return filas;
+	}
+
+	/**
+	 * Convierte los totales calculados en filas del libro.
+	 */
+	private static List<LibroIva> aFilas(Map<Clave, Acumulado> calculado) {
+		List<LibroIva> filas = new ArrayList<>(calculado.size());
+		calculado.forEach((clave, acumulado) -> {
+			LibroIva fila = new LibroIva();
+			fila.setAnio(clave.anio());
+			fila.setMes(clave.mes());
+			fila.setTipoIva(clave.tipoIva());
+			fila.setFacturas(acumulado.facturas);
+			fila.setBaseImponible(acumulado.base);
+			fila.setCuotaIva(acumulado.cuota);
+			fila.setCosteEnvio(acumulado.envio);
+			fila.setTotal(acumulado.total);
+			filas.add(fila);
+		});
+		return filas;
+	}
+
+	/**
+	 * Monta el resumen de un trimestre a partir de sus filas (ordenadas por mes y tipo de IVA).
+	 */
+	private static TrimestreIva resumir(int anio, int trimestre, List<LibroIva> filas) {
+		int primerMes = (trimestre - 1) * 3 + 1;
+		List<MesIva> meses = new ArrayList<>(3);
+		Map<Integer, Acumulado> trimestrePorTipo = new TreeMap<>();
+		Acumulado totalTrimestre = new Acumulado();
+		for (int mes = primerMes; mes <= primerMes + 2; mes++) {
+			List<TotalIva> porTipo = new ArrayList<>();
+			Acumulado totalMes = new Acumulado();
+			for (LibroIva fila : filas) {
+				if (fila.getMes() != mes) {
+					continue;
+				}
+				Acumulado tipo = new Acumulado();
+				tipo.sumar(fila);
+				porTipo.add(tipo.aTotal(fila.getTipoIva()));
+				totalMes.sumar(fila);
+				trimestrePorTipo.computeIfAbsent(fila.getTipoIva(), t -> new Acumulado()).sumar(fila);
+				totalTrimestre.sumar(fila);
+			}
+			meses.add(new MesIva(mes, porTipo, totalMes.aTotal(null)));
+		}
+		List<TotalIva> porTipo = new ArrayList<>();
+		trimestrePorTipo.forEach((tipo, acumulado) -> porTipo.add(acumulado.aTotal(tipo)));
+		return new TrimestreIva(anio, trimestre, meses, porTipo, totalTrimestre.aTotal(null));
+	}
+
+	/**
+	 * Calcula los importes de una factura en céntimos. El campo iva de la factura es el tipo (0.21),
+	 * así que la cuota es la base por el tipo, redondeada al céntimo. Los valores que faltan cuentan como cero.
+	 */
+	private static Importes importes(Double total, Double iva, Double costeEnvio, Double totalConIva) {
+		double base = total != null ? total : 0;
+		double tipo = iva != null ? iva : 0;
+		return new Importes((int) Math.round(tipo * 10000), centimos(base), centimos(base * tipo),
+				centimos(costeEnvio != null ? costeEnvio : 0), centimos(totalConIva != null ? totalConIva : 0));
+	}
+
+	// Redondea un importe en euros a céntimos
+	private static long centimos(double euros) {
+		return Math.round(euros * 100);
+	}
+
+	// Convierte céntimos a euros
+	private static double euros(long centimos) {
+		return centimos / 100.0;
+	}
+}
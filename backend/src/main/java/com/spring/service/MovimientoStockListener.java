@@ -0,0 +1,71 @@
+package com.spring.service;
+
+/**
+ * Listener JPA de la entidad MovimientoStock que pasa las salidas de stock a la previsión de demanda.
+ *
+ * Se ejecuta tras cada inserción de un movimiento, sea cual sea el controlador que lo provoque
+ * (pedidos, salidas manuales del inventario...). La salida se aplica a PrevisionDemandaService cuando la
+ * transacción se confirma, para que un pedido que falla no cuente como demanda; sin transacción se aplica en el momento.
+ * Mientras la transacción no termina, la salida queda anotada como en curso, para que el estado guardado de la
+ * previsión no pase de ella (las salidas se confirman desordenadas).
+ *
+ * Como ProductoVersionListener, Hibernate crea esta clase a través de Spring y el servicio se obtiene
+ * mediante ObjectProvider para no crear una dependencia circular con el EntityManagerFactory.
+ */
+
+import java.util.Date;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.spring.model.MovimientoStock;
+
+import jakarta.persistence.PostPersist;
+
+public class MovimientoStockListener {
+
+	// Acceso diferido al servicio de previsión de demanda
+	private final ObjectProvider<PrevisionDemandaService> prevision;
+
+	/**
+	 * Constructor que recibe el acceso al servicio de previsión.
+	 * @param prevision proveedor del servicio de previsión de demanda
+	 */
+	public MovimientoStockListener(ObjectProvider<PrevisionDemandaService> prevision) {
+		this.prevision = prevision;
+	}
+
+	/**
+	 * Registra una salida de stock recién guardada en la previsión de demanda del producto.
+	 * @param movimiento movimiento insertado
+	 */
+	@PostPersist
+	public void alGuardar(MovimientoStock movimiento) {
+		if (!"SALIDA".equalsIgnoreCase(movimiento.getTipo()) || movimiento.getProducto() == null
+				|| movimiento.getProducto().getId() == null || movimiento.getFecha() == null) {
+			return;
+		}
+		long id = movimiento.getId();
+		Long productoId = movimiento.getProducto().getId();
+		Date fecha = movimiento.getFecha();
+		int cantidad = movimiento.getCantidad();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			prevision.getObject().iniciar(id);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					prevision.getObject().registrar(id, productoId, fecha, cantidad);
+				}
+
+				@Override
+				public void afterCompletion(int estado) {
+					// Confirmada o deshecha, la salida deja de estar en curso
+					prevision.getObject().terminar(id);
+				}
+			});
+		} else {
+			prevision.getObject().registrar(id, productoId, fecha, cantidad);
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package com.spring.service;
+
+/**
+ * Servicio que reúne en una sola respuesta todos los datos que necesita el panel de reportes al abrirse.
+ *
+ * Antes el panel hacía una petición por cada dato (ventas del día, ventas por mes, resúmenes guardados,
+ * años con movimientos...), cada una con su viaje de ida y vuelta y su propia conexión a la base de datos.
+ * Ahora pide /api/dashboard y este servicio:
+ *
+ * 	1. Lanza todas las partes a la vez en un grupo fijo de hilos con una cola limitada (por defecto 4 hilos
+ * 	   y 50 partes en espera), así que un panel nunca ocupa más conexiones que hilos tiene el grupo.
+ * 	2. Espera a cada parte como mucho su tiempo máximo, contado desde el inicio de la petición. Las partes
+ * 	   que leen de memoria (ventas de hoy) tienen un límite corto y las que consultan la base de datos, uno mayor.
+ * 	3. Devuelve el resultado de todas las partes juntas. Si una parte falla, tarda demasiado o no cabe en la cola,
+ * 	   el panel se devuelve igualmente con esa parte marcada (ERROR, TIEMPO_AGOTADO o RECHAZADA) y sin datos:
+ * 	   el resto del panel se puede mostrar.
+ *
+ * Las partes usan los mismos servicios que sus endpoints individuales (caché de informes, contadores
+ * del día, cierres...), así que devuelven los mismos datos.
+ */
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.spring.model.ArchivoMovimiento;
+import com.spring.repository.ArchivoMovimientoRepository;
+import com.spring.repository.ProductoRepository;
+import com.spring.service.InformesCacheService.Informe;
+
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class PanelService {
+
+	// Stock a partir del cual un producto aparece como bajo de stock en el panel
+	private static final int LIMITE_BAJO_STOCK = 5;
+
+	/**
+	 * Partes del panel, con su nombre en la respuesta y el tiempo máximo que se espera a cada una.
+	 */
+	public enum Parte {
+		VENTAS_DEL_DIA("ventasDelDia", 500),
+		VENTAS_POR_HORA_HOY("ventasPorHoraHoy", 500),
+		PRODUCTOS_VENDIDOS_HOY("productosVendidosHoy", 500),
+		VENTAS_POR_MES("ventasPorMes", 3000),
+		PRODUCTOS_VENDIDOS_MES("productosVendidosMes", 3000),
+		BAJO_STOCK("bajoStock", 2000),
+		RESUMENES_ANUALES("resumenesAnuales", 1000),
+		ANIOS_MOVIMIENTOS("aniosMovimientos", 2000);
+
+		private final String nombre;
+		private final long tiempoMaximoMs;
+
+		Parte(String nombre, long tiempoMaximoMs) {
+			this.nombre = nombre;
+			this.tiempoMaximoMs = tiempoMaximoMs;
+		}
+
+		/**
+		 * Devuelve el nombre de la parte en la respuesta.
+		 * @return nombre (por ejemplo ventasDelDia)
+		 */
+		public String nombre() {
+			return nombre;
+		}
+
+		/**
+		 * Devuelve la parte a partir de su nombre, sin distinguir mayúsculas.
+		 * @param nombre nombre de la parte (por ejemplo ventasDelDia)
+		 * @return parte
+		 * @throws IllegalArgumentException si el nombre no corresponde a ninguna
+		 */
+		public static Parte de(String nombre) {
+			String buscado = nombre.trim().toLowerCase(Locale.ROOT);
+			for (Parte parte : values()) {
+				if (parte.nombre.toLowerCase(Locale.ROOT).equals(buscado)) {
+					return parte;
+				}
+			}
+			List<String> nombres = new ArrayList<>();
+			for (Parte parte : values()) {
+				nombres.add(parte.nombre);
+			}
+			throw new IllegalArgumentException("Parte del panel no válida: " + nombre + " (debe ser " + String.join(", ", nombres) + ")");
+		}
+	}
+
+	/**
+	 * Resultado de una parte.
+	 */
+	public enum Estado {
+		// Datos obtenidos
+		OK,
+		// La parte lanzó un error
+		ERROR,
+		// No terminó dentro de su tiempo máximo
+		TIEMPO_AGOTADO,
+		// No había sitio en la cola del grupo de hilos
+		RECHAZADA
+	}
+
+	/**
+	 * Resultado de una parte del panel.
+	 * @param estado resultado de la parte
+	 * @param datos datos de la parte (null si no ha terminado bien)
+	 * @param error motivo del fallo (null si ha terminado bien)
+	 * @param ms milisegundos que ha tardado (o que se ha esperado, si no ha terminado)
+	 */
+	public record ResultadoParte(Estado estado, Object datos, String error, long ms) {
+	}
+
+	/**
+	 * Panel completo.
+	 * @param generado momento en que se generó
+	 * @param ms milisegundos que ha tardado en total
+	 * @param completo true si todas las partes han terminado bien
+	 * @param partes resultado de cada parte pedida, por nombre y en orden
+	 */
+	public record Panel(LocalDateTime generado, long ms, boolean completo, Map<String, ResultadoParte> partes) {
+	}
+
+	// Datos de una parte y lo que ha tardado en obtenerlos
+	private record Medido(Object datos, long ms) {
+	}
+
+	private final VentasDelDiaService ventasDelDia;
+	private final InformesCacheService cacheInformes;
+	private final CierresService cierres;
+	private final ProductoRepository productoRepository;
+	private final ResumenesAnualesService resumenesAnuales;
+	private final ArchivoMovimientoRepository archivoRepository;
+	private final ThreadPoolExecutor ejecutor;
+
+	/**
+	 * Constructor que recibe las dependencias y el tamaño del grupo de hilos.
+	 * @param ventasDelDia contadores de las ventas de hoy
+	 * @param cacheInformes caché de resultados de informes
+	 * @param cierres cierres de meses y años terminados
+	 * @param productoRepository repositorio de productos
+	 * @param resumenesAnuales resúmenes anuales guardados
+	 * @param archivoRepository repositorio de archivos de movimientos
+	 * @param hilos número de partes que se calculan a la vez
+	 * @param capacidadCola número máximo de partes esperando
+	 */
+	public PanelService(VentasDelDiaService ventasDelDia, InformesCacheService cacheInformes, CierresService cierres,
+			ProductoRepository productoRepository, ResumenesAnualesService resumenesAnuales,
+			ArchivoMovimientoRepository archivoRepository,
+			@Value("${panel.hilos:4}") int hilos,
+			@Value("${panel.cola:50}") int capacidadCola) {
+		this.ventasDelDia = ventasDelDia;
+		this.cacheInformes = cacheInformes;
+		this.cierres = cierres;
+		this.productoRepository = productoRepository;
+		this.resumenesAnuales = resumenesAnuales;
+		this.archivoRepository = archivoRepository;
+		AtomicInteger contador = new AtomicInteger();
+		// Grupo fijo de hilos con cola limitada: si se llena, submit() lanza RejectedExecutionException
+		this.ejecutor = new ThreadPoolExecutor(hilos, hilos, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(capacidadCola),
+				r -> {
+					Thread hilo = new Thread(r, "panel-" + contador.incrementAndGet());
+					hilo.setDaemon(true);
+					return hilo;
+				});
+	}
+
+	/**
+	 * Detiene los hilos al cerrar la aplicación.
+	 */
+	@PreDestroy
+	public void detener() {
+		ejecutor.shutdownNow();
+	}
+
+	/**
+	 * Calcula a la vez las partes pedidas del panel y devuelve el resultado de todas.
+	 * @param partes partes a calcular (vacío para todas)
+	 * @return panel con el resultado de cada parte, en el orden de Parte
+	 */
+	public Panel panel(Set<Parte> partes) {
+		Set<Parte> pedidas = partes.isEmpty() ? EnumSet.allOf(Parte.class) : EnumSet.copyOf(partes);
+		long inicio = System.currentTimeMillis();
+		// Primero se lanzan todas las partes y después se espera a cada una
+		Map<Parte, Future<Medido>> lanzadas = new LinkedHashMap<>();
+		Map<String, ResultadoParte> resultados = new LinkedHashMap<>();
+		for (Parte parte : pedidas) {
+			try {
+				lanzadas.put(parte, ejecutor.submit(medir(calculo(parte))));
+			} catch (RejectedExecutionException e) {
+				resultados.put(parte.nombre, new ResultadoParte(Estado.RECHAZADA, null, "Servidor ocupado", 0));
+			}
+		}
+		for (Map.Entry<Parte, Future<Medido>> e : lanzadas.entrySet()) {
+			Parte parte = e.getKey();
+			Future<Medido> futuro = e.getValue();
+			// El tiempo máximo de cada parte cuenta desde el inicio, no desde que se empieza a esperarla
+			long restante = inicio + parte.tiempoMaximoMs - System.currentTimeMillis();
+			ResultadoParte resultado;
+			try {
+				Medido medido = futuro.get(Math.max(0, restante), TimeUnit.MILLISECONDS);
+				resultado = new ResultadoParte(Estado.OK, medido.datos(), null, medido.ms());
+			} catch (TimeoutException ex) {
+				// No se interrumpe: el cálculo puede ser el que comparten otras peticiones del mismo informe
+				// (InformesCacheService), y al terminar deja el resultado en la caché para el siguiente panel.
+				// Si aún no había empezado, se quita de la cola
+				futuro.cancel(false);
+				resultado = new ResultadoParte(Estado.TIEMPO_AGOTADO, null,
+						"Sin respuesta en " + parte.tiempoMaximoMs + " ms", System.currentTimeMillis() - inicio);
+			} catch (ExecutionException ex) {
+				Throwable causa = ex.getCause() != null ? ex.getCause() : ex;
+				resultado = new ResultadoParte(Estado.ERROR, null, String.valueOf(causa.getMessage()),
+						System.currentTimeMillis() - inicio);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				futuro.cancel(false);
+				resultado = new ResultadoParte(Estado.ERROR, null, "Petición interrumpida", System.currentTimeMillis() - inicio);
+			}
+			resultados.put(parte.nombre, resultado);
+		}
+		// Las partes rechazadas se añadieron antes: se ordenan como el resto
+		Map<String, ResultadoParte> ordenados = new LinkedHashMap<>();
+		for (Parte parte : pedidas) {
+			ordenados.put(parte.nombre, resultados.get(parte.nombre));
+		}
+		boolean completo = ordenados.values().stream().allMatch(r -> r.estado() == Estado.OK);
+		return new Panel(LocalDateTime.now(), System.currentTimeMillis() - inicio, completo, ordenados);
+	}
+
+	/**
+	 * Función que obtiene los datos de una parte, con los mismos servicios que su endpoint individual.
+	 */
+	private Callable<Object> calculo(Parte parte) {
+		LocalDate hoy = LocalDate.now();
+		return switch (parte) {
+			case VENTAS_DEL_DIA -> ventasDelDia::ventasEnviadasDeHoy;
+			case VENTAS_POR_HORA_HOY -> ventasDelDia::ventasPorHoraHoy;
+			case PRODUCTOS_VENDIDOS_HOY -> ventasDelDia::productosVendidosHoy;
+			case VENTAS_POR_MES -> () -> cacheInformes.obtener(Informe.VENTAS_POR_MES, "", null, null, cierres::ventasPorMes);
+			case PRODUCTOS_VENDIDOS_MES -> () -> {
+				YearMonth mes = YearMonth.from(hoy);
+				return cacheInformes.obtener(Informe.PRODUCTOS_DEL_MES, mes.toString(), mes.atDay(1), mes.atEndOfMonth(),
+						() -> cierres.productosVendidosDelMes(mes.getYear(), mes.getMonthValue()));
+			};
+			case BAJO_STOCK -> () -> cacheInformes.obtener(Informe.BAJO_STOCK, String.valueOf(LIMITE_BAJO_STOCK), null, null,
+					() -> productoRepository.findByStockLessThanEqual(LIMITE_BAJO_STOCK));
+			case RESUMENES_ANUALES -> resumenesAnuales::anios;
+			// Años con archivo de movimientos, del más reciente al más antiguo (como /api/movimientos/anios)
+			case ANIOS_MOVIMIENTOS -> () -> archivoRepository.findAll().stream()
+					.map(ArchivoMovimiento::getAnio)
+					.sorted(Comparator.reverseOrder())
+					.toList();
+		};
+	}
+
+	// Envuelve un cálculo para anotar lo que tarda dentro de su propio hilo
+	private static Callable<Medido> medir(Callable<Object> calculo) {
+		return () -> {
+			long inicio = System.currentTimeMillis();
+			Object datos = calculo.call();
+			return new Medido(datos, System.currentTimeMillis() - inicio);
+		};
+	}
+}
@@ -0,0 +1,259 @@
+package com.spring.service;
+
+/**
+ * Servicio común para generar documentos PDF y enviarlos al navegador.
+ *
+ * En lugar de generar el PDF entero en memoria (ByteArrayOutputStream) y copiarlo después a un byte[],
+ * el documento se escribe directamente en el flujo de salida de la respuesta a medida que se generan
+ * las páginas. Como no se conoce el tamaño final, la respuesta se envía por partes (chunked).
+ *
+ * Uso desde los controladores:
+ * 	1. Se cargan antes todos los datos del informe. Si falla la consulta todavía no se ha enviado nada,
+ * 	   así que el controlador puede responder con un error normal.
+ * 	2. Se devuelve respuesta(nombre, enLinea, contenido): la función contenido solo dibuja el documento
+ * 	   con los datos ya cargados. Si la carga ha fallado se devuelve error(estado, mensaje), que responde
+ * 	   con un JSON {"error": mensaje} en lugar de un 500 vacío.
+ *
+ * Si falla algo mientras se está enviando el PDF, el documento no se cierra y la conexión se corta,
+ * de modo que el navegador ve una descarga fallida en lugar de un PDF incompleto que parece válido.
+ *
+ * Las tablas con muchas filas se añaden por bloques con tabla(...), para que OpenPDF pueda
+ * escribir las filas ya colocadas y la memoria usada no crezca con el tamaño del informe.
+ *
+ * Informes por secciones:
+ * 	Los informes grandes (como el resumen anual, con una tabla por mes) pueden dividirse en secciones
+ * 	independientes. Cada sección se genera como un documento aparte en un ForkJoinPool, en paralelo,
+ * 	y después se copian sus páginas en orden al documento final con PdfCopy. Cada sección empieza en una página nueva.
+ * 	La copia de la primera sección empieza en cuanto está lista, mientras las demás se siguen generando.
+ * 	Solo se generan a la vez tantas secciones como hilos tiene el pool: al copiar una sección se libera su PDF
+ * 	y se lanza la siguiente, así que la memoria no crece con el número de secciones.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfWriter;
+
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class PdfService {
+
+	// Número de filas que se acumulan antes de pasar una tabla al documento
+	private static final int FILAS_POR_BLOQUE = 200;
+
+	// Conversor JSON de la aplicación, para las respuestas de error
+	private final ObjectMapper objectMapper;
+
+	// Hilos que generan las secciones de los informes en paralelo, uno por núcleo
+	private final ForkJoinPool hilosSecciones = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param objectMapper conversor JSON de la aplicación
+	 */
+	public PdfService(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Detiene los hilos de generación de secciones al cerrar la aplicación.
+	 */
+	@PreDestroy
+	public void detener() {
+		hilosSecciones.shutdownNow();
+	}
+
+	/**
+	 * Función que dibuja el contenido de un documento ya abierto.
+	 */
+	@FunctionalInterface
+	public interface ContenidoPdf {
+		/**
+		 * Añade el contenido al documento.
+		 * @param doc documento abierto
+		 */
+		void escribir(Document doc);
+	}
+
+	/**
+	 * Construye una respuesta HTTP que genera el PDF directamente sobre el flujo de salida.
+	 * @param nombreArchivo nombre del archivo que verá el usuario
+	 * @param enLinea true para mostrarlo en el navegador (inline), false para descargarlo (attachment)
+	 * @param contenido función que dibuja el documento con los datos ya cargados
+	 * @return respuesta 200 con el PDF en streaming
+	 */
+	public ResponseEntity<StreamingResponseBody> respuesta(String nombreArchivo, boolean enLinea, ContenidoPdf contenido) {
+		ContentDisposition disposicion = ContentDisposition.builder(enLinea ? "inline" : "attachment")
+				.filename(nombreArchivo)
+				.build();
+		return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_PDF)
+				.header(HttpHeaders.CONTENT_DISPOSITION, disposicion.toString())
+				.body(salida -> escribir(salida, contenido));
+	}
+
+	/**
+	 * Construye una respuesta HTTP que genera en paralelo las secciones de un PDF y las envía unidas en orden.
+	 * @param nombreArchivo nombre del archivo que verá el usuario
+	 * @param enLinea true para mostrarlo en el navegador (inline), false para descargarlo (attachment)
+	 * @param secciones funciones que dibujan cada sección, en el orden en que aparecen
+	 * @return respuesta 200 con el PDF en streaming
+	 */
+	public ResponseEntity<StreamingResponseBody> respuesta(String nombreArchivo, boolean enLinea, List<ContenidoPdf> secciones) {
+		if (secciones.size() == 1) {
+			return respuesta(nombreArchivo, enLinea, secciones.get(0));
+		}
+		ContentDisposition disposicion = ContentDisposition.builder(enLinea ? "inline" : "attachment")
+				.filename(nombreArchivo)
+				.build();
+		return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_PDF)
+				.header(HttpHeaders.CONTENT_DISPOSITION, disposicion.toString())
+				.body(salida -> escribir(salida, secciones));
+	}
+
+	/**
+	 * Construye una respuesta de error en JSON, compatible con los endpoints que devuelven PDF en streaming.
+	 * @param estado código HTTP de la respuesta
+	 * @param mensaje descripción del error
+	 * @return respuesta con el cuerpo {"error": mensaje}
+	 */
+	public ResponseEntity<StreamingResponseBody> error(HttpStatus estado, String mensaje) {
+		return ResponseEntity.status(estado)
+				.contentType(MediaType.APPLICATION_JSON)
+				.body(salida -> objectMapper.writeValue(salida, Map.of("error", mensaje)));
+	}
+
+	/**
+	 * Genera un PDF sobre un flujo de salida (la respuesta HTTP, un archivo...).
+	 * El flujo no se cierra: lo cierra quien lo abrió.
+	 * @param salida flujo donde se escribe el documento
+	 * @param contenido función que dibuja el documento
+	 * @throws IOException si no se puede escribir o falla la generación; en ese caso el documento queda sin cerrar
+	 */
+	public void escribir(OutputStream salida, ContenidoPdf contenido) throws IOException {
+		Document doc = new Document();
+		try {
+			PdfWriter writer = PdfWriter.getInstance(doc, salida);
+			writer.setCloseStream(false);
+			doc.open();
+			contenido.escribir(doc);
+			// Solo se cierra (y se escribe el final del PDF) si todo ha ido bien
+			doc.close();
+		} catch (DocumentException e) {
+			throw new IOException("Error al generar el PDF", e);
+		}
+		salida.flush();
+	}
+
+	/**
+	 * Genera un PDF por secciones: cada sección se dibuja como un documento independiente en paralelo
+	 * y sus páginas se copian en orden sobre el flujo de salida. El flujo no se cierra.
+	 * Con una sola sección se escribe directamente, sin documentos intermedios.
+	 * @param salida flujo donde se escribe el documento
+	 * @param secciones funciones que dibujan cada sección, en orden
+	 * @throws IOException si no se puede escribir o falla alguna sección; en ese caso el documento queda sin cerrar
+	 */
+	public void escribir(OutputStream salida, List<ContenidoPdf> secciones) throws IOException {
+		if (secciones.size() == 1) {
+			escribir(salida, secciones.get(0));
+			return;
+		}
+		// Cada sección produce un PDF completo en memoria: solo se lanzan a la vez tantas como hilos hay
+		int ventana = hilosSecciones.getParallelism();
+		List<ForkJoinTask<byte[]>> tareas = new ArrayList<>(secciones.size());
+		for (int i = 0; i < Math.min(ventana, secciones.size()); i++) {
+			ContenidoPdf seccion = secciones.get(i);
+			tareas.add(hilosSecciones.submit(() -> generar(seccion)));
+		}
+		Document doc = new Document();
+		try {
+			PdfCopy copia = new PdfCopy(doc, salida);
+			copia.setCloseStream(false);
+			doc.open();
+			// Copia las secciones en orden, esperando a cada una solo cuando le toca
+			for (int i = 0; i < secciones.size(); i++) {
+				PdfReader lector = new PdfReader(tareas.get(i).join());
+				// Se suelta el PDF de la sección y se lanza la siguiente que queda fuera de la ventana
+				tareas.set(i, null);
+				if (i + ventana < secciones.size()) {
+					ContenidoPdf siguiente = secciones.get(i + ventana);
+					tareas.add(hilosSecciones.submit(() -> generar(siguiente)));
+				}
+				for (int pagina = 1; pagina <= lector.getNumberOfPages(); pagina++) {
+					copia.addPage(copia.getImportedPage(lector, pagina));
+				}
+				copia.freeReader(lector);
+				lector.close();
+				salida.flush();
+			}
+			doc.close();
+		} catch (IOException | RuntimeException e) {
+			// Si falla una sección no se siguen generando las demás
+			tareas.stream().filter(t -> t != null).forEach(t -> t.cancel(true));
+			throw e instanceof IOException io ? io : new IOException("Error al generar el PDF", e);
+		}
+		salida.flush();
+	}
+
+	/**
+	 * Genera una sección como documento PDF independiente.
+	 * @param seccion función que dibuja la sección
+	 * @return bytes del PDF de la sección
+	 */
+	private byte[] generar(ContenidoPdf seccion) throws IOException {
+		ByteArrayOutputStream salida = new ByteArrayOutputStream();
+		escribir(salida, seccion);
+		return salida.toByteArray();
+	}
+
+	/**
+	 * Añade al documento una tabla con cabecera, pasando las filas al documento por bloques.
+	 * La cabecera se repite al principio de cada página.
+	 * @param doc documento abierto
+	 * @param cabeceras títulos de las columnas
+	 * @param filas elementos a mostrar, uno por fila
+	 * @param celdas función que convierte cada elemento en los textos de sus celdas
+	 */
+	public static <T> void tabla(Document doc, List<String> cabeceras, Iterable<T> filas, Function<T, List<String>> celdas) {
+		PdfPTable tabla = new PdfPTable(cabeceras.size());
+		tabla.setWidthPercentage(100);
+		tabla.setHeaderRows(1);
+		// Tabla incompleta: al añadirla al documento se escriben las filas completas y se liberan
+		tabla.setComplete(false);
+		cabeceras.forEach(tabla::addCell);
+
+		int pendientes = 0;
+		for (T fila : filas) {
+			celdas.apply(fila).forEach(tabla::addCell);
+			if (++pendientes == FILAS_POR_BLOQUE) {
+				doc.add(tabla);
+				pendientes = 0;
+			}
+		}
+		tabla.setComplete(true);
+		doc.add(tabla);
+	}
+}
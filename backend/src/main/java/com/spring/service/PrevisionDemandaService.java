@@ -0,0 +1,437 @@
+package com.spring.service;
+
+/**
+ * Servicio de previsión de demanda por producto, con punto de pedido y días de cobertura dinámicos.
+ *
+ * El informe de bajo stock usaba un límite fijo (5 unidades) para todos los productos: demasiado bajo para
+ * los que se venden mucho y demasiado alto para los que apenas se mueven. Este servicio estima, para cada
+ * producto, las unidades que salen por día y su variabilidad, y a partir de ellas:
+ * 	Punto de pedido: demanda durante el plazo de reposición más un stock de seguridad
+ * 	(factor de seguridad × desviación diaria × √plazo). Con el stock en ese punto o por debajo hay que reponer.
+ * 	Días de cobertura: cuántos días dura el stock actual al ritmo de salida previsto.
+ * 	Cantidad sugerida: lo que hay que pedir para cubrir el plazo de reposición y el periodo de revisión.
+ *
+ * Fuente de datos:
+ * 	La demanda son las salidas de stock (MovimientoStock de tipo SALIDA). Cada línea de pedido ya genera su salida,
+ * 	así que contar también las líneas duplicaría las ventas; las salidas manuales del inventario cuentan igual.
+ * 	MovimientoStockListener pasa cada salida a este servicio cuando se confirma su transacción.
+ *
+ * Estado:
+ * 	Cada producto tiene su DemandaSuavizada en memoria (suavizado exponencial actualizado salida a salida,
+ * 	sin recorrer el histórico). Periódicamente se guardan en PrevisionDemanda los productos que han cambiado,
+ * 	con el movimiento hasta el que incluyen todas las salidas. Al arrancar se cargan y solo se aplican las
+ * 	salidas posteriores; la primera vez (tabla vacía) se recorren todas. reconstruir() vuelve a empezar desde cero
+ * 	(por ejemplo tras cambiar prevision.alfa).
+ *
+ * Salidas desordenadas:
+ * 	Los ID de las salidas se asignan al insertarlas pero se confirman desordenados (la 101 puede confirmarse antes
+ * 	que la 100), así que las salidas que llegan del listener se aplican siempre, salvo las que ya leyó la carga:
+ * 	esas se anotan en un BitSet, como hace ProductosRelacionadosService con los pedidos.
+ * 	Por lo mismo, lo que se guarda no puede ser la salida mayor aplicada: si la 100 aún no se ha confirmado y la
+ * 	aplicación se para, al arrancar se saltaría. El listener avisa de cada salida insertada y de cuándo termina su
+ * 	transacción; el punto de guardado es el ID anterior a la menor salida aún en curso. Cada producto lleva además
+ * 	una copia de su demanda (confirmada) con solo las salidas hasta ese punto, que es la que se guarda; las salidas
+ * 	posteriores esperan en pendientes hasta que el punto las alcanza.
+ *
+ * Productos con poco histórico:
+ * 	Hasta tener prevision.dias-minimos días observados la previsión no se considera fiable y, para decidir si hay
+ * 	que reponer, se sigue usando el límite fijo.
+ */
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.spring.model.PrevisionDemanda;
+import com.spring.repository.MovimientoStockRepository;
+import com.spring.repository.PrevisionDemandaRepository;
+import com.spring.repository.ProductoRepository;
+
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class PrevisionDemandaService {
+
+	/**
+	 * Previsión de un producto.
+	 * @param productoId ID del producto
+	 * @param nombre nombre del producto
+	 * @param stock stock actual
+	 * @param demandaDiaria unidades que se prevé que salgan por día
+	 * @param desviacionDiaria desviación típica de las unidades por día
+	 * @param diasObservados días con datos desde la primera salida
+	 * @param fiable true si hay días observados suficientes para usar la previsión
+	 * @param puntoPedido stock con el que hay que reponer (demanda en el plazo más stock de seguridad)
+	 * @param diasCobertura días que dura el stock actual al ritmo previsto (null si no hay demanda)
+	 * @param cantidadSugerida unidades a pedir para cubrir el plazo de reposición y el periodo de revisión
+	 * @param reponer true si el stock está en el punto de pedido o por debajo (o en el límite fijo, si no es fiable)
+	 */
+	public record Prevision(Long productoId, String nombre, int stock, double demandaDiaria, double desviacionDiaria,
+			long diasObservados, boolean fiable, int puntoPedido, Double diasCobertura, int cantidadSugerida,
+			boolean reponer) {
+	}
+
+	/**
+	 * Demanda en memoria de un producto: la actual, con todas las salidas aplicadas, y la confirmada, con las salidas
+	 * hasta el punto de guardado. hasta es el punto con el que se cargó (las salidas hasta él ya están incluidas).
+	 */
+	private static final class Estado {
+		private final DemandaSuavizada demanda;
+		private final DemandaSuavizada confirmada;
+		private final long hasta;
+
+		private Estado(DemandaSuavizada confirmada, long hasta) {
+			this.demanda = confirmada.copia();
+			this.confirmada = confirmada;
+			this.hasta = hasta;
+		}
+	}
+
+	/**
+	 * Salida aplicada a la demanda actual que aún no ha pasado a la confirmada.
+	 */
+	private record Salida(Long productoId, long dia, int cantidad) {
+	}
+
+	// Orden de las previsiones: primero las que hay que reponer y, dentro de cada grupo, las que antes se agotan
+	private static final Comparator<Prevision> ORDEN = Comparator.comparing((Prevision p) -> !p.reponer())
+			.thenComparing(Prevision::diasCobertura, Comparator.nullsLast(Comparator.naturalOrder()))
+			.thenComparing(Prevision::productoId);
+
+	private final MovimientoStockRepository movimientoRepository;
+	private final PrevisionDemandaRepository previsionRepository;
+	private final ProductoRepository productoRepository;
+	private final double alfa;
+	private final int plazoDias;
+	private final int revisionDias;
+	private final double factorSeguridad;
+	private final int diasMinimos;
+
+	// Demanda de cada producto, por ID
+	private final Map<Long, Estado> estados = new HashMap<>();
+	// Productos cuya demanda confirmada ha cambiado desde el último guardado
+	private final Set<Long> modificados = new HashSet<>();
+	// Salidas insertadas cuya transacción aún no ha terminado
+	private final TreeSet<Long> enCurso = new TreeSet<>();
+	// Salidas aplicadas por encima del punto de guardado, por ID
+	private final TreeMap<Long, Salida> pendientes = new TreeMap<>();
+	// Mayor ID de salida visto (leído, aplicado o en curso)
+	private long maximo;
+	// Punto de guardado: la demanda confirmada incluye todas las salidas hasta este ID
+	private long confirmadoHasta;
+	// Salidas leídas por la última carga, por ID menos leidosDesde, para no aplicarlas otra vez si llegan del listener
+	private BitSet leidos = new BitSet();
+	private long leidosDesde;
+
+	/**
+	 * Constructor que recibe las dependencias y la configuración.
+	 * @param movimientoRepository repositorio de movimientos de stock
+	 * @param previsionRepository repositorio del estado guardado
+	 * @param productoRepository repositorio de productos
+	 * @param alfa peso de cada día nuevo en el suavizado (0 a 1)
+	 * @param plazoDias días que tarda en llegar un pedido al proveedor
+	 * @param revisionDias días entre dos revisiones del stock
+	 * @param factorSeguridad número de desviaciones del stock de seguridad (1,65 ≈ 95 % de nivel de servicio)
+	 * @param diasMinimos días observados a partir de los que la previsión es fiable
+	 */
+	public PrevisionDemandaService(MovimientoStockRepository movimientoRepository,
+			PrevisionDemandaRepository previsionRepository, ProductoRepository productoRepository,
+			@Value("${prevision.alfa:0.1}") double alfa,
+			@Value("${prevision.plazo-dias:7}") int plazoDias,
+			@Value("${prevision.revision-dias:7}") int revisionDias,
+			@Value("${prevision.factor-seguridad:1.65}") double factorSeguridad,
+			@Value("${prevision.dias-minimos:14}") int diasMinimos) {
+		this.movimientoRepository = movimientoRepository;
+		this.previsionRepository = previsionRepository;
+		this.productoRepository = productoRepository;
+		this.alfa = alfa;
+		this.plazoDias = plazoDias;
+		this.revisionDias = revisionDias;
+		this.factorSeguridad = factorSeguridad;
+		this.diasMinimos = diasMinimos;
+		// Comprueba el factor de suavizado al arrancar
+		new DemandaSuavizada(alfa);
+	}
+
+	/**
+	 * Carga el estado guardado al arrancar y aplica las salidas posteriores al punto de guardado de cada producto.
+	 * Mientras tanto, las salidas nuevas esperan a que termine (y se descartan si la carga ya las ha leído).
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Transactional(readOnly = true)
+	public synchronized void cargar() {
+		estados.clear();
+		long desde = Long.MAX_VALUE;
+		long hasta = 0;
+		for (PrevisionDemanda guardada : previsionRepository.findAll()) {
+			long diaAbierto = guardada.getDiaAbierto() == null ? -1 : guardada.getDiaAbierto().toEpochDay();
+			estados.put(guardada.getProductoId(), new Estado(new DemandaSuavizada(alfa, guardada.getMedia(),
+					guardada.getMediaCuadrados(), guardada.getDias(), diaAbierto, guardada.getUnidadesDiaAbierto()),
+					guardada.getUltimoMovimiento()));
+			desde = Math.min(desde, guardada.getUltimoMovimiento());
+			hasta = Math.max(hasta, guardada.getUltimoMovimiento());
+		}
+		maximo = Math.max(maximo, hasta);
+		// Sin estado guardado se recorren todas las salidas
+		aplicarSalidasDesde(estados.isEmpty() ? 0 : desde);
+	}
+
+	/**
+	 * Anota una salida recién insertada cuya transacción aún no ha terminado: el punto de guardado
+	 * no la sobrepasa hasta que termine (terminar).
+	 * @param movimientoId ID del movimiento
+	 */
+	public synchronized void iniciar(long movimientoId) {
+		enCurso.add(movimientoId);
+		maximo = Math.max(maximo, movimientoId);
+	}
+
+	/**
+	 * Quita una salida de las que están en curso cuando su transacción termina, confirmada o no,
+	 * y avanza el punto de guardado.
+	 * @param movimientoId ID del movimiento
+	 */
+	public synchronized void terminar(long movimientoId) {
+		enCurso.remove(movimientoId);
+		confirmar();
+	}
+
+	/**
+	 * Registra una salida de stock confirmada. Las que ya había leído la carga se ignoran.
+	 * @param movimientoId ID del movimiento
+	 * @param productoId ID del producto
+	 * @param fecha fecha del movimiento
+	 * @param cantidad unidades que salen
+	 */
+	public synchronized void registrar(long movimientoId, Long productoId, Date fecha, int cantidad) {
+		long posicion = movimientoId - leidosDesde;
+		if (posicion > 0 && posicion <= Integer.MAX_VALUE && leidos.get((int) posicion)) {
+			return;
+		}
+		aplicar(movimientoId, productoId, fecha, cantidad);
+		confirmar();
+	}
+
+	/**
+	 * Guarda el estado de los productos que han cambiado desde el último guardado.
+	 * Se ejecuta periódicamente y al parar la aplicación.
+	 */
+	@Scheduled(fixedDelayString = "${prevision.guardado-ms:300000}", initialDelayString = "${prevision.guardado-ms:300000}")
+	@Transactional
+	public void guardar() {
+		// Copia de la demanda confirmada de los productos cambiados, para guardar sin bloquear las salidas nuevas
+		Map<Long, DemandaSuavizada> copia = new HashMap<>();
+		long hasta;
+		synchronized (this) {
+			for (Long productoId : modificados) {
+				copia.put(productoId, estados.get(productoId).confirmada.copia());
+			}
+			modificados.clear();
+			hasta = confirmadoHasta;
+		}
+		if (copia.isEmpty()) {
+			return;
+		}
+		try {
+			Map<Long, PrevisionDemanda> filas = previsionRepository.findByProductoIdIn(copia.keySet()).stream()
+					.collect(Collectors.toMap(PrevisionDemanda::getProductoId, Function.identity()));
+			List<PrevisionDemanda> guardar = new ArrayList<>(copia.size());
+			copia.forEach((productoId, demanda) -> {
+				PrevisionDemanda fila = filas.get(productoId);
+				if (fila == null) {
+					fila = new PrevisionDemanda();
+					fila.setProductoId(productoId);
+				}
+				fila.setMedia(demanda.getMedia());
+				fila.setMediaCuadrados(demanda.getMediaCuadrados());
+				fila.setDias(demanda.getDias());
+				fila.setDiaAbierto(demanda.getDiaAbierto() < 0 ? null : LocalDate.ofEpochDay(demanda.getDiaAbierto()));
+				fila.setUnidadesDiaAbierto(demanda.getUnidadesDiaAbierto());
+				fila.setUltimoMovimiento(hasta);
+				guardar.add(fila);
+			});
+			previsionRepository.saveAll(guardar);
+		} catch (RuntimeException e) {
+			// Se vuelve a intentar en el siguiente guardado
+			synchronized (this) {
+				modificados.addAll(copia.keySet());
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Guarda los cambios pendientes al parar la aplicación.
+	 */
+	@PreDestroy
+	public void detener() {
+		guardar();
+	}
+
+	/**
+	 * Borra el estado guardado y vuelve a calcular la demanda de todos los productos recorriendo todas las salidas.
+	 * @return número de productos con salidas
+	 */
+	@Transactional
+	public synchronized int reconstruir() {
+		previsionRepository.deleteAllInBatch();
+		estados.clear();
+		modificados.clear();
+		aplicarSalidasDesde(0);
+		modificados.addAll(estados.keySet());
+		guardar();
+		return estados.size();
+	}
+
+	/**
+	 * Devuelve la previsión de todos los productos.
+	 * @param limite stock con el que se repone un producto sin previsión fiable
+	 * @return previsiones, primero las de los productos que hay que reponer y después por días de cobertura
+	 */
+	@Transactional(readOnly = true)
+	public List<Prevision> previsiones(int limite) {
+		return aPrevisiones(productoRepository.obtenerStocks(), limite);
+	}
+
+	/**
+	 * Devuelve la previsión de un producto.
+	 * @param productoId ID del producto
+	 * @param limite stock con el que se repone el producto si su previsión no es fiable
+	 * @return previsión, o vacío si el producto no existe
+	 */
+	@Transactional(readOnly = true)
+	public Optional<Prevision> prevision(Long productoId, int limite) {
+		return aPrevisiones(productoRepository.obtenerStock(productoId), limite).stream().findFirst();
+	}
+
+	/**
+	 * Devuelve los productos que hay que reponer según su previsión.
+	 * @param limite stock con el que se repone un producto sin previsión fiable
+	 * @return previsiones de los productos a reponer, de menos a más días de cobertura
+	 */
+	@Transactional(readOnly = true)
+	public List<Prevision> bajoStock(int limite) {
+		return previsiones(limite).stream().filter(Prevision::reponer).toList();
+	}
+
+	/**
+	 * Calcula la previsión de cada fila [id, nombre, stock] de producto, a la fecha de hoy.
+	 */
+	private List<Prevision> aPrevisiones(List<Object[]> productos, int limite) {
+		long hoy = LocalDate.now().toEpochDay();
+		List<Prevision> previsiones = new ArrayList<>(productos.size());
+		for (Object[] fila : productos) {
+			Long productoId = (Long) fila[0];
+			int stock = fila[2] == null ? 0 : ((Number) fila[2]).intValue();
+			DemandaSuavizada demanda;
+			synchronized (this) {
+				Estado estado = estados.get(productoId);
+				demanda = estado == null ? new DemandaSuavizada(alfa) : estado.demanda.copia();
+			}
+			// Se cierran los días hasta ayer: hoy aún no ha terminado y no cuenta
+			demanda.cerrarHasta(hoy);
+			previsiones.add(calcular(productoId, (String) fila[1], stock, demanda, limite));
+		}
+		previsiones.sort(ORDEN);
+		return previsiones;
+	}
+
+	/**
+	 * Calcula el punto de pedido, los días de cobertura y la cantidad sugerida de un producto.
+	 */
+	private Prevision calcular(Long productoId, String nombre, int stock, DemandaSuavizada demanda, int limite) {
+		double diaria = demanda.mediaDiaria();
+		double desviacion = demanda.desviacionDiaria();
+		boolean fiable = demanda.getDias() >= diasMinimos;
+		double seguridad = factorSeguridad * desviacion * Math.sqrt(plazoDias);
+		int puntoPedido = (int) Math.ceil(diaria * plazoDias + seguridad);
+		Double cobertura = diaria > 0 ? Math.round(Math.max(0, stock) / diaria * 10) / 10.0 : null;
+		int sugerida = (int) Math.max(0, Math.ceil(diaria * (plazoDias + revisionDias) + seguridad - stock));
+		boolean reponer = fiable ? stock <= puntoPedido : stock <= limite;
+		return new Prevision(productoId, nombre, stock, redondear(diaria), redondear(desviacion), demanda.getDias(),
+				fiable, puntoPedido, cobertura, sugerida, reponer);
+	}
+
+	/**
+	 * Aplica las salidas con ID mayor que uno dado, saltando las que ya incluía el estado guardado de cada producto,
+	 * y las anota como leídas. Se llama con el monitor tomado y dentro de una transacción (necesaria para recorrer el resultado).
+	 * Las pendientes se descartan: ya están confirmadas, así que se vuelven a leer.
+	 */
+	private void aplicarSalidasDesde(long desde) {
+		pendientes.clear();
+		confirmadoHasta = desde;
+		leidos = new BitSet();
+		leidosDesde = desde;
+		try (Stream<Object[]> salidas = movimientoRepository.recorrerSalidasDesde(desde)) {
+			salidas.forEach(s -> {
+				long movimientoId = ((Number) s[0]).longValue();
+				Long productoId = ((Number) s[1]).longValue();
+				if (movimientoId - desde <= Integer.MAX_VALUE) {
+					leidos.set((int) (movimientoId - desde));
+				}
+				Estado estado = estados.get(productoId);
+				if (estado == null || movimientoId > estado.hasta) {
+					aplicar(movimientoId, productoId, (Date) s[2], ((Number) s[3]).intValue());
+				}
+			});
+		}
+		confirmar();
+	}
+
+	/**
+	 * Suma una salida a la demanda actual de su producto y la deja pendiente de pasar a la confirmada
+	 * (con el monitor tomado).
+	 */
+	private void aplicar(long movimientoId, Long productoId, Date fecha, int cantidad) {
+		Estado estado = estados.computeIfAbsent(productoId, id -> new Estado(new DemandaSuavizada(alfa), 0));
+		long dia = dia(fecha);
+		estado.demanda.registrar(dia, cantidad);
+		pendientes.put(movimientoId, new Salida(productoId, dia, cantidad));
+		maximo = Math.max(maximo, movimientoId);
+	}
+
+	/**
+	 * Avanza el punto de guardado hasta la salida anterior a la menor en curso (o la mayor vista si no hay ninguna)
+	 * y pasa a la demanda confirmada, en orden de ID, las pendientes que quedan por debajo (con el monitor tomado).
+	 */
+	private void confirmar() {
+		confirmadoHasta = Math.max(confirmadoHasta, enCurso.isEmpty() ? maximo : enCurso.first() - 1);
+		Map<Long, Salida> alcanzadas = pendientes.headMap(confirmadoHasta, true);
+		for (Salida salida : alcanzadas.values()) {
+			estados.get(salida.productoId()).confirmada.registrar(salida.dia(), salida.cantidad());
+			modificados.add(salida.productoId());
+		}
+		alcanzadas.clear();
+	}
+
+	// Día (desde 1970) de una fecha con hora, en la zona horaria del servidor
+	private static long dia(Date fecha) {
+		return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+	}
+
+	// Redondea a tres decimales para la respuesta
+	private static double redondear(double valor) {
+		return Math.round(valor * 1000) / 1000.0;
+	}
+}
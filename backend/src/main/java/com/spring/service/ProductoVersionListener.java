@@ -0,0 +1,42 @@
+package com.spring.service;
+
+/**
+ * Listener JPA de la entidad Producto que asigna la versión de cambio.
+ *
+ * Se ejecuta antes de cada inserción o actualización de un producto, sea cual sea el controlador
+ * que la provoque, y le asigna la siguiente versión global de SincronizacionProductosService.
+ *
+ * Hibernate crea esta clase a través de Spring, por lo que puede recibir dependencias. El servicio
+ * se obtiene mediante ObjectProvider para no crear una dependencia circular con el EntityManagerFactory.
+ */
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.spring.model.Producto;
+
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+
+public class ProductoVersionListener {
+
+	// Acceso diferido al servicio que reparte las versiones
+	private final ObjectProvider<SincronizacionProductosService> sincronizacion;
+
+	/**
+	 * Constructor que recibe el acceso al servicio de sincronización.
+	 * @param sincronizacion proveedor del servicio de sincronización
+	 */
+	public ProductoVersionListener(ObjectProvider<SincronizacionProductosService> sincronizacion) {
+		this.sincronizacion = sincronizacion;
+	}
+
+	/**
+	 * Asigna una nueva versión de cambio al producto que se va a guardar.
+	 * @param producto producto que se inserta o actualiza
+	 */
+	@PrePersist
+	@PreUpdate
+	public void asignarVersion(Producto producto) {
+		producto.setVersionCambio(sincronizacion.getObject().siguienteVersion());
+	}
+}
@@ -0,0 +1,234 @@
+package com.spring.service;
+
+/**
+ * Servicio de productos comprados juntos, para mostrar en la tienda "también se compra con" y preparar promociones.
+ *
+ * Mantiene en memoria un IndiceCoocurrencias (matriz dispersa y simétrica de pedidos en común entre productos)
+ * construido a partir de las líneas de pedido con producto asociado.
+ *
+ * Carga y actualización:
+ * 	Al arrancar se recorren todas las líneas de pedido ordenadas por pedido. Después, al confirmarse la creación
+ * 	de un pedido se suman sus productos al índice, y al confirmarse su eliminación se restan.
+ * 	reconstruir() vuelve a construir el índice desde el histórico sobre un índice nuevo, sin bloquear las consultas
+ * 	ni los pedidos; los pedidos creados o eliminados mientras tanto se anotan y se aplican al índice nuevo
+ * 	(solo si la carga no los había leído ya) antes de sustituir al anterior.
+ *
+ * Envejecimiento:
+ * 	Cada pedido pesa la mitad cada relacionados.vida-media-dias días (0 para no envejecer), de modo que las parejas
+ * 	de temporada pasan por delante de las de hace años. Ver IndiceCoocurrencias.
+ *
+ * Consultas:
+ * 	Los relacionados de un producto salen de recorrer solo su fila en memoria, sin consultar la base de datos.
+ * 	Se coordinan con las escrituras con un cerrojo de lectura y escritura, como HechosVentasService.
+ */
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.model.LineaPedido;
+import com.spring.model.Pedido;
+import com.spring.repository.LineaPedidoRepository;
+
+@Service
+public class ProductosRelacionadosService {
+
+	// Número máximo de relacionados que se pueden pedir de una vez
+	public static final int MAX_LIMITE = 50;
+
+	private final LineaPedidoRepository lineaRepository;
+	private final double vidaMediaDias;
+	private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+	private volatile IndiceCoocurrencias actual;
+	// Cambios recibidos durante una carga, para aplicarlos al índice nuevo (null si no hay carga en curso)
+	private List<PedidoModificadoEvent> cambiosDuranteCarga;
+
+	/**
+	 * Constructor que recibe las dependencias y la configuración.
+	 * @param lineaRepository repositorio de líneas de pedido
+	 * @param vidaMediaDias días en los que el peso de un pedido se reduce a la mitad (0 sin envejecimiento)
+	 */
+	public ProductosRelacionadosService(LineaPedidoRepository lineaRepository,
+			@Value("${relacionados.vida-media-dias:180}") double vidaMediaDias) {
+		this.lineaRepository = lineaRepository;
+		this.vidaMediaDias = vidaMediaDias;
+		this.actual = new IndiceCoocurrencias(vidaMediaDias, LocalDate.now());
+	}
+
+	/**
+	 * Construye el índice con todo el histórico al arrancar la aplicación.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Transactional(readOnly = true)
+	public void cargar() {
+		reconstruir();
+	}
+
+	/**
+	 * Vuelve a construir el índice desde todas las líneas de pedido y sustituye al actual.
+	 * Mientras se construye, las consultas siguen usando el índice anterior.
+	 * @return número de pedidos leídos
+	 */
+	@Transactional(readOnly = true)
+	public synchronized int reconstruir() {
+		cerrojo.writeLock().lock();
+		try {
+			cambiosDuranteCarga = new ArrayList<>();
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		IndiceCoocurrencias nuevo = new IndiceCoocurrencias(vidaMediaDias, LocalDate.now());
+		// Pedidos leídos, por ID (autoincremental), para no aplicar dos veces los cambios recibidos durante la carga
+		BitSet leidos = new BitSet();
+		try (Stream<Object[]> filas = lineaRepository.recorrerParaCoocurrencias()) {
+			// Las filas llegan ordenadas por pedido: se juntan los productos de cada uno y se suman al cambiar de pedido
+			long pedidoActual = -1;
+			LocalDate fechaActual = null;
+			List<Long> productos = new ArrayList<>();
+			for (Object[] fila : (Iterable<Object[]>) filas::iterator) {
+				long pedidoId = ((Number) fila[0]).longValue();
+				if (pedidoId != pedidoActual) {
+					sumarPedido(nuevo, fechaActual, productos);
+					pedidoActual = pedidoId;
+					fechaActual = (LocalDate) fila[1];
+					marcarLeido(leidos, pedidoId);
+				}
+				long productoId = ((Number) fila[2]).longValue();
+				productos.add(productoId);
+				nuevo.nombrar(productoId, (String) fila[3]);
+			}
+			sumarPedido(nuevo, fechaActual, productos);
+		} catch (RuntimeException e) {
+			cerrojo.writeLock().lock();
+			try {
+				cambiosDuranteCarga = null;
+			} finally {
+				cerrojo.writeLock().unlock();
+			}
+			throw e;
+		}
+		cerrojo.writeLock().lock();
+		try {
+			int pedidosLeidos = leidos.cardinality();
+			// Los pedidos creados durante la carga que no llegó a leer se suman; los eliminados que están en el índice
+			// nuevo (leídos o sumados aquí) se restan. Se anota cada cambio aplicado, para que un pedido creado y
+			// eliminado durante la carga sin que la lectura lo viera se sume y se reste, y no quede en el índice
+			for (PedidoModificadoEvent cambio : cambiosDuranteCarga) {
+				long pedidoId = cambio.getPedido().getId();
+				boolean creado = cambio.getTipo() == PedidoModificadoEvent.Tipo.CREADO;
+				boolean enIndice = pedidoId <= Integer.MAX_VALUE && leidos.get((int) pedidoId);
+				if (creado != enIndice) {
+					aplicar(nuevo, cambio);
+					if (pedidoId >= 0 && pedidoId <= Integer.MAX_VALUE) {
+						leidos.set((int) pedidoId, creado);
+					}
+				}
+			}
+			cambiosDuranteCarga = null;
+			actual = nuevo;
+			return pedidosLeidos;
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Suma o resta los productos de un pedido cuando se confirma su creación o eliminación.
+	 * @param evento evento con el pedido modificado
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(VersionesService.ANTES_DE_VERSIONAR)
+	public void alModificarPedido(PedidoModificadoEvent evento) {
+		Pedido pedido = evento.getPedido();
+		if (pedido == null || pedido.getId() == null || pedido.getFechaPedido() == null || pedido.getDetalles() == null) {
+			return;
+		}
+		if (evento.getTipo() != PedidoModificadoEvent.Tipo.CREADO && evento.getTipo() != PedidoModificadoEvent.Tipo.ELIMINADO) {
+			return;
+		}
+		cerrojo.writeLock().lock();
+		try {
+			aplicar(actual, evento);
+			if (cambiosDuranteCarga != null) {
+				cambiosDuranteCarga.add(evento);
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Devuelve los productos que más se compran junto con uno.
+	 * @param productoId producto consultado
+	 * @param limite número máximo de productos (1 a MAX_LIMITE)
+	 * @return productos relacionados, de más a menos pedidos en común
+	 * @throws IllegalArgumentException si el límite no es válido
+	 */
+	public List<IndiceCoocurrencias.Pareja> relacionados(long productoId, int limite) {
+		if (limite < 1 || limite > MAX_LIMITE) {
+			throw new IllegalArgumentException("El límite debe estar entre 1 y " + MAX_LIMITE);
+		}
+		cerrojo.readLock().lock();
+		try {
+			return actual.relacionados(productoId, limite, LocalDate.now());
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Devuelve el tamaño del índice.
+	 * @return productos, parejas, pedidos y memoria aproximada
+	 */
+	public IndiceCoocurrencias.Estadisticas estadisticas() {
+		cerrojo.readLock().lock();
+		try {
+			return actual.estadisticas(LocalDate.now());
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Suma o resta al índice los productos de un pedido creado o eliminado (con el cerrojo de escritura tomado).
+	 */
+	private static void aplicar(IndiceCoocurrencias indice, PedidoModificadoEvent evento) {
+		Pedido pedido = evento.getPedido();
+		List<Long> productos = new ArrayList<>();
+		for (LineaPedido linea : pedido.getDetalles()) {
+			if (linea.getProducto() != null && linea.getProducto().getId() != null) {
+				productos.add(linea.getProducto().getId());
+				indice.nombrar(linea.getProducto().getId(), linea.getProducto().getNombre());
+			}
+		}
+		indice.anadirPedido(productos.stream().mapToLong(Long::longValue).toArray(), pedido.getFechaPedido(),
+				evento.getTipo() == PedidoModificadoEvent.Tipo.CREADO ? 1 : -1);
+	}
+
+	// Suma al índice el pedido leído en la carga y vacía su lista de productos
+	private static void sumarPedido(IndiceCoocurrencias indice, LocalDate fecha, List<Long> productos) {
+		if (!productos.isEmpty()) {
+			indice.anadirPedido(productos.stream().mapToLong(Long::longValue).toArray(), fecha, 1);
+			productos.clear();
+		}
+	}
+
+	// Anota un pedido como leído en la carga (los ID que no caben en el BitSet nunca se dan por leídos)
+	private static void marcarLeido(BitSet leidos, long pedidoId) {
+		if (pedidoId >= 0 && pedidoId <= Integer.MAX_VALUE) {
+			leidos.set((int) pedidoId);
+		}
+	}
+}
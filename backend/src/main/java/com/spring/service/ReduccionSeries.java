@@ -0,0 +1,169 @@
+package com.spring.service;
+
+/**
+ * Reducción de series temporales a un número fijo de puntos para las gráficas.
+ *
+ * Las series por día crecen cada año (una fila por día con ventas) y la gráfica no puede mostrar más puntos
+ * que píxeles. En lugar de enviar toda la serie, los endpoints de gráficas aceptan un número de puntos
+ * y devuelven la serie reducida, así que el tamaño de la respuesta y el coste de dibujarla no crecen con el histórico.
+ *
+ * Métodos:
+ * 	LTTB (Largest-Triangle-Three-Buckets): reparte los puntos en tramos y de cada tramo elige el que forma
+ * 	el triángulo de mayor área con el punto elegido en el tramo anterior y la media del siguiente.
+ * 	Conserva la forma de la serie (picos y valles) con un solo punto por tramo. Es el método por defecto.
+ * 	MINMAX: de cada tramo se quedan el punto más bajo y el más alto, en su orden. Dibuja la envolvente
+ * 	completa (ningún pico se pierde) a costa de usar dos puntos por tramo.
+ *
+ * En los dos métodos se conservan siempre el primer y el último punto, los puntos devueltos son puntos
+ * originales (no medias) y la serie se recorre en una sola pasada, tramo a tramo y sin copiarla
+ * (LTTB lee cada punto dos veces: al calcular la media del tramo siguiente y al elegir el de su tramo).
+ * Si la serie ya tiene como mucho los puntos pedidos, se devuelve sin cambios.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToDoubleFunction;
+
+public final class ReduccionSeries {
+
+	// Menor número de puntos que se puede pedir (primero, último y al menos un tramo intermedio con mínimo y máximo)
+	public static final int MIN_PUNTOS = 4;
+
+	/**
+	 * Método de reducción.
+	 */
+	public enum Metodo {
+		LTTB, MINMAX;
+
+		/**
+		 * Devuelve el método a partir de su nombre, sin distinguir mayúsculas.
+		 * @param nombre lttb o minmax
+		 * @return método
+		 * @throws IllegalArgumentException si el nombre no corresponde a ninguno
+		 */
+		public static Metodo de(String nombre) {
+			try {
+				return valueOf(nombre.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Método de reducción no válido: " + nombre + " (debe ser lttb o minmax)");
+			}
+		}
+	}
+
+	private ReduccionSeries() {
+	}
+
+	/**
+	 * Reduce una serie al número de puntos indicado con el método elegido.
+	 * @param serie puntos ordenados por x
+	 * @param puntos número máximo de puntos del resultado
+	 * @param metodo método de reducción
+	 * @param x posición de cada punto en el eje horizontal (por ejemplo el día)
+	 * @param y valor de cada punto
+	 * @return serie reducida, o la misma serie si ya tiene como mucho los puntos pedidos
+	 * @throws IllegalArgumentException si se piden menos de MIN_PUNTOS puntos
+	 */
+	public static <T> List<T> reducir(List<T> serie, int puntos, Metodo metodo, ToDoubleFunction<T> x, ToDoubleFunction<T> y) {
+		if (puntos < MIN_PUNTOS) {
+			throw new IllegalArgumentException("El número de puntos debe ser al menos " + MIN_PUNTOS);
+		}
+		if (serie.size() <= puntos) {
+			return serie;
+		}
+		return metodo == Metodo.LTTB ? lttb(serie, puntos, x, y) : minMax(serie, puntos, y);
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets: el primer y el último punto, y uno por cada uno de los (puntos - 2) tramos intermedios.
+	 */
+	static <T> List<T> lttb(List<T> serie, int puntos, ToDoubleFunction<T> x, ToDoubleFunction<T> y) {
+		int n = serie.size();
+		int tramos = puntos - 2;
+		double tamano = (double) (n - 2) / tramos;
+		List<T> resultado = new ArrayList<>(puntos);
+		resultado.add(serie.get(0));
+		// Punto elegido en el tramo anterior
+		double ax = x.applyAsDouble(serie.get(0));
+		double ay = y.applyAsDouble(serie.get(0));
+		for (int tramo = 0; tramo < tramos; tramo++) {
+			int inicio = limite(tramo, tramos, tamano, n);
+			int fin = limite(tramo + 1, tramos, tamano, n);
+			// Media del tramo siguiente (tras el último tramo, el último punto)
+			int finSiguiente = limite(tramo + 2, tramos, tamano, n);
+			double mx = 0;
+			double my = 0;
+			for (int i = fin; i < finSiguiente; i++) {
+				mx += x.applyAsDouble(serie.get(i));
+				my += y.applyAsDouble(serie.get(i));
+			}
+			mx /= finSiguiente - fin;
+			my /= finSiguiente - fin;
+			// Punto del tramo actual que forma el triángulo de mayor área con el anterior y la media del siguiente
+			double mayorArea = -1;
+			int elegido = inicio;
+			for (int i = inicio; i < fin; i++) {
+				double px = x.applyAsDouble(serie.get(i));
+				double py = y.applyAsDouble(serie.get(i));
+				// Doble del área (el factor 1/2 no cambia cuál es la mayor)
+				double area = Math.abs((ax - mx) * (py - ay) - (ax - px) * (my - ay));
+				if (area > mayorArea) {
+					mayorArea = area;
+					elegido = i;
+				}
+			}
+			resultado.add(serie.get(elegido));
+			ax = x.applyAsDouble(serie.get(elegido));
+			ay = y.applyAsDouble(serie.get(elegido));
+		}
+		resultado.add(serie.get(n - 1));
+		return resultado;
+	}
+
+	/**
+	 * Envolvente mínimo/máximo: el primer y el último punto, y el mínimo y el máximo de cada uno de
+	 * los (puntos - 2) / 2 tramos intermedios, en el orden en que aparecen.
+	 */
+	static <T> List<T> minMax(List<T> serie, int puntos, ToDoubleFunction<T> y) {
+		int n = serie.size();
+		int tramos = (puntos - 2) / 2;
+		double tamano = (double) (n - 2) / tramos;
+		List<T> resultado = new ArrayList<>(puntos);
+		resultado.add(serie.get(0));
+		for (int tramo = 0; tramo < tramos; tramo++) {
+			int inicio = limite(tramo, tramos, tamano, n);
+			int fin = limite(tramo + 1, tramos, tamano, n);
+			int minimo = inicio;
+			int maximo = inicio;
+			double valorMinimo = y.applyAsDouble(serie.get(inicio));
+			double valorMaximo = valorMinimo;
+			for (int i = inicio + 1; i < fin; i++) {
+				double valor = y.applyAsDouble(serie.get(i));
+				if (valor < valorMinimo) {
+					minimo = i;
+					valorMinimo = valor;
+				}
+				if (valor > valorMaximo) {
+					maximo = i;
+					valorMaximo = valor;
+				}
+			}
+			// En el orden de la serie, y una sola vez si coinciden (tramo plano o de un punto)
+			resultado.add(serie.get(Math.min(minimo, maximo)));
+			if (minimo != maximo) {
+				resultado.add(serie.get(Math.max(minimo, maximo)));
+			}
+		}
+		resultado.add(serie.get(n - 1));
+		return resultado;
+	}
+
+	// Posición del primer punto de un tramo. Los tramos reparten los puntos 1 .. n-2 (el primero y el último
+	// quedan fuera); el "tramo" siguiente al último es el último punto y después se termina la serie
+	private static int limite(int tramo, int tramos, double tamano, int n) {
+		if (tramo >= tramos) {
+			return tramo == tramos ? n - 1 : n;
+		}
+		return 1 + (int) (tramo * tamano);
+	}
+}
@@ -0,0 +1,181 @@
+package com.spring.service;
+
+/**
+ * Servicio de informes de rentabilidad: ingresos, coste de la mercancía vendida y margen
+ * por producto, por categoría o por periodo.
+ *
+ * Precio de compra de cada venta:
+ * 	Al crear un pedido, cada línea guarda el precio de compra que tenía su producto en ese momento.
+ * 	El coste de una venta se calcula con ese precio guardado, así que los márgenes pasados no cambian
+ * 	aunque después se actualice el precio de compra del producto.
+ * 	Las líneas anteriores a este cambio no lo tenían: al arrancar se completan una sola vez con el precio
+ * 	de compra actual de su producto, que es la mejor estimación disponible, y desde entonces quedan fijas
+ * 	(LineaPedido.precioCompraFijado). Las líneas nuevas nacen fijadas, tengan o no precio de compra.
+ * 	Las líneas cuyo producto no tiene precio de compra no suman coste y se cuentan aparte (unidadesSinCoste).
+ *
+ * Cada informe es una sola consulta agrupada en la base de datos sobre las líneas de pedido del rango.
+ * El informe por periodo agrupa por día en la base de datos y reparte los días en los tramos de la granularidad
+ * pedida igual que los informes de ventas por rango (AnaliticaVentasService).
+ */
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.spring.repository.LineaPedidoRepository;
+import com.spring.service.AnaliticaVentasService.Granularidad;
+
+@Service
+public class RentabilidadService {
+
+	/**
+	 * Criterio por el que se agrupa el informe.
+	 */
+	public enum Agrupacion {
+		PRODUCTO, CATEGORIA, PERIODO;
+
+		/**
+		 * Devuelve la agrupación a partir de su nombre, sin distinguir mayúsculas.
+		 * @param nombre producto, categoria o periodo
+		 * @return agrupación
+		 * @throws IllegalArgumentException si el nombre no corresponde a ninguna
+		 */
+		public static Agrupacion de(String nombre) {
+			try {
+				return valueOf(nombre.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Agrupación no válida: " + nombre
+						+ " (debe ser producto, categoria o periodo)");
+			}
+		}
+	}
+
+	/**
+	 * Rentabilidad de un producto, una categoría o un periodo.
+	 * @param clave nombre del producto o de la categoría, o nombre del tramo (por ejemplo 2025-03)
+	 * @param unidades unidades vendidas
+	 * @param ingresos importe vendido
+	 * @param coste coste de las unidades vendidas, con el precio de compra de cada venta
+	 * @param margen ingresos - coste
+	 * @param margenPorcentaje margen sobre los ingresos con coste conocido (null si no hay ninguno)
+	 * @param unidadesSinCoste unidades vendidas sin precio de compra, que no suman coste
+	 */
+	public record Rentabilidad(String clave, long unidades, double ingresos, double coste, double margen,
+			Double margenPorcentaje, long unidadesSinCoste) {
+	}
+
+	/**
+	 * Acumulado en céntimos de un grupo, para sumar sin errores de redondeo.
+	 */
+	private static final class Acumulado {
+		private long unidades;
+		private long ingresos;
+		private long coste;
+		private long unidadesSinCoste;
+		// Ingresos de las unidades con coste conocido, base del porcentaje de margen
+		private long ingresosConCoste;
+
+		void sumar(Object[] fila) {
+			unidades += ((Number) fila[1]).longValue();
+			ingresos += centimos(fila[2]);
+			coste += centimos(fila[3]);
+			ingresosConCoste += centimos(fila[4]);
+			unidadesSinCoste += ((Number) fila[5]).longValue();
+		}
+
+		Rentabilidad aRentabilidad(String clave) {
+			long margen = ingresos - coste;
+			Double porcentaje = ingresosConCoste > 0
+					? Math.round((ingresosConCoste - coste) * 10000.0 / ingresosConCoste) / 100.0
+					: null;
+			return new Rentabilidad(clave, unidades, ingresos / 100.0, coste / 100.0, margen / 100.0, porcentaje, unidadesSinCoste);
+		}
+	}
+
+	private final LineaPedidoRepository lineaRepository;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param lineaRepository repositorio de líneas de pedido
+	 */
+	public RentabilidadService(LineaPedidoRepository lineaRepository) {
+		this.lineaRepository = lineaRepository;
+	}
+
+	/**
+	 * Completa al arrancar el precio de compra de las líneas anteriores a que se guardara.
+	 * Cada línea se completa una sola vez; en los arranques siguientes no hay ninguna pendiente.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void completarPreciosCompra() {
+		lineaRepository.completarPreciosCompra();
+	}
+
+	/**
+	 * Devuelve la rentabilidad de las ventas de un rango de fechas.
+	 * @param desde primer día (incluido)
+	 * @param hasta último día (incluido)
+	 * @param agrupacion producto, categoría o periodo
+	 * @param granularidad tamaño de los tramos (solo se usa al agrupar por periodo)
+	 * @return por producto o categoría, de más a menos margen; por periodo, todos los tramos en orden
+	 * @throws IllegalArgumentException si el rango está invertido o tiene demasiados tramos
+	 */
+	@Transactional(readOnly = true)
+	public List<Rentabilidad> rentabilidad(LocalDate desde, LocalDate hasta, Agrupacion agrupacion, Granularidad granularidad) {
+		if (hasta.isBefore(desde)) {
+			throw new IllegalArgumentException("La fecha final es anterior a la inicial");
+		}
+		if (agrupacion == Agrupacion.PERIODO) {
+			return porPeriodo(desde, hasta, granularidad);
+		}
+		List<Object[]> filas = agrupacion == Agrupacion.PRODUCTO
+				? lineaRepository.rentabilidadPorProducto(desde, hasta)
+				: lineaRepository.rentabilidadPorCategoria(desde, hasta);
+		List<Rentabilidad> lista = new ArrayList<>(filas.size());
+		for (Object[] fila : filas) {
+			Acumulado acumulado = new Acumulado();
+			acumulado.sumar(fila);
+			lista.add(acumulado.aRentabilidad((String) fila[0]));
+		}
+		lista.sort(Comparator.comparingDouble(Rentabilidad::margen).reversed());
+		return lista;
+	}
+
+	/**
+	 * Reparte la rentabilidad de cada día en los tramos del rango, incluidos los que no tienen ventas.
+	 */
+	private List<Rentabilidad> porPeriodo(LocalDate desde, LocalDate hasta, Granularidad granularidad) {
+		List<LocalDate> inicios = AnaliticaVentasService.inicios(desde, hasta, granularidad);
+		int n = inicios.size();
+		Acumulado[] tramos = new Acumulado[n];
+		for (int i = 0; i < n; i++) {
+			tramos[i] = new Acumulado();
+		}
+		// Las filas llegan ordenadas por fecha
+		int tramo = 0;
+		for (Object[] fila : lineaRepository.rentabilidadPorDia(desde, hasta)) {
+			LocalDate fecha = (LocalDate) fila[0];
+			while (tramo + 1 < n && !fecha.isBefore(inicios.get(tramo + 1))) {
+				tramo++;
+			}
+			tramos[tramo].sumar(fila);
+		}
+		List<Rentabilidad> lista = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			lista.add(tramos[i].aRentabilidad(granularidad.etiqueta(inicios.get(i))));
+		}
+		return lista;
+	}
+
+	// Convierte un importe en euros a céntimos
+	private static long centimos(Object importe) {
+		return importe == null ? 0 : Math.round(((Number) importe).doubleValue() * 100);
+	}
+}
@@ -0,0 +1,194 @@
+package com.spring.service;
+
+/**
+ * Servicio que guarda y sirve los resúmenes anuales de ventas (totales y productos vendidos de cada mes).
+ *
+ * El resumen lo calcula el propio servidor a partir de los cierres de periodos y el cubo de ventas (CierresService), en lugar de
+ * aceptar el que construye el navegador.
+ *
+ * Almacenamiento:
+ * 	Cada resumen se guarda en la carpeta archivos-anuales como resumen-AAAA.json.gz (JSON comprimido con GZIP).
+ * 	El archivo se escribe primero con un nombre temporal y después se renombra de forma atómica, así que
+ * 	nunca queda a medias un resumen aunque la aplicación se detenga mientras se guarda.
+ * 	Un resumen guardado no se modifica: volver a guardar un año genera un resumen nuevo que sustituye al anterior.
+ * 	Los guardados y borrados se hacen de uno en uno, para que el índice y los archivos no se desajusten.
+ *
+ * Índice en memoria:
+ * 	Al arrancar se leen todos los resúmenes de la carpeta y se guardan en un índice ordenado por año.
+ * 	Listar los años y obtener un resumen se sirven desde el índice, sin leer la carpeta en cada petición.
+ * 	Los archivos antiguos sin comprimir (resumen-AAAA.json) se cargan y se convierten al nuevo formato.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.dto.ResumenAnualDTO;
+
+import jakarta.annotation.PostConstruct;
+
+@Service
+public class ResumenesAnualesService {
+
+	// Nombre de los archivos de resumen: resumen-2025.json.gz (o resumen-2025.json en el formato antiguo)
+	private static final Pattern NOMBRE_ARCHIVO = Pattern.compile("resumen-(\\d{4})\\.json(\\.gz)?");
+
+	// Resúmenes guardados, del año más reciente al más antiguo
+	private final NavigableMap<Integer, ResumenAnualDTO> indice = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+
+	private final CierresService cierres;
+	private final ObjectMapper objectMapper;
+	private final Path carpeta;
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param cierres cierres de periodos y cubo de ventas, de los que se calculan los resúmenes
+	 * @param objectMapper conversor JSON de la aplicación
+	 * @param carpeta carpeta donde se guardan los resúmenes
+	 */
+	public ResumenesAnualesService(CierresService cierres, ObjectMapper objectMapper,
+			@Value("${resumenes.carpeta:archivos-anuales}") String carpeta) {
+		this.cierres = cierres;
+		this.objectMapper = objectMapper;
+		this.carpeta = Paths.get(carpeta);
+	}
+
+	/**
+	 * Carga en el índice todos los resúmenes guardados, convirtiendo los del formato antiguo.
+	 * @throws IOException si no se puede crear o leer la carpeta
+	 */
+	@PostConstruct
+	public void cargar() throws IOException {
+		Files.createDirectories(carpeta);
+		// Borra los temporales de un guardado interrumpido
+		try (DirectoryStream<Path> temporales = Files.newDirectoryStream(carpeta, "resumen-*.tmp")) {
+			for (Path temporal : temporales) {
+				Files.deleteIfExists(temporal);
+			}
+		}
+		List<Path> antiguos = new ArrayList<>();
+		try (DirectoryStream<Path> archivos = Files.newDirectoryStream(carpeta, "resumen-*.json*")) {
+			for (Path archivo : archivos) {
+				Matcher m = NOMBRE_ARCHIVO.matcher(archivo.getFileName().toString());
+				if (!m.matches()) {
+					continue;
+				}
+				boolean comprimido = m.group(2) != null;
+				// Si hay de los dos formatos para un año, manda el comprimido
+				if (!comprimido && Files.exists(archivoDe(Integer.parseInt(m.group(1))))) {
+					continue;
+				}
+				try {
+					indice.put(Integer.parseInt(m.group(1)), leer(archivo, comprimido));
+				} catch (IOException e) {
+					// Un archivo dañado no impide cargar el resto
+					continue;
+				}
+				if (!comprimido) {
+					antiguos.add(archivo);
+				}
+			}
+		}
+		// Convierte los archivos antiguos al formato comprimido
+		for (Path antiguo : antiguos) {
+			Matcher m = NOMBRE_ARCHIVO.matcher(antiguo.getFileName().toString());
+			m.matches();
+			int anio = Integer.parseInt(m.group(1));
+			escribir(anio, indice.get(anio));
+			Files.delete(antiguo);
+		}
+	}
+
+	/**
+	 * Calcula el resumen de un año a partir de las ventas y lo guarda, sustituyendo al anterior si existía.
+	 * @param anio año del resumen
+	 * @return resumen guardado
+	 * @throws IOException si no se puede escribir el archivo
+	 */
+	public synchronized ResumenAnualDTO guardar(int anio) throws IOException {
+		ResumenAnualDTO resumen = cierres.resumenAnual(anio);
+		escribir(anio, resumen);
+		// El índice solo cambia cuando el archivo ya está completo en disco
+		indice.put(anio, resumen);
+		return resumen;
+	}
+
+	/**
+	 * Devuelve el resumen guardado de un año.
+	 * @param anio año del resumen
+	 * @return resumen, o vacío si no se ha guardado
+	 */
+	public Optional<ResumenAnualDTO> obtener(int anio) {
+		return Optional.ofNullable(indice.get(anio));
+	}
+
+	/**
+	 * Devuelve los años con resumen guardado.
+	 * @return años, del más reciente al más antiguo
+	 */
+	public List<Integer> anios() {
+		return new ArrayList<>(indice.keySet());
+	}
+
+	/**
+	 * Borra el resumen guardado de un año.
+	 * @param anio año del resumen
+	 * @return true si existía
+	 * @throws IOException si no se puede borrar el archivo
+	 */
+	public synchronized boolean borrar(int anio) throws IOException {
+		boolean existia = indice.remove(anio) != null;
+		Files.deleteIfExists(archivoDe(anio));
+		return existia;
+	}
+
+	/**
+	 * Escribe un resumen comprimido en un archivo temporal y lo renombra al nombre definitivo.
+	 */
+	private void escribir(int anio, ResumenAnualDTO resumen) throws IOException {
+		Path temporal = Files.createTempFile(carpeta, "resumen-" + anio + "-", ".tmp");
+		try {
+			try (OutputStream salida = new GZIPOutputStream(Files.newOutputStream(temporal))) {
+				objectMapper.writeValue(salida, resumen);
+			}
+			Files.move(temporal, archivoDe(anio), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporal);
+		}
+	}
+
+	/**
+	 * Lee un resumen desde su archivo, comprimido o en el formato antiguo.
+	 */
+	private ResumenAnualDTO leer(Path archivo, boolean comprimido) throws IOException {
+		try (InputStream entrada = comprimido
+				? new GZIPInputStream(Files.newInputStream(archivo))
+				: Files.newInputStream(archivo)) {
+			return objectMapper.readValue(entrada, ResumenAnualDTO.class);
+		}
+	}
+
+	// Ruta del archivo comprimido de un año
+	private Path archivoDe(int anio) {
+		return carpeta.resolve("resumen-" + anio + ".json.gz");
+	}
+}
@@ -0,0 +1,163 @@
+package com.spring.service;
+
+/**
+ * Servicio de sincronización incremental del catálogo de productos.
+ *
+ * Mantiene una versión global que crece con cada cambio en un producto:
+ * 	Las inserciones y actualizaciones reciben la versión a través de ProductoVersionListener.
+ * 	Las eliminaciones se registran como ProductoEliminado con su propia versión.
+ *
+ * Con ello, un cliente que conoce la versión N puede pedir sólo lo que ha cambiado desde N
+ * en lugar de volver a descargar la lista completa de productos.
+ *
+ * Las versiones se reparten antes del commit, así que pueden confirmarse desordenadas: si la transacción A toma la 5
+ * y la B la 6 y B confirma antes, un cliente que recibiera la 6 como versión actual ya no pediría nunca la 5.
+ * Por eso se anotan las versiones de las transacciones en curso y a los clientes se les da como versión actual
+ * la anterior a la menor de ellas: por debajo de esa marca todo está confirmado. Lo que se haya confirmado por
+ * encima se vuelve a enviar en la siguiente petición, lo que no es un problema porque aplicar un cambio dos veces
+ * da el mismo resultado.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.spring.dto.CambiosProductosDTO;
+import com.spring.event.ProductoModificadoEvent;
+import com.spring.model.Producto;
+import com.spring.model.ProductoEliminado;
+import com.spring.repository.ProductoEliminadoRepository;
+import com.spring.repository.ProductoRepository;
+
+import jakarta.annotation.PostConstruct;
+
+@Service
+public class SincronizacionProductosService {
+
+	// Repositorio de productos
+	private final ProductoRepository productoRepository;
+	// Repositorio de marcas de borrado
+	private final ProductoEliminadoRepository eliminadoRepository;
+	// Última versión repartida
+	private long version;
+	// Versiones repartidas a transacciones aún sin terminar
+	private final NavigableSet<Long> enCurso = new TreeSet<>();
+
+	/**
+	 * Constructor que recibe los repositorios necesarios.
+	 * @param productoRepository repositorio de productos
+	 * @param eliminadoRepository repositorio de productos eliminados
+	 */
+	public SincronizacionProductosService(ProductoRepository productoRepository,
+			ProductoEliminadoRepository eliminadoRepository) {
+		this.productoRepository = productoRepository;
+		this.eliminadoRepository = eliminadoRepository;
+	}
+
+	/**
+	 * Al arrancar, continúa la numeración desde la mayor versión guardada en la base de datos.
+	 */
+	@PostConstruct
+	public synchronized void inicializar() {
+		Long maxProductos = productoRepository.findMaxVersionCambio();
+		Long maxEliminados = eliminadoRepository.findMaxVersionCambio();
+		version = Math.max(maxProductos != null ? maxProductos : 0, maxEliminados != null ? maxEliminados : 0);
+	}
+
+	/**
+	 * Reparte la siguiente versión global. Si hay una transacción en curso, la versión se anota como pendiente
+	 * hasta que la transacción termina (se confirme o no).
+	 * @return nueva versión
+	 */
+	public long siguienteVersion() {
+		long nueva;
+		synchronized (this) {
+			nueva = ++version;
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				enCurso.add(nueva);
+			}
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			versionesDeLaTransaccion().add(nueva);
+		}
+		return nueva;
+	}
+
+	/**
+	 * Devuelve la mayor versión por debajo de la cual todos los cambios están confirmados:
+	 * la anterior a la menor versión de las transacciones en curso, o la última repartida si no hay ninguna.
+	 * @return versión actual segura
+	 */
+	public synchronized long versionActual() {
+		return enCurso.isEmpty() ? version : enCurso.first() - 1;
+	}
+
+	/**
+	 * Registra la marca de borrado en la misma transacción que elimina el producto,
+	 * para que no se pierda si la aplicación se detiene justo después del commit.
+	 * @param evento evento con el producto modificado
+	 */
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void alModificarProducto(ProductoModificadoEvent evento) {
+		if (evento.getTipo() == ProductoModificadoEvent.Tipo.ELIMINADO && evento.getProductoId() != null) {
+			eliminadoRepository.save(new ProductoEliminado(evento.getProductoId(), siguienteVersion()));
+		}
+	}
+
+	/**
+	 * Obtiene los cambios del catálogo posteriores a una versión.
+	 * @param desde última versión que conoce el cliente (0 para obtener el catálogo completo)
+	 * @return productos modificados, IDs eliminados y versión actual
+	 */
+	public CambiosProductosDTO obtenerCambios(long desde) {
+		// Se lee la versión antes de consultar para no saltarse cambios que lleguen durante la consulta
+		long actual = versionActual();
+		List<Producto> modificados;
+		List<Long> eliminados;
+		if (desde <= 0) {
+			// Sin versión previa: el cliente necesita todo el catálogo y no hay nada que eliminar
+			modificados = productoRepository.findAll();
+			eliminados = List.of();
+		} else {
+			modificados = productoRepository.findByVersionCambioGreaterThan(desde);
+			eliminados = eliminadoRepository.findByVersionCambioGreaterThan(desde).stream()
+					.map(ProductoEliminado::getProductoId)
+					.toList();
+		}
+		return new CambiosProductosDTO(actual, modificados, eliminados);
+	}
+
+	/**
+	 * Devuelve la lista de versiones repartidas a la transacción actual, creándola la primera vez junto con
+	 * la sincronización que las quita de las pendientes cuando la transacción termina.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Long> versionesDeLaTransaccion() {
+		List<Long> versiones = (List<Long>) TransactionSynchronizationManager.getResource(this);
+		if (versiones == null) {
+			List<Long> nuevas = new ArrayList<>();
+			TransactionSynchronizationManager.bindResource(this, nuevas);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int estado) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(SincronizacionProductosService.this);
+					terminar(nuevas);
+				}
+			});
+			versiones = nuevas;
+		}
+		return versiones;
+	}
+
+	// Quita de las pendientes las versiones de una transacción terminada
+	private synchronized void terminar(List<Long> versiones) {
+		enCurso.removeAll(versiones);
+	}
+}
@@ -0,0 +1,304 @@
+package com.spring.service;
+
+/**
+ * Servicio que genera los reportes PDF pesados en segundo plano (trabajos de reportes).
+ *
+ * El resumen anual o el listado de stock pueden tardar más de lo que el navegador está dispuesto a esperar.
+ * En lugar de generarlos en el hilo de la petición:
+ *
+ * 	1. El cliente encola el reporte con encolar(tipo, anio) y recibe el identificador del trabajo.
+ * 	2. Un grupo fijo de hilos (por defecto 2) con una cola limitada (por defecto 20) genera los PDF.
+ * 	   Si la cola está llena el trabajo se rechaza, para no acumular trabajo que nunca se atenderá.
+ * 	3. El PDF se escribe en un archivo temporal dentro de la carpeta de reportes generados y, al terminar,
+ * 	   se renombra de forma atómica: nunca se descarga un archivo a medio escribir.
+ * 	4. El cliente consulta el estado (pudiendo esperar unos segundos a que termine, sin tener que repetir
+ * 	   la consulta continuamente) y, cuando está TERMINADO, descarga el archivo.
+ *
+ * Peticiones repetidas:
+ * 	Si llega una petición del mismo tipo y año mientras hay un trabajo igual pendiente o en curso,
+ * 	se devuelve ese mismo trabajo en lugar de crear otro.
+ *
+ * Retención:
+ * 	Los trabajos terminados y sus archivos se borran pasado el tiempo de retención (por defecto 24 horas).
+ * 	Los datos de los trabajos se guardan solo en memoria, así que al arrancar se borran los archivos
+ * 	que quedaron de una ejecución anterior.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class TrabajosInformesService {
+
+	/**
+	 * Estados por los que pasa un trabajo.
+	 */
+	public enum Estado {
+		PENDIENTE, EN_CURSO, TERMINADO, ERROR
+	}
+
+	/**
+	 * Estado de un trabajo tal como se devuelve al cliente.
+	 * @param id identificador del trabajo
+	 * @param tipo tipo de reporte (dia, mes, anio o stock)
+	 * @param anio año del reporte
+	 * @param estado estado actual
+	 * @param creado instante en que se encoló
+	 * @param terminado instante en que terminó (null si no ha terminado)
+	 * @param error motivo del fallo (null si no ha fallado)
+	 * @param nombreArchivo nombre con el que se descarga el PDF
+	 */
+	public record EstadoTrabajo(String id, String tipo, int anio, Estado estado, Instant creado, Instant terminado,
+			String error, String nombreArchivo) {
+	}
+
+	/**
+	 * Datos internos de un trabajo.
+	 */
+	private static final class Trabajo {
+		private final String id = UUID.randomUUID().toString();
+		private final String tipo;
+		private final int anio;
+		private final Instant creado = Instant.now();
+		// Se completa cuando el trabajo termina, bien o con error
+		private final CompletableFuture<Void> fin = new CompletableFuture<>();
+		private volatile Estado estado = Estado.PENDIENTE;
+		private volatile Instant terminado;
+		private volatile String error;
+		private volatile String nombreArchivo;
+		private volatile Path archivo;
+
+		Trabajo(String tipo, int anio) {
+			this.tipo = tipo;
+			this.anio = anio;
+		}
+
+		// Clave de las peticiones iguales: mismo tipo y año
+		String clave() {
+			return tipo + ":" + anio;
+		}
+
+		EstadoTrabajo aEstado() {
+			return new EstadoTrabajo(id, tipo, anio, estado, creado, terminado, error, nombreArchivo);
+		}
+	}
+
+	// Todos los trabajos que aún no se han borrado, por identificador
+	private final Map<String, Trabajo> trabajos = new ConcurrentHashMap<>();
+	// Trabajos pendientes o en curso, por tipo y año
+	private final Map<String, Trabajo> activos = new ConcurrentHashMap<>();
+
+	private final InformesPdfService informesPdf;
+	private final PdfService pdfService;
+	private final Path carpeta;
+	private final Duration retencion;
+	private final ThreadPoolExecutor ejecutor;
+
+	/**
+	 * Constructor que recibe las dependencias y la configuración de los trabajos.
+	 * @param informesPdf carga de datos y dibujo de los reportes
+	 * @param pdfService generación de los PDF
+	 * @param carpeta carpeta donde se guardan los PDF generados
+	 * @param hilos número de hilos que generan reportes a la vez
+	 * @param capacidadCola número máximo de trabajos esperando
+	 * @param retencionHoras horas que se guardan los trabajos terminados
+	 */
+	public TrabajosInformesService(InformesPdfService informesPdf, PdfService pdfService,
+			@Value("${informes.trabajos.carpeta:informes-generados}") String carpeta,
+			@Value("${informes.trabajos.hilos:2}") int hilos,
+			@Value("${informes.trabajos.cola:20}") int capacidadCola,
+			@Value("${informes.trabajos.retencion-horas:24}") long retencionHoras) {
+		this.informesPdf = informesPdf;
+		this.pdfService = pdfService;
+		this.carpeta = Paths.get(carpeta);
+		this.retencion = Duration.ofHours(retencionHoras);
+		AtomicInteger contador = new AtomicInteger();
+		// Grupo fijo de hilos con cola limitada: si se llena, execute() lanza RejectedExecutionException
+		this.ejecutor = new ThreadPoolExecutor(hilos, hilos, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(capacidadCola),
+				r -> {
+					Thread hilo = new Thread(r, "informes-" + contador.incrementAndGet());
+					hilo.setDaemon(true);
+					return hilo;
+				});
+	}
+
+	/**
+	 * Crea la carpeta de reportes y borra los archivos de una ejecución anterior, de los que ya no hay datos.
+	 * @throws IOException si no se puede crear o leer la carpeta
+	 */
+	@PostConstruct
+	public void iniciar() throws IOException {
+		Files.createDirectories(carpeta);
+		try (DirectoryStream<Path> archivos = Files.newDirectoryStream(carpeta, "*.{pdf,tmp}")) {
+			for (Path archivo : archivos) {
+				Files.deleteIfExists(archivo);
+			}
+		}
+	}
+
+	/**
+	 * Detiene los hilos al cerrar la aplicación.
+	 */
+	@PreDestroy
+	public void detener() {
+		ejecutor.shutdownNow();
+	}
+
+	/**
+	 * Encola un reporte. Si ya hay un trabajo igual pendiente o en curso, devuelve ese.
+	 * @param tipo dia, mes, anio o stock
+	 * @param anio año del reporte
+	 * @return estado del trabajo
+	 * @throws IllegalArgumentException si el tipo de reporte no existe
+	 * @throws RejectedExecutionException si la cola de trabajos está llena
+	 */
+	public EstadoTrabajo encolar(String tipo, int anio) {
+		if (!InformesPdfService.TIPOS.contains(tipo)) {
+			throw new IllegalArgumentException("Tipo de reporte no válido: " + tipo);
+		}
+		Trabajo nuevo = new Trabajo(tipo, anio);
+		// Solo una de las peticiones simultáneas iguales consigue registrar su trabajo
+		Trabajo existente = activos.putIfAbsent(nuevo.clave(), nuevo);
+		if (existente != null) {
+			return existente.aEstado();
+		}
+		trabajos.put(nuevo.id, nuevo);
+		try {
+			ejecutor.execute(() -> ejecutar(nuevo));
+		} catch (RejectedExecutionException e) {
+			activos.remove(nuevo.clave(), nuevo);
+			trabajos.remove(nuevo.id);
+			throw e;
+		}
+		return nuevo.aEstado();
+	}
+
+	/**
+	 * Devuelve el estado de un trabajo, esperando si hace falta a que termine.
+	 * @param id identificador del trabajo
+	 * @param esperaSegundos segundos máximos de espera si no ha terminado (0 para no esperar)
+	 * @return estado del trabajo, o vacío si no existe
+	 */
+	public Optional<EstadoTrabajo> consultar(String id, int esperaSegundos) {
+		Trabajo trabajo = trabajos.get(id);
+		if (trabajo == null) {
+			return Optional.empty();
+		}
+		if (esperaSegundos > 0) {
+			try {
+				trabajo.fin.get(esperaSegundos, TimeUnit.SECONDS);
+			} catch (TimeoutException | ExecutionException e) {
+				// Sigue sin terminar: se devuelve el estado actual
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return Optional.of(trabajo.aEstado());
+	}
+
+	/**
+	 * Devuelve los trabajos que aún no se han borrado, del más reciente al más antiguo.
+	 * @return lista de estados
+	 */
+	public List<EstadoTrabajo> listar() {
+		return trabajos.values().stream()
+				.sorted((a, b) -> b.creado.compareTo(a.creado))
+				.map(Trabajo::aEstado)
+				.toList();
+	}
+
+	/**
+	 * Devuelve el archivo generado por un trabajo terminado.
+	 * @param id identificador del trabajo
+	 * @return ruta del PDF, o vacío si el trabajo no existe o no ha terminado
+	 */
+	public Optional<Path> archivo(String id) {
+		Trabajo trabajo = trabajos.get(id);
+		if (trabajo == null || trabajo.estado != Estado.TERMINADO) {
+			return Optional.empty();
+		}
+		return Optional.of(trabajo.archivo);
+	}
+
+	/**
+	 * Genera el PDF de un trabajo en un archivo temporal y lo renombra al terminar.
+	 * @param trabajo trabajo a ejecutar
+	 */
+	private void ejecutar(Trabajo trabajo) {
+		trabajo.estado = Estado.EN_CURSO;
+		Path temporal = carpeta.resolve(trabajo.id + ".tmp");
+		try {
+			InformesPdfService.InformePdf informe = informesPdf.preparar(trabajo.tipo, trabajo.anio);
+			try (OutputStream salida = Files.newOutputStream(temporal)) {
+				pdfService.escribir(salida, informe.secciones());
+			}
+			Path destino = carpeta.resolve(trabajo.id + ".pdf");
+			Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+			trabajo.archivo = destino;
+			trabajo.nombreArchivo = informe.nombreArchivo();
+			trabajo.estado = Estado.TERMINADO;
+		} catch (IOException | RuntimeException e) {
+			trabajo.error = e.getMessage();
+			trabajo.estado = Estado.ERROR;
+			borrar(temporal);
+		} finally {
+			trabajo.terminado = Instant.now();
+			// A partir de aquí una petición igual crea un trabajo nuevo
+			activos.remove(trabajo.clave(), trabajo);
+			trabajo.fin.complete(null);
+		}
+	}
+
+	/**
+	 * Borra los trabajos terminados hace más tiempo que la retención, junto con sus archivos.
+	 * Se ejecuta cada hora.
+	 */
+	@Scheduled(fixedDelayString = "${informes.trabajos.limpieza-ms:3600000}")
+	public void limpiar() {
+		Instant limite = Instant.now().minus(retencion);
+		trabajos.values().removeIf(trabajo -> {
+			boolean caducado = trabajo.terminado != null && trabajo.terminado.isBefore(limite);
+			if (caducado && trabajo.archivo != null) {
+				borrar(trabajo.archivo);
+			}
+			return caducado;
+		});
+	}
+
+	// Borra un archivo ignorando los errores (se volverá a intentar al reiniciar)
+	private static void borrar(Path archivo) {
+		try {
+			Files.deleteIfExists(archivo);
+		} catch (IOException e) {
+			// Se queda en disco hasta el siguiente arranque
+		}
+	}
+}
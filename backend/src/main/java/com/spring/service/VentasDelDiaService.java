@@ -0,0 +1,296 @@
+package com.spring.service;
+
+/**
+ * Contadores en memoria de las ventas del día actual, por hora y por producto.
+ *
+ * Sustituye a las consultas de los informes "ventas del día" y "productos vendidos hoy":
+ * en lugar de sumar pedidos en cada petición, se mantienen unos contadores que se actualizan
+ * al confirmarse cada cambio en un pedido, y las consultas solo leen los contadores.
+ *
+ * Contadores (importes en céntimos, para sumar sin errores de redondeo):
+ * 	Por cada hora del día (0-23): importe vendido, unidades vendidas e importe de los pedidos ya enviados.
+ * 	Por cada producto: unidades e importe de cada hora, y el total de unidades del día.
+ * 	Totales del día de pedidos enviados, para responder sin recorrer las horas.
+ *
+ * Todos los contadores son atómicos (AtomicLong, AtomicLongArray, ConcurrentHashMap), así que las
+ * actualizaciones y las consultas no se bloquean entre sí.
+ *
+ * Cambio de día:
+ * 	Los contadores de un día se sustituyen por otros vacíos a medianoche (tarea programada) o, si la tarea
+ * 	aún no se ha ejecutado, en el primer acceso del día siguiente. Los cambios en pedidos de días anteriores se ignoran.
+ *
+ * Pedidos repetidos:
+ * 	Se guardan los identificadores de los pedidos sumados y de los enviados, de modo que marcar dos veces
+ * 	un pedido como enviado no lo cuenta dos veces, y al eliminar un pedido solo se resta lo que se había sumado.
+ *
+ * Al arrancar, los contadores se reconstruyen a partir de los pedidos del día guardados en la base de datos.
+ * La hora de cada pedido es la de su creación (horaPedido); los pedidos antiguos sin hora se cuentan en la hora 0.
+ */
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.spring.dto.ProductoVentaDetalle;
+import com.spring.dto.VentaPorFecha;
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.model.LineaPedido;
+import com.spring.model.Pedido;
+import com.spring.repository.PedidoRepository;
+
+@Service
+public class VentasDelDiaService {
+
+	// Número de franjas horarias del día
+	private static final int HORAS = 24;
+
+	/**
+	 * Ventas de una hora del día.
+	 * @param hora hora del día (0-23)
+	 * @param importe importe vendido en esa hora
+	 * @param unidades unidades vendidas en esa hora
+	 * @param importeEnviado importe de los pedidos de esa hora que ya se han enviado
+	 */
+	public record VentasHora(int hora, double importe, long unidades, double importeEnviado) {
+	}
+
+	/**
+	 * Contadores de un producto durante el día.
+	 */
+	private static final class ContadorProducto {
+		private final AtomicLongArray unidadesPorHora = new AtomicLongArray(HORAS);
+		private final AtomicLongArray importePorHora = new AtomicLongArray(HORAS);
+		private final AtomicLong unidades = new AtomicLong();
+	}
+
+	/**
+	 * Contadores de un día completo.
+	 */
+	private static final class Contadores {
+		private final LocalDate fecha;
+		// Importe (céntimos) y unidades vendidas por hora
+		private final AtomicLongArray importePorHora = new AtomicLongArray(HORAS);
+		private final AtomicLongArray unidadesPorHora = new AtomicLongArray(HORAS);
+		// Importe (céntimos) de los pedidos enviados, por hora y total
+		private final AtomicLongArray enviadoPorHora = new AtomicLongArray(HORAS);
+		private final AtomicLong importeEnviado = new AtomicLong();
+		private final AtomicLong pedidosEnviados = new AtomicLong();
+		// Contadores por nombre de producto
+		private final Map<String, ContadorProducto> productos = new ConcurrentHashMap<>();
+		// Pedidos ya sumados y pedidos ya contados como enviados
+		private final Set<Long> pedidos = ConcurrentHashMap.newKeySet();
+		private final Set<Long> enviados = ConcurrentHashMap.newKeySet();
+
+		Contadores(LocalDate fecha) {
+			this.fecha = fecha;
+		}
+	}
+
+	private final PedidoRepository pedidoRepository;
+	// Contadores del día actual; se sustituyen enteros al cambiar de día
+	private final AtomicReference<Contadores> actual = new AtomicReference<>(new Contadores(LocalDate.now()));
+
+	/**
+	 * Constructor que recibe las dependencias necesarias.
+	 * @param pedidoRepository repositorio de pedidos
+	 */
+	public VentasDelDiaService(PedidoRepository pedidoRepository) {
+		this.pedidoRepository = pedidoRepository;
+	}
+
+	/**
+	 * Reconstruye los contadores del día a partir de los pedidos guardados al arrancar la aplicación.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void reconstruir() {
+		Contadores nuevos = new Contadores(LocalDate.now());
+		for (Pedido pedido : pedidoRepository.findConLineasByFechaPedido(nuevos.fecha)) {
+			sumar(nuevos, pedido);
+			if (pedido.isEnviado()) {
+				enviar(nuevos, pedido);
+			}
+		}
+		actual.set(nuevos);
+	}
+
+	/**
+	 * Pone los contadores a cero al empezar un nuevo día.
+	 */
+	@Scheduled(cron = "0 0 0 * * *")
+	public void reiniciar() {
+		contadores(LocalDate.now());
+	}
+
+	/**
+	 * Actualiza los contadores cuando se confirma la creación, el envío o la eliminación de un pedido del día.
+	 * @param evento evento con el pedido modificado
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(VersionesService.ANTES_DE_VERSIONAR)
+	public void alModificarPedido(PedidoModificadoEvent evento) {
+		Pedido pedido = evento.getPedido();
+		if (pedido == null || pedido.getId() == null || pedido.getFechaPedido() == null) {
+			return;
+		}
+		// Solo cuentan los pedidos de hoy
+		Contadores dia = contadores(pedido.getFechaPedido());
+		if (dia == null) {
+			return;
+		}
+		switch (evento.getTipo()) {
+			case CREADO -> {
+				sumar(dia, pedido);
+				if (pedido.isEnviado()) {
+					enviar(dia, pedido);
+				}
+			}
+			case ENVIADO -> enviar(dia, pedido);
+			case ELIMINADO -> {
+				if (dia.enviados.remove(pedido.getId())) {
+					acumularEnviado(dia, pedido, -1);
+				}
+				if (dia.pedidos.remove(pedido.getId())) {
+					acumular(dia, pedido, -1);
+				}
+			}
+			default -> {
+				// El pago o los datos del cliente no cambian las ventas
+			}
+		}
+	}
+
+	/**
+	 * Devuelve el total de los pedidos de hoy que ya se han enviado.
+	 * @return lista con un elemento, o vacía si hoy no se ha enviado ningún pedido
+	 */
+	public List<VentaPorFecha> ventasEnviadasDeHoy() {
+		Contadores dia = contadores(LocalDate.now());
+		if (dia.pedidosEnviados.get() == 0) {
+			return List.of();
+		}
+		return List.of(new VentaPorFecha(dia.fecha, dia.importeEnviado.get() / 100.0));
+	}
+
+	/**
+	 * Devuelve las unidades vendidas hoy de cada producto.
+	 * @return productos vendidos, de más a menos unidades
+	 */
+	public List<ProductoVentaDetalle> productosVendidosHoy() {
+		Contadores dia = contadores(LocalDate.now());
+		List<ProductoVentaDetalle> lista = new ArrayList<>(dia.productos.size());
+		dia.productos.forEach((nombre, contador) -> {
+			long unidades = contador.unidades.get();
+			if (unidades != 0) {
+				lista.add(new ProductoVentaDetalle(nombre, unidades));
+			}
+		});
+		lista.sort(Comparator.comparing(ProductoVentaDetalle::getCantidadVendida).reversed());
+		return lista;
+	}
+
+	/**
+	 * Devuelve las ventas de cada hora de hoy.
+	 * @return 24 elementos, uno por hora, incluidas las horas sin ventas
+	 */
+	public List<VentasHora> ventasPorHoraHoy() {
+		Contadores dia = contadores(LocalDate.now());
+		List<VentasHora> lista = new ArrayList<>(HORAS);
+		for (int hora = 0; hora < HORAS; hora++) {
+			lista.add(new VentasHora(hora, dia.importePorHora.get(hora) / 100.0, dia.unidadesPorHora.get(hora),
+					dia.enviadoPorHora.get(hora) / 100.0));
+		}
+		return lista;
+	}
+
+	/**
+	 * Devuelve los contadores de un día, sustituyendo los actuales por otros vacíos si ese día es posterior.
+	 * @param fecha día de los contadores
+	 * @return contadores del día, o null si es un día ya pasado
+	 */
+	private Contadores contadores(LocalDate fecha) {
+		Contadores dia = actual.get();
+		while (!dia.fecha.equals(fecha)) {
+			if (fecha.isBefore(dia.fecha)) {
+				return null;
+			}
+			// Solo un hilo consigue cambiar los contadores; el resto usa los que ha creado
+			Contadores nuevos = new Contadores(fecha);
+			if (actual.compareAndSet(dia, nuevos)) {
+				return nuevos;
+			}
+			dia = actual.get();
+		}
+		return dia;
+	}
+
+	// Suma las líneas de un pedido si aún no se había sumado
+	private static void sumar(Contadores dia, Pedido pedido) {
+		if (dia.pedidos.add(pedido.getId())) {
+			acumular(dia, pedido, 1);
+		}
+	}
+
+	// Suma el total de un pedido a los enviados si aún no se había contado
+	private static void enviar(Contadores dia, Pedido pedido) {
+		if (dia.enviados.add(pedido.getId())) {
+			acumularEnviado(dia, pedido, 1);
+		}
+	}
+
+	/**
+	 * Suma (signo 1) o resta (signo -1) las líneas de un pedido a los contadores de su hora y de sus productos.
+	 */
+	private static void acumular(Contadores dia, Pedido pedido, int signo) {
+		if (pedido.getDetalles() == null) {
+			return;
+		}
+		int hora = hora(pedido);
+		for (LineaPedido linea : pedido.getDetalles()) {
+			long unidades = signo * (long) linea.getCantidad();
+			long importe = signo * centimos(linea.getCantidad() * linea.getPrecioUnitario());
+			dia.unidadesPorHora.addAndGet(hora, unidades);
+			dia.importePorHora.addAndGet(hora, importe);
+			ContadorProducto producto = dia.productos.computeIfAbsent(CuboVentasService.nombreProducto(linea),
+					n -> new ContadorProducto());
+			producto.unidadesPorHora.addAndGet(hora, unidades);
+			producto.importePorHora.addAndGet(hora, importe);
+			producto.unidades.addAndGet(unidades);
+		}
+	}
+
+	/**
+	 * Suma (signo 1) o resta (signo -1) el total de un pedido a los contadores de pedidos enviados.
+	 */
+	private static void acumularEnviado(Contadores dia, Pedido pedido, int signo) {
+		long importe = signo * centimos(pedido.getTotal() != null ? pedido.getTotal() : 0);
+		dia.enviadoPorHora.addAndGet(hora(pedido), importe);
+		dia.importeEnviado.addAndGet(importe);
+		dia.pedidosEnviados.addAndGet(signo);
+	}
+
+	// Hora del día en que se creó el pedido (0 si no se guardó)
+	private static int hora(Pedido pedido) {
+		LocalTime horaPedido = pedido.getHoraPedido();
+		return horaPedido != null ? horaPedido.getHour() : 0;
+	}
+
+	// Convierte un importe en euros a céntimos
+	private static long centimos(double importe) {
+		return Math.round(importe * 100);
+	}
+}
@@ -0,0 +1,156 @@
+package com.spring.service;
+
+/**
+ * Servicio que lleva un contador de versión por cada agregado de datos (productos, pedidos,
+ * movimientos de stock y facturas) para responder peticiones GET condicionales.
+ *
+ * Cada escritura incrementa el contador del agregado afectado. Los endpoints de consulta construyen
+ * su ETag a partir de los contadores de los que dependen y lo comparan con la cabecera If-None-Match
+ * antes de ejecutar la consulta; si nada ha cambiado se responde 304 Not Modified sin tocar la base de datos
+ * ni serializar la respuesta.
+ *
+ * Los ETag incluyen el instante de arranque de la aplicación, para que los contadores que se reinician
+ * al reiniciar el servidor no coincidan con ETag antiguos que tenga guardados el navegador.
+ */
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.spring.event.FacturaModificadaEvent;
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.event.ProductoModificadoEvent;
+
+@Service
+public class VersionesService {
+
+	/**
+	 * Agregados de datos con versión propia.
+	 */
+	public enum Agregado {
+		PRODUCTOS,
+		PEDIDOS,
+		MOVIMIENTOS,
+		FACTURAS
+	}
+
+	/**
+	 * Orden de los listeners que actualizan datos en memoria servidos con estos ETag (cachés de informes,
+	 * índices...). Se ejecutan tras el commit antes que los de esta clase, que van los últimos: si la versión
+	 * cambiara antes, una petición en medio recibiría los datos antiguos con el ETag nuevo y el cliente
+	 * los conservaría hasta la siguiente escritura.
+	 */
+	public static final int ANTES_DE_VERSIONAR = Ordered.LOWEST_PRECEDENCE - 1;
+
+	// Instante de arranque en base 36, común a todos los ETag de esta ejecución
+	private final String arranque = Long.toString(System.currentTimeMillis(), 36);
+	// Un contador por agregado, indexado por el ordinal del enum
+	private final AtomicLongArray contadores = new AtomicLongArray(Agregado.values().length);
+
+	/**
+	 * Incrementa la versión de un agregado tras una escritura.
+	 * @param agregado agregado modificado
+	 * @return nueva versión del agregado
+	 */
+	public long incrementar(Agregado agregado) {
+		return contadores.incrementAndGet(agregado.ordinal());
+	}
+
+	/**
+	 * Incrementa la versión de un agregado cuando se confirme la transacción en curso (o en el momento, si no hay).
+	 * Si se incrementara antes del commit, una consulta en ese intervalo recibiría el ETag nuevo con los datos
+	 * anteriores y el cliente los conservaría hasta la siguiente escritura.
+	 * @param agregado agregado modificado
+	 */
+	public void incrementarAlConfirmar(Agregado agregado) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					incrementar(agregado);
+				}
+			});
+		} else {
+			incrementar(agregado);
+		}
+	}
+
+	/**
+	 * Devuelve la versión actual de un agregado.
+	 * @param agregado agregado a consultar
+	 * @return versión actual
+	 */
+	public long version(Agregado agregado) {
+		return contadores.get(agregado.ordinal());
+	}
+
+	/**
+	 * Construye un ETag débil a partir de las versiones de los agregados indicados.
+	 * @param agregados agregados de los que depende la respuesta
+	 * @return ETag, por ejemplo W/"lx3k9a-4-12"
+	 */
+	public String etag(Agregado... agregados) {
+		StringBuilder sb = new StringBuilder("W/\"").append(arranque);
+		for (Agregado agregado : agregados) {
+			sb.append('-').append(version(agregado));
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * Construye un ETag débil para datos que llevan su propia versión (por ejemplo una caché).
+	 * @param nombre nombre de los datos, para distinguir ETag de distintas fuentes
+	 * @param version versión de los datos
+	 * @return ETag, por ejemplo W/"lx3k9a-catalogo-7"
+	 */
+	public String etag(String nombre, long version) {
+		return "W/\"" + arranque + "-" + nombre + "-" + version + "\"";
+	}
+
+	/**
+	 * Construye un ETag para respuestas que además dependen del día actual
+	 * (por ejemplo las ventas de hoy), de modo que caduquen al cambiar de día.
+	 * @param agregados agregados de los que depende la respuesta
+	 * @return ETag que incluye la fecha de hoy
+	 */
+	public String etagDelDia(Agregado... agregados) {
+		String etag = etag(agregados);
+		return etag.substring(0, etag.length() - 1) + "-" + LocalDate.now() + "\"";
+	}
+
+	/**
+	 * Incrementa la versión de productos cuando se confirma un cambio en un producto.
+	 * @param evento evento con el producto modificado
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(Ordered.LOWEST_PRECEDENCE)
+	public void alModificarProducto(ProductoModificadoEvent evento) {
+		incrementar(Agregado.PRODUCTOS);
+	}
+
+	/**
+	 * Incrementa la versión de pedidos cuando se confirma un cambio en un pedido.
+	 * @param evento evento con el pedido modificado
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(Ordered.LOWEST_PRECEDENCE)
+	public void alModificarPedido(PedidoModificadoEvent evento) {
+		incrementar(Agregado.PEDIDOS);
+	}
+
+	/**
+	 * Incrementa la versión de facturas cuando se confirma la creación o eliminación de una factura.
+	 * @param evento evento con la factura modificada
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	@Order(Ordered.LOWEST_PRECEDENCE)
+	public void alModificarFactura(FacturaModificadaEvent evento) {
+		incrementar(Agregado.FACTURAS);
+	}
+}
@@ -0,0 +1,117 @@
+package com.spring.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Pruebas del reparto de conexiones entre principal y réplica con dos bases de datos H2 en memoria.
+ * Cada base de datos tiene una tabla "origen" con su propio nombre, para saber de cuál se ha leído.
+ * Como no hay replicación real, el latido que vería la réplica se escribe a mano.
+ */
+class EnrutadorDataSourceTest {
+
+	private JdbcDataSource principal;
+	private JdbcDataSource replica;
+
+	@BeforeEach
+	void preparar() {
+		principal = baseDeDatos("principal");
+		replica = baseDeDatos("replica");
+		new JdbcTemplate(replica).execute("CREATE TABLE IF NOT EXISTS latido_replica (id INT PRIMARY KEY, instante BIGINT NOT NULL)");
+		new JdbcTemplate(replica).update("DELETE FROM latido_replica");
+	}
+
+	@Test
+	void lecturasVanALaReplicaYEscriturasALaPrincipal() {
+		EnrutadorDataSource enrutador = enrutador(replica, Duration.ofSeconds(5), Duration.ZERO);
+		latidoEnReplica(0);
+		enrutador.comprobar();
+
+		assertTrue(enrutador.estado().disponible());
+		assertEquals("replica", leer(enrutador, true, "com.spring.service.Informes.leer"));
+		assertEquals("principal", leer(enrutador, false, "com.spring.service.Pedidos.crear"));
+	}
+
+	@Test
+	void lecturasSueltasDeLosRepositoriosVanALaPrincipal() {
+		EnrutadorDataSource enrutador = enrutador(replica, Duration.ofSeconds(5), Duration.ZERO);
+		latidoEnReplica(0);
+		enrutador.comprobar();
+
+		assertEquals("principal",
+				leer(enrutador, true, "org.springframework.data.jpa.repository.support.SimpleJpaRepository.findById"));
+	}
+
+	@Test
+	void replicaConDemasiadoRetrasoNoSeUsa() {
+		EnrutadorDataSource enrutador = enrutador(replica, Duration.ofSeconds(5), Duration.ZERO);
+		latidoEnReplica(60_000);
+		enrutador.comprobar();
+
+		assertFalse(enrutador.estado().disponible());
+		assertEquals("principal", leer(enrutador, true, "com.spring.service.Informes.leer"));
+	}
+
+	@Test
+	void replicaCaidaSeSustituyePorLaPrincipal() {
+		JdbcDataSource caida = new JdbcDataSource();
+		caida.setURL("jdbc:h2:mem:no_existe;IFEXISTS=TRUE");
+		EnrutadorDataSource enrutador = enrutador(caida, Duration.ofSeconds(5), Duration.ZERO);
+		enrutador.comprobar();
+
+		assertFalse(enrutador.estado().disponible());
+		assertEquals("principal", leer(enrutador, true, "com.spring.service.Informes.leer"));
+	}
+
+	@Test
+	void trasUnaEscrituraSeLeeDeLaPrincipalDuranteElMargen() {
+		EnrutadorDataSource enrutador = enrutador(replica, Duration.ofSeconds(5), Duration.ofMinutes(1));
+		latidoEnReplica(0);
+		enrutador.comprobar();
+
+		leer(enrutador, false, "com.spring.service.Pedidos.crear");
+		assertEquals("principal", leer(enrutador, true, "com.spring.service.Informes.leer"));
+	}
+
+	// Crea una base de datos H2 en memoria con la tabla origen
+	private static JdbcDataSource baseDeDatos(String nombre) {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + nombre + ";DB_CLOSE_DELAY=-1");
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("CREATE TABLE IF NOT EXISTS origen (nombre VARCHAR(20))");
+		jdbc.update("DELETE FROM origen");
+		jdbc.update("INSERT INTO origen (nombre) VALUES (?)", nombre);
+		return dataSource;
+	}
+
+	// Enrutador sin comprobaciones periódicas: las pruebas llaman a comprobar() directamente
+	private EnrutadorDataSource enrutador(javax.sql.DataSource replicaUsada, Duration retrasoMaximo, Duration margen) {
+		return new EnrutadorDataSource(principal, replicaUsada, retrasoMaximo, margen, Duration.ofHours(1));
+	}
+
+	// Simula que a la réplica ha llegado un latido de hace unos milisegundos
+	private void latidoEnReplica(long antiguedadMs) {
+		new JdbcTemplate(replica).update("MERGE INTO latido_replica (id, instante) KEY (id) VALUES (1, ?)",
+				System.currentTimeMillis() - antiguedadMs);
+	}
+
+	// Lee la tabla origen dentro de una transacción con el nombre y el modo indicados
+	private static String leer(EnrutadorDataSource enrutador, boolean soloLectura, String nombre) {
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(enrutador);
+		TransactionTemplate transaccion = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		transaccion.setReadOnly(soloLectura);
+		transaccion.setName(nombre);
+		return transaccion.execute(estado -> new JdbcTemplate(dataSource).queryForObject("SELECT nombre FROM origen", String.class));
+	}
+}
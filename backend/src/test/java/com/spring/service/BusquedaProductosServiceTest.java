@@ -0,0 +1,105 @@
+package com.spring.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spring.dto.ProductoBusquedaDTO;
+import com.spring.dto.ResultadoBusquedaDTO;
+import com.spring.event.ProductoModificadoEvent;
+import com.spring.repository.ProductoRepository;
+
+/**
+ * Pruebas del buscador de productos en memoria: prefijos, tildes y mayúsculas, relevancia por campo,
+ * facetas y actualización del índice al cambiar o eliminar un producto.
+ */
+class BusquedaProductosServiceTest {
+
+	private ProductoRepository repositorio;
+	private BusquedaProductosService busqueda;
+
+	@BeforeEach
+	void cargarCatalogo() {
+		repositorio = mock(ProductoRepository.class);
+		when(repositorio.obtenerDatosBusqueda()).thenReturn(List.of(
+				producto(1L, "Aceite de oliva virgen extra", "Aceite de Jaén", "Aceites", true),
+				producto(2L, "Aceituna Manzanilla", "Aceitunas aliñadas", "Encurtidos", true),
+				producto(3L, "Pan de pueblo", "Hecho con aceite", "Panadería", false),
+				producto(4L, "Vino tinto", null, null, true)));
+		busqueda = new BusquedaProductosService(repositorio);
+		busqueda.reconstruir();
+	}
+
+	@Test
+	void cadaTerminoSeBuscaComoPrefijoYTodosDebenCoincidir() {
+		assertEquals(List.of(1L, 2L, 3L), ids(busqueda.buscar("acei", null, null, 10)));
+		assertEquals(List.of(1L), ids(busqueda.buscar("acei oliv", null, null, 10)));
+		assertEquals(List.of(), ids(busqueda.buscar("acei vino", null, null, 10)));
+	}
+
+	@Test
+	void ignoraTildesMayusculasYPalabrasVacias() {
+		assertEquals(List.of(2L), ids(busqueda.buscar("ACEITUNA manzanílla", null, null, 10)));
+		assertEquals(List.of(1L), ids(busqueda.buscar("aceite de jaen", null, null, 10)));
+		assertEquals(Set.of("aceite", "oliva"), BusquedaProductosService.tokenizar("Aceite  de  Oliva, con aceite"));
+	}
+
+	@Test
+	void elNombrePesaMasQueLaDescripcionYAIgualdadOrdenaPorNombre() {
+		// "aceite" exacto en el nombre (1) antes que solo en la descripción (3); "aceitunas" no empieza por "aceite"
+		assertEquals(List.of(1L, 3L), ids(busqueda.buscar("aceite", null, null, 10)));
+		// Sin texto todos puntúan igual y el orden es alfabético por nombre
+		assertEquals(List.of(1L, 2L, 3L, 4L), ids(busqueda.buscar("", null, null, 10)));
+		ResultadoBusquedaDTO limitado = busqueda.buscar("aceite", null, null, 1);
+		assertEquals(2, limitado.getTotal());
+		assertEquals(List.of(1L), ids(limitado));
+	}
+
+	@Test
+	void lasFacetasSeCuentanSobreElTextoAntesDeFiltrar() {
+		ResultadoBusquedaDTO todo = busqueda.buscar("", null, null, 10);
+		assertEquals(4, todo.getTotal());
+		assertEquals(1, todo.getFacetasCategoria().get("sin categoria"));
+		assertEquals(3, todo.getFacetasVisible().get(true));
+
+		ResultadoBusquedaDTO filtrado = busqueda.buscar("acei", "PANADERIA", null, 10);
+		assertEquals(List.of(3L), ids(filtrado));
+		assertEquals(1, filtrado.getFacetasCategoria().get("aceites"));
+		assertEquals(1, filtrado.getFacetasCategoria().get("panaderia"));
+		assertEquals(2, filtrado.getFacetasVisible().get(true));
+		assertEquals(List.of(1L, 2L), ids(busqueda.buscar("acei", null, true, 10)));
+	}
+
+	@Test
+	void actualizaElIndiceYLasFacetasAlCambiarOEliminarUnProducto() {
+		when(repositorio.obtenerDatosBusqueda(4L)).thenReturn(List.of(producto(4L, "Vinagre de Jerez", null, "Aceites", true)));
+		busqueda.alModificarProducto(new ProductoModificadoEvent(4L, ProductoModificadoEvent.Tipo.ACTUALIZADO));
+		assertEquals(List.of(), ids(busqueda.buscar("vino", null, null, 10)));
+		assertEquals(List.of(4L), ids(busqueda.buscar("vinag", null, null, 10)));
+		ResultadoBusquedaDTO todo = busqueda.buscar(null, null, null, 10);
+		assertEquals(2, todo.getFacetasCategoria().get("aceites"));
+		assertNull(todo.getFacetasCategoria().get("sin categoria"));
+
+		busqueda.alModificarProducto(new ProductoModificadoEvent(2L, ProductoModificadoEvent.Tipo.ELIMINADO));
+		// La nueva categoría del producto 4 también se indexa: pesa más que la descripción del 3
+		assertEquals(List.of(1L, 4L, 3L), ids(busqueda.buscar("acei", null, null, 10)));
+		todo = busqueda.buscar(null, null, null, 10);
+		assertEquals(3, todo.getTotal());
+		assertNull(todo.getFacetasCategoria().get("encurtidos"));
+	}
+
+	private static ProductoBusquedaDTO producto(Long id, String nombre, String descripcion, String categoria, boolean visible) {
+		return new ProductoBusquedaDTO(id, nombre, descripcion, categoria, 1.0, null, visible);
+	}
+
+	private static List<Long> ids(ResultadoBusquedaDTO resultado) {
+		return resultado.getResultados().stream().map(ProductoBusquedaDTO::getId).toList();
+	}
+}
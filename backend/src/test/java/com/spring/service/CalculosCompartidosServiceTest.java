@@ -0,0 +1,112 @@
+package com.spring.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas de los cálculos compartidos: peticiones simultáneas con la misma clave hacen un solo cálculo,
+ * las de otra clave calculan por su cuenta y los errores llegan a todas.
+ */
+class CalculosCompartidosServiceTest {
+
+	private final CalculosCompartidosService calculos = new CalculosCompartidosService();
+
+	@Test
+	void peticionesSimultaneasIgualesCompartenUnCalculo() throws Exception {
+		AtomicInteger ejecuciones = new AtomicInteger();
+		CountDownLatch empezado = new CountDownLatch(1);
+		CountDownLatch liberar = new CountDownLatch(1);
+		ExecutorService hilos = Executors.newFixedThreadPool(5);
+		try {
+			List<Future<Object>> resultados = new ArrayList<>();
+			// La primera petición calcula y se queda bloqueada hasta que las demás están esperando
+			resultados.add(hilos.submit(() -> calculos.compartir("pdf", "mes", () -> {
+				ejecuciones.incrementAndGet();
+				empezado.countDown();
+				esperar(liberar);
+				return new Object();
+			})));
+			esperar(empezado);
+			for (int i = 0; i < 4; i++) {
+				resultados.add(hilos.submit(() -> calculos.compartir("pdf", "mes", () -> {
+					ejecuciones.incrementAndGet();
+					return new Object();
+				})));
+			}
+			while (calculos.estadisticas().get(0).compartidas() < 4) {
+				Thread.sleep(5);
+			}
+			liberar.countDown();
+
+			Object primero = resultados.get(0).get(5, TimeUnit.SECONDS);
+			for (Future<Object> resultado : resultados) {
+				assertSame(primero, resultado.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, ejecuciones.get());
+			CalculosCompartidosService.Estadisticas estadisticas = calculos.estadisticas().get(0);
+			assertEquals(1, estadisticas.calculos());
+			assertEquals(4, estadisticas.compartidas());
+			assertEquals(4, estadisticas.maximoEsperando());
+			assertEquals(0, estadisticas.enCurso());
+		} finally {
+			hilos.shutdownNow();
+		}
+	}
+
+	@Test
+	void trasTerminarSeVuelveACalcular() {
+		AtomicInteger ejecuciones = new AtomicInteger();
+		calculos.compartir("ventas", "2025|mes", ejecuciones::incrementAndGet);
+		calculos.compartir("ventas", "2025|mes", ejecuciones::incrementAndGet);
+		calculos.compartir("ventas", "2025|dia", ejecuciones::incrementAndGet);
+		assertEquals(3, ejecuciones.get());
+	}
+
+	@Test
+	void elErrorDelCalculoLlegaATodasLasPeticiones() throws Exception {
+		CountDownLatch empezado = new CountDownLatch(1);
+		CountDownLatch liberar = new CountDownLatch(1);
+		ExecutorService hilos = Executors.newFixedThreadPool(2);
+		try {
+			Future<Object> primera = hilos.submit(() -> calculos.compartir("ventas", "x", () -> {
+				empezado.countDown();
+				esperar(liberar);
+				throw new IllegalArgumentException("Rango no válido");
+			}));
+			esperar(empezado);
+			Future<Object> segunda = hilos.submit(() -> calculos.compartir("ventas", "x", Object::new));
+			while (calculos.estadisticas().get(0).compartidas() < 1) {
+				Thread.sleep(5);
+			}
+			liberar.countDown();
+
+			for (Future<Object> resultado : List.of(primera, segunda)) {
+				Exception e = assertThrows(Exception.class, () -> resultado.get(5, TimeUnit.SECONDS));
+				assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+			}
+			assertEquals(1, calculos.estadisticas().get(0).errores());
+		} finally {
+			hilos.shutdownNow();
+		}
+	}
+
+	private static void esperar(CountDownLatch senal) {
+		try {
+			senal.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package com.spring.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.spring.event.PedidoModificadoEvent;
+import com.spring.model.LineaPedido;
+import com.spring.model.Pedido;
+import com.spring.model.Producto;
+import com.spring.repository.PedidoRepository;
+import com.spring.repository.VentaDiariaProductoRepository;
+
+/**
+ * Pruebas del cubo de ventas: el cubo mantenido pedido a pedido debe quedar igual que el reconstruido
+ * con rellenarDesdePedidos, también con líneas sin nombre de producto y al eliminar un pedido tras reconstruir.
+ * La reconstrucción ejecuta la sentencia SQL del repositorio sobre una base de datos H2 en memoria;
+ * el mantenimiento incremental acumula en un mapa las llamadas que haría al repositorio.
+ */
+class CuboVentasServiceTest {
+
+	private static final LocalDate LUNES = LocalDate.of(2025, 3, 3);
+	private static final LocalDate MARTES = LocalDate.of(2025, 3, 4);
+
+	private JdbcTemplate bd;
+	// Cubo incremental: "fecha|nombre" -> [unidades, importe, pedidos]
+	private final Map<String, double[]> cubo = new TreeMap<>();
+	private CuboVentasService servicio;
+	private final List<Pedido> pedidos = new ArrayList<>();
+
+	@BeforeEach
+	void preparar() {
+		JdbcDataSource origen = new JdbcDataSource();
+		origen.setURL("jdbc:h2:mem:cubo;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+		bd = new JdbcTemplate(origen);
+		bd.execute("DROP ALL OBJECTS");
+		bd.execute("CREATE TABLE pedido (id BIGINT PRIMARY KEY, fecha_pedido DATE)");
+		bd.execute("CREATE TABLE linea_pedido (id BIGINT AUTO_INCREMENT PRIMARY KEY, pedido_id BIGINT, "
+				+ "producto_id BIGINT, nombre_producto VARCHAR(255), cantidad INT, precio_unitario DOUBLE)");
+		bd.execute("CREATE TABLE venta_diaria_producto (id BIGINT AUTO_INCREMENT PRIMARY KEY, fecha DATE NOT NULL, "
+				+ "nombre_producto VARCHAR(255) NOT NULL, producto_id BIGINT, unidades BIGINT, importe DOUBLE, "
+				+ "pedidos BIGINT, UNIQUE (fecha, nombre_producto))");
+
+		VentaDiariaProductoRepository repositorio = mock(VentaDiariaProductoRepository.class);
+		doAnswer(llamada -> {
+			double[] celda = cubo.computeIfAbsent(llamada.getArgument(0) + "|" + llamada.getArgument(1), c -> new double[3]);
+			celda[0] += (long) llamada.getArgument(3);
+			celda[1] += (double) llamada.getArgument(4);
+			celda[2] += (long) llamada.getArgument(5);
+			return null;
+		}).when(repositorio).acumular(any(), anyString(), any(), anyLong(), anyDouble(), anyLong());
+		doAnswer(llamada -> {
+			String prefijo = llamada.getArgument(0) + "|";
+			cubo.entrySet().removeIf(e -> e.getKey().startsWith(prefijo) && e.getValue()[2] <= 0);
+			return 0;
+		}).when(repositorio).borrarVacias(any());
+		servicio = new CuboVentasService(repositorio, mock(PedidoRepository.class));
+
+		Producto aceite = producto(1L, "Aceite de oliva");
+		Producto pan = producto(2L, "Pan de pueblo");
+		// Líneas con y sin nombre guardado: las que no lo tienen no deben agruparse con el nombre del producto
+		pedidos.add(pedido(1, LUNES, linea(aceite, "Aceite de oliva", 2, 10), linea(pan, null, 1, 2)));
+		pedidos.add(pedido(2, LUNES, linea(aceite, null, 1, 10), linea(aceite, "Aceite de oliva", 3, 10)));
+		pedidos.add(pedido(3, MARTES, linea(pan, "Pan de pueblo", 4, 2), linea(null, null, 1, 5)));
+	}
+
+	@Test
+	void elCuboIncrementalCoincideConElReconstruido() {
+		for (Pedido pedido : pedidos) {
+			servicio.alModificarPedido(new PedidoModificadoEvent(pedido, PedidoModificadoEvent.Tipo.CREADO));
+		}
+		assertMismoCubo(reconstruido(), cubo);
+	}
+
+	@Test
+	void eliminarUnPedidoTrasReconstruirRestaDeLasMismasCeldas() {
+		// Parte del cubo reconstruido, elimina el pedido 2 y lo compara con una nueva reconstrucción sin él
+		cubo.putAll(reconstruido());
+		servicio.alModificarPedido(new PedidoModificadoEvent(pedidos.get(1), PedidoModificadoEvent.Tipo.ELIMINADO));
+		bd.update("DELETE FROM linea_pedido WHERE pedido_id = 2");
+		bd.update("DELETE FROM pedido WHERE id = 2");
+		assertMismoCubo(reconstruido(), cubo);
+	}
+
+	/**
+	 * Vacía la tabla del cubo, ejecuta la sentencia de rellenarDesdePedidos y devuelve las celdas.
+	 */
+	private Map<String, double[]> reconstruido() {
+		bd.update("DELETE FROM venta_diaria_producto");
+		try {
+			bd.update(VentaDiariaProductoRepository.class.getMethod("rellenarDesdePedidos").getAnnotation(Query.class).value());
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		Map<String, double[]> celdas = new TreeMap<>();
+		bd.query("SELECT fecha, nombre_producto, unidades, importe, pedidos FROM venta_diaria_producto", fila -> {
+			celdas.put(fila.getDate(1).toLocalDate() + "|" + fila.getString(2),
+					new double[] { fila.getLong(3), fila.getDouble(4), fila.getLong(5) });
+		});
+		return celdas;
+	}
+
+	private static void assertMismoCubo(Map<String, double[]> esperado, Map<String, double[]> obtenido) {
+		assertEquals(esperado.keySet(), obtenido.keySet());
+		for (Map.Entry<String, double[]> celda : esperado.entrySet()) {
+			assertArrayEquals(celda.getValue(), obtenido.get(celda.getKey()), 1e-9, celda.getKey());
+		}
+	}
+
+	private Pedido pedido(long id, LocalDate fecha, LineaPedido... lineas) {
+		Pedido pedido = new Pedido();
+		pedido.setFechaPedido(fecha);
+		pedido.setDetalles(new ArrayList<>(List.of(lineas)));
+		bd.update("INSERT INTO pedido (id, fecha_pedido) VALUES (?, ?)", id, fecha);
+		for (LineaPedido linea : lineas) {
+			bd.update("INSERT INTO linea_pedido (pedido_id, producto_id, nombre_producto, cantidad, precio_unitario) "
+					+ "VALUES (?, ?, ?, ?, ?)", id, linea.getProducto() == null ? null : linea.getProducto().getId(),
+					linea.getNombreProducto(), linea.getCantidad(), linea.getPrecioUnitario());
+		}
+		return pedido;
+	}
+
+	private static LineaPedido linea(Producto producto, String nombre, int cantidad, double precio) {
+		LineaPedido linea = new LineaPedido();
+		linea.setProducto(producto);
+		linea.setNombreProducto(nombre);
+		linea.setCantidad(cantidad);
+		linea.setPrecioUnitario(precio);
+		return linea;
+	}
+
+	private static Producto producto(Long id, String nombre) {
+		Producto producto = new Producto();
+		producto.setId(id);
+		producto.setNombre(nombre);
+		return producto;
+	}
+}
@@ -0,0 +1,79 @@
+package com.spring.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas de la demanda diaria suavizada: media y desviación, días sin salidas aplicados de una vez,
+ * corrección con pocos días y salidas que llegan con retraso.
+ */
+class DemandaSuavizadaTest {
+
+	private static final double ERROR = 1e-9;
+
+	@Test
+	void conDemandaConstanteLaMediaEsEsaDemandaSinDesviacion() {
+		DemandaSuavizada demanda = new DemandaSuavizada(0.1);
+		for (long dia = 100; dia < 160; dia++) {
+			demanda.registrar(dia, 4);
+		}
+		demanda.cerrarHasta(160);
+		assertEquals(60, demanda.getDias());
+		assertEquals(4, demanda.mediaDiaria(), ERROR);
+		assertEquals(0, demanda.desviacionDiaria(), 1e-6);
+	}
+
+	@Test
+	void losDiasSinSalidasEquivalenARegistrarCeros() {
+		DemandaSuavizada saltando = new DemandaSuavizada(0.2);
+		DemandaSuavizada diaADia = new DemandaSuavizada(0.2);
+		saltando.registrar(10, 6);
+		saltando.registrar(25, 3);
+		diaADia.registrar(10, 6);
+		for (long dia = 11; dia < 25; dia++) {
+			diaADia.registrar(dia, 0);
+		}
+		diaADia.registrar(25, 3);
+		saltando.cerrarHasta(30);
+		diaADia.cerrarHasta(30);
+		assertEquals(diaADia.getDias(), saltando.getDias());
+		assertEquals(diaADia.mediaDiaria(), saltando.mediaDiaria(), ERROR);
+		assertEquals(diaADia.desviacionDiaria(), saltando.desviacionDiaria(), ERROR);
+	}
+
+	@Test
+	void conPocosDiasLaMediaNoSeSesgaHaciaCero() {
+		DemandaSuavizada demanda = new DemandaSuavizada(0.1);
+		demanda.registrar(0, 10);
+		demanda.registrar(1, 10);
+		demanda.cerrarHasta(2);
+		// Sin corregir la media sería 1,9
+		assertEquals(10, demanda.mediaDiaria(), ERROR);
+		// Días alternos de 0 y 8 unidades: media cercana a 4 y desviación cercana a 4
+		DemandaSuavizada alterna = new DemandaSuavizada(0.05);
+		for (long dia = 0; dia < 400; dia += 2) {
+			alterna.registrar(dia, 8);
+		}
+		alterna.cerrarHasta(400);
+		assertEquals(4, alterna.mediaDiaria(), 0.2);
+		assertEquals(4, alterna.desviacionDiaria(), 0.2);
+	}
+
+	@Test
+	void lasSalidasConRetrasoCuentanEnElDiaAbiertoYLaCopiaEsIndependiente() {
+		DemandaSuavizada demanda = new DemandaSuavizada(0.5);
+		demanda.registrar(5, 2);
+		demanda.registrar(6, 1);
+		demanda.registrar(5, 3);
+		assertEquals(6, demanda.getDiaAbierto());
+		assertEquals(4, demanda.getUnidadesDiaAbierto(), ERROR);
+		DemandaSuavizada copia = demanda.copia();
+		copia.cerrarHasta(7);
+		assertEquals(1, demanda.getDias());
+		assertEquals(2, copia.getDias());
+		assertEquals(0, new DemandaSuavizada(0.5).mediaDiaria(), ERROR);
+		assertThrows(IllegalArgumentException.class, () -> new DemandaSuavizada(1));
+	}
+}
@@ -0,0 +1,75 @@
+package com.spring.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pruebas del contador HyperLogLog con emails generados: error frente al recuento exacto,
+ * combinación de contadores y formato guardado.
+ */
+class HyperLogLogTest {
+
+	@Test
+	void pocosClientesSeCuentanCasiExactamente() {
+		HyperLogLog contador = contador(0, 100);
+		assertEquals(100, contador.estimar(), 1);
+	}
+
+	@Test
+	void elErrorQuedaDentroDelMargenDocumentado() {
+		// Tres errores estándar: la probabilidad de superarlo por azar es de 3 entre 1000 por caso
+		for (int clientes : new int[] {1_000, 10_000, 100_000, 1_000_000}) {
+			long estimados = contador(0, clientes).estimar();
+			double error = Math.abs((double) (estimados - clientes) / clientes);
+			assertTrue(error < 3 * HyperLogLog.ERROR_ESTANDAR,
+					clientes + " clientes: estimados " + estimados + " (error " + error + ")");
+		}
+	}
+
+	@Test
+	void repetirUnEmailNoCambiaElContador() {
+		HyperLogLog contador = new HyperLogLog();
+		assertTrue(contador.anadir("Ana@Ejemplo.com"));
+		assertFalse(contador.anadir("ana@ejemplo.com "));
+		assertFalse(contador.anadir(""));
+		assertFalse(contador.anadir(null));
+		assertEquals(1, contador.estimar());
+	}
+
+	@Test
+	void combinarDosDiasEsLaUnionDeSusClientes() {
+		// Dos días con 30.000 clientes cada uno y 10.000 en común: 50.000 distintos
+		HyperLogLog dia1 = contador(0, 30_000);
+		HyperLogLog dia2 = contador(20_000, 50_000);
+		dia1.combinar(dia2);
+		assertArrayEquals(contador(0, 50_000).aBytes(), dia1.aBytes());
+	}
+
+	@Test
+	void elFormatoGuardadoConservaLosRegistros() {
+		for (int clientes : new int[] {0, 5, 500, 50_000}) {
+			HyperLogLog contador = contador(0, clientes);
+			byte[] bytes = contador.aBytes();
+			assertTrue(bytes.length <= HyperLogLog.MAX_BYTES);
+			assertArrayEquals(bytes, HyperLogLog.deBytes(bytes).aBytes());
+			assertEquals(contador.estimar(), HyperLogLog.deBytes(bytes).estimar());
+		}
+		// Un día con pocos clientes ocupa 3 bytes por cliente
+		assertEquals(1 + 5 * 3, contador(0, 5).aBytes().length);
+		assertThrows(IllegalArgumentException.class, () -> HyperLogLog.deBytes(new byte[] {9, 1}));
+	}
+
+	// Contador con los emails cliente{desde}@ejemplo.com ... cliente{hasta - 1}@ejemplo.com
+	private static HyperLogLog contador(int desde, int hasta) {
+		HyperLogLog contador = new HyperLogLog();
+		for (int i = desde; i < hasta; i++) {
+			contador.anadir("cliente" + i + "@ejemplo.com");
+		}
+		return contador;
+	}
+}
@@ -0,0 +1,111 @@
+package com.spring.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.spring.service.IndiceCoocurrencias.Pareja;
+
+/**
+ * Pruebas del índice de productos comprados juntos: recuentos, orden de los relacionados,
+ * eliminación de pedidos, envejecimiento y la tabla hash de cada fila.
+ */
+class IndiceCoocurrenciasTest {
+
+	private static final LocalDate HOY = LocalDate.of(2025, 6, 1);
+
+	@Test
+	void cuentaCadaParejaUnaVezPorPedidoYEnLasDosFilas() {
+		IndiceCoocurrencias indice = new IndiceCoocurrencias(0, HOY);
+		indice.anadirPedido(new long[] {1, 2, 2, 3}, HOY, 1);
+		indice.anadirPedido(new long[] {1, 2}, HOY, 1);
+		assertEquals(2, indice.juntos(1, 2, HOY));
+		assertEquals(2, indice.juntos(2, 1, HOY));
+		assertEquals(1, indice.juntos(1, 3, HOY));
+		assertEquals(0, indice.juntos(3, 4, HOY));
+		assertEquals(3, indice.estadisticas(HOY).parejas());
+	}
+
+	@Test
+	void devuelveLosRelacionadosDeMasAMenosPedidosConConfianza() {
+		IndiceCoocurrencias indice = new IndiceCoocurrencias(0, HOY);
+		indice.nombrar(2, "Aceite");
+		for (int i = 0; i < 5; i++) {
+			indice.anadirPedido(new long[] {1, 2}, HOY, 1);
+		}
+		for (int i = 0; i < 3; i++) {
+			indice.anadirPedido(new long[] {1, 3}, HOY, 1);
+		}
+		indice.anadirPedido(new long[] {1, 4}, HOY, 1);
+		indice.anadirPedido(new long[] {1, 5}, HOY, 1);
+		List<Pareja> relacionados = indice.relacionados(1, 3, HOY);
+		assertEquals(List.of(2L, 3L, 4L), relacionados.stream().map(Pareja::productoId).toList());
+		assertEquals("Aceite", relacionados.get(0).nombre());
+		assertEquals(5, relacionados.get(0).pedidos());
+		assertEquals(0.5, relacionados.get(0).confianza(), 1e-12);
+		assertEquals(List.of(), indice.relacionados(99, 3, HOY));
+	}
+
+	@Test
+	void eliminarLosPedidosDejaElIndiceVacio() {
+		IndiceCoocurrencias indice = new IndiceCoocurrencias(90, HOY);
+		Random aleatorio = new Random(7);
+		long[][] pedidos = new long[500][];
+		LocalDate[] fechas = new LocalDate[pedidos.length];
+		for (int p = 0; p < pedidos.length; p++) {
+			pedidos[p] = aleatorio.longs(1 + aleatorio.nextInt(6), 1, 60).toArray();
+			fechas[p] = HOY.minusDays(aleatorio.nextInt(400));
+			indice.anadirPedido(pedidos[p], fechas[p], 1);
+		}
+		assertTrue(indice.estadisticas(HOY).parejas() > 0);
+		for (int p = 0; p < pedidos.length; p++) {
+			indice.anadirPedido(pedidos[p], fechas[p], -1);
+		}
+		IndiceCoocurrencias.Estadisticas vacio = indice.estadisticas(HOY);
+		assertEquals(0, vacio.productos());
+		assertEquals(0, vacio.parejas());
+		assertEquals(0, vacio.pedidos(), 1e-9);
+	}
+
+	@Test
+	void unPedidoDeHaceUnaVidaMediaPesaLaMitad() {
+		IndiceCoocurrencias indice = new IndiceCoocurrencias(30, HOY);
+		indice.anadirPedido(new long[] {1, 2}, HOY.minusDays(30), 1);
+		indice.anadirPedido(new long[] {1, 3}, HOY, 1);
+		assertEquals(0.5, indice.juntos(1, 2, HOY), 1e-12);
+		assertEquals(1, indice.juntos(1, 3, HOY), 1e-12);
+		// Un mes después los dos valen la mitad y el orden no cambia
+		assertEquals(0.25, indice.juntos(1, 2, HOY.plusDays(30)), 1e-12);
+		assertEquals(List.of(3L, 2L), indice.relacionados(1, 5, HOY.plusDays(30)).stream().map(Pareja::productoId).toList());
+	}
+
+	@Test
+	void laFilaCoincideConUnMapaAlSumarYBorrar() {
+		IndiceCoocurrencias.Fila fila = new IndiceCoocurrencias.Fila();
+		Map<Integer, Double> esperado = new HashMap<>();
+		Random aleatorio = new Random(11);
+		for (int i = 0; i < 20_000; i++) {
+			int clave = 1 + aleatorio.nextInt(300);
+			double actual = esperado.getOrDefault(clave, 0.0);
+			// Sumar uno o, si la celda existe, a veces vaciarla
+			double valor = actual > 0 && aleatorio.nextBoolean() ? -actual : 1;
+			fila.sumar(clave, valor);
+			if (actual + valor <= 0) {
+				esperado.remove(clave);
+			} else {
+				esperado.put(clave, actual + valor);
+			}
+		}
+		assertEquals(esperado.size(), fila.tamano());
+		for (int clave = 1; clave <= 300; clave++) {
+			assertEquals(esperado.getOrDefault(clave, 0.0), fila.obtener(clave));
+		}
+	}
+}
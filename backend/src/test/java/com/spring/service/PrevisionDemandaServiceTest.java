@@ -0,0 +1,84 @@
+package com.spring.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.spring.model.PrevisionDemanda;
+import com.spring.repository.MovimientoStockRepository;
+import com.spring.repository.PrevisionDemandaRepository;
+import com.spring.repository.ProductoRepository;
+
+/**
+ * Pruebas del estado guardado de la previsión de demanda con salidas que se confirman desordenadas:
+ * lo guardado no pasa de la menor salida en curso y solo incluye las salidas hasta ese punto.
+ */
+class PrevisionDemandaServiceTest {
+
+	private static final Date HOY = new Date();
+
+	private final List<PrevisionDemanda> guardadas = new ArrayList<>();
+	private PrevisionDemandaService prevision;
+
+	@BeforeEach
+	void preparar() {
+		MovimientoStockRepository movimientos = mock(MovimientoStockRepository.class);
+		when(movimientos.recorrerSalidasDesde(anyLong())).thenAnswer(llamada -> Stream.empty());
+		PrevisionDemandaRepository previsiones = mock(PrevisionDemandaRepository.class);
+		when(previsiones.findAll()).thenReturn(List.of());
+		when(previsiones.findByProductoIdIn(any())).thenAnswer(llamada -> List.copyOf(guardadas));
+		when(previsiones.saveAll(any())).thenAnswer(llamada -> {
+			guardadas.clear();
+			llamada.<Iterable<PrevisionDemanda>>getArgument(0).forEach(guardadas::add);
+			return List.copyOf(guardadas);
+		});
+		prevision = new PrevisionDemandaService(movimientos, previsiones, mock(ProductoRepository.class), 0.1, 7, 7, 1.65, 14);
+		prevision.cargar();
+	}
+
+	@Test
+	void loGuardadoNoPasaDeUnaSalidaEnCurso() {
+		// La 101 se confirma mientras la 100 sigue en curso
+		prevision.iniciar(100);
+		prevision.iniciar(101);
+		prevision.registrar(101, 1L, HOY, 5);
+		prevision.terminar(101);
+		prevision.guardar();
+		assertEquals(List.of(), guardadas);
+
+		// Al confirmarse la 100 el punto de guardado pasa de las dos
+		prevision.registrar(100, 1L, HOY, 3);
+		prevision.terminar(100);
+		prevision.guardar();
+		assertEquals(1, guardadas.size());
+		assertEquals(101, guardadas.get(0).getUltimoMovimiento());
+		assertEquals(8, guardadas.get(0).getUnidadesDiaAbierto(), 1e-9);
+	}
+
+	@Test
+	void unaSalidaDeshechaNoBloqueaElPuntoDeGuardado() {
+		prevision.iniciar(100);
+		prevision.registrar(99, 1L, HOY, 2);
+		prevision.guardar();
+		assertEquals(99, guardadas.get(0).getUltimoMovimiento());
+
+		// La 100 se deshace: no llega a registrarse, pero deja de estar en curso
+		prevision.iniciar(102);
+		prevision.terminar(100);
+		prevision.registrar(102, 1L, HOY, 4);
+		prevision.terminar(102);
+		prevision.guardar();
+		assertEquals(102, guardadas.get(0).getUltimoMovimiento());
+		assertEquals(6, guardadas.get(0).getUnidadesDiaAbierto(), 1e-9);
+	}
+}
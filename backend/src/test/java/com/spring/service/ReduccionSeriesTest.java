@@ -0,0 +1,78 @@
+package com.spring.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.spring.service.ReduccionSeries.Metodo;
+
+/**
+ * Pruebas de la reducción de series: número de puntos, extremos conservados y picos que no se pierden.
+ */
+class ReduccionSeriesTest {
+
+	// Punto de una serie: día y valor
+	private record Punto(int dia, double valor) {
+	}
+
+	@Test
+	void lttbDevuelveLosPuntosPedidosConElPrimeroYElUltimo() {
+		List<Punto> serie = serie(10_000);
+		List<Punto> reducida = ReduccionSeries.reducir(serie, 500, Metodo.LTTB, Punto::dia, Punto::valor);
+		assertEquals(500, reducida.size());
+		assertSame(serie.get(0), reducida.get(0));
+		assertSame(serie.get(serie.size() - 1), reducida.get(reducida.size() - 1));
+		assertOrdenada(reducida);
+	}
+
+	@Test
+	void minMaxConservaElMaximoYElMinimo() {
+		List<Punto> serie = serie(10_000);
+		serie.set(4321, new Punto(4321, 1_000_000));
+		serie.set(7777, new Punto(7777, -1_000_000));
+		List<Punto> reducida = ReduccionSeries.reducir(serie, 200, Metodo.MINMAX, Punto::dia, Punto::valor);
+		assertTrue(reducida.size() <= 200);
+		assertTrue(reducida.contains(serie.get(4321)));
+		assertTrue(reducida.contains(serie.get(7777)));
+		assertOrdenada(reducida);
+	}
+
+	@Test
+	void lttbConservaUnPicoAislado() {
+		List<Punto> serie = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			serie.add(new Punto(i, i == 500 ? 100 : 1));
+		}
+		assertTrue(ReduccionSeries.reducir(serie, 20, Metodo.LTTB, Punto::dia, Punto::valor).contains(serie.get(500)));
+	}
+
+	@Test
+	void unaSerieCortaNoCambiaYPocosPuntosNoSePermiten() {
+		List<Punto> serie = serie(50);
+		assertSame(serie, ReduccionSeries.reducir(serie, 100, Metodo.LTTB, Punto::dia, Punto::valor));
+		assertThrows(IllegalArgumentException.class,
+				() -> ReduccionSeries.reducir(serie, 2, Metodo.LTTB, Punto::dia, Punto::valor));
+		assertThrows(IllegalArgumentException.class, () -> Metodo.de("media"));
+	}
+
+	// Serie con ruido determinista, una muestra por día
+	private static List<Punto> serie(int dias) {
+		List<Punto> serie = new ArrayList<>();
+		for (int i = 0; i < dias; i++) {
+			serie.add(new Punto(i, 100 + 50 * Math.sin(i / 30.0) + (i * 7919 % 101)));
+		}
+		return serie;
+	}
+
+	private static void assertOrdenada(List<Punto> serie) {
+		for (int i = 1; i < serie.size(); i++) {
+			assertTrue(serie.get(i - 1).dia() < serie.get(i).dia());
+		}
+	}
+}
@@ -98,20 +98,20 @@ export class ReportesComponent implements OnInit{
     if (!this.authService.isAdminAutenticado()) {
       this.router.navigate(['/']);
     }
-    // Cargar ventas del día actual
-    this.reportesService.obtenerVentasDelDia().subscribe(data => {
-      this.ventasDiaRaw = data;
-    });
-    // Cargar ventas del mes actual
-    this.reportesService.obtenerVentasPorMes().subscribe(data => {
-      this.ventasMesRaw = data;
-    });
-    // Cargar lista de años disponibles con archivos de movimientos
-    this.cargarAniosMovimientos();
-     // Obtener años de resúmenes anuales guardados en el backends
-    this.reportesService.listarResumenesAnuales().subscribe({
-      next: anios => this.archivosGuardados = anios,
-      error: err => console.error('Error al listar resúmenes:', err)
+    // Cargar en una sola petición las ventas del día y del mes, los años con archivo de movimientos
+    // y los años con resumen anual guardado; una parte que falle se queda vacía sin afectar a las demás
+    this.reportesService.obtenerPanel(['ventasDelDia', 'ventasPorMes', 'aniosMovimientos', 'resumenesAnuales']).subscribe({
+      next: panel => {
+        const datos = (nombre: string) => panel.partes[nombre]?.estado === 'OK' ? panel.partes[nombre].datos : [];
+        this.ventasDiaRaw = datos('ventasDelDia');
+        this.ventasMesRaw = datos('ventasPorMes');
+        this.aniosMovimientos = datos('aniosMovimientos');
+        this.archivosGuardados = datos('resumenesAnuales');
+        if (!panel.completo) {
+          console.error('Partes del panel sin cargar:', panel.partes);
+        }
+      },
+      error: err => console.error('Error al cargar el panel:', err)
     });
   }
 
@@ -1,9 +1,22 @@
 import { HttpClient, HttpErrorResponse } from '@angular/common/http';
 import { Injectable } from '@angular/core';
 import { catchError, Observable, throwError } from 'rxjs';
+/**
+ * Producto que se compra junto con otro ("también se compra con").
+ */
+export interface ProductoRelacionado {
+  productoId: number;
+  nombre: string;
+  // Pedidos en los que aparecen juntos (los antiguos pesan menos)
+  pedidos: number;
+  // Fracción de los pedidos del producto consultado que incluyen también este
+  confianza: number;
+  // Más de 1 si se compran juntos más de lo que cabría esperar por casualidad
+  lift: number;
+}
 /**
  * Servicio para gestionar operaciones relacionadas con productos.
- * Permite crear productos mediante envío de datos tipo `FormData`.
+ * Permite crear productos mediante envío de datos tipo `FormData` y consultar los productos que se compran juntos.
  */
 @Injectable({
   providedIn: 'root'
@@ -34,4 +47,13 @@ export class ProductosService {
       })
     );
   }
+  /**
+   * Obtiene los productos que más se compran junto con uno.
+   * @param id ID del producto
+   * @param limite Número máximo de productos (5 por defecto)
+   * @returns Observable con los productos relacionados, de más a menos pedidos en común
+   */
+  obtenerRelacionados(id: number, limite: number = 5): Observable<ProductoRelacionado[]> {
+    return this.http.get<ProductoRelacionado[]>(`${this.apiUrl}/${id}/relacionados?limite=${limite}`);
+  }
 }
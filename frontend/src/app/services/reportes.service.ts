@@ -26,6 +26,26 @@ export interface Producto {
   nombre: string;
   stock: number;
 }
+/**
+ * Resultado de una parte del panel: sus datos si se ha podido calcular, o el motivo si no.
+ */
+export interface ParteDelPanel<T> {
+  // OK, ERROR, TIEMPO_AGOTADO o RECHAZADA
+  estado: string;
+  datos: T | null;
+  error: string | null;
+  ms: number;
+}
+/**
+ * Respuesta de /api/dashboard: las partes pedidas del panel, calculadas en una sola petición.
+ */
+export interface Panel {
+  generado: string;
+  ms: number;
+  // false si alguna parte no se ha podido calcular
+  completo: boolean;
+  partes: { [nombre: string]: ParteDelPanel<any> };
+}
 /**
  * Servicio para gestionar los reportes de ventas y productos.
  * Proporciona métodos para descargar PDF, consultar ventas y stock, y manejar resúmenes anuales.
@@ -56,10 +76,12 @@ export class ReportesService {
   }
   /**
    * Obtiene las ventas agrupadas por fecha
+   * @param puntos Número máximo de puntos para la gráfica (opcional; sin él se reciben todos los días)
    * @returns Observable con una lista de ventas por fecha
    */
-  obtenerVentasPorDia(): Observable<VentaPorFecha[]> {
-    return this.http.get<VentaPorFecha[]>(`${this.base}/ventas-por-fecha`);
+  obtenerVentasPorDia(puntos?: number): Observable<VentaPorFecha[]> {
+    const parametros = puntos ? `?puntos=${puntos}` : '';
+    return this.http.get<VentaPorFecha[]>(`${this.base}/ventas-por-fecha${parametros}`);
   }
   /**
    * Obtiene las ventas específicas del día actual.
@@ -144,4 +166,13 @@ export class ReportesService {
       resumenMensual: { mes: string; total: number; productos: ProductoVentaDetalle[] }[];
     }>(`${this.base}/resumen-anual?anio=${anio}`);
   }
-}
\ No newline at end of file
+  /**
+   * Obtiene en una sola petición varias partes del panel de reportes.
+   * @param partes Nombres de las partes (por ejemplo 'ventasDelDia'); sin ellas se reciben todas
+   * @returns Observable con el resultado de cada parte
+   */
+  obtenerPanel(partes: string[] = []): Observable<Panel> {
+    const parametros = partes.length ? `?partes=${partes.join(',')}` : '';
+    return this.http.get<Panel>(`http://localhost:8080/api/dashboard${parametros}`);
+  }
+}